@@ -30,21 +30,33 @@ import com.google.common.util.concurrent.MoreExecutors;
 
 import com.github.benmanes.caffeine.cache.*;
 import com.codahale.metrics.Timer;
-import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.*;
 import org.apache.cassandra.metrics.CacheMissMetrics;
 import org.apache.cassandra.utils.memory.BufferPool;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ChunkCache
         implements CacheLoader<ChunkCache.Key, ChunkCache.Buffer>, RemovalListener<ChunkCache.Key, ChunkCache.Buffer>, CacheSize
 {
-    public static final int RESERVED_POOL_SPACE_IN_MB = 32;
-    public static final long cacheSize = 1024L * 1024L * Math.max(0, DatabaseDescriptor.getFileCacheSizeInMB() - RESERVED_POOL_SPACE_IN_MB);
+    private static final Logger logger = LoggerFactory.getLogger(ChunkCache.class);
 
-    private static boolean enabled = cacheSize > 0;
-    public static final ChunkCache instance = enabled ? new ChunkCache() : null;
+    /**
+     * Hadoop configuration key holding the size of the process-wide cache of decompressed chunks, in megabytes.
+     * 0 (the default) disables the cache. The size is fixed by the first reader opened with a positive value.
+     */
+    public static final String CHUNK_CACHE_SIZE_MB_KEY = "sstable.adaptor.chunkcache.size.mb";
+
+    // Chunks are cached at the buffer size of the reader, which must be a power of two for caching.
+    // If set to true the buffer size will be rounded up to the next power of two, otherwise down.
+    public static final boolean roundUp = true;
+
+    private static volatile ChunkCache instance;
+    private static boolean enabled = true;
 
+    private final long cacheSize;
     private final LoadingCache<Key, Buffer> cache;
     public final CacheMissMetrics metrics;
 
@@ -82,6 +94,7 @@ public class ChunkCache
             Key other = (Key) obj;
             return (position == other.position)
                     && file.getClass() == other.file.getClass()
+                    && file.chunkSize() == other.file.chunkSize()
                     && path.equals(other.path);
         }
     }
@@ -134,8 +147,45 @@ public class ChunkCache
         }
     }
 
-    public ChunkCache()
+    /**
+     * Return the process-wide chunk cache for a reader opened with the given configuration. Readers opt in by setting
+     * {@link #CHUNK_CACHE_SIZE_MB_KEY} to a positive value; the first of them creates the cache with that capacity,
+     * later ones share it whatever size they ask for.
+     *
+     * @param conf configuration of the reader asking for the cache
+     * @return the cache, or null if caching is disabled for this reader
+     */
+    public static ChunkCache instance(Configuration conf)
     {
+        long sizeInMB = conf == null ? 0 : conf.getLong(CHUNK_CACHE_SIZE_MB_KEY, 0);
+        if (sizeInMB <= 0)
+            return null;
+
+        if (instance == null)
+        {
+            synchronized (ChunkCache.class)
+            {
+                if (instance == null)
+                {
+                    logger.info("Initializing chunk cache with capacity of {} MB", sizeInMB);
+                    instance = new ChunkCache(sizeInMB * 1024L * 1024L);
+                }
+            }
+        }
+        return instance();
+    }
+
+    /**
+     * @return the process-wide chunk cache, or null if it has not been created or is disabled
+     */
+    public static ChunkCache instance()
+    {
+        return enabled ? instance : null;
+    }
+
+    private ChunkCache(long cacheSize)
+    {
+        this.cacheSize = cacheSize;
         cache = Caffeine.newBuilder()
                 .maximumWeight(cacheSize)
                 .executor(MoreExecutors.directExecutor())
@@ -177,10 +227,11 @@ public class ChunkCache
 
     public static RebuffererFactory maybeWrap(ChunkReader file)
     {
-        if (!enabled)
+        ChunkCache cache = instance();
+        if (cache == null)
             return file;
 
-        return instance.wrap(file);
+        return cache.wrap(file);
     }
 
     public void invalidatePosition(FileHandle dfile, long position)
@@ -299,6 +350,22 @@ public class ChunkCache
         return cacheSize;
     }
 
+    /**
+     * @return the number of chunk requests served from the cache since it was created or last reset
+     */
+    public long hits()
+    {
+        return metrics.requests.getCount() - metrics.misses.getCount();
+    }
+
+    /**
+     * @return the number of chunk requests that had to be read from the file
+     */
+    public long misses()
+    {
+        return metrics.misses.getCount();
+    }
+
     @Override
     public void setCapacity(long capacity)
     {
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.caffinitas.ohc.CacheSerializer;
+import org.caffinitas.ohc.OHCache;
+import org.caffinitas.ohc.OHCacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+/**
+ * Process-wide, off-heap cache of the index entries of partitions, so that repeated lookups of a key skip the
+ * search of the index summary and the read of the index. Entries are keyed by sstable and partition key, and stored
+ * in the serialized form of {@link RowIndexEntry.IndexSerializer#serializeForCache}; the least recently used entries
+ * are evicted once the cache is full.
+ *
+ * Sstables are immutable, but a path may be rewritten with another sstable: readers identify their sstable by its
+ * path, length and modification time, see {@link #sstableId(String)}. Entries then never need invalidating: those of
+ * sstables that are not read anymore age out.
+ */
+public class KeyCache implements CacheSize
+{
+    private static final Logger logger = LoggerFactory.getLogger(KeyCache.class);
+
+    /**
+     * Hadoop configuration key holding the size of the process-wide key cache, in megabytes. 0 (the default)
+     * disables the cache. The size is fixed by the first reader opened with a positive value.
+     */
+    public static final String KEY_CACHE_SIZE_MB_KEY = "sstable.adaptor.keycache.size.mb";
+
+    private static volatile KeyCache instance;
+
+    private final OHCache<Key, byte[]> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Identifies a partition of an sstable.
+     */
+    public static final class Key
+    {
+        final byte[] sstable;
+        final ByteBuffer key;
+
+        public Key(byte[] sstable, ByteBuffer key)
+        {
+            this.sstable = sstable;
+            this.key = key;
+        }
+    }
+
+    /**
+     * @return the identifier of an sstable in the cache, built from a name that is unique to it in the process and
+     *         changes if another sstable is written at its path
+     */
+    public static byte[] sstableId(String name)
+    {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the process-wide key cache for a reader opened with the given configuration. Readers opt in by setting
+     * {@link #KEY_CACHE_SIZE_MB_KEY} to a positive value; the first of them creates the cache with that capacity,
+     * later ones share it whatever size they ask for.
+     *
+     * @param conf configuration of the reader asking for the cache
+     * @return the cache, or null if caching is disabled for this reader
+     */
+    public static KeyCache instance(Configuration conf)
+    {
+        long sizeInMB = conf == null ? 0 : conf.getLong(KEY_CACHE_SIZE_MB_KEY, 0);
+        if (sizeInMB <= 0)
+            return null;
+
+        if (instance == null)
+        {
+            synchronized (KeyCache.class)
+            {
+                if (instance == null)
+                {
+                    logger.info("Initializing key cache with capacity of {} MB", sizeInMB);
+                    instance = new KeyCache(sizeInMB * 1024L * 1024L);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private KeyCache(long capacity)
+    {
+        cache = OHCacheBuilder.<Key, byte[]>newBuilder()
+                              .capacity(capacity)
+                              .keySerializer(KeySerializer.instance)
+                              .valueSerializer(ValueSerializer.instance)
+                              .build();
+    }
+
+    /**
+     * @return the cached index entry of a partition, or null if it is not cached
+     */
+    public <T> RowIndexEntry<T> get(Key key, RowIndexEntry.IndexSerializer<T> serializer)
+    {
+        requests.incrementAndGet();
+        byte[] serialized = cache.get(key);
+        if (serialized == null)
+            return null;
+
+        try (DataInputBuffer in = new DataInputBuffer(serialized))
+        {
+            RowIndexEntry<T> entry = serializer.deserializeForCache(in);
+            hits.incrementAndGet();
+            return entry;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.warn("Discarding unreadable key cache entry: {}", e.getMessage());
+            cache.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Cache the index entry of a partition.
+     */
+    public <T> void put(Key key, RowIndexEntry<T> entry, RowIndexEntry.IndexSerializer<T> serializer)
+    {
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            serializer.serializeForCache(entry, out);
+            cache.put(key, out.toByteArray());
+        }
+        catch (IOException e)
+        {
+            logger.warn("Cannot cache the index entry at {}: {}", entry.position, e.getMessage());
+        }
+    }
+
+    public long hits()
+    {
+        return hits.get();
+    }
+
+    public long requests()
+    {
+        return requests.get();
+    }
+
+    @Override
+    public long capacity()
+    {
+        return cache.capacity();
+    }
+
+    @Override
+    public void setCapacity(long capacity)
+    {
+        cache.setCapacity(capacity);
+    }
+
+    @Override
+    public int size()
+    {
+        return (int) cache.size();
+    }
+
+    @Override
+    public long weightedSize()
+    {
+        return cache.memUsed();
+    }
+
+    private static final class KeySerializer implements CacheSerializer<Key>
+    {
+        static final KeySerializer instance = new KeySerializer();
+
+        public void serialize(Key key, ByteBuffer buf)
+        {
+            buf.putInt(key.sstable.length);
+            buf.put(key.sstable);
+            buf.put(key.key.duplicate());
+        }
+
+        public Key deserialize(ByteBuffer buf)
+        {
+            byte[] sstable = new byte[buf.getInt()];
+            buf.get(sstable);
+            ByteBuffer key = ByteBuffer.allocate(buf.remaining());
+            key.put(buf).flip();
+            return new Key(sstable, key);
+        }
+
+        public int serializedSize(Key key)
+        {
+            return 4 + key.sstable.length + key.key.remaining();
+        }
+    }
+
+    private static final class ValueSerializer implements CacheSerializer<byte[]>
+    {
+        static final ValueSerializer instance = new ValueSerializer();
+
+        public void serialize(byte[] value, ByteBuffer buf)
+        {
+            buf.putInt(value.length);
+            buf.put(value);
+        }
+
+        public byte[] deserialize(ByteBuffer buf)
+        {
+            byte[] value = new byte[buf.getInt()];
+            buf.get(value);
+            return value;
+        }
+
+        public int serializedSize(byte[] value)
+        {
+            return 4 + value.length;
+        }
+    }
+}
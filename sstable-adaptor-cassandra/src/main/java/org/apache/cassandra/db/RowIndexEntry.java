@@ -376,7 +376,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
             skipPromotedIndex(in, version);
         }
 
-        private static void skipPromotedIndex(DataInputPlus in, Version version) throws IOException
+        public static void skipPromotedIndex(DataInputPlus in, Version version) throws IOException
         {
             int size = version.storeRows() ? (int)in.readUnsignedVInt() : in.readInt();
             if (size <= 0)
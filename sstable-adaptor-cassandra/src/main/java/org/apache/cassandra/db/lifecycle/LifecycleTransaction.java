@@ -169,7 +169,7 @@ public class LifecycleTransaction extends Transactional.AbstractTransactional
         // prepare for compaction obsolete readers as long as they were part of the original set
         // since those that are not original are early readers that share the same desc with the finals
         //maybeFail(prepareForObsoletion(filterIn(logged.obsolete, originals), log, obsoletions = new ArrayList<>(), null));
-        //log.prepareToCommit();
+        log.prepareToCommit();
     }
 
     /**
@@ -115,6 +115,26 @@ public abstract class UnfilteredPartitionIterators
             {
                 UnfilteredRowIterators.MergeListener rowListener = listener.getRowMergeListener(partitionKey, toMerge);
 
+                // A partition found in a single input has nothing to be merged with: unless the listener wants
+                // to see its rows, return it as is rather than through a row merge against empty iterators
+                if (rowListener == null)
+                {
+                    UnfilteredRowIterator single = null;
+                    for (UnfilteredRowIterator iterator : toMerge)
+                    {
+                        if (iterator == null)
+                            continue;
+                        if (single != null)
+                        {
+                            single = null;
+                            break;
+                        }
+                        single = iterator;
+                    }
+                    if (single != null)
+                        return single;
+                }
+
                 // Replace nulls by empty iterators
                 for (int i = 0; i < toMerge.size(); i++)
                     if (toMerge.get(i) == null)
@@ -17,6 +17,10 @@
  */
 package org.apache.cassandra.io.compress;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.io.FSWriteError;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.util.ChecksumWriter;
@@ -31,12 +35,40 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.util.ArrayDeque;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.cassandra.utils.Throwables.merge;
 
 public class CompressedSequentialWriter extends SequentialWriter
 {
+    /**
+     * Hadoop configuration key holding the number of chunks compressed by a shared background pool while the writer
+     * fills the next ones, which also bounds the memory each writer holds to that many chunks, compressed and not.
+     * 0 (the default) compresses each chunk on the writing thread.
+     */
+    public static final String COMPRESSION_CHUNKS_KEY = "sstable.adaptor.compression.chunks";
+
+    private static final int COMPRESSION_THREADS =
+        Integer.getInteger(Config.PROPERTY_PREFIX + "compression_threads", Runtime.getRuntime().availableProcessors());
+
+    // compression is CPU bound, hence no more threads than cores by default.
+    // Threads are only started on demand and die off when idle.
+    private static final ThreadPoolExecutor executor;
+    static
+    {
+        executor = new ThreadPoolExecutor(COMPRESSION_THREADS, COMPRESSION_THREADS,
+                                          60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<>(),
+                                          new NamedThreadFactory("ChunkCompressor"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
     private final ChecksumWriter crcMetadata;
 
     // holds offset in the file where current chunk should be written
@@ -60,6 +92,12 @@ public class CompressedSequentialWriter extends SequentialWriter
     private final ByteBuffer crcCheckBuffer = ByteBuffer.allocate(4);
     private final Optional<String> digestFile;
 
+    private final int window;
+    // chunks being compressed in the background, in file order
+    private final ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+    // written chunks whose buffers can be reused
+    private final ArrayDeque<Chunk> spare = new ArrayDeque<>();
+
     /**
      * Create CompressedSequentialWriter without digest file.
      *
@@ -98,6 +136,7 @@ public class CompressedSequentialWriter extends SequentialWriter
 
         this.sstableMetadataCollector = sstableMetadataCollector;
         crcMetadata = new ChecksumWriter(new DataOutputStream(Channels.newOutputStream(channel)), conf);
+        window = conf == null ? 0 : Math.max(0, conf.getInt(COMPRESSION_CHUNKS_KEY, 0));
     }
 
     @Override
@@ -129,6 +168,12 @@ public class CompressedSequentialWriter extends SequentialWriter
     {
         seekToChunkStart(); // why is this necessary? seems like it should always be at chunk start in normal operation
 
+        if (window > 0)
+        {
+            compressInBackground();
+            return;
+        }
+
         try
         {
             // compressing data with buffer re-use
@@ -141,8 +186,81 @@ public class CompressedSequentialWriter extends SequentialWriter
             throw new RuntimeException("Compression exception", e); // shouldn't happen
         }
 
+        writeChunk(compressed, buffer.position());
+    }
+
+    /**
+     * Hand a copy of the buffer over to the compression pool, then write out the chunks already compressed. Chunks
+     * are written in file order, so once the window is full the writer waits for the oldest one.
+     */
+    private void compressInBackground()
+    {
+        while (inFlight.size() >= window)
+            writeChunk(inFlight.poll());
+
+        Chunk chunk = spare.isEmpty() ? new Chunk() : spare.poll();
+        buffer.flip();
+        chunk.uncompressed.clear();
+        chunk.uncompressed.put(buffer);
+        chunk.uncompressed.flip();
+        chunk.compression = executor.submit(chunk::compress);
+        inFlight.add(chunk);
+
+        while (!inFlight.isEmpty() && inFlight.peek().compression.isDone())
+            writeChunk(inFlight.poll());
+    }
+
+    private void writeInFlightChunks()
+    {
+        while (!inFlight.isEmpty())
+            writeChunk(inFlight.poll());
+    }
+
+    private void writeChunk(Chunk chunk)
+    {
+        try
+        {
+            Uninterruptibles.getUninterruptibly(chunk.compression);
+        }
+        catch (ExecutionException e)
+        {
+            spare.add(chunk);
+            throw Throwables.propagate(e.getCause());
+        }
+        writeChunk(chunk.compressed, chunk.uncompressed.limit());
+        spare.add(chunk);
+    }
+
+    /**
+     * Wait for the chunks still being compressed, whose buffers can only be freed once the pool is done with them,
+     * and free the buffers of all chunks without writing them.
+     */
+    private void discardChunks()
+    {
+        Chunk chunk;
+        while ((chunk = inFlight.poll()) != null)
+        {
+            try
+            {
+                Uninterruptibles.getUninterruptibly(chunk.compression);
+            }
+            catch (ExecutionException e)
+            {
+                // nothing will be written anyway
+            }
+            spare.add(chunk);
+        }
+        while ((chunk = spare.poll()) != null)
+        {
+            FileUtils.clean(chunk.uncompressed);
+            FileUtils.clean(chunk.compressed);
+        }
+    }
+
+    private void writeChunk(ByteBuffer compressed, int uncompressedLength)
+    {
         int compressedLength = compressed.position();
-        uncompressedSize += buffer.position();
+        uncompressedSize += uncompressedLength;
         compressedSize += compressedLength;
 
         try
@@ -173,6 +291,7 @@ public class CompressedSequentialWriter extends SequentialWriter
 
     public CompressionMetadata open(long overrideLength)
     {
+        writeInFlightChunks();
         if (overrideLength <= 0)
             overrideLength = uncompressedSize;
         return metadataWriter.open(overrideLength, chunkOffset);
@@ -183,9 +302,18 @@ public class CompressedSequentialWriter extends SequentialWriter
     {
         if (!buffer.hasRemaining())
             doFlush(0);
+        writeInFlightChunks();
         return new CompressedFileWriterMark(chunkOffset, current(), buffer.position(), chunkCount + 1);
     }
 
+    @Override
+    protected void syncInternal()
+    {
+        doFlush(0);
+        writeInFlightChunks();
+        syncDataOnlyInternal();
+    }
+
     /**
      * Seek to the offset where next compressed data chunk should be stored.
      */
@@ -233,6 +361,8 @@ public class CompressedSequentialWriter extends SequentialWriter
         @Override
         protected Throwable doPreCleanup(Throwable accumulate)
         {
+            try { discardChunks(); }
+            catch (Throwable t) { accumulate = merge(accumulate, t); }
             accumulate = super.doPreCleanup(accumulate);
             if (compressed != null)
             {
@@ -251,6 +381,30 @@ public class CompressedSequentialWriter extends SequentialWriter
         return new TransactionalProxy();
     }
 
+    /**
+     * A chunk handed over to the compression pool, with buffers of its own so that the writer can fill the next one.
+     */
+    private final class Chunk
+    {
+        final ByteBuffer uncompressed = compressor.preferredBufferType().allocate(buffer.capacity());
+        final ByteBuffer compressed = compressor.preferredBufferType().allocate(compressor.initialCompressedBufferLength(buffer.capacity()));
+        Future<?> compression;
+
+        // compressors are shared by all the writers of a table, and so are thread-safe
+        void compress()
+        {
+            try
+            {
+                compressed.clear();
+                compressor.compress(uncompressed, compressed);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Compression exception", e); // shouldn't happen
+            }
+        }
+    }
+
     /**
      * Class to hold a mark to the position of the file
      */
@@ -38,7 +38,6 @@ import org.apache.cassandra.io.util.Memory;
 import org.apache.cassandra.io.util.SafeMemory;
 import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.utils.ChecksumType;
-import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.concurrent.Ref;
 import org.apache.cassandra.utils.concurrent.Transactional;
@@ -107,57 +106,67 @@ public class CompressionMetadata
         this.indexFilePath = indexFilePath;
         this.checksumType = checksumType;
 
-        CompressionParams localParameters = null;
-        long localDataLength = 0;
-        long localCompressedFileLength = 0;
-        Memory localChunkOffsets = null;
-
-        //TODO: will make the retry look nicer with an abstraction class
-        int attempt = 0;
-        int maxAttempt = 5;
-        boolean isSuccess = false;
-
-        while (!isSuccess) {
-            try (ChannelProxy proxy = ChannelProxy.newInstance(indexFilePath, configuration);
-                 DataInputStream stream = new DataInputStream(proxy.getInputStream())) {
-                if (attempt > 0)
-                    FBUtilities.sleepQuietly((int) Math.round(Math.pow(2, attempt)) * 1000);
-
-                String compressorName = stream.readUTF();
-                int optionCount = stream.readInt();
-                Map<String, String> options = new HashMap<>(optionCount);
-                for (int i = 0; i < optionCount; ++i) {
-                    String key = stream.readUTF();
-                    String value = stream.readUTF();
-                    options.put(key, value);
-                }
-                int chunkLength = stream.readInt();
-                try {
-                    localParameters = new CompressionParams(compressorName, chunkLength, options);
-                } catch (ConfigurationException e) {
-                    throw new RuntimeException("Cannot create CompressionParams for stored parameters", e);
-                }
+        Header header;
+        try {
+            header = ChannelProxy.readPolicy(configuration).execute(() -> indexFilePath, () -> {
+                ChannelProxy proxy = ChannelProxy.newInstance(indexFilePath, configuration);
+                if (proxy == null)
+                    throw new IOException("Cannot open " + indexFilePath);
 
-                localDataLength = stream.readLong();
-                localCompressedFileLength = compressedLength;
-                localChunkOffsets = readChunkOffsets(stream);
-                isSuccess = true;
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
-            } catch (Throwable e) {
-                attempt++;
-                if (attempt == maxAttempt)
-                  throw new CorruptSSTableException(e, indexFilePath);
-            }
+                try (ChannelProxy ignored = proxy;
+                     DataInputStream stream = new DataInputStream(proxy.getInputStream())) {
+                    return readHeader(stream);
+                }
+            }, () -> {}, discarded -> discarded.chunkOffsets.close());
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        } catch (IOException | FSReadError e) {
+            throw new CorruptSSTableException(e, indexFilePath);
         }
 
-        parameters = localParameters;
-        dataLength = localDataLength;
-        compressedFileLength = localCompressedFileLength;
-        chunkOffsets = localChunkOffsets;
+        parameters = header.parameters;
+        dataLength = header.dataLength;
+        compressedFileLength = compressedLength;
+        chunkOffsets = header.chunkOffsets;
         this.chunkOffsetsSize = chunkOffsets.size();
     }
 
+    private Header readHeader(DataInputStream stream) throws IOException
+    {
+        String compressorName = stream.readUTF();
+        int optionCount = stream.readInt();
+        Map<String, String> options = new HashMap<>(optionCount);
+        for (int i = 0; i < optionCount; ++i) {
+            String key = stream.readUTF();
+            String value = stream.readUTF();
+            options.put(key, value);
+        }
+        int chunkLength = stream.readInt();
+        CompressionParams parameters;
+        try {
+            parameters = new CompressionParams(compressorName, chunkLength, options);
+        } catch (ConfigurationException e) {
+            throw new RuntimeException("Cannot create CompressionParams for stored parameters", e);
+        }
+
+        long dataLength = stream.readLong();
+        return new Header(parameters, dataLength, readChunkOffsets(stream));
+    }
+
+    private static final class Header
+    {
+        final CompressionParams parameters;
+        final long dataLength;
+        final Memory chunkOffsets;
+
+        Header(CompressionParams parameters, long dataLength, Memory chunkOffsets)
+        {
+            this.parameters = parameters;
+            this.dataLength = dataLength;
+            this.chunkOffsets = chunkOffsets;
+        }
+    }
+
     private CompressionMetadata(String filePath, CompressionParams parameters, SafeMemory offsets, long offsetsSize, long dataLength, long compressedLength, ChecksumType checksumType)
     {
         this.indexFilePath = filePath;
@@ -242,6 +251,7 @@ public class CompressionMetadata
         }
         catch (Exception e)
         {
+            offsets.close();
             throw new FSReadError(e, indexFilePath);
         }
     }
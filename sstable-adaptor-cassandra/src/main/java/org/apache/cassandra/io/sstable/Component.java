@@ -115,6 +115,15 @@ public class Component
         throw new AssertionError();
     }
 
+    /**
+     * @param name the component part of a file name, e.g. "Data.db"
+     * @return the component of that name
+     */
+    public static Component parse(String name)
+    {
+        return new Component(Type.fromRepresentation(name), name);
+    }
+
     public final Type type;
     public final String name;
     public final int hashCode;
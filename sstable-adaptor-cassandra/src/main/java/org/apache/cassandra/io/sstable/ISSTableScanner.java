@@ -19,7 +19,10 @@
 
 package org.apache.cassandra.io.sstable;
 
+import java.util.Set;
+
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 
 /**
  * An ISSTableScanner is an abstraction allowing multiple SSTableScanners to be
@@ -32,4 +35,9 @@ public interface ISSTableScanner extends UnfilteredPartitionIterator
     public long getCurrentPosition();
     public long getBytesScanned();
     public String getBackingFiles();
+
+    /**
+     * @return the sstables read by this scanner, or an empty set if they are not known
+     */
+    public Set<SSTableReader> getBackingSSTables();
 }
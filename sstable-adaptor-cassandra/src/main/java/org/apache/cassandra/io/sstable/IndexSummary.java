@@ -363,12 +363,27 @@ public class IndexSummary extends WrappedSharedCloseable
             if (haveSamplingLevel)
                 in.skipBytes(8); // samplingLevel, fullSamplingSummarySize
 
-            in.skip(offsetCount * 4);
-            in.skip(offheapSize - offsetCount * 4);
+            // InputStream.skip may skip less than asked, notably on remote file systems
+            skipFully(in, offheapSize);
 
             DecoratedKey first = partitioner.decorateKey(ByteBufferUtil.readWithLength(in));
             DecoratedKey last = partitioner.decorateKey(ByteBufferUtil.readWithLength(in));
             return Pair.create(first, last);
         }
+
+        private static void skipFully(DataInputStream in, long n) throws IOException
+        {
+            while (n > 0)
+            {
+                long skipped = in.skip(n);
+                if (skipped <= 0)
+                {
+                    // skip gives up at the end of the stream, but may also do so before
+                    in.readByte();
+                    skipped = 1;
+                }
+                n -= skipped;
+            }
+        }
     }
 }
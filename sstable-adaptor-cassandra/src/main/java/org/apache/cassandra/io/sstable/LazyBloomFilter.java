@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.util.ChannelProxy;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.FilterFactory;
+import org.apache.cassandra.utils.IFilter;
+import org.apache.cassandra.utils.concurrent.WrappedSharedCloseable;
+
+/**
+ * The bloom filter of an sstable, deserialized off-heap from its Filter.db on the first point lookup rather than
+ * when the sstable is opened, so that readers that only scan never pay for it.
+ *
+ * A Filter.db that is missing or cannot be read degrades to a filter that considers every key present, as if
+ * bloom filters were disabled. The filter is read-only.
+ */
+public class LazyBloomFilter extends WrappedSharedCloseable implements IFilter
+{
+    private static final Logger logger = LoggerFactory.getLogger(LazyBloomFilter.class);
+
+    private final Loader loader;
+
+    public LazyBloomFilter(Descriptor descriptor)
+    {
+        this(new Loader(descriptor));
+    }
+
+    private LazyBloomFilter(Loader loader)
+    {
+        super(loader);
+        this.loader = loader;
+    }
+
+    private LazyBloomFilter(LazyBloomFilter copy)
+    {
+        super(copy);
+        this.loader = copy.loader;
+    }
+
+    public boolean isPresent(FilterKey key)
+    {
+        return loader.get().isPresent(key);
+    }
+
+    /**
+     * @return true if Filter.db has been read, successfully or not
+     */
+    public boolean isLoaded()
+    {
+        return loader.filter != null;
+    }
+
+    public void add(FilterKey key)
+    {
+        throw new UnsupportedOperationException("The bloom filter of " + loader.descriptor + " is read-only");
+    }
+
+    public void clear()
+    {
+    }
+
+    public long serializedSize()
+    {
+        IFilter filter = loader.filter;
+        return filter == null ? 0 : filter.serializedSize();
+    }
+
+    public long offHeapSize()
+    {
+        IFilter filter = loader.filter;
+        return filter == null ? 0 : filter.offHeapSize();
+    }
+
+    public IFilter sharedCopy()
+    {
+        return new LazyBloomFilter(this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LazyBloomFilter[" + loader.descriptor + ']';
+    }
+
+    /**
+     * Holds the filter once loaded, shared by all the copies and closed with the last of them.
+     */
+    private static final class Loader implements AutoCloseable
+    {
+        private final Descriptor descriptor;
+        private volatile IFilter filter;
+        private boolean closed = false;
+
+        Loader(Descriptor descriptor)
+        {
+            this.descriptor = descriptor;
+        }
+
+        IFilter get()
+        {
+            IFilter loaded = filter;
+            if (loaded != null)
+                return loaded;
+
+            synchronized (this)
+            {
+                if (filter == null)
+                    filter = closed ? FilterFactory.AlwaysPresent : load();
+                return filter;
+            }
+        }
+
+        @SuppressWarnings("resource")
+        private IFilter load()
+        {
+            String path = descriptor.filenameFor(Component.FILTER);
+            long start = System.nanoTime();
+            ChannelProxy proxy = ChannelProxy.newInstance(path, descriptor.getConfiguration());
+            if (proxy == null)
+            {
+                logger.warn("Cannot open bloom filter {}, every key will be looked up in the index", path);
+                return FilterFactory.AlwaysPresent;
+            }
+
+            DataInputStream stream = null;
+            try
+            {
+                stream = new DataInputStream(proxy.getInputStream());
+                IFilter loaded = FilterFactory.deserialize(stream, true, descriptor.version.hasOldBfHashOrder());
+                logger.info("Loaded bloom filter {} of {} bytes in {} ms", path, loaded.offHeapSize(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return loaded;
+            }
+            catch (IOException e)
+            {
+                logger.warn("Cannot deserialize bloom filter {}, every key will be looked up in the index: {}",
+                            path, e.getMessage());
+                return FilterFactory.AlwaysPresent;
+            }
+            finally
+            {
+                FileUtils.closeQuietly(stream);
+                proxy.close();
+            }
+        }
+
+        public synchronized void close()
+        {
+            closed = true;
+            if (filter != null)
+                filter.close();
+            filter = FilterFactory.AlwaysPresent;
+        }
+
+        @Override
+        public String toString()
+        {
+            return descriptor.filenameFor(Component.FILTER);
+        }
+    }
+}
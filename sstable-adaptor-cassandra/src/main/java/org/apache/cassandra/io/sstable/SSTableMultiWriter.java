@@ -36,6 +36,19 @@ public interface SSTableMultiWriter extends Transactional
      */
     boolean append(UnfilteredRowIterator partition);
 
+    /**
+     * @param source the sstable to copy
+     * @return whether the partitions of {@code source} can be copied as serialized by {@link #transfer(SSTableReader)}
+     */
+    boolean canTransfer(SSTableReader source);
+
+    /**
+     * Copies every partition of an sstable without deserializing it
+     * @param source the sstable to copy
+     * @return the number of partitions copied
+     */
+    long transfer(SSTableReader source);
+
     Collection<SSTableReader> finish(long repairedAt, long maxDataAge, boolean openResult);
     Collection<SSTableReader> finish(boolean openResult);
     Collection<SSTableReader> finished();
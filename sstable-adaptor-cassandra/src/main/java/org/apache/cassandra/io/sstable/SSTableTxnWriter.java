@@ -36,10 +36,12 @@ import java.util.Collection;
  */
 public class SSTableTxnWriter extends Transactional.AbstractTransactional implements Transactional
 {
+    private final LifecycleTransaction txn;
     private final SSTableMultiWriter writer;
 
-    public SSTableTxnWriter(SSTableMultiWriter writer)
+    public SSTableTxnWriter(LifecycleTransaction txn, SSTableMultiWriter writer)
     {
+        this.txn = txn;
         this.writer = writer;
     }
 
@@ -48,6 +50,16 @@ public class SSTableTxnWriter extends Transactional.AbstractTransactional implem
         return writer.append(iterator);
     }
 
+    public boolean canTransfer(SSTableReader source)
+    {
+        return writer.canTransfer(source);
+    }
+
+    public long transfer(SSTableReader source)
+    {
+        return writer.transfer(source);
+    }
+
     public String getFilename()
     {
         return writer.getFilename();
@@ -60,24 +72,24 @@ public class SSTableTxnWriter extends Transactional.AbstractTransactional implem
 
     protected Throwable doCommit(Throwable accumulate)
     {
-        return writer.commit(accumulate);
+        return writer.commit(txn.commit(accumulate));
     }
 
     protected Throwable doAbort(Throwable accumulate)
     {
-        return writer.abort(accumulate);
+        return txn.abort(writer.abort(accumulate));
     }
 
     protected void doPrepare()
     {
         writer.prepareToCommit();
-        //txn.prepareToCommit();
+        txn.prepareToCommit();
     }
 
     @Override
     protected Throwable doPostCleanup(Throwable accumulate)
     {
-        //txn.close();
+        txn.close();
         writer.close();
         return super.doPostCleanup(accumulate);
     }
@@ -101,7 +113,7 @@ public class SSTableTxnWriter extends Transactional.AbstractTransactional implem
         LifecycleTransaction txn = LifecycleTransaction.offline(OperationType.WRITE);
         MetadataCollector collector = new MetadataCollector(cfm.comparator).sstableLevel(sstableLevel);
         SSTableMultiWriter writer = SimpleSSTableMultiWriter.create(descriptor, keyCount, repairedAt, cfm, collector, header, txn);
-        return new SSTableTxnWriter(writer);
+        return new SSTableTxnWriter(txn, writer);
     }
 
     public static SSTableTxnWriter createWithNoLogging(CFMetaData cfm,
@@ -115,7 +127,7 @@ public class SSTableTxnWriter extends Transactional.AbstractTransactional implem
         LifecycleTransaction txn = LifecycleTransaction.offline(OperationType.CLEANUP);
         MetadataCollector collector = new MetadataCollector(cfm.comparator).sstableLevel(sstableLevel);
         SSTableMultiWriter writer = SimpleSSTableMultiWriter.create(descriptor, keyCount, repairedAt, cfm, collector, header, txn);
-        return new SSTableTxnWriter(writer);
+        return new SSTableTxnWriter(txn, writer);
     }
 
 }
@@ -48,6 +48,16 @@ public class SimpleSSTableMultiWriter implements SSTableMultiWriter
         return indexEntry != null;
     }
 
+    public boolean canTransfer(SSTableReader source)
+    {
+        return writer.canTransfer(source);
+    }
+
+    public long transfer(SSTableReader source)
+    {
+        return writer.transfer(source);
+    }
+
     public Collection<SSTableReader> finish(long repairedAt, long maxDataAge, boolean openResult)
     {
         return Collections.singleton(writer.finish(repairedAt, maxDataAge, openResult));
@@ -21,12 +21,17 @@ import com.clearspring.analytics.stream.cardinality.CardinalityMergeException;
 import com.clearspring.analytics.stream.cardinality.ICardinality;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.cassandra.cache.ChunkCache;
+import org.apache.cassandra.cache.KeyCache;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ClusteringComparator;
 import org.apache.cassandra.db.DataRange;
@@ -39,6 +44,7 @@ import org.apache.cassandra.db.filter.ColumnFilter;
 import org.apache.cassandra.db.rows.EncodingStats;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.compress.CompressionMetadata;
@@ -50,6 +56,7 @@ import org.apache.cassandra.io.sstable.Downsampling;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.IndexSummary;
 import org.apache.cassandra.io.sstable.IndexSummaryBuilder;
+import org.apache.cassandra.io.sstable.LazyBloomFilter;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.metadata.CompactionMetadata;
 import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
@@ -63,6 +70,7 @@ import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileHandle;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.HadoopFileUtils;
+import org.apache.cassandra.io.util.PrefetchingRebufferer;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.metrics.RestorableMeter;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -73,6 +81,7 @@ import org.apache.cassandra.utils.IFilter;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.concurrent.Ref;
 import org.apache.cassandra.utils.concurrent.SelfRefCounted;
+import org.apache.hadoop.conf.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -90,10 +99,17 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -176,6 +192,26 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
     }
     private static final RateLimiter meterSyncThrottle = RateLimiter.create(100.0);
 
+    /**
+     * Hadoop configuration key enabling the bloom filters of sstables, which let point lookups of missing keys skip
+     * reading the index. True by default, see {@link LazyBloomFilter}.
+     */
+    public static final String BLOOM_FILTER_ENABLED_KEY = "sstable.adaptor.bloomfilter.enabled";
+
+    private static final int COMPONENT_LOADER_THREADS = Integer.getInteger(Config.PROPERTY_PREFIX + "component_loader_threads", 32);
+
+    // opening sstables on remote file systems is latency bound, so their components are fetched by many threads at
+    // once. Threads are only started on demand and die off when idle.
+    private static final ThreadPoolExecutor componentLoader;
+    static
+    {
+        componentLoader = new ThreadPoolExecutor(COMPONENT_LOADER_THREADS, COMPONENT_LOADER_THREADS,
+                                                 60, TimeUnit.SECONDS,
+                                                 new LinkedBlockingQueue<>(),
+                                                 new NamedThreadFactory("ComponentLoader"));
+        componentLoader.allowCoreThreadTimeOut(true);
+    }
+
     public static final Comparator<SSTableReader> maxTimestampComparator = new Comparator<SSTableReader>()
     {
         public int compare(SSTableReader o1, SSTableReader o2)
@@ -254,6 +290,10 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
     protected final AtomicLong keyCacheHit = new AtomicLong(0);
     protected final AtomicLong keyCacheRequest = new AtomicLong(0);
 
+    // null when key caching is disabled for this reader
+    protected KeyCache keyCache;
+    protected byte[] keyCacheId;
+
     private final InstanceTidier tidy = new InstanceTidier(descriptor, metadata);
     private final Ref<SSTableReader> selfRef = new Ref<>(this, tidy);
 
@@ -261,8 +301,11 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
 
     private volatile double crcCheckChance;
 
+    /**
+     * Release the reference of the reader to itself, tidying it unless other references to it remain.
+     */
     public void close() {
-        tidy.tidy();
+        selfRef.release();
     }
 
     /**
@@ -357,11 +400,50 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return open(descriptor, componentsFor(descriptor), metadata, false, false); // do not track hotness
     }
 
+    /**
+     * Same as {@link #openNoValidation(Descriptor, CFMetaData)}, reusing the already deserialized content of
+     * Statistics.db, which must hold at least the VALIDATION, STATS and HEADER components.
+     */
+    public static SSTableReader openNoValidation(Descriptor descriptor,
+                                                 CFMetaData metadata,
+                                                 Map<MetadataType, MetadataComponent> sstableMetadata) throws IOException
+    {
+        return openNoValidation(descriptor, componentsFor(descriptor), metadata, sstableMetadata);
+    }
+
+    /**
+     * Same as {@link #openNoValidation(Descriptor, CFMetaData, Map)}, with the components of the sstable already
+     * known, e.g. from a listing of its directory, instead of read from its TOC. {@code sstableMetadata} may be
+     * null, in which case it is read from Statistics.db.
+     */
+    public static SSTableReader openNoValidation(Descriptor descriptor,
+                                                 Set<Component> components,
+                                                 CFMetaData metadata,
+                                                 Map<MetadataType, MetadataComponent> sstableMetadata) throws IOException
+    {
+        return open(descriptor, components, metadata, false, false, sstableMetadata);
+    }
+
     public static SSTableReader open(Descriptor descriptor,
                                       Set<Component> components,
                                       CFMetaData metadata,
                                       boolean validate,
                                       boolean trackHotness) throws IOException
+    {
+        return open(descriptor, components, metadata, validate, trackHotness, null);
+    }
+
+    /**
+     * Open an sstable. The components it is made of are fetched concurrently, see {@link ComponentPrefetch}.
+     *
+     * @param sstableMetadata the content of Statistics.db if the caller has already deserialized it, or null
+     */
+    public static SSTableReader open(Descriptor descriptor,
+                                      Set<Component> components,
+                                      CFMetaData metadata,
+                                      boolean validate,
+                                      boolean trackHotness,
+                                      Map<MetadataType, MetadataComponent> sstableMetadata) throws IOException
     {
         // Minimum components without which we can't do anything
         assert components.contains(Component.DATA) : "Data component is missing for sstable " + descriptor;
@@ -374,9 +456,50 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         assert !descriptor.version.storeRows() || components.contains(Component.STATS) : "Stats component is missing " +
                 "for sstable " + descriptor;
 
-        EnumSet<MetadataType> types = EnumSet.of(MetadataType.VALIDATION, MetadataType.STATS, MetadataType.HEADER);
-        Map<MetadataType, MetadataComponent> sstableMetadata = descriptor.getMetadataSerializer()
-                                                                         .deserialize(descriptor, types);
+        ComponentPrefetch prefetch = new ComponentPrefetch(descriptor, components, metadata);
+        SSTableReader sstable;
+        try
+        {
+            if (sstableMetadata == null)
+            {
+                EnumSet<MetadataType> types = EnumSet.of(MetadataType.VALIDATION, MetadataType.STATS, MetadataType.HEADER);
+                sstableMetadata = descriptor.getMetadataSerializer().deserialize(descriptor, types);
+            }
+            sstable = open(descriptor, components, metadata, sstableMetadata, prefetch);
+        }
+        catch (Throwable t)
+        {
+            prefetch.discard();
+            throw t;
+        }
+
+        try
+        {
+            // load index and filter
+            long start = System.nanoTime();
+            sstable.load(prefetch);
+            logger.info("INDEX LOAD TIME for {}: {} ms.", descriptor,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            sstable.setup(trackHotness);
+            if (validate)
+                sstable.validate();
+
+            return sstable;
+        }
+        catch (Throwable t)
+        {
+            sstable.selfRef().release();
+            throw t;
+        }
+    }
+
+    private static SSTableReader open(Descriptor descriptor,
+                                      Set<Component> components,
+                                      CFMetaData metadata,
+                                      Map<MetadataType, MetadataComponent> sstableMetadata,
+                                      ComponentPrefetch prefetch) throws IOException
+    {
         ValidationMetadata validationMetadata = (ValidationMetadata) sstableMetadata.get(MetadataType.VALIDATION);
         StatsMetadata statsMetadata = (StatsMetadata) sstableMetadata.get(MetadataType.STATS);
         SerializationHeader.Component header = (SerializationHeader.Component) sstableMetadata.get(MetadataType.HEADER);
@@ -398,38 +521,18 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                                   " so you will need to edit that to match your old partitioner if upgrading.");
         }
 
-        long fileLength = HadoopFileUtils.fileSize(descriptor.filenameFor(Component.DATA),
-                                                   descriptor.getConfiguration());
+        long fileLength = ComponentPrefetch.await(prefetch.dataLength);
         logger.info("Opening {} {})",
                          descriptor.filenameFor(Component.DATA),
                          FBUtilities.prettyPrintMemory(fileLength));
 
-        SSTableReader sstable = internalOpen(descriptor,
-                                             components,
-                                             metadata,
-                                             System.currentTimeMillis(),
-                                             statsMetadata,
-                                             OpenReason.NORMAL,
-                                             header == null ? null : header.toHeader(metadata));
-        try
-        {
-            // load index and filter
-            long start = System.nanoTime();
-            sstable.load(validationMetadata);
-            logger.info("INDEX LOAD TIME for {}: {} ms.", descriptor,
-                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
-
-            sstable.setup(trackHotness);
-            if (validate)
-                sstable.validate();
-
-            return sstable;
-        }
-        catch (Throwable t)
-        {
-            sstable.selfRef().release();
-            throw t;
-        }
+        return internalOpen(descriptor,
+                            components,
+                            metadata,
+                            System.currentTimeMillis(),
+                            statsMetadata,
+                            OpenReason.NORMAL,
+                            header == null ? null : header.toHeader(metadata));
     }
 
     /**
@@ -522,11 +625,24 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return dfile.path();
     }
 
-    private void load(ValidationMetadata validation) throws IOException
+    private void load(ComponentPrefetch prefetch) throws IOException
     {
-        // bf is disabled.
-        load(false, false);
-        bf = FilterFactory.AlwaysPresent;
+        load(false, false, prefetch);
+        // Filter.db is only read by the first point lookup, scans never need it
+        bf = components.contains(Component.FILTER)
+             && descriptor.getConfiguration().getBoolean(BLOOM_FILTER_ENABLED_KEY, true)
+             ? new LazyBloomFilter(descriptor)
+             : FilterFactory.AlwaysPresent;
+
+        // the cached form of index entries only exists since 3.0
+        if (descriptor.version.storeRows())
+        {
+            keyCache = KeyCache.instance(descriptor.getConfiguration());
+            // the length and modification time keep the entries of an sstable rewritten at the same path from being served
+            if (keyCache != null)
+                keyCacheId = KeyCache.sstableId(descriptor.baseFilename() + '-' + onDiskLength() + '-'
+                                                + dfile.channel.modificationTime());
+        }
     }
 
     /**
@@ -534,14 +650,42 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
      * @param saveSummaryIfCreated for bulk loading purposes, if the summary was absent and needed to be built, you can
      *                             avoid persisting it to disk by setting this to false
      */
-    private void load(boolean recreateBloomFilter, boolean saveSummaryIfCreated) throws IOException
-    {
-        try(FileHandle.Builder ibuilder = new FileHandle.Builder(descriptor.filenameFor(Component.PRIMARY_INDEX));
-                                                     //.withChunkCache(ChunkCache.instance);
-            FileHandle.Builder dbuilder = new FileHandle.Builder(descriptor.filenameFor(Component.DATA)).compressed(compression))
+    private void load(boolean recreateBloomFilter, boolean saveSummaryIfCreated, ComponentPrefetch prefetch) throws IOException
+    {
+        ChunkCache chunkCache = ChunkCache.instance(descriptor.getConfiguration());
+        Config.DiskAccessMode accessMode = FileHandle.diskAccessMode(descriptor.getConfiguration());
+        CompressionMetadata compressionMetadata = null;
+        Future<FileHandle> dataFile = null;
+        boolean summaryTaken = false;
+        try(FileHandle.Builder ibuilder = new FileHandle.Builder(descriptor.filenameFor(Component.PRIMARY_INDEX))
+                                                     .withChunkCache(chunkCache);
+            FileHandle.Builder dbuilder = new FileHandle.Builder(descriptor.filenameFor(Component.DATA)).compressed(compression)
+                                                     .withChunkCache(chunkCache))
 
         {
-            boolean summaryLoaded = loadSummary();
+            compressionMetadata = ComponentPrefetch.await(prefetch.compression);
+            int dataBufferSize = optimizationStrategy.bufferSize(sstableMetadata.estimatedPartitionSize
+                                                     .percentile(DatabaseDescriptor
+                                                                 .getDiskOptimizationEstimatePercentile()));
+            logger.info("dataBufferSize: " + dataBufferSize);
+            dbuilder.withCompressionMetadata(compressionMetadata)
+                    .bufferSize(dataBufferSize)
+                    .mmapped(accessMode == Config.DiskAccessMode.mmap)
+                    .withReadAhead(descriptor.getConfiguration()
+                                             .getInt(PrefetchingRebufferer.READ_AHEAD_CHUNKS_KEY, 0))
+                    .withConfiguration(descriptor.getConfiguration());
+            // the data file does not depend on the summary, open it while the summary is loaded and the index opened
+            dataFile = componentLoader.submit(() -> dbuilder.complete());
+
+            summaryTaken = true;
+            ComponentPrefetch.Summary summary = ComponentPrefetch.await(prefetch.summary);
+            boolean summaryLoaded = summary != null;
+            if (summaryLoaded)
+            {
+                indexSummary = summary.indexSummary;
+                first = summary.first;
+                last = summary.last;
+            }
             boolean builtSummary = false;
             if (recreateBloomFilter || !summaryLoaded)
             {
@@ -549,32 +693,45 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                 builtSummary = true;
             }
 
-            int dataBufferSize = optimizationStrategy.bufferSize(sstableMetadata.estimatedPartitionSize
-                                                     .percentile(DatabaseDescriptor
-                                                                 .getDiskOptimizationEstimatePercentile()));
-            logger.info("dataBufferSize: " + dataBufferSize);
             logger.info("components: " + components);
             if (components.contains(Component.PRIMARY_INDEX))
             {
                 logger.info("loading ifile");
-                long indexFileLength = HadoopFileUtils.fileSize(descriptor.filenameFor(Component.PRIMARY_INDEX),
-                                                                descriptor.getConfiguration());
+                long indexFileLength = ComponentPrefetch.await(prefetch.indexLength);
                 int indexBufferSize = optimizationStrategy.bufferSize(indexFileLength / indexSummary.size());
                 ifile = ibuilder.bufferSize(indexBufferSize)
+                                .mmapped(accessMode == Config.DiskAccessMode.mmap
+                                         || accessMode == Config.DiskAccessMode.mmap_index_only)
                                 .withConfiguration(descriptor.getConfiguration())
                                  .complete();
                 //ifile = ibuilder.withOptimizationStrategy(optimizationStrategy).withIndexSummarySize(indexSummary.size()).complete();
             }
 
-            dfile = dbuilder.bufferSize(dataBufferSize)
-                            .withConfiguration(descriptor.getConfiguration())
-                            .complete();
+            dfile = ComponentPrefetch.await(dataFile);
 
             if (saveSummaryIfCreated && builtSummary)
                 saveSummary();
         }
         catch (Throwable t)
         { // Because the tidier has not been set-up yet in SSTableReader.open(), we must release the files in case of error
+            if (dataFile != null && dfile == null)
+            {
+                try
+                {
+                    dfile = ComponentPrefetch.await(dataFile);
+                }
+                catch (Throwable ignored)
+                {
+                    // the data file failed too, and released its own resources but the compression metadata
+                }
+            }
+
+            if (dfile == null && compressionMetadata != null)
+                compressionMetadata.close();
+
+            if (!summaryTaken)
+                prefetch.discardSummary();
+
             if (ifile != null)
             {
                 ifile.close();
@@ -662,27 +819,49 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
      *
      * @return true if index summary is loaded successfully from Summary.db file.
      */
-    @SuppressWarnings("resource")
     public boolean loadSummary()
+    {
+        ComponentPrefetch.Summary summary = readSummary(descriptor, metadata);
+        if (summary == null)
+            return false;
+
+        indexSummary = summary.indexSummary;
+        first = summary.first;
+        last = summary.last;
+        return true;
+    }
+
+    /**
+     * Deserialize the index summary and the first and last keys of an sstable from its Summary.db file.
+     *
+     * @return null if Summary.db does not exist or cannot be deserialized, in which case the summary must be built
+     */
+    @SuppressWarnings("resource")
+    private static ComponentPrefetch.Summary readSummary(Descriptor descriptor, CFMetaData metadata)
     {
         //TODO: Minh fix this!
         String indexSummaryFilename = descriptor.filenameFor(Component.SUMMARY);
 
         ChannelProxy proxy = ChannelProxy.newInstance(indexSummaryFilename, descriptor.getConfiguration());
+        if (proxy == null)
+            return null;
+
         DataInputStream iStream = null;
+        IndexSummary indexSummary = null;
         try {
 
             if (!proxy.exists()) {
-                return false;
+                return null;
             }
 
             iStream = new DataInputStream(proxy.getInputStream());
 
             indexSummary = IndexSummary.serializer.deserialize(
-                    iStream, getPartitioner(), descriptor.version.hasSamplingLevel(),
+                    iStream, metadata.partitioner, descriptor.version.hasSamplingLevel(),
                     metadata.params.minIndexInterval, metadata.params.maxIndexInterval);
-            first = decorateKey(ByteBufferUtil.readWithLength(iStream));
-            last = decorateKey(ByteBufferUtil.readWithLength(iStream));
+            DecoratedKey first = metadata.partitioner.decorateKey(ByteBufferUtil.readWithLength(iStream));
+            DecoratedKey last = metadata.partitioner.decorateKey(ByteBufferUtil.readWithLength(iStream));
+            return new ComponentPrefetch.Summary(indexSummary, first, last);
         }
         catch (IOException e)
         {
@@ -694,15 +873,137 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
             // delete it and fall back to creating a new summary
             //if (summariesFile != null)
             //   FileUtils.deleteWithConfirm(summariesFile);
-            return false;
+            return null;
         }
         finally
         {
             FileUtils.closeQuietly(iStream);
             proxy.close();
         }
+    }
 
-        return true;
+    /**
+     * Read the first and last keys of an sstable from its Summary.db file, skipping over the summary itself, so that
+     * the key range of an sstable can be known without opening it.
+     *
+     * @return the first and last keys, or null if Summary.db does not exist or cannot be read
+     */
+    public static Pair<DecoratedKey, DecoratedKey> readFirstAndLastKey(Descriptor descriptor, IPartitioner partitioner)
+    {
+        String indexSummaryFilename = descriptor.filenameFor(Component.SUMMARY);
+        ChannelProxy proxy = ChannelProxy.newInstance(indexSummaryFilename, descriptor.getConfiguration());
+        if (proxy == null)
+            return null;
+
+        DataInputStream iStream = null;
+        try
+        {
+            if (!proxy.exists())
+                return null;
+
+            iStream = new DataInputStream(proxy.getInputStream());
+            return IndexSummary.serializer.deserializeFirstLastKey(iStream, partitioner, descriptor.version.hasSamplingLevel());
+        }
+        catch (IOException e)
+        {
+            logger.trace("Cannot read first and last keys from SSTable Summary File {}: {}", indexSummaryFilename, e.getMessage());
+            return null;
+        }
+        finally
+        {
+            FileUtils.closeQuietly(iStream);
+            proxy.close();
+        }
+    }
+
+    /**
+     * The components of an sstable that do not depend on each other, fetched concurrently as soon as it starts
+     * being opened, so that opening costs about one round trip to the file system instead of one per component.
+     */
+    private static final class ComponentPrefetch
+    {
+        final CompletableFuture<Long> dataLength;
+        // null for uncompressed sstables
+        final CompletableFuture<CompressionMetadata> compression;
+        final Future<Long> indexLength;
+        // null if Summary.db is missing or unusable
+        final CompletableFuture<Summary> summary;
+
+        ComponentPrefetch(Descriptor descriptor, Set<Component> components, CFMetaData metadata)
+        {
+            Configuration conf = descriptor.getConfiguration();
+            String dataPath = descriptor.filenameFor(Component.DATA);
+            dataLength = fetch(() -> HadoopFileUtils.fileSize(dataPath, conf));
+            compression = dataLength.thenApplyAsync(length -> components.contains(Component.COMPRESSION_INFO)
+                                                              ? CompressionMetadata.create(dataPath, length, conf)
+                                                              : null,
+                                                    componentLoader);
+            indexLength = fetch(() -> components.contains(Component.PRIMARY_INDEX)
+                                      ? HadoopFileUtils.fileSize(descriptor.filenameFor(Component.PRIMARY_INDEX), conf)
+                                      : -1L);
+            summary = fetch(() -> readSummary(descriptor, metadata));
+        }
+
+        /**
+         * Release what has been or will be fetched, when the sstable cannot be opened.
+         */
+        void discard()
+        {
+            compression.thenAccept(metadata -> {
+                if (metadata != null)
+                    metadata.close();
+            });
+            discardSummary();
+        }
+
+        void discardSummary()
+        {
+            summary.thenAccept(loaded -> {
+                if (loaded != null)
+                    loaded.indexSummary.close();
+            });
+        }
+
+        private static <T> CompletableFuture<T> fetch(Callable<T> task)
+        {
+            return CompletableFuture.supplyAsync(() -> {
+                try
+                {
+                    return task.call();
+                }
+                catch (Exception e)
+                {
+                    throw new CompletionException(e);
+                }
+            }, componentLoader);
+        }
+
+        static <T> T await(Future<T> future) throws IOException
+        {
+            try
+            {
+                return Uninterruptibles.getUninterruptibly(future);
+            }
+            catch (ExecutionException e)
+            {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw new IOException(e.getCause());
+            }
+        }
+
+        static final class Summary
+        {
+            final IndexSummary indexSummary;
+            final DecoratedKey first;
+            final DecoratedKey last;
+
+            Summary(IndexSummary indexSummary, DecoratedKey first, DecoratedKey last)
+            {
+                this.indexSummary = indexSummary;
+                this.first = first;
+                this.last = last;
+            }
+        }
     }
 
     /**
@@ -1165,6 +1466,15 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
      */
     protected abstract RowIndexEntry getPosition(PartitionPosition key, Operator op, boolean updateCacheAndStats, boolean permitMatchPastLast);
 
+    /**
+     * Look up the index entries of many keys at once, walking the index summary and the index once for all of them
+     * so that each page of the index is read once, however many of the keys fall in it.
+     *
+     * @param keys the keys to look up, sorted and without duplicates
+     * @return the index entry of each key, in the same order, or null for the keys that are not present
+     */
+    public abstract List<RowIndexEntry> getPositions(List<DecoratedKey> keys);
+
     public abstract UnfilteredRowIterator iterator(DecoratedKey key, Slices slices, ColumnFilter selectedColumns, boolean reversed, boolean isForThrift);
     public abstract UnfilteredRowIterator iterator(FileDataInput file, DecoratedKey key, RowIndexEntry indexEntry, Slices slices, ColumnFilter selectedColumns, boolean reversed, boolean isForThrift);
 
@@ -1333,6 +1643,31 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
      */
     public abstract ISSTableScanner getScanner(Collection<Range<Token>> ranges, RateLimiter limiter);
 
+    /**
+     * Direct I/O SSTableScanner over a defined collection of ranges of tokens, reading only some of the columns.
+     * The cells of the other columns are skipped while deserializing the rows.
+     *
+     * @param columns the columns to read
+     * @param ranges the range of keys to cover, or null for the full sstable
+     * @return A Scanner for seeking over the rows of the SSTable.
+     */
+    public ISSTableScanner getScanner(ColumnFilter columns, Collection<Range<Token>> ranges, RateLimiter limiter)
+    {
+        return getScanner(columns, Slices.ALL, ranges, limiter);
+    }
+
+    /**
+     * Direct I/O SSTableScanner over a defined collection of ranges of tokens, reading only some of the columns
+     * and rows of each partition. The row index of wide partitions is used to seek to the first block of each
+     * slice, rather than deserializing the partition from its start.
+     *
+     * @param columns the columns to read
+     * @param slices the rows to read in each partition
+     * @param ranges the range of keys to cover, or null for the full sstable
+     * @return A Scanner for seeking over the rows of the SSTable.
+     */
+    public abstract ISSTableScanner getScanner(ColumnFilter columns, Slices slices, Collection<Range<Token>> ranges, RateLimiter limiter);
+
     /**
      * Direct I/O SSTableScanner over an iterator of bounds.
      *
@@ -1353,6 +1688,16 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return dfile.createReader(position);
     }
 
+    /**
+     * @param positions positions of the data file that will be read, in increasing order
+     * @return a reader of the data file positioned at the first of them, that reads the chunks holding the others
+     * ahead, see {@link FileHandle#createPrefetchingReader(long[])}
+     */
+    public FileDataInput getFileDataInput(long[] positions)
+    {
+        return dfile.createPrefetchingReader(positions);
+    }
+
     /**
      * Tests if the sstable contains data newer than the given age param (in localhost currentMilli time).
      * This works in conjunction with maxDataAge which is an upper bound on the create of data in this sstable.
@@ -1593,6 +1938,33 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return new File(descriptor.filenameFor(component)).lastModified();
     }
 
+    /**
+     * @return the cached index entry of a partition, or null if it is not cached or key caching is disabled
+     */
+    public RowIndexEntry getCachedPosition(DecoratedKey key, boolean updateStats)
+    {
+        if (keyCache == null)
+            return null;
+
+        RowIndexEntry cachedEntry = keyCache.get(new KeyCache.Key(keyCacheId, key.getKey()), rowIndexEntrySerializer);
+        if (updateStats)
+        {
+            keyCacheRequest.incrementAndGet();
+            if (cachedEntry != null)
+            {
+                keyCacheHit.incrementAndGet();
+                bloomFilterTracker.addTruePositive();
+            }
+        }
+        return cachedEntry;
+    }
+
+    protected void cacheKey(DecoratedKey key, RowIndexEntry info)
+    {
+        if (keyCache != null)
+            keyCache.put(new KeyCache.Key(keyCacheId, key.getKey()), info, rowIndexEntrySerializer);
+    }
+
     /**
      * @return Number of key cache hit
      */
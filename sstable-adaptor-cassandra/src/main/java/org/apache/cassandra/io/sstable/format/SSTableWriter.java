@@ -144,6 +144,24 @@ public abstract class SSTableWriter extends SSTable implements Transactional
      */
     public abstract RowIndexEntry append(UnfilteredRowIterator iterator);
 
+    /**
+     * @return whether the partitions of {@code source} can be copied to this writer as serialized, that is
+     * whether this writer uses the same serialization header and on-disk row format as {@code source}.
+     */
+    public abstract boolean canTransfer(SSTableReader source);
+
+    /**
+     * Copies every partition of {@code source} to this writer without deserializing it, rebuilding only the
+     * index, summary, bloom filter and statistics. Must be called on an empty writer for which
+     * {@link #canTransfer(SSTableReader)} holds, and nothing can be appended after it.
+     *
+     * @param source the sstable to copy
+     * @return the number of partitions copied
+     *
+     * @throws FSWriteError if a write to the dataFile fails
+     */
+    public abstract long transfer(SSTableReader source);
+
     public abstract long getFilePointer();
 
     public abstract long getOnDiskFilePointer();
@@ -38,8 +38,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -113,6 +116,23 @@ public class BigTableReader extends SSTableReader
             return getScanner(limiter);
     }
 
+    /**
+     * Direct I/O SSTableScanner over a defined collection of ranges of tokens, reading only some of the columns
+     * and rows of each partition.
+     *
+     * @param columns the columns to read
+     * @param slices the rows to read in each partition
+     * @param ranges the range of keys to cover, or null for the full sstable
+     * @return A Scanner for seeking over the rows of the SSTable.
+     */
+    public ISSTableScanner getScanner(ColumnFilter columns, Slices slices, Collection<Range<Token>> ranges, RateLimiter limiter)
+    {
+        if (ranges != null)
+            return BigTableScanner.getScanner(this, columns, slices, ranges, limiter);
+        else
+            return BigTableScanner.getScanner(this, columns, slices, limiter);
+    }
+
 
     @SuppressWarnings("resource") // caller to close
     @Override
@@ -167,6 +187,14 @@ public class BigTableReader extends SSTableReader
             return null;
         }
 
+        if ((op == Operator.EQ || op == Operator.GE) && (key instanceof DecoratedKey))
+        {
+            DecoratedKey decoratedKey = (DecoratedKey) key;
+            RowIndexEntry cachedPosition = getCachedPosition(decoratedKey, updateCacheAndStats);
+            if (cachedPosition != null)
+                return cachedPosition;
+        }
+
         int binarySearchResult = indexSummary.binarySearch(key);
         long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
         int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
@@ -239,7 +267,7 @@ public class BigTableReader extends SSTableReader
                         }
 
                         // store exact match for the key
-                        //cacheKey(decoratedKey, indexEntry);
+                        cacheKey(decoratedKey, indexEntry);
                     }
                     if (op == Operator.EQ && updateCacheAndStats)
                         bloomFilterTracker.addTruePositive();
@@ -262,5 +290,90 @@ public class BigTableReader extends SSTableReader
         return null;
     }
 
+    public List<RowIndexEntry> getPositions(List<DecoratedKey> keys)
+    {
+        List<RowIndexEntry> entries = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        if (ifile == null || keys.isEmpty())
+            return entries;
 
+        String path = null;
+        try (FileDataInput in = ifile.createReader())
+        {
+            path = in.getPath();
+            int sampledIndex = -1;
+            // the last key read from the index, whose entry has not been consumed yet
+            DecoratedKey pending = null;
+            boolean exhausted = false;
+            for (int k = 0; k < keys.size(); k++)
+            {
+                DecoratedKey key = keys.get(k);
+                assert k == 0 || keys.get(k - 1).compareTo(key) < 0 : "keys must be sorted and distinct";
+                if (key.compareTo(first) < 0 || key.compareTo(last) > 0 || !bf.isPresent(key))
+                    continue;
+
+                RowIndexEntry cachedPosition = getCachedPosition(key, true);
+                if (cachedPosition != null)
+                {
+                    entries.set(k, cachedPosition);
+                    continue;
+                }
+
+                // the index is scanned forward from one key to the next, skipping ahead to the sampled position of
+                // a key when it is beyond the current one
+                int binarySearchResult = indexSummary.binarySearch(key);
+                int keySampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
+                if (keySampledIndex != sampledIndex)
+                {
+                    long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
+                    if (sampledPosition > in.getFilePointer())
+                    {
+                        in.seek(sampledPosition);
+                        pending = null;
+                    }
+                    sampledIndex = keySampledIndex;
+                }
+
+                while (!exhausted)
+                {
+                    if (pending == null)
+                    {
+                        if (in.isEOF())
+                        {
+                            exhausted = true;
+                            break;
+                        }
+                        pending = decorateKey(ByteBufferUtil.readWithShortLength(in));
+                    }
+
+                    int comparison = pending.compareTo(key);
+                    if (comparison < 0)
+                    {
+                        RowIndexEntry.Serializer.skip(in, descriptor.version);
+                        pending = null;
+                    }
+                    else
+                    {
+                        if (comparison == 0)
+                        {
+                            entries.set(k, rowIndexEntrySerializer.deserialize(in, in.getFilePointer()));
+                            cacheKey(key, entries.get(k));
+                            pending = null;
+                        }
+                        break;
+                    }
+                }
+
+                if (entries.get(k) != null)
+                    bloomFilterTracker.addTruePositive();
+                else
+                    bloomFilterTracker.addFalsePositive();
+            }
+        }
+        catch (IOException e)
+        {
+            markSuspect();
+            throw new CorruptSSTableException(e, path);
+        }
+        return entries;
+    }
 }
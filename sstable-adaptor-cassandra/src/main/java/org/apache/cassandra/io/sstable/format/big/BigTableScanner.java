@@ -59,6 +59,7 @@ public class BigTableScanner implements ISSTableScanner
     private AbstractBounds<PartitionPosition> currentRange;
 
     private final ColumnFilter columns;
+    private final Slices slices;
     private final DataRange dataRange;
     private final RowIndexEntry.IndexSerializer rowIndexEntrySerializer;
     private final boolean isForThrift;
@@ -70,30 +71,42 @@ public class BigTableScanner implements ISSTableScanner
     // Full scan of the sstables
     public static ISSTableScanner getScanner(SSTableReader sstable, RateLimiter limiter)
     {
-        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata), null, limiter, false, Iterators.singletonIterator(fullRange(sstable)));
+        return getScanner(sstable, ColumnFilter.all(sstable.metadata), Slices.ALL, limiter);
+    }
+
+    // Full scan of the sstables, reading only some of the columns and rows of each partition
+    public static ISSTableScanner getScanner(SSTableReader sstable, ColumnFilter columns, Slices slices, RateLimiter limiter)
+    {
+        return new BigTableScanner(sstable, columns, slices, null, limiter, false, Iterators.singletonIterator(fullRange(sstable)));
     }
 
     public static ISSTableScanner getScanner(SSTableReader sstable, ColumnFilter columns, DataRange dataRange, RateLimiter limiter, boolean isForThrift)
     {
-        return new BigTableScanner(sstable, columns, dataRange, limiter, isForThrift, makeBounds(sstable, dataRange).iterator());
+        return new BigTableScanner(sstable, columns, null, dataRange, limiter, isForThrift, makeBounds(sstable, dataRange).iterator());
     }
 
     public static ISSTableScanner getScanner(SSTableReader sstable, Collection<Range<Token>> tokenRanges, RateLimiter limiter)
+    {
+        return getScanner(sstable, ColumnFilter.all(sstable.metadata), Slices.ALL, tokenRanges, limiter);
+    }
+
+    public static ISSTableScanner getScanner(SSTableReader sstable, ColumnFilter columns, Slices slices, Collection<Range<Token>> tokenRanges, RateLimiter limiter)
     {
         // We want to avoid allocating a SSTableScanner if the range don't overlap the sstable (#5249)
         List<Pair<Long, Long>> positions = sstable.getPositionsForRanges(tokenRanges);
         if (positions.isEmpty())
             return new EmptySSTableScanner(sstable);
 
-        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata), null, limiter, false, makeBounds(sstable, tokenRanges).iterator());
+        return new BigTableScanner(sstable, columns, slices, null, limiter, false, makeBounds(sstable, tokenRanges).iterator());
     }
 
     public static ISSTableScanner getScanner(SSTableReader sstable, Iterator<AbstractBounds<PartitionPosition>> rangeIterator)
     {
-        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata), null, null, false, rangeIterator);
+        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata), Slices.ALL, null, null, false, rangeIterator);
     }
 
-    private BigTableScanner(SSTableReader sstable, ColumnFilter columns, DataRange dataRange, RateLimiter limiter, boolean isForThrift, Iterator<AbstractBounds<PartitionPosition>> rangeIterator)
+    // slices are only used without a data range, which has its own clustering filter
+    private BigTableScanner(SSTableReader sstable, ColumnFilter columns, Slices slices, DataRange dataRange, RateLimiter limiter, boolean isForThrift, Iterator<AbstractBounds<PartitionPosition>> rangeIterator)
     {
         assert sstable != null;
 
@@ -101,6 +114,7 @@ public class BigTableScanner implements ISSTableScanner
         this.ifile = sstable.openIndexReader();
         this.sstable = sstable;
         this.columns = columns;
+        this.slices = slices;
         this.dataRange = dataRange;
         this.rowIndexEntrySerializer = sstable.descriptor.version.getSSTableFormat().getIndexSerializer(sstable.metadata,
                                                                                                         sstable.descriptor.version,
@@ -240,6 +254,11 @@ public class BigTableScanner implements ISSTableScanner
         return sstable.toString();
     }
 
+    public Set<SSTableReader> getBackingSSTables()
+    {
+        return Collections.singleton(sstable);
+    }
+
     public boolean isForThrift()
     {
         return isForThrift;
@@ -347,13 +366,20 @@ public class BigTableScanner implements ISSTableScanner
 
                         try
                         {
-                            if (dataRange == null)
+                            if (dataRange == null && slices == Slices.ALL && columns.fetchesAllColumns() && columns.allFetchedColumnsAreQueried())
                             {
                                 dfile.seek(currentEntry.position);
                                 startScan = dfile.getFilePointer();
                                 ByteBufferUtil.skipShortLength(dfile); // key
                                 return SSTableIdentityIterator.create(sstable, dfile, partitionKey());
                             }
+                            else if (dataRange == null)
+                            {
+                                // the cells of the columns left out are skipped by the deserializer, never built, and the
+                                // row index of wide partitions is searched for the first block of each slice
+                                startScan = currentEntry.position;
+                                return sstable.iterator(dfile, partitionKey(), currentEntry, slices, columns, false, isForThrift);
+                            }
                             else
                             {
                                 startScan = dfile.getFilePointer();
@@ -422,6 +448,11 @@ public class BigTableScanner implements ISSTableScanner
             return sstable.getFilename();
         }
 
+        public Set<SSTableReader> getBackingSSTables()
+        {
+            return Collections.singleton(sstable);
+        }
+
         public boolean isForThrift()
         {
             return false;
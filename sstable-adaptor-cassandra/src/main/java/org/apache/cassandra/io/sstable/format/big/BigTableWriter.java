@@ -42,6 +42,7 @@ import org.apache.cassandra.io.sstable.IndexSummaryBuilder;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
@@ -51,6 +52,7 @@ import org.apache.cassandra.io.util.DataOutputStreamPlus;
 import org.apache.cassandra.io.util.DataPosition;
 import org.apache.cassandra.io.util.FileHandle;
 import org.apache.cassandra.io.util.HadoopFileUtils;
+import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.io.util.SequentialWriter;
 import org.apache.cassandra.io.util.SequentialWriterOption;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -68,6 +70,7 @@ import java.util.Map;
 public class BigTableWriter extends SSTableWriter
 {
     private static final Logger logger = LoggerFactory.getLogger(BigTableWriter.class);
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
 
     private final ColumnIndex columnIndexWriter;
     private final IndexWriter iwriter;
@@ -138,6 +141,12 @@ public class BigTableWriter extends SSTableWriter
     }
 
     private void afterAppend(DecoratedKey decoratedKey, long dataEnd, RowIndexEntry index, ByteBuffer indexInfo) throws IOException
+    {
+        markAppended(decoratedKey, dataEnd);
+        iwriter.append(decoratedKey, index, dataEnd, indexInfo);
+    }
+
+    private void markAppended(DecoratedKey decoratedKey, long dataEnd)
     {
         metadataCollector.addKey(decoratedKey.getKey());
         lastWrittenKey = decoratedKey;
@@ -147,7 +156,6 @@ public class BigTableWriter extends SSTableWriter
 
         if (logger.isTraceEnabled())
             logger.trace("wrote {} at {}", decoratedKey, dataEnd);
-        iwriter.append(decoratedKey, index, dataEnd, indexInfo);
     }
 
     /**
@@ -208,6 +216,90 @@ public class BigTableWriter extends SSTableWriter
         }
     }
 
+    public boolean canTransfer(SSTableReader source)
+    {
+        // rows are serialized relative to the header (column subsets, deltas from the minimum timestamp, TTL and
+        // deletion time), and promoted indexes hold offsets relative to the start of their partition, so both can
+        // be copied as long as the header and the row format are the same
+        return source.descriptor.version.storeRows()
+               && descriptor.version.storeRows()
+               && source.header != null
+               && observers.isEmpty()
+               && source.getPartitioner().getClass().equals(getPartitioner().getClass())
+               && header.toComponent().equals(source.header.toComponent());
+    }
+
+    public long transfer(SSTableReader source)
+    {
+        assert canTransfer(source) : "Cannot copy the partitions of " + source + " as serialized";
+        assert lastWrittenKey == null : "Partitions can only be copied to an empty writer";
+
+        // per-cell statistics cannot be collected without deserializing the partitions, but they are the same
+        // as those of the whole source sstable
+        metadataCollector.update(source.getSSTableMetadata());
+
+        Version sourceVersion = source.descriptor.version;
+        byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+        long partitions = 0;
+        try (RandomAccessReader index = source.openIndexReader();
+             RandomAccessReader data = source.openDataReader())
+        {
+            if (index.isEOF())
+                return 0;
+
+            // a partition ends where the next one starts, so the index is read one entry ahead
+            ByteBuffer key = ByteBufferUtil.readWithShortLength(index);
+            long start = RowIndexEntry.Serializer.readPosition(index, sourceVersion);
+            ByteBuffer promotedIndex = ByteBufferUtil.read(index, (int) index.readUnsignedVInt());
+            while (key != null)
+            {
+                ByteBuffer nextKey = null;
+                long end = source.uncompressedLength();
+                ByteBuffer nextPromotedIndex = null;
+                if (!index.isEOF())
+                {
+                    nextKey = ByteBufferUtil.readWithShortLength(index);
+                    end = RowIndexEntry.Serializer.readPosition(index, sourceVersion);
+                    nextPromotedIndex = ByteBufferUtil.read(index, (int) index.readUnsignedVInt());
+                }
+
+                appendSerialized(source.decorateKey(key), data, start, end, promotedIndex, buffer);
+                partitions++;
+
+                key = nextKey;
+                start = end;
+                promotedIndex = nextPromotedIndex;
+            }
+            return partitions;
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, dataFile.getPath());
+        }
+    }
+
+    private void appendSerialized(DecoratedKey key, RandomAccessReader data, long sourceStart, long sourceEnd,
+                                  ByteBuffer promotedIndex, byte[] buffer) throws IOException
+    {
+        long startPosition = beforeAppend(key);
+
+        data.seek(sourceStart);
+        for (long remaining = sourceEnd - sourceStart; remaining > 0; )
+        {
+            int length = (int) Math.min(buffer.length, remaining);
+            data.readFully(buffer, 0, length);
+            dataFile.write(buffer, 0, length);
+            remaining -= length;
+        }
+
+        long endPosition = dataFile.position();
+        long rowSize = endPosition - startPosition;
+        maybeLogLargePartitionWarning(key, rowSize);
+        metadataCollector.addPartitionSizeInBytes(rowSize);
+        markAppended(key, endPosition);
+        iwriter.append(key, startPosition, promotedIndex, endPosition);
+    }
+
     private RowIndexEntry.IndexSerializer<IndexInfo> getRowIndexEntrySerializer()
     {
         return (RowIndexEntry.IndexSerializer<IndexInfo>) rowIndexEntrySerializer;
@@ -406,6 +498,29 @@ public class BigTableWriter extends SSTableWriter
             summary.maybeAddEntry(key, indexStart, indexEnd, dataEnd);
         }
 
+        /**
+         * Appends an index entry whose promoted index is already serialized, as copied from another sstable.
+         */
+        void append(DecoratedKey key, long dataPosition, ByteBuffer promotedIndex, long dataEnd) throws IOException
+        {
+            bf.add(key);
+            long indexStart = indexFile.position();
+            try
+            {
+                ByteBufferUtil.writeWithShortLength(key.getKey(), indexFile);
+                indexFile.writeUnsignedVInt(dataPosition);
+                indexFile.writeUnsignedVInt(promotedIndex.remaining());
+                indexFile.write(promotedIndex.duplicate());
+            }
+            catch (IOException e)
+            {
+                throw new FSWriteError(e, indexFile.getPath());
+            }
+            long indexEnd = indexFile.position();
+
+            summary.maybeAddEntry(key, indexStart, indexEnd, dataEnd);
+        }
+
         /**
          * Closes the index and bloomfilter, making the public state of this writer valid for consumption.
          */
@@ -274,6 +274,36 @@ public class MetadataCollector implements PartitionStatisticsCollector
         this.hasLegacyCounterShards = this.hasLegacyCounterShards || hasLegacyCounterShards;
     }
 
+    /**
+     * Folds in the statistics of a whole sstable whose partitions are copied without being deserialized, and so
+     * cannot be collected cell by cell. Keys and partition sizes are not included: they are still collected as
+     * each partition is appended.
+     */
+    public MetadataCollector update(StatsMetadata stats)
+    {
+        timestampTracker.update(stats.minTimestamp);
+        timestampTracker.update(stats.maxTimestamp);
+        localDeletionTimeTracker.update(stats.minLocalDeletionTime);
+        localDeletionTimeTracker.update(stats.maxLocalDeletionTime);
+        ttlTracker.update(stats.minTTL);
+        ttlTracker.update(stats.maxTTL);
+        estimatedTombstoneDropTime.merge(stats.estimatedTombstoneDropTime);
+        estimatedCellPerPartitionCount.merge(stats.estimatedColumnCount);
+
+        for (int i = 0; i < stats.minClusteringValues.size(); i++)
+            minClusteringValues[i] = maybeMinimize(min(minClusteringValues[i], stats.minClusteringValues.get(i), comparator.subtype(i)));
+        for (int i = 0; i < stats.maxClusteringValues.size(); i++)
+            maxClusteringValues[i] = maybeMinimize(max(maxClusteringValues[i], stats.maxClusteringValues.get(i), comparator.subtype(i)));
+
+        updateHasLegacyCounterShards(stats.hasLegacyCounterShards);
+        if (stats.totalRows >= 0)
+        {
+            totalColumnsSet += stats.totalColumnsSet;
+            totalRows += stats.totalRows;
+        }
+        return this;
+    }
+
     public Map<MetadataType, MetadataComponent> finalizeMetadata(String partitioner, double bloomFilterFPChance, long repairedAt, SerializationHeader header)
     {
         Map<MetadataType, MetadataComponent> components = new EnumMap<>(MetadataType.class);
@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.google.common.base.Throwables;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.utils.EstimatedHistogram;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * The default {@link ReadPolicy}: retries failed reads with a jittered exponential backoff, within a maximum number
+ * of attempts and a budget of elapsed time.
+ *
+ * Optionally, attempts that take longer than {@link #ATTEMPT_TIMEOUT_MS_KEY} are abandoned and count as failed, and
+ * attempts that have not completed within the {@link #HEDGE_PERCENTILE_KEY} percentile of the latencies seen so far
+ * get a duplicate, hedged, attempt: whichever of the two completes first wins. Both run the attempts on a shared pool
+ * of threads; without them, attempts run on the calling thread. Attempts left running keep a thread of the pool until
+ * they complete, so a stalled store can take all of them: further attempts then queue and time out.
+ *
+ * {@link FileNotFoundException}s are never retried.
+ */
+public class BackoffReadPolicy implements ReadPolicy
+{
+    private static final Logger logger = LoggerFactory.getLogger(BackoffReadPolicy.class);
+
+    /**
+     * Hadoop configuration key holding the maximum number of attempts of a read, 5 by default.
+     */
+    public static final String MAX_ATTEMPTS_KEY = READ_POLICY_KEY_PREFIX + "max.attempts";
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /**
+     * Hadoop configuration key holding the backoff before the first retry in milliseconds, which doubles on each
+     * further retry. The actual backoff is drawn at random between half and all of it.
+     */
+    public static final String BACKOFF_BASE_MS_KEY = READ_POLICY_KEY_PREFIX + "backoff.base.ms";
+    public static final long DEFAULT_BACKOFF_BASE_MS = 2000;
+
+    /**
+     * Hadoop configuration key holding the upper bound of the backoff in milliseconds.
+     */
+    public static final String BACKOFF_MAX_MS_KEY = READ_POLICY_KEY_PREFIX + "backoff.max.ms";
+    public static final long DEFAULT_BACKOFF_MAX_MS = 30_000;
+
+    /**
+     * Hadoop configuration key holding the time in milliseconds after which a failed read is not retried anymore,
+     * counted from the start of its first attempt. 0 means no limit.
+     */
+    public static final String MAX_ELAPSED_MS_KEY = READ_POLICY_KEY_PREFIX + "max.elapsed.ms";
+    public static final long DEFAULT_MAX_ELAPSED_MS = 60_000;
+
+    /**
+     * Hadoop configuration key holding the time in milliseconds after which an attempt is abandoned and counted as
+     * failed. 0, the default, means no timeout.
+     */
+    public static final String ATTEMPT_TIMEOUT_MS_KEY = READ_POLICY_KEY_PREFIX + "attempt.timeout.ms";
+
+    /**
+     * Hadoop configuration key holding the latency percentile, e.g. 0.99, after which a duplicate of a pending attempt
+     * is issued. 0, the default, disables hedging.
+     */
+    public static final String HEDGE_PERCENTILE_KEY = READ_POLICY_KEY_PREFIX + "hedge.percentile";
+
+    /**
+     * Hadoop configuration key holding the lower bound, in milliseconds, of the delay before hedging an attempt.
+     */
+    public static final String HEDGE_MIN_DELAY_MS_KEY = READ_POLICY_KEY_PREFIX + "hedge.min.delay.ms";
+    public static final long DEFAULT_HEDGE_MIN_DELAY_MS = 5;
+
+    // percentiles of fewer samples than this are not trusted, attempts are not hedged until then
+    private static final int HEDGE_MIN_SAMPLES = 100;
+
+    private static final int REMOTE_READ_THREADS =
+        Integer.getInteger(Config.PROPERTY_PREFIX + "remote_read_threads",
+                           Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+
+    // remote reads are latency bound rather than CPU bound, hence more threads than cores by default.
+    // Threads are only started on demand and die off when idle.
+    private static final ThreadPoolExecutor executor;
+    static
+    {
+        executor = new ThreadPoolExecutor(REMOTE_READ_THREADS, REMOTE_READ_THREADS,
+                                          60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<>(),
+                                          new NamedThreadFactory("RemoteRead"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private final int maxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final long maxElapsedNanos;
+    private final long attemptTimeoutNanos;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayNanos;
+
+    // latencies of successful attempts, in microseconds
+    private final EstimatedHistogram latencies = new EstimatedHistogram();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    public BackoffReadPolicy(Configuration conf)
+    {
+        if (conf == null)
+            conf = new Configuration(false);
+
+        this.maxAttempts = Math.max(1, conf.getInt(MAX_ATTEMPTS_KEY, DEFAULT_MAX_ATTEMPTS));
+        this.backoffBaseMillis = conf.getLong(BACKOFF_BASE_MS_KEY, DEFAULT_BACKOFF_BASE_MS);
+        this.backoffMaxMillis = conf.getLong(BACKOFF_MAX_MS_KEY, DEFAULT_BACKOFF_MAX_MS);
+        this.maxElapsedNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(MAX_ELAPSED_MS_KEY, DEFAULT_MAX_ELAPSED_MS));
+        this.attemptTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(ATTEMPT_TIMEOUT_MS_KEY, 0));
+        this.hedgePercentile = conf.getDouble(HEDGE_PERCENTILE_KEY, 0);
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(HEDGE_MIN_DELAY_MS_KEY,
+                                                                             DEFAULT_HEDGE_MIN_DELAY_MS));
+    }
+
+    @Override
+    public <T> T execute(Supplier<String> description, Attempt<T> attempt, Runnable beforeRetry,
+                         Consumer<? super T> onDiscarded) throws IOException
+    {
+        long start = System.nanoTime();
+        for (int attempts = 1; ; attempts++)
+        {
+            try
+            {
+                return concurrentAttempts()
+                       ? runConcurrently(description, attempt, onDiscarded)
+                       : runInline(attempt);
+            }
+            catch (IOException | FSReadError e)
+            {
+                if (e instanceof FileNotFoundException || e.getCause() instanceof FileNotFoundException)
+                    throw e;
+
+                long backoffMillis = backoffMillis(attempts);
+                long elapsed = System.nanoTime() - start;
+                if (attempts >= maxAttempts
+                    || (maxElapsedNanos > 0 && elapsed + TimeUnit.MILLISECONDS.toNanos(backoffMillis) > maxElapsedNanos))
+                {
+                    logger.error("Giving up reading {} after {} attempts and {} ms", description.get(), attempts,
+                                 TimeUnit.NANOSECONDS.toMillis(elapsed));
+                    throw e;
+                }
+
+                logger.warn("Attempt {} at reading {} failed, retrying in {} ms: {}",
+                            attempts, description.get(), backoffMillis, e.getMessage());
+                retries.incrementAndGet();
+                FBUtilities.sleepQuietly(backoffMillis);
+                beforeRetry.run();
+            }
+        }
+    }
+
+    @Override
+    public boolean concurrentAttempts()
+    {
+        return attemptTimeoutNanos > 0 || hedgePercentile > 0;
+    }
+
+    /**
+     * @return the number of hedged attempts issued so far
+     */
+    public long hedges()
+    {
+        return hedges.get();
+    }
+
+    /**
+     * @return the number of attempts abandoned at the timeout so far
+     */
+    public long timeouts()
+    {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the number of failed reads retried so far
+     */
+    public long retries()
+    {
+        return retries.get();
+    }
+
+    private long backoffMillis(int attempts)
+    {
+        long backoff = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempts - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private <T> T runInline(Attempt<T> attempt) throws IOException
+    {
+        long start = System.nanoTime();
+        T result = attempt.run();
+        latencies.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        return result;
+    }
+
+    /**
+     * Run an attempt on the shared pool, hedge it if it is slow and give up on it and its hedge at the timeout.
+     * Abandoned attempts are not interrupted, as interrupts close the file channels of local files, but left to
+     * complete on their own, and their results discarded.
+     */
+    private <T> T runConcurrently(Supplier<String> description, Attempt<T> attempt, Consumer<? super T> onDiscarded)
+    throws IOException
+    {
+        Attempts<T> attempts = new Attempts<>(description, onDiscarded);
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> started = new ArrayList<>(2);
+        long start = System.nanoTime();
+        long deadline = attemptTimeoutNanos > 0 ? start + attemptTimeoutNanos : Long.MAX_VALUE;
+        long hedgeDelay = hedgeDelayNanos();
+        boolean hedged = hedgeDelay < 0;
+
+        started.add(completion.submit(() -> attempts.deliver(runInline(attempt))));
+        T result = null;
+        int failed = 0;
+        Throwable failure = null;
+        try
+        {
+            while (true)
+            {
+                long now = System.nanoTime();
+                long waitUntil = hedged ? deadline : Math.min(deadline, start + hedgeDelay);
+                Future<T> done = waitUntil == Long.MAX_VALUE
+                                 ? completion.take()
+                                 : completion.poll(waitUntil - now, TimeUnit.NANOSECONDS);
+
+                if (done == null)
+                {
+                    if (System.nanoTime() - deadline >= 0)
+                    {
+                        timeouts.incrementAndGet();
+                        throw new SocketTimeoutException("Reading " + description.get() + " timed out after "
+                                                         + TimeUnit.NANOSECONDS.toMillis(attemptTimeoutNanos) + " ms");
+                    }
+
+                    hedged = true;
+                    hedges.incrementAndGet();
+                    started.add(completion.submit(() -> attempts.deliver(runInline(attempt))));
+                    continue;
+                }
+
+                try
+                {
+                    result = done.get();
+                    return result;
+                }
+                catch (ExecutionException e)
+                {
+                    // the hedge, or the original attempt, may still succeed
+                    failure = e.getCause();
+                    if (++failed == started.size())
+                        break;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading " + description.get());
+        }
+        finally
+        {
+            for (Future<T> future : started)
+                future.cancel(false);
+            attempts.settle(result);
+        }
+
+        Throwables.propagateIfPossible(failure, IOException.class);
+        throw new IOException(failure);
+    }
+
+    /**
+     * The results of the attempts of one read. Each successful attempt hands its result over until the read is
+     * settled, and discards it afterwards, so that every result but the returned one is discarded exactly once.
+     */
+    private static final class Attempts<T>
+    {
+        private final Supplier<String> description;
+        private final Consumer<? super T> onDiscarded;
+        private final List<T> delivered = new ArrayList<>(2);
+        private boolean settled;
+
+        Attempts(Supplier<String> description, Consumer<? super T> onDiscarded)
+        {
+            this.description = description;
+            this.onDiscarded = onDiscarded;
+        }
+
+        T deliver(T result)
+        {
+            synchronized (this)
+            {
+                if (!settled)
+                {
+                    delivered.add(result);
+                    return result;
+                }
+            }
+            discard(result);
+            return result;
+        }
+
+        /**
+         * @param returned the result returned by the read, null if it failed
+         */
+        void settle(T returned)
+        {
+            List<T> discarded;
+            synchronized (this)
+            {
+                settled = true;
+                discarded = new ArrayList<>(delivered);
+                delivered.clear();
+            }
+            for (T result : discarded)
+            {
+                if (result != returned)
+                    discard(result);
+            }
+        }
+
+        private void discard(T result)
+        {
+            try
+            {
+                onDiscarded.accept(result);
+            }
+            catch (Throwable t)
+            {
+                logger.warn("Failed discarding the result of an attempt at reading {}", description.get(), t);
+            }
+        }
+    }
+
+    private long hedgeDelayNanos()
+    {
+        if (hedgePercentile <= 0 || latencies.count() < HEDGE_MIN_SAMPLES || latencies.isOverflowed())
+            return -1;
+
+        return Math.max(hedgeMinDelayNanos, TimeUnit.MICROSECONDS.toNanos(latencies.percentile(hedgePercentile)));
+    }
+}
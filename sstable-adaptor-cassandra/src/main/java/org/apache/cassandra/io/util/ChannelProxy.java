@@ -17,10 +17,15 @@
  */
 package org.apache.cassandra.io.util;
 
+import com.google.common.primitives.Ints;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.compress.BufferType;
 import org.apache.cassandra.utils.concurrent.RefCounted;
 import org.apache.cassandra.utils.concurrent.SharedCloseableImpl;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -28,9 +33,23 @@ import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 
 /**
@@ -48,26 +67,109 @@ public class ChannelProxy extends SharedCloseableImpl
 
     private static int DEFAULT_BUFFER_SIZE = HadoopFileUtils.DEFAULT_BUFFER_SIZE;
 
+    /**
+     * Hadoop configuration key holding the largest gap, in bytes, between two ranges of a vectored read for them to be
+     * fetched with a single request. The bytes in between are read and discarded.
+     */
+    public static final String VECTORED_READ_MAX_GAP_KEY = "sstable.adaptor.vectoredread.maxgap.bytes";
+    public static final int DEFAULT_VECTORED_READ_MAX_GAP = 16 * 1024;
+
+    /**
+     * Hadoop configuration key holding the largest single request, in bytes, that a vectored read merges ranges into.
+     */
+    public static final String VECTORED_READ_MAX_MERGED_SIZE_KEY = "sstable.adaptor.vectoredread.maxmerged.bytes";
+    public static final int DEFAULT_VECTORED_READ_MAX_MERGED_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Hadoop configuration key to turn off native I/O on local files, which are then read through the Hadoop
+     * {@link org.apache.hadoop.fs.LocalFileSystem} like any other file system. Native I/O is on by default.
+     */
+    public static final String LOCAL_NATIVE_IO_KEY = "sstable.adaptor.local.nativeio";
+
+    /**
+     * Hadoop configuration key holding the largest number of streams kept open per remote file, so that concurrent
+     * positional reads of the same file do not queue on one stream, see {@link InputStreamPool}.
+     * 0 makes all positional reads share the main stream of the file.
+     */
+    public static final String STREAM_POOL_SIZE_KEY = "sstable.adaptor.streampool.size";
+    public static final int DEFAULT_STREAM_POOL_SIZE = 8;
+
+    /**
+     * Hadoop configuration key holding how long, in milliseconds, a pooled stream is kept open while unused.
+     */
+    public static final String STREAM_POOL_IDLE_MS_KEY = "sstable.adaptor.streampool.idle.ms";
+    public static final long DEFAULT_STREAM_POOL_IDLE_MS = 60_000;
+
+    // Staging area for filling direct buffers from streams that can only read into arrays
+    private static final FastThreadLocal<byte[]> stagingBuffer = new FastThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[DEFAULT_BUFFER_SIZE];
+        }
+    };
+
+    private static final ConcurrentMap<Map<String, String>, ReadPolicy> readPolicies = new ConcurrentHashMap<>();
+
     private Path filePath;
     private FileSystem fs;
-    private FSDataInputStream inputStream;
+    // positional reads on local files bypass the Hadoop stream, null for remote files
+    private final FileChannel localChannel;
+    // streams for positional reads on remote files, null if they share the main stream
+    private final InputStreamPool streamPool;
     private long fileLength = -1;
+    private long modificationTime = -1;
+    // local copies of the blocks of remote files, null if disabled or for local files
+    private final DiskBlockCache diskCache;
+    private final String diskCacheKey;
     private boolean isExists = false;
     private int bufferSize = 0;
     private Cleanup cleanup = null;
     private Configuration conf;
+    private int vectoredReadMaxGap = DEFAULT_VECTORED_READ_MAX_GAP;
+    private int vectoredReadMaxMergedSize = DEFAULT_VECTORED_READ_MAX_MERGED_SIZE;
+    private final ReadPolicy readPolicy;
 
-    public ChannelProxy(Cleanup cleanup, FileSystem fs, FSDataInputStream inputStream,
-                        Path path, int bufferSize, Configuration conf)
+    public ChannelProxy(Cleanup cleanup, FileSystem fs, Path path, int bufferSize, Configuration conf)
     {
         super(cleanup);
-        this.inputStream = inputStream;
+        this.localChannel = cleanup.localChannel;
+        this.streamPool = cleanup.streamPool;
         this.filePath = path;
         this.bufferSize = bufferSize;
         this.fs = fs;
         this.fileLength = size();
         this.cleanup = cleanup;
         this.conf = conf;
+        this.diskCache = localChannel == null ? DiskBlockCache.instance(conf) : null;
+        this.diskCacheKey = diskCache == null ? null : DiskBlockCache.fileKey(filePath(), fileLength, modificationTime);
+        this.readPolicy = readPolicy(conf);
+        if (conf != null) {
+            this.vectoredReadMaxGap = conf.getInt(VECTORED_READ_MAX_GAP_KEY, DEFAULT_VECTORED_READ_MAX_GAP);
+            this.vectoredReadMaxMergedSize = conf.getInt(VECTORED_READ_MAX_MERGED_SIZE_KEY,
+                                                         DEFAULT_VECTORED_READ_MAX_MERGED_SIZE);
+        }
+    }
+
+    private ChannelProxy(ChannelProxy copy)
+    {
+        super(copy);
+        this.localChannel = copy.localChannel;
+        this.streamPool = copy.streamPool;
+        this.filePath = copy.filePath;
+        this.bufferSize = copy.bufferSize;
+        this.fs = copy.fs;
+        this.fileLength = copy.fileLength;
+        this.modificationTime = copy.modificationTime;
+        this.diskCache = copy.diskCache;
+        this.diskCacheKey = copy.diskCacheKey;
+        this.isExists = copy.isExists;
+        this.cleanup = copy.cleanup;
+        this.conf = copy.conf;
+        this.vectoredReadMaxGap = copy.vectoredReadMaxGap;
+        this.vectoredReadMaxMergedSize = copy.vectoredReadMaxMergedSize;
+        this.readPolicy = copy.readPolicy;
     }
 
     public static ChannelProxy newInstance(String filePath, Configuration conf) {
@@ -82,24 +184,82 @@ public class ChannelProxy extends SharedCloseableImpl
             Path path = new Path(filePath);
             FileSystem fs = path.getFileSystem(conf);
             FSDataInputStream inputStream = HadoopFileUtils.buildInputStream(path, bufferSize, conf);
-            Cleanup cleanup = new Cleanup(filePath, inputStream);
-            return new ChannelProxy(cleanup, fs, inputStream, path, bufferSize, conf);
+            FileChannel localChannel = openLocalChannel(fs, path, conf);
+            InputStreamPool streamPool = localChannel == null ? createStreamPool(filePath, fs, path, bufferSize, conf) : null;
+            Cleanup cleanup = new Cleanup(filePath, inputStream, localChannel, streamPool);
+            return new ChannelProxy(cleanup, fs, path, bufferSize, conf);
         } catch (IOException e) {
             logger.error(e.getMessage());
             return null;
         }
     }
 
+    private static FileChannel openLocalChannel(FileSystem fs, Path path, Configuration conf) throws IOException {
+        if (!"file".equals(fs.getUri().getScheme()) || (conf != null && !conf.getBoolean(LOCAL_NATIVE_IO_KEY, true)))
+            return null;
+
+        return FileChannel.open(Paths.get(fs.makeQualified(path).toUri()), StandardOpenOption.READ);
+    }
+
+    private static InputStreamPool createStreamPool(String name, FileSystem fs, Path path, int bufferSize,
+                                                    Configuration conf) {
+        int size = conf == null ? DEFAULT_STREAM_POOL_SIZE : conf.getInt(STREAM_POOL_SIZE_KEY, DEFAULT_STREAM_POOL_SIZE);
+        if (size <= 0)
+            return null;
+
+        long idleMillis = conf == null
+                          ? DEFAULT_STREAM_POOL_IDLE_MS
+                          : conf.getLong(STREAM_POOL_IDLE_MS_KEY, DEFAULT_STREAM_POOL_IDLE_MS);
+        return new InputStreamPool(name, () -> HadoopFileUtils.buildInputStream(fs, path, bufferSize), size, idleMillis);
+    }
+
     public Configuration getConf() {
         return conf;
     }
 
+    /**
+     * @return the policy that readers of this file apply to retry failed reads and hedge slow ones
+     */
+    public ReadPolicy readPolicy() {
+        return readPolicy;
+    }
+
+    /**
+     * @return the {@link ReadPolicy} configured in {@code conf}, shared with the other files read with the same
+     * {@link ReadPolicy#READ_POLICY_KEY_PREFIX} settings
+     */
+    public static ReadPolicy readPolicy(Configuration conf) {
+        Map<String, String> settings = conf == null
+                                       ? new TreeMap<>()
+                                       : new TreeMap<>(conf.getValByRegex("^" + Pattern.quote(ReadPolicy.READ_POLICY_KEY_PREFIX)));
+        ReadPolicy policy = readPolicies.get(settings);
+        if (policy != null)
+            return policy;
+
+        String className = settings.getOrDefault(ReadPolicy.READ_POLICY_CLASS_KEY, BackoffReadPolicy.class.getName());
+        try {
+            policy = Class.forName(className)
+                          .asSubclass(ReadPolicy.class)
+                          .getConstructor(Configuration.class)
+                          .newInstance(conf);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new ConfigurationException("Cannot instantiate the read policy " + className, e);
+        }
+
+        ReadPolicy existing = readPolicies.putIfAbsent(settings, policy);
+        return existing != null ? existing : policy;
+    }
+
+    /**
+     * Replace the main stream of the file and drop the idle pooled ones, after a read failed in a way that may be
+     * caused by a broken connection. Streams borrowed from the pool are discarded by their readers if they fail.
+     */
     public void reopenInputStream() {
         //TODO: add a retry here too
         try {
-            this.inputStream.close();
-            this.inputStream = HadoopFileUtils.buildInputStream(this.fs, this.filePath, this.bufferSize);
-            this.cleanup.swapInputStream(inputStream);
+            if (streamPool != null)
+                streamPool.evictAll();
+            this.cleanup.swapInputStream(HadoopFileUtils.buildInputStream(this.fs, this.filePath, this.bufferSize));
         }
         catch (IOException e) {
             logger.error(e.getMessage());
@@ -107,23 +267,24 @@ public class ChannelProxy extends SharedCloseableImpl
         }
     }
 
-    //cannot actually share the same resource - should rename this to copy()
+    /**
+     * @return a copy sharing the open streams, the stream pool and the local channel of this proxy, which are
+     * closed once the last copy is
+     */
     public ChannelProxy sharedCopy()
     {
-        try {
-            FSDataInputStream inputStream = HadoopFileUtils.buildInputStream(this.fs, this.filePath,
-                                                                             this.bufferSize);
-            Cleanup cleanup = new Cleanup(this.filePath(), inputStream);
-            return new ChannelProxy(cleanup, this.fs, inputStream, this.filePath, this.bufferSize, this.conf);
-        } catch (IOException e) {
-            logger.error(e.getMessage());
-            throw new RuntimeException((e.getCause()));
-        }
+        return new ChannelProxy(this);
     }
 
+    /**
+     * @return the main stream of the file, for sequential reads by a single owner. Positional reads through this proxy
+     * do not move its position. With the disk cache, a stream over the cached blocks instead.
+     */
     public InputStream getInputStream()
     {
-        return this.inputStream;
+        if (diskCache != null)
+            return new BufferedInputStream(new CachedInputStream(), bufferSize);
+        return cleanup.inputStream;
     }
 
     public boolean exists()
@@ -147,8 +308,73 @@ public class ChannelProxy extends SharedCloseableImpl
         return filePath.getParent() + "/" + filePath.getName();
     }
 
+    /**
+     * @return the modification time of the file when it was opened, in milliseconds since the epoch, or -1 if unknown
+     */
+    public long modificationTime()
+    {
+        return modificationTime;
+    }
+
+    /**
+     * @return true if the file is on the local file system and is read with native I/O
+     */
+    public boolean isLocal()
+    {
+        return localChannel != null;
+    }
+
+    /**
+     * Map a region of a local file into memory.
+     *
+     * @throws UnsupportedOperationException if the file is not read with native I/O, see {@link #isLocal()}
+     */
+    public MappedByteBuffer map(long position, long size)
+    {
+        if (localChannel == null)
+            throw new UnsupportedOperationException("Only local files can be memory mapped: " + filePath());
+
+        try {
+            return localChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        } catch (IOException e) {
+            throw new FSReadError(e, filePath.getName());
+        }
+    }
+
     public int read(long position, byte[] buffer, int offset, int length)
             throws IOException
+    {
+        if (localChannel != null)
+            return readLocal(ByteBuffer.wrap(buffer, offset, length), position);
+
+        if (diskCache != null)
+            return diskCache.read(diskCacheKey, fileLength, ByteBuffer.wrap(buffer, offset, length), position,
+                                  this::readRemote);
+
+        return readRemote(position, buffer, offset, length);
+    }
+
+    private int readRemote(long position, byte[] buffer, int offset, int length) throws IOException
+    {
+        if (streamPool == null)
+            return readStream(cleanup.inputStream, position, buffer, offset, length);
+
+        FSDataInputStream stream = streamPool.borrow();
+        boolean success = false;
+        try {
+            int readBytes = readStream(stream, position, buffer, offset, length);
+            success = true;
+            return readBytes;
+        } finally {
+            if (success)
+                streamPool.release(stream);
+            else
+                streamPool.discard(stream);
+        }
+    }
+
+    private int readStream(FSDataInputStream inputStream, long position, byte[] buffer, int offset, int length)
+            throws IOException
     {
         int readBytes = 0;
 
@@ -158,7 +384,7 @@ public class ChannelProxy extends SharedCloseableImpl
                     (int) (this.fileLength - position - readBytes);
 
             int minLength = Math.min(length-readBytes, fileBytesRemained);
-            if (minLength == 0)
+            if (minLength <= 0)
                 return readBytes;
 
             int n = inputStream.read(position + readBytes, buffer, offset + readBytes, minLength);
@@ -171,29 +397,197 @@ public class ChannelProxy extends SharedCloseableImpl
         return readBytes;
     }
 
+    /**
+     * Read from the given position into the remaining space of the buffer, like {@link java.nio.channels.FileChannel#read(ByteBuffer, long)}.
+     * The buffer's position is advanced by the number of bytes read.
+     *
+     * Local files are read with a positional {@link FileChannel} read. For other files, heap buffers are filled through
+     * their backing array, and direct buffers straight from the stream when it supports {@link ByteBufferReadable},
+     * otherwise through a thread-local staging array, so none of them allocates.
+     *
+     * @return the number of bytes read, which is less than requested only at the end of the file
+     */
     public int read(ByteBuffer buffer, long position)
     {
-        int size = 0;
-        byte[] temBuff = null;
-
         try {
-            if (buffer.isDirect()) {
-                //TODO: have a better way to allocate this using thread local or pooling
-                temBuff = new byte[buffer.capacity()];
-                size = read(position, temBuff, 0, buffer.limit());
-                buffer.put(temBuff, 0, size);
-            } else {
-                temBuff = buffer.array();
-                size = read(position, temBuff, 0, buffer.limit());
-                buffer.limit(buffer.capacity());
-                buffer.position(size);
+            if (localChannel != null)
+                return readLocal(buffer, position);
+
+            if (diskCache != null)
+                return diskCache.read(diskCacheKey, fileLength, buffer, position, this::readRemote);
+
+            if (buffer.hasArray()) {
+                int size = read(position, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.position() + size);
+                return size;
+            }
+
+            if (streamPool == null)
+                return readDirectOrStaged(cleanup.inputStream, buffer, position);
+
+            FSDataInputStream stream = streamPool.borrow();
+            boolean success = false;
+            try {
+                int readBytes = readDirectOrStaged(stream, buffer, position);
+                success = true;
+                return readBytes;
+            } finally {
+                if (success)
+                    streamPool.release(stream);
+                else
+                    streamPool.discard(stream);
             }
-            return size;
         } catch (IOException e) {
             throw new FSReadError(e, filePath.getName());
         }
     }
 
+    private int readLocal(ByteBuffer buffer, long position) throws IOException
+    {
+        int readBytes = 0;
+        while (buffer.hasRemaining()) {
+            int n = localChannel.read(buffer, position + readBytes);
+            if (n < 0)
+                break;
+            readBytes += n;
+        }
+        return readBytes;
+    }
+
+    private int readDirectOrStaged(FSDataInputStream inputStream, ByteBuffer buffer, long position) throws IOException
+    {
+        InputStream wrapped = inputStream.getWrappedStream();
+        if (wrapped instanceof ByteBufferReadable)
+            return readDirect(inputStream, buffer, position, wrapped);
+
+        return readStaged(inputStream, buffer, position);
+    }
+
+    private int readDirect(FSDataInputStream inputStream, ByteBuffer buffer, long position, InputStream wrapped)
+            throws IOException
+    {
+        int limit = buffer.limit();
+        long remainingInFile = fileLength - position;
+        if (remainingInFile < buffer.remaining())
+            buffer.limit(buffer.position() + (int) Math.max(0, remainingInFile));
+
+        int readBytes = 0;
+        try {
+            // ByteBufferReadable has no positional variant: seek, read and restore the position atomically.
+            // Positional reads of FSInputStream lock the same wrapped stream, so they cannot interleave with this.
+            synchronized (wrapped) {
+                long savedPosition = inputStream.getPos();
+                inputStream.seek(position);
+                try {
+                    while (buffer.hasRemaining()) {
+                        int n = inputStream.read(buffer);
+                        if (n <= 0)
+                            break;
+                        readBytes += n;
+                    }
+                } finally {
+                    inputStream.seek(savedPosition);
+                }
+            }
+        } finally {
+            buffer.limit(limit);
+        }
+        return readBytes;
+    }
+
+    private int readStaged(FSDataInputStream inputStream, ByteBuffer buffer, long position) throws IOException
+    {
+        byte[] staging = stagingBuffer.get();
+        int readBytes = 0;
+        while (buffer.hasRemaining()) {
+            int n = readStream(inputStream, position + readBytes, staging, 0,
+                               Math.min(staging.length, buffer.remaining()));
+            if (n <= 0)
+                break;
+            buffer.put(staging, 0, n);
+            readBytes += n;
+        }
+        return readBytes;
+    }
+
+    /**
+     * Read several ranges of the file. Ranges that are at most {@link #VECTORED_READ_MAX_GAP_KEY} bytes apart are
+     * merged into a single read of up to {@link #VECTORED_READ_MAX_MERGED_SIZE_KEY} bytes, so that reading many small
+     * neighbouring ranges (e.g. consecutive compressed chunks) costs a few large requests instead of one each.
+     *
+     * @param ranges the ranges to read, sorted by offset and not overlapping
+     * @param bufferType type of the buffers to read into
+     * @return one buffer per range, in the order of the ranges, whose remaining bytes are the bytes read for the range
+     *         (fewer than its length only at the end of the file). Buffers of merged ranges are views of the same
+     *         memory, so they are not necessarily positioned at 0. Off-heap buffers should be freed with
+     *         {@link #cleanVectored(ByteBuffer[])} once consumed.
+     */
+    public ByteBuffer[] readVectored(List<ReadRange> ranges, BufferType bufferType)
+    {
+        ByteBuffer[] buffers = new ByteBuffer[ranges.size()];
+        try
+        {
+            readVectored(ranges, bufferType, buffers);
+        }
+        catch (RuntimeException | Error e)
+        {
+            cleanVectored(buffers);
+            throw e;
+        }
+        return buffers;
+    }
+
+    private void readVectored(List<ReadRange> ranges, BufferType bufferType, ByteBuffer[] buffers)
+    {
+        int first = 0;
+        while (first < ranges.size()) {
+            long start = ranges.get(first).offset;
+            long end = ranges.get(first).end();
+            int last = first;
+            while (last + 1 < ranges.size()) {
+                ReadRange next = ranges.get(last + 1);
+                assert next.offset >= ranges.get(last).end() : "ranges must be sorted and must not overlap";
+                if (next.offset - end > vectoredReadMaxGap || next.end() - start > vectoredReadMaxMergedSize)
+                    break;
+                end = next.end();
+                last++;
+            }
+
+            ByteBuffer merged = bufferType.allocate(Ints.checkedCast(end - start));
+            // nothing is read, and some sources return -1, when the ranges start past the end of the file
+            int size = Math.max(0, read(merged, start));
+            for (int i = first; i <= last; i++) {
+                ReadRange range = ranges.get(i);
+                int from = (int) (range.offset - start);
+                // duplicates rather than slices: some compressors ignore the array offset of sliced heap buffers
+                ByteBuffer buffer = merged.duplicate();
+                buffer.limit(Math.min(from + range.length, size)).position(Math.min(from, size));
+                buffers[i] = buffer;
+            }
+            first = last + 1;
+        }
+    }
+
+    /**
+     * Free the off-heap memory of buffers returned by {@link #readVectored(List, BufferType)}, which must not be used
+     * afterwards. The buffers are views of the merged reads, which cleaning the views alone would not free.
+     *
+     * @param buffers the buffers of one vectored read, some of which may be null
+     */
+    public static void cleanVectored(ByteBuffer[] buffers)
+    {
+        if (buffers == null)
+            return;
+
+        Set<ByteBuffer> merged = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ByteBuffer buffer : buffers)
+        {
+            if (buffer != null)
+                merged.add(FileUtils.viewedBuffer(buffer));
+        }
+        merged.forEach(FileUtils::clean);
+    }
+
     public long size()
     {
         if (this.fileLength != -1)
@@ -203,6 +597,7 @@ public class ChannelProxy extends SharedCloseableImpl
         {
             if (fs != null && filePath != null) {
                 FileStatus fileStatus = fs.getFileStatus(filePath);
+                modificationTime = fileStatus.getModificationTime();
                 fileLength = fileStatus.getLen();
                 return fileLength;
             }
@@ -220,14 +615,87 @@ public class ChannelProxy extends SharedCloseableImpl
         return filePath();
     }
 
+    /**
+     * Sequential stream over the positional reads of the file, so that the reads go through the disk cache.
+     */
+    private final class CachedInputStream extends InputStream
+    {
+        private long position = 0;
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == 1 ? single[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            if (length == 0)
+                return 0;
+
+            int n = ChannelProxy.this.read(position, buffer, offset, length);
+            if (n <= 0)
+                return -1;
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            long skipped = Math.max(0, Math.min(n, fileLength - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, fileLength - position);
+        }
+    }
+
+    /**
+     * A range of bytes of the file, see {@link #readVectored(List, BufferType)}.
+     */
+    public static final class ReadRange
+    {
+        public final long offset;
+        public final int length;
+
+        public ReadRange(long offset, int length)
+        {
+            assert offset >= 0 && length >= 0;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public long end()
+        {
+            return offset + length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[" + offset + ", " + end() + ")";
+        }
+    }
+
     private final static class Cleanup implements RefCounted.Tidy
     {
         final String filePath;
-        InputStream inputStream;
+        volatile FSDataInputStream inputStream;
+        final FileChannel localChannel;
+        final InputStreamPool streamPool;
 
-        Cleanup(String filePath, InputStream inputStream) {
+        Cleanup(String filePath, FSDataInputStream inputStream, FileChannel localChannel, InputStreamPool streamPool) {
             this.filePath = filePath;
             this.inputStream = inputStream;
+            this.localChannel = localChannel;
+            this.streamPool = streamPool;
         }
 
         public String name()
@@ -240,7 +708,14 @@ public class ChannelProxy extends SharedCloseableImpl
             try
             {
                 logger.info("Cleaning ChannelProxy for file: " + filePath);
-                this.inputStream.close();
+                try {
+                    if (this.streamPool != null)
+                        this.streamPool.close();
+                    this.inputStream.close();
+                } finally {
+                    if (this.localChannel != null)
+                        this.localChannel.close();
+                }
             }
             catch (IOException e)
             {
@@ -255,10 +730,11 @@ public class ChannelProxy extends SharedCloseableImpl
             }
         }
 
-        //Precondition: the previous inputStream is already close by caller.
-        public void swapInputStream(InputStream newInputStream)
+        public synchronized void swapInputStream(FSDataInputStream newInputStream) throws IOException
         {
+            FSDataInputStream previous = this.inputStream;
             this.inputStream = newInputStream;
+            previous.close();
         }
     }
 
@@ -38,6 +38,20 @@ public interface ChunkReader extends RebuffererFactory
      */
     void readChunk(long position, ByteBuffer buffer);
 
+    /**
+     * Read several chunks, as if by calling {@link #readChunk(long, ByteBuffer)} for each position with the matching
+     * buffer. Sources that can fetch neighbouring chunks in fewer requests should override this.
+     *
+     * @param positions chunk positions, in increasing order
+     * @param buffers buffers to read the chunks into, one per position
+     */
+    default void readChunks(long[] positions, ByteBuffer[] buffers)
+    {
+        assert positions.length == buffers.length;
+        for (int i = 0; i < positions.length; i++)
+            readChunk(positions[i], buffers[i]);
+    }
+
     /**
      * Buffer size required for this rebufferer. Must be power of 2 if alignment is required.
      */
@@ -19,15 +19,16 @@
 package org.apache.cassandra.io.util;
 
 import com.google.common.annotations.VisibleForTesting;
-import org.apache.cassandra.io.FSReadError;
+import com.google.common.primitives.Ints;
 import org.apache.cassandra.io.compress.BufferType;
 import org.apache.cassandra.io.compress.CompressionMetadata;
 import org.apache.cassandra.io.compress.CorruptBlockException;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
-import org.apache.cassandra.utils.FBUtilities;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 public abstract class CompressedChunkReader extends AbstractReaderFileProxy implements ChunkReader
@@ -107,60 +108,27 @@ public abstract class CompressedChunkReader extends AbstractReaderFileProxy impl
                 assert position <= fileLength;
 
                 CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
-                ByteBuffer compressed = compressedHolder.get();
-
-                if (compressed.capacity() < chunk.length)
-                {
-                    compressed = allocateBuffer(chunk.length);
-                    compressedHolder.set(compressed);
-                }
-                else
-                {
-                    compressed.clear();
-                }
-
-                compressed.limit(chunk.length);
-                //TODO: will make the retry look nicer with an abstraction class
-                int attempt = 0;
-                int maxAttempt = 5;
-                boolean isSuccess = false;
-                while (!isSuccess)
+                ReadPolicy policy = channel.readPolicy();
+                // attempts that can outlive this call must not write into the reused thread-local buffer
+                ByteBuffer shared = policy.concurrentAttempts() ? null : compressedBuffer(chunk.length);
+                ByteBuffer compressed = policy.execute(() -> channel.filePath() + " at position " + chunk.offset, () ->
                 {
-                    if (attempt > 0)
-                        FBUtilities.sleepQuietly((int) Math.round(Math.pow(2, attempt)) * 1000);
-
-                    try {
-                       int numByteRead = channel.read(compressed, chunk.offset);
-                       if (numByteRead != chunk.length)
-                           throw new CorruptBlockException(channel.filePath(), chunk);
-                        isSuccess = true;
-                    }
-                    catch (IOException e)
-                    {
-                        attempt++;
-                        channel.reopenInputStream();
-                        if (attempt == maxAttempt) {
-                            //TODO: what if this is still a network issue, not data corruption
-                            throw new CorruptSSTableException(e, "Error on reading " + channel.filePath() +
-                              " on num. attempt " + maxAttempt + " at position " + chunk.offset);
-                        }
-                    }
-                }
-
-                compressed.flip();
-                uncompressed.clear();
+                    ByteBuffer target = shared != null ? shared : allocateBuffer(chunk.length);
+                    target.clear().limit(chunk.length);
+                    if (channel.read(target, chunk.offset) != chunk.length)
+                        throw new CorruptBlockException(channel.filePath(), chunk);
+                    target.flip();
+                    return target;
+                }, channel::reopenInputStream, FileUtils::clean);
 
                 try
                 {
-                    metadata.compressor().uncompress(compressed, uncompressed);
-                }
-                catch (IOException e)
-                {
-                    throw new CorruptBlockException(channel.filePath(), chunk, e);
+                    uncompress(chunk, compressed, uncompressed);
                 }
                 finally
                 {
-                    uncompressed.flip();
+                    if (shared == null)
+                        FileUtils.clean(compressed);
                 }
 
                 /** //TODO: Add this back later
@@ -177,11 +145,145 @@ public abstract class CompressedChunkReader extends AbstractReaderFileProxy impl
                 }
                 */
             }
+            catch (IOException e)
+            {
+                //TODO: what if this is still a network issue, not data corruption
+                throw new CorruptSSTableException(e, channel.filePath());
+            }
+        }
+
+        private ByteBuffer compressedBuffer(int length)
+        {
+            ByteBuffer compressed = compressedHolder.get();
+            if (compressed.capacity() < length)
+            {
+                compressed = allocateBuffer(length);
+                compressedHolder.set(compressed);
+            }
+            return compressed;
+        }
+
+        /**
+         * Fetch the compressed chunks with a vectored read, so that consecutive chunks cost a single request, then
+         * decompress them one by one. The vectored read is retried and hedged as a whole by the read policy of the
+         * channel. The compressed buffers, including those of discarded attempts, are freed once decompressed.
+         */
+        @Override
+        public void readChunks(long[] positions, ByteBuffer[] uncompressed)
+        {
+            CompressionMetadata.Chunk[] chunks = new CompressionMetadata.Chunk[positions.length];
+            List<ChannelProxy.ReadRange> ranges = new ArrayList<>(positions.length);
+            for (int i = 0; i < positions.length; i++)
+            {
+                assert (positions[i] & -uncompressed[i].capacity()) == positions[i];
+                assert positions[i] <= fileLength;
+                chunks[i] = metadata.chunkFor(positions[i]);
+                ranges.add(new ChannelProxy.ReadRange(chunks[i].offset, chunks[i].length));
+            }
+
+            try
+            {
+                // vectored reads allocate their own buffers, so concurrent attempts do not interfere
+                ByteBuffer[] compressed = channel.readPolicy().execute(() -> channel.filePath() + " at " + ranges, () ->
+                {
+                    ByteBuffer[] buffers = channel.readVectored(ranges, metadata.compressor().preferredBufferType());
+                    for (int i = 0; i < positions.length; i++)
+                    {
+                        if (buffers[i].remaining() != chunks[i].length)
+                        {
+                            ChannelProxy.cleanVectored(buffers);
+                            throw new CorruptBlockException(channel.filePath(), chunks[i]);
+                        }
+                    }
+                    return buffers;
+                }, channel::reopenInputStream, ChannelProxy::cleanVectored);
+
+                try
+                {
+                    for (int i = 0; i < positions.length; i++)
+                        uncompress(chunks[i], compressed[i], uncompressed[i]);
+                }
+                finally
+                {
+                    ChannelProxy.cleanVectored(compressed);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new CorruptSSTableException(e, channel.filePath());
+            }
+        }
+
+    }
+
+    /**
+     * Reads the compressed chunks of a local file from its memory mappings, without copying them.
+     */
+    public static class Mmap extends CompressedChunkReader
+    {
+        protected final MmappedRegions regions;
+
+        public Mmap(ChannelProxy channel, CompressionMetadata metadata, MmappedRegions regions)
+        {
+            super(channel, metadata);
+            this.regions = regions;
+        }
+
+        @Override
+        public void readChunk(long position, ByteBuffer uncompressed)
+        {
+            try
+            {
+                // accesses must always be aligned
+                assert (position & -uncompressed.capacity()) == position;
+                assert position <= fileLength;
+
+                CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+                MmappedRegions.Region region = regions.floor(chunk.offset);
+                int chunkOffset = Ints.checkedCast(chunk.offset - region.offset());
+                if (chunkOffset + chunk.length > region.end() - region.offset())
+                    throw new CorruptBlockException(channel.filePath(), chunk);
+
+                ByteBuffer compressedChunk = region.buffer();
+                compressedChunk.position(chunkOffset).limit(chunkOffset + chunk.length);
+                uncompress(chunk, compressedChunk, uncompressed);
+            }
             catch (CorruptBlockException e)
             {
                 throw new CorruptSSTableException(e, channel.filePath());
             }
         }
+
+        @Override
+        public void close()
+        {
+            try
+            {
+                regions.close();
+            }
+            finally
+            {
+                super.close();
+            }
+        }
+    }
+
+    protected void uncompress(CompressionMetadata.Chunk chunk, ByteBuffer compressed, ByteBuffer uncompressed)
+    throws CorruptBlockException
+    {
+        uncompressed.clear();
+        try
+        {
+            metadata.compressor().uncompress(compressed, uncompressed);
+        }
+        catch (IOException e)
+        {
+            throw new CorruptBlockException(channel.filePath(), chunk, e);
+        }
+        finally
+        {
+            uncompressed.flip();
+        }
     }
 
 
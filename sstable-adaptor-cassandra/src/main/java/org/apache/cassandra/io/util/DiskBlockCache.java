@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of blocks of remote files on a local disk, typically an SSD, so that jobs re-reading the same
+ * sstables on one host are served locally after the first run.
+ *
+ * Remote files are cut into fixed-size blocks, each stored in a file of its own named after the path, length and
+ * modification time of the remote file: a file that is rewritten gets new blocks, and the stale ones age out.
+ * Blocks are written to a temporary file that is atomically renamed into place, so several processes can share the
+ * cache directory. Temporary files are only deleted at startup once older than {@link #STALE_TMP_MILLIS}, as they
+ * may be the writes in progress of other processes. The total size of the blocks is bounded, least recently used blocks being deleted first. Recency
+ * is tracked in memory and seeded with the write time of the blocks found at startup, and the bound is enforced by
+ * each process independently.
+ *
+ * Opt-in with {@link #DISK_CACHE_DIR_KEY}, see {@link #instance(Configuration)}. Thread-safe.
+ */
+public final class DiskBlockCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(DiskBlockCache.class);
+
+    /**
+     * Hadoop configuration key holding the local directory of the cache, the cache is disabled if not set.
+     */
+    public static final String DISK_CACHE_DIR_KEY = "sstable.adaptor.diskcache.dir";
+
+    /**
+     * Hadoop configuration key holding the size limit of the cache, in MiB.
+     */
+    public static final String DISK_CACHE_SIZE_MB_KEY = "sstable.adaptor.diskcache.size.mb";
+    public static final long DEFAULT_DISK_CACHE_SIZE_MB = 10 * 1024;
+
+    /**
+     * Hadoop configuration key holding the size of the cached blocks, in KiB.
+     */
+    public static final String DISK_CACHE_BLOCK_SIZE_KB_KEY = "sstable.adaptor.diskcache.block.kb";
+    public static final int DEFAULT_DISK_CACHE_BLOCK_SIZE_KB = 1024;
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Age after which a temporary file is assumed to be left by a process that died while writing it.
+     */
+    static final long STALE_TMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final ConcurrentMap<File, DiskBlockCache> instances = new ConcurrentHashMap<>();
+
+    /**
+     * Reads bytes of the remote file.
+     */
+    public interface BlockSource
+    {
+        int read(long position, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final File directory;
+    private final long capacity;
+    private final int blockSize;
+
+    // block files by recency, least recently used first, with their sizes
+    private final LinkedHashMap<File, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private final ConcurrentMap<File, CompletableFuture<byte[]>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private DiskBlockCache(File directory, long capacity, int blockSize)
+    {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.blockSize = blockSize;
+        load();
+    }
+
+    /**
+     * @return the cache of the directory configured in {@code conf}, or null if the disk cache is disabled. The size
+     * settings of the first configuration that uses a directory apply to it for the lifetime of the process.
+     */
+    public static DiskBlockCache instance(Configuration conf)
+    {
+        String dir = conf == null ? null : conf.getTrimmed(DISK_CACHE_DIR_KEY);
+        if (dir == null || dir.isEmpty())
+            return null;
+
+        return instances.computeIfAbsent(new File(dir).getAbsoluteFile(), directory ->
+            new DiskBlockCache(directory,
+                               conf.getLong(DISK_CACHE_SIZE_MB_KEY, DEFAULT_DISK_CACHE_SIZE_MB) * 1024 * 1024,
+                               conf.getInt(DISK_CACHE_BLOCK_SIZE_KB_KEY, DEFAULT_DISK_CACHE_BLOCK_SIZE_KB) * 1024));
+    }
+
+    /**
+     * @return the key of a version of a remote file
+     */
+    public static String fileKey(String path, long length, long modificationTime)
+    {
+        return Hashing.sha1().hashString(path + '|' + length + '|' + modificationTime, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Read from the given position of the file into the remaining space of the buffer, like
+     * {@link ChannelProxy#read(ByteBuffer, long)}, from the local copies of its blocks. Missing blocks are read whole
+     * from {@code source} and stored.
+     */
+    public int read(String fileKey, long fileLength, ByteBuffer buffer, long position, BlockSource source)
+    throws IOException
+    {
+        int readBytes = 0;
+        while (buffer.hasRemaining() && position + readBytes < fileLength)
+        {
+            long current = position + readBytes;
+            long blockIndex = current / blockSize;
+            long blockStart = blockIndex * blockSize;
+            int blockLength = (int) Math.min(blockSize, fileLength - blockStart);
+            int offsetInBlock = (int) (current - blockStart);
+            File file = blockFile(fileKey, blockIndex);
+
+            int n = readLocal(file, blockLength, buffer, offsetInBlock);
+            if (n < 0)
+            {
+                byte[] block = loadBlock(file, blockStart, blockLength, source);
+                n = Math.min(buffer.remaining(), blockLength - offsetInBlock);
+                buffer.put(block, offsetInBlock, n);
+            }
+            readBytes += n;
+        }
+        return readBytes;
+    }
+
+    public long hits()
+    {
+        return hits.get();
+    }
+
+    public long misses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the total size of the cached blocks, in bytes
+     */
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    private File blockFile(String fileKey, long blockIndex)
+    {
+        // spread the blocks over sub-directories so that none grows too large
+        return new File(new File(directory, fileKey.substring(0, 2)), fileKey + '-' + blockSize + '-' + blockIndex);
+    }
+
+    /**
+     * @return the number of bytes read from the local copy of the block, or -1 if it is not cached
+     */
+    private int readLocal(File file, int blockLength, ByteBuffer buffer, int offsetInBlock) throws IOException
+    {
+        int limit = buffer.limit();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() != blockLength)
+            {
+                logger.warn("Discarding cached block {} of unexpected size {}, expected {}", file, channel.size(), blockLength);
+                remove(file);
+                return -1;
+            }
+
+            buffer.limit(buffer.position() + Math.min(buffer.remaining(), blockLength - offsetInBlock));
+            int readBytes = 0;
+            while (buffer.hasRemaining())
+            {
+                int n = channel.read(buffer, offsetInBlock + readBytes);
+                if (n < 0)
+                    break;
+                readBytes += n;
+            }
+            hits.incrementAndGet();
+            touch(file, blockLength);
+            return readBytes;
+        }
+        catch (NoSuchFileException e)
+        {
+            return -1;
+        }
+        finally
+        {
+            buffer.limit(limit);
+        }
+    }
+
+    /**
+     * Fetch a block from the source and store it. Concurrent readers of the same missing block wait for a single fetch.
+     */
+    private byte[] loadBlock(File file, long blockStart, int blockLength, BlockSource source) throws IOException
+    {
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> pending = loading.putIfAbsent(file, mine);
+        if (pending != null)
+        {
+            try
+            {
+                return Uninterruptibles.getUninterruptibly(pending);
+            }
+            catch (ExecutionException e)
+            {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw new IOException(e.getCause());
+            }
+        }
+
+        try
+        {
+            misses.incrementAndGet();
+            byte[] block = new byte[blockLength];
+            int readBytes = 0;
+            while (readBytes < blockLength)
+            {
+                int n = source.read(blockStart + readBytes, block, readBytes, blockLength - readBytes);
+                if (n <= 0)
+                    throw new IOException("Remote file is shorter than expected, read " + readBytes + " bytes of block at " + blockStart);
+                readBytes += n;
+            }
+            store(file, block);
+            mine.complete(block);
+            return block;
+        }
+        catch (IOException | RuntimeException | Error e)
+        {
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            loading.remove(file, mine);
+        }
+    }
+
+    private void store(File file, byte[] block)
+    {
+        File tmp = new File(file.getPath() + '.' + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE) + TMP_SUFFIX);
+        try
+        {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(tmp.toPath(), block);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            touch(file, block.length);
+        }
+        catch (IOException e)
+        {
+            // the block is still served from memory, the next read will try again
+            logger.warn("Failed caching block {}: {}", file, e.getMessage());
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Record a use of a block, and evict the least recently used blocks if the cache grew too large.
+     */
+    private void touch(File file, long length)
+    {
+        List<File> evicted = new ArrayList<>();
+        synchronized (this)
+        {
+            Long previous = entries.put(file, length);
+            if (previous != null)
+                return;
+
+            size += length;
+            Iterator<Map.Entry<File, Long>> iter = entries.entrySet().iterator();
+            while (size > capacity && iter.hasNext())
+            {
+                Map.Entry<File, Long> eldest = iter.next();
+                size -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iter.remove();
+            }
+        }
+
+        for (File block : evicted)
+            block.delete();
+    }
+
+    private void remove(File file)
+    {
+        synchronized (this)
+        {
+            Long length = entries.remove(file);
+            if (length != null)
+                size -= length;
+        }
+        file.delete();
+    }
+
+    /**
+     * Pick up the blocks left by previous processes, oldest first, and delete their stale temporary files.
+     */
+    private void load()
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalArgumentException("Cannot create the disk cache directory " + directory);
+
+        List<File> blocks = new ArrayList<>();
+        long staleBefore = System.currentTimeMillis() - STALE_TMP_MILLIS;
+        try (Stream<Path> files = Files.walk(directory.toPath(), 2))
+        {
+            files.map(Path::toFile).filter(File::isFile).forEach(file ->
+            {
+                if (!file.getName().endsWith(TMP_SUFFIX))
+                    blocks.add(file);
+                else if (file.lastModified() < staleBefore)
+                    file.delete();
+            });
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed listing the disk cache directory {}: {}", directory, e.getMessage());
+        }
+
+        blocks.sort(Comparator.comparingLong(File::lastModified));
+        for (File block : blocks)
+            touch(block, block.length());
+        logger.info("Disk cache {} holds {} blocks, {} bytes", directory, entries.size(), size);
+    }
+}
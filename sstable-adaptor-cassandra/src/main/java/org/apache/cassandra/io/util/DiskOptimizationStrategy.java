@@ -27,6 +27,7 @@ public interface DiskOptimizationStrategy
     // NOTE: this size is chosen both for historical consistency, as a reasonable upper bound,
     //       and because our BufferPool currently has a maximum allocation size of this.
     int MAX_BUFFER_SIZE = 1 << 16; // 64k
+    int MIN_BUFFER_SIZE = 1 << 12; // 4k
 
     /**
      * @param recordSize record size
@@ -45,4 +46,27 @@ public interface DiskOptimizationStrategy
         size = (size + 4095) & ~4095;
         return (int)Math.min(size, MAX_BUFFER_SIZE);
     }
+
+    /**
+     * Round either up or down to the next power of two, which is required by the
+     * {@link org.apache.cassandra.cache.ChunkCache.CachingRebufferer}, but capping between {@link #MIN_BUFFER_SIZE}
+     * and {@link #MAX_BUFFER_SIZE}.
+     *
+     * @param size - the size to round to a power of two, normally this is a buffer size that was previously
+     *             returned by a {@link #bufferSize(long)}.
+     * @param roundUp - whether to round up or down
+     *
+     * @return a value rounded to a power of two but never bigger than {@link #MAX_BUFFER_SIZE} or smaller than {@link #MIN_BUFFER_SIZE}.
+     */
+    static int roundForCaching(int size, boolean roundUp)
+    {
+        if (size <= MIN_BUFFER_SIZE)
+            return MIN_BUFFER_SIZE;
+
+        int ret = Integer.highestOneBit(size);
+        if (!roundUp || ret == size)
+            return ret;
+
+        return Math.min(MAX_BUFFER_SIZE, ret << 1);
+    }
 }
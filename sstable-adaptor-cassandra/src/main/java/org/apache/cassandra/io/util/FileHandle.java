@@ -20,6 +20,7 @@ package org.apache.cassandra.io.util;
 import com.google.common.util.concurrent.RateLimiter;
 import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.compress.BufferType;
 import org.apache.cassandra.io.compress.CompressionMetadata;
 import org.apache.cassandra.utils.concurrent.Ref;
@@ -50,6 +51,16 @@ public class FileHandle extends SharedCloseableImpl
 {
     private static final Logger logger = LoggerFactory.getLogger(FileHandle.class);
 
+    /**
+     * Hadoop configuration key holding the {@link Config.DiskAccessMode} used for local sstables, overriding
+     * {@link DatabaseDescriptor#getDiskAccessMode()}. {@code mmap} maps both Data.db and Index.db, {@code mmap_index_only}
+     * only Index.db; {@code standard} and {@code auto} read them with positional reads.
+     */
+    public static final String DISK_ACCESS_MODE_KEY = "sstable.adaptor.disk.access.mode";
+
+    // minimum number of chunks read ahead by readers given the positions they will read
+    private static final int PLANNED_READ_AHEAD_CHUNKS = 16;
+
     public final ChannelProxy channel;
 
     public final long onDiskLength;
@@ -91,6 +102,16 @@ public class FileHandle extends SharedCloseableImpl
         this.conf = copy.conf;
     }
 
+    /**
+     * @param conf configuration of the reader
+     * @return the disk access mode to use for the files of the reader
+     */
+    public static Config.DiskAccessMode diskAccessMode(Configuration conf)
+    {
+        String mode = conf == null ? null : conf.getTrimmed(DISK_ACCESS_MODE_KEY);
+        return mode == null ? DatabaseDescriptor.getDiskAccessMode() : Config.DiskAccessMode.valueOf(mode);
+    }
+
     /**
      * @return Path to the file this factory is referencing
      */
@@ -156,6 +177,28 @@ public class FileHandle extends SharedCloseableImpl
         return reader;
     }
 
+    /**
+     * Create a reader positioned at the first of the given positions, that reads the chunks holding all of them
+     * ahead in the background, see {@link PrefetchingRebufferer}. Memory mapped and cached files are read as usual.
+     *
+     * @param positions positions that will be read, in increasing order
+     * @return reader for the file
+     */
+    public FileDataInput createPrefetchingReader(long[] positions)
+    {
+        ChunkReader source = rebuffererFactory instanceof PrefetchingRebufferer.Factory
+                             ? ((PrefetchingRebufferer.Factory) rebuffererFactory).source
+                             : rebuffererFactory instanceof ChunkReader ? (ChunkReader) rebuffererFactory : null;
+        if (source == null || positions.length < 2)
+            return createReader(positions.length == 0 ? 0 : positions[0]);
+
+        int window = Math.max(PLANNED_READ_AHEAD_CHUNKS,
+                              conf == null ? 0 : conf.getInt(PrefetchingRebufferer.READ_AHEAD_CHUNKS_KEY, 0));
+        RandomAccessReader reader = new RandomAccessReader(new PrefetchingRebufferer(source, window, positions), conf);
+        reader.seek(positions[0]);
+        return reader;
+    }
+
     private Rebufferer instantiateRebufferer(RateLimiter limiter)
     {
         Rebufferer rebufferer = rebuffererFactory.instantiateRebufferer();
@@ -230,9 +273,11 @@ public class FileHandle extends SharedCloseableImpl
         private BufferType bufferType = BufferType.ON_HEAP;
         private DiskOptimizationStrategy optimizationStrategy;
         private int indexSummarySize;
+        private int readAheadChunks;
         private Configuration conf;
 
         private boolean compressed = false;
+        private boolean mmapped = false;
 
         public Builder(String path)
         {
@@ -245,6 +290,19 @@ public class FileHandle extends SharedCloseableImpl
             return this;
         }
 
+        /**
+         * Map the file into memory rather than reading it into buffers. Only applies to local files read with
+         * native I/O (see {@link ChannelProxy#isLocal()}), other files are read as usual.
+         *
+         * @param mmapped true if the file should be memory mapped
+         * @return this object
+         */
+        public Builder mmapped(boolean mmapped)
+        {
+            this.mmapped = mmapped;
+            return this;
+        }
+
         /**
          * Set {@link ChunkCache} to use.
          *
@@ -279,6 +337,20 @@ public class FileHandle extends SharedCloseableImpl
             return this;
         }
 
+        /**
+         * Read the given number of chunks ahead of sequential readers in the background,
+         * see {@link PrefetchingRebufferer}. 0 disables read-ahead. Ignored when a {@link ChunkCache} is in use,
+         * as chunks are then shared between the readers of the file.
+         *
+         * @param readAheadChunks number of chunks to keep in flight
+         * @return this object
+         */
+        public Builder withReadAhead(int readAheadChunks)
+        {
+            this.readAheadChunks = readAheadChunks;
+            return this;
+        }
+
         /**
          * Provide {@link CompressionMetadata} to use when reading compressed file.
          *
@@ -358,13 +430,29 @@ public class FileHandle extends SharedCloseableImpl
 
                 RebuffererFactory rebuffererFactory;
 
+                boolean mapped = mmapped && channelCopy.isLocal();
                 if (compressed)
                 {
-                    rebuffererFactory = maybeCached(new CompressedChunkReader.Standard(channelCopy, compressionMetadata));
+                    if (mapped && compressionMetadata.compressor().supports(BufferType.OFF_HEAP))
+                    {
+                        MmappedRegions regions = MmappedRegions.map(channelCopy, compressionMetadata);
+                        rebuffererFactory = maybeCached(new CompressedChunkReader.Mmap(channelCopy, compressionMetadata, regions));
+                    }
+                    else
+                    {
+                        rebuffererFactory = maybeCached(new CompressedChunkReader.Standard(channelCopy, compressionMetadata));
+                    }
+                }
+                else if (mapped)
+                {
+                    rebuffererFactory = new MmapRebufferer(channelCopy, length, MmappedRegions.map(channelCopy, length));
                 }
                 else
                 {
-                    rebuffererFactory = maybeCached(new SimpleChunkReader(channelCopy, length, bufferType, bufferSize));
+                    int chunkSize = chunkCache != null
+                                    ? DiskOptimizationStrategy.roundForCaching(bufferSize, ChunkCache.roundUp)
+                                    : bufferSize;
+                    rebuffererFactory = maybeCached(new SimpleChunkReader(channelCopy, length, bufferType, chunkSize));
                 }
 
                 Cleanup cleanup = new Cleanup(channelCopy, rebuffererFactory, compressionMetadata, chunkCache);
@@ -389,8 +477,10 @@ public class FileHandle extends SharedCloseableImpl
 
         private RebuffererFactory maybeCached(ChunkReader reader)
         {
-            //if (chunkCache != null && chunkCache.capacity() > 0)
-            //    return chunkCache.wrap(reader);
+            if (chunkCache != null && chunkCache.capacity() > 0)
+                return chunkCache.wrap(reader);
+            if (readAheadChunks > 0)
+                return new PrefetchingRebufferer.Factory(reader, readAheadChunks);
             return reader;
         }
 
@@ -344,6 +344,16 @@ public final class FileUtils
         }
     }
 
+    /**
+     * @return the buffer that a direct buffer is a duplicate or slice of, whose cleaning frees their memory, or the
+     *         buffer itself
+     */
+    public static ByteBuffer viewedBuffer(ByteBuffer buffer)
+    {
+        Object viewed = buffer.isDirect() ? ((DirectBuffer) buffer).attachment() : null;
+        return viewed instanceof ByteBuffer ? (ByteBuffer) viewed : buffer;
+    }
+
     public static void createDirectory(String directory)
     {
         createDirectory(new File(directory));
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.DebuggableScheduledThreadPoolExecutor;
+
+/**
+ * A bounded pool of input streams over the same file, so that concurrent positional reads each get a stream of
+ * their own instead of queueing on the lock of a single one.
+ *
+ * Streams are opened on demand up to {@code maxSize}, beyond which borrowers wait for one to be released. Released
+ * streams are reused most recently used first, so that a lightly loaded pool keeps reusing the same warm streams
+ * while the others go idle and are closed after {@code idleMillis}.
+ *
+ * Thread-safe.
+ */
+final class InputStreamPool implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(InputStreamPool.class);
+
+    private static final DebuggableScheduledThreadPoolExecutor evictor;
+    static
+    {
+        evictor = new DebuggableScheduledThreadPoolExecutor("InputStreamPoolEviction");
+        evictor.setRemoveOnCancelPolicy(true);
+    }
+
+    interface Opener
+    {
+        FSDataInputStream open() throws IOException;
+    }
+
+    private final String name;
+    private final Opener opener;
+    private final int maxSize;
+    private final long idleNanos;
+    private final ScheduledFuture<?> eviction;
+
+    // released streams, most recently used first
+    private final ArrayDeque<Idle> idle = new ArrayDeque<>();
+    // borrowed or idle streams, including the ones being opened
+    private int open = 0;
+    private boolean closed = false;
+
+    InputStreamPool(String name, Opener opener, int maxSize, long idleMillis)
+    {
+        assert maxSize > 0 && idleMillis > 0;
+        this.name = name;
+        this.opener = opener;
+        this.maxSize = maxSize;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.eviction = evictor.scheduleWithFixedDelay(this::evictIdle, idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a stream for the exclusive use of the caller, who must hand it back with either {@link #release} or,
+     * if it failed, {@link #discard}.
+     */
+    FSDataInputStream borrow() throws IOException
+    {
+        synchronized (this)
+        {
+            while (true)
+            {
+                if (closed)
+                    throw new IOException("Input stream pool is closed: " + name);
+
+                Idle reusable = idle.pollFirst();
+                if (reusable != null)
+                    return reusable.stream;
+
+                if (open < maxSize)
+                {
+                    open++;
+                    break;
+                }
+
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for an input stream of " + name);
+                }
+            }
+        }
+
+        // opening a remote stream can take a round trip, don't hold the lock meanwhile
+        boolean opened = false;
+        try
+        {
+            FSDataInputStream stream = opener.open();
+            opened = true;
+            return stream;
+        }
+        finally
+        {
+            if (!opened)
+                forget();
+        }
+    }
+
+    /**
+     * Hand back a stream that is in a good state.
+     */
+    void release(FSDataInputStream stream)
+    {
+        synchronized (this)
+        {
+            if (!closed)
+            {
+                idle.addFirst(new Idle(stream, System.nanoTime()));
+                notify();
+                return;
+            }
+            open--;
+        }
+        closeQuietly(stream);
+    }
+
+    /**
+     * Hand back a stream that failed, it is closed and replaced by a fresh one on demand.
+     */
+    void discard(FSDataInputStream stream)
+    {
+        closeQuietly(stream);
+        forget();
+    }
+
+    /**
+     * Close the streams that have not been used for the idle timeout.
+     */
+    void evictIdle()
+    {
+        evict(false);
+    }
+
+    /**
+     * Close all the idle streams, e.g. once the file is suspected to have been replaced.
+     */
+    void evictAll()
+    {
+        evict(true);
+    }
+
+    private void evict(boolean all)
+    {
+        List<FSDataInputStream> evicted = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (this)
+        {
+            // the least recently used streams are at the tail
+            Iterator<Idle> iter = idle.descendingIterator();
+            while (iter.hasNext())
+            {
+                Idle next = iter.next();
+                if (!all && now - next.releasedAt < idleNanos)
+                    break;
+                iter.remove();
+                evicted.add(next.stream);
+            }
+            open -= evicted.size();
+        }
+
+        if (!evicted.isEmpty())
+            logger.debug("Closing {} idle input streams of {}", evicted.size(), name);
+        for (FSDataInputStream stream : evicted)
+            closeQuietly(stream);
+    }
+
+    /**
+     * @return the number of streams currently open, borrowed or idle
+     */
+    synchronized int size()
+    {
+        return open;
+    }
+
+    public void close()
+    {
+        eviction.cancel(false);
+        List<FSDataInputStream> remaining = new ArrayList<>();
+        synchronized (this)
+        {
+            closed = true;
+            for (Idle next : idle)
+                remaining.add(next.stream);
+            idle.clear();
+            open -= remaining.size();
+            notifyAll();
+        }
+
+        for (FSDataInputStream stream : remaining)
+            closeQuietly(stream);
+    }
+
+    private synchronized void forget()
+    {
+        open--;
+        notify();
+    }
+
+    private void closeQuietly(FSDataInputStream stream)
+    {
+        try
+        {
+            stream.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed closing an input stream of {}: {}", name, e.getMessage());
+        }
+    }
+
+    private static final class Idle
+    {
+        final FSDataInputStream stream;
+        final long releasedAt;
+
+        Idle(FSDataInputStream stream, long releasedAt)
+        {
+            this.stream = stream;
+            this.releasedAt = releasedAt;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.io.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.io.compress.CompressionMetadata;
+
+/**
+ * Read-only memory mappings of a local file, split in segments of at most {@link #MAX_SEGMENT_SIZE} bytes since a
+ * {@link java.nio.MappedByteBuffer} cannot be larger than 2GB. For compressed files, segments end on chunk
+ * boundaries so that every compressed chunk can be read from a single segment.
+ *
+ * The mappings are released by {@link #close()}, which must only be called once no reader uses them anymore.
+ */
+public class MmappedRegions implements AutoCloseable
+{
+    /** In a perfect world, MAX_SEGMENT_SIZE would be final, but we need to test with a smaller size */
+    public static int MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final long[] offsets;
+    private final ByteBuffer[] buffers;
+
+    private MmappedRegions(long[] offsets, ByteBuffer[] buffers)
+    {
+        this.offsets = offsets;
+        this.buffers = buffers;
+    }
+
+    /**
+     * Map the first {@code length} bytes of an uncompressed file.
+     */
+    public static MmappedRegions map(ChannelProxy channel, long length)
+    {
+        List<Long> boundaries = new ArrayList<>();
+        for (long offset = 0; offset < length; offset += MAX_SEGMENT_SIZE)
+            boundaries.add(offset);
+        boundaries.add(length);
+        return map(channel, boundaries);
+    }
+
+    /**
+     * Map a compressed file, without splitting any of its chunks (and their checksums) between two segments.
+     */
+    public static MmappedRegions map(ChannelProxy channel, CompressionMetadata metadata)
+    {
+        List<Long> boundaries = new ArrayList<>();
+        long segmentStart = 0;
+        boundaries.add(segmentStart);
+        for (long position = 0; position < metadata.dataLength; position += metadata.chunkLength())
+        {
+            CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+            if (chunk.offset + chunk.length + Integer.BYTES - segmentStart > MAX_SEGMENT_SIZE)
+            {
+                segmentStart = chunk.offset;
+                boundaries.add(segmentStart);
+            }
+        }
+        boundaries.add(metadata.compressedFileLength);
+        return map(channel, boundaries);
+    }
+
+    private static MmappedRegions map(ChannelProxy channel, List<Long> boundaries)
+    {
+        int count = Math.max(0, boundaries.size() - 1);
+        long[] offsets = new long[count];
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                offsets[i] = boundaries.get(i);
+                buffers[i] = channel.map(offsets[i], boundaries.get(i + 1) - offsets[i]);
+            }
+        }
+        catch (Throwable t)
+        {
+            for (ByteBuffer buffer : buffers)
+                FileUtils.clean(buffer);
+            throw t;
+        }
+        return new MmappedRegions(offsets, buffers);
+    }
+
+    /**
+     * @return the region containing the given position, or an empty region if the position is past the end of the
+     *         mapped file
+     */
+    public Region floor(long position)
+    {
+        assert position >= 0 : "position must be non-negative: " + position;
+        int idx = Arrays.binarySearch(offsets, position);
+        if (idx < 0)
+            idx = -(idx + 2);
+
+        if (idx < 0 || position >= offsets[idx] + buffers[idx].capacity())
+            return new Region(position, ByteBuffer.allocate(0));
+
+        return new Region(offsets[idx], buffers[idx]);
+    }
+
+    @Override
+    public void close()
+    {
+        for (int i = 0; i < buffers.length; i++)
+        {
+            FileUtils.clean(buffers[i]);
+            buffers[i] = null;
+        }
+    }
+
+    public static final class Region implements Rebufferer.BufferHolder
+    {
+        private final long offset;
+        private final ByteBuffer buffer;
+
+        public Region(long offset, ByteBuffer buffer)
+        {
+            this.offset = offset;
+            this.buffer = buffer;
+        }
+
+        public ByteBuffer buffer()
+        {
+            return buffer.duplicate();
+        }
+
+        public long offset()
+        {
+            return offset;
+        }
+
+        public long end()
+        {
+            return offset + buffer.capacity();
+        }
+
+        public void release()
+        {
+            // only released after no readers are present
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.Config;
+
+/**
+ * Rebufferer that reads ahead of a sequential consumer. Once two consecutive chunks have been requested, up to
+ * {@code window} following chunks are read (and decompressed, for compressed files) by a shared background pool
+ * while the reader is busy with the current one, and are handed out in file order. Chunks are requested in batches
+ * so that remote sources can fetch them with few large reads.
+ *
+ * Random access (point lookups, seeks backwards) drops the outstanding chunks and falls back to a synchronous
+ * read of the requested chunk, so readers that never scan pay nothing for the read-ahead.
+ *
+ * Readers that know in advance where they will go, e.g. to a batch of partitions, can instead give a plan of
+ * positions: the chunks holding them are read ahead in plan order, whatever the access pattern, and reads outside of
+ * the plan are synchronous but keep the planned chunks that follow them.
+ *
+ * Instantiated once per RandomAccessReader, thread-unsafe. The chunk reader it wraps must be thread-safe, which
+ * is already a requirement of {@link ChunkReader}.
+ * The instances reuse themselves as the BufferHolder to avoid having to return a new object for each rebuffer call.
+ */
+public class PrefetchingRebufferer implements Rebufferer, Rebufferer.BufferHolder
+{
+    /**
+     * Hadoop configuration key holding the number of chunks to read ahead of sequential readers of Data.db,
+     * 0 (the default) disables read-ahead.
+     */
+    public static final String READ_AHEAD_CHUNKS_KEY = "sstable.adaptor.readahead.chunks";
+
+    private static final int READ_AHEAD_THREADS =
+        Integer.getInteger(Config.PROPERTY_PREFIX + "read_ahead_threads",
+                           Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    // remote reads are latency bound rather than CPU bound, hence more threads than cores by default.
+    // Threads are only started on demand and die off when idle.
+    private static final ThreadPoolExecutor executor;
+    static
+    {
+        executor = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS,
+                                          60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<>(),
+                                          new NamedThreadFactory("ReadAhead"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private final ChunkReader source;
+    private final int window;
+    private final int chunkSize;
+
+    // chunk-aligned positions to read ahead, in increasing order, and the index of the next one to schedule
+    private final long[] plan;
+    private int planned = 0;
+
+    // chunks being read in the background, in file order
+    private final ArrayDeque<Prefetch> inFlight = new ArrayDeque<>();
+    // completed buffers that can be reused for new reads
+    private final ArrayDeque<ByteBuffer> spare = new ArrayDeque<>();
+
+    private ByteBuffer buffer;
+    private long offset = 0;
+
+    public PrefetchingRebufferer(ChunkReader source, int window)
+    {
+        this(source, window, null);
+    }
+
+    /**
+     * @param plan positions that will be read, in increasing order, or null to read ahead of sequential reads
+     */
+    public PrefetchingRebufferer(ChunkReader source, int window, long[] plan)
+    {
+        assert window > 0;
+        this.source = source;
+        this.window = window;
+        this.chunkSize = source.chunkSize();
+        this.plan = plan == null ? null : alignedPositions(plan);
+        this.buffer = allocate();
+        buffer.limit(0);
+    }
+
+    @Override
+    public BufferHolder rebuffer(long position)
+    {
+        long aligned = alignedPosition(position);
+        boolean sequential = buffer != null && buffer.limit() > 0 && aligned == offset + chunkSize;
+
+        if (buffer != null)
+            spare.add(buffer);
+        buffer = null;
+
+        // a reader skipping forward within the window (e.g. a scanner jumping over a partition) can still use
+        // what comes after the skipped chunks
+        while (!inFlight.isEmpty() && inFlight.peek().offset < aligned)
+            drop(inFlight.poll());
+
+        if (plan != null)
+            schedule(aligned);
+
+        Prefetch next = inFlight.peek();
+        if (next != null && next.offset == aligned)
+        {
+            inFlight.poll();
+            buffer = next.await();
+        }
+        else
+        {
+            if (plan == null)
+                dropPrefetched();
+            buffer = takeSpare();
+            source.readChunk(aligned, buffer);
+        }
+        offset = aligned;
+
+        if (sequential || !inFlight.isEmpty())
+            schedule(aligned + chunkSize);
+
+        return this;
+    }
+
+    /**
+     * Top up the read-ahead window, starting from {@code from} or after the last chunk already in flight, with the
+     * following chunks or, given a plan, with the next planned ones.
+     * The window is refilled in batches once half of it has been consumed, and each batch is read with a single
+     * {@link ChunkReader#readChunks} call so that the source can coalesce neighbouring chunks into few requests.
+     */
+    private void schedule(long from)
+    {
+        if (inFlight.size() > window / 2)
+            return;
+
+        long next = inFlight.isEmpty() ? from : inFlight.peekLast().offset + chunkSize;
+        long[] positions = plan != null ? nextPlanned(next) : nextChunks(next);
+        if (positions.length == 0)
+            return;
+
+        int count = positions.length;
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++)
+            buffers[i] = takeSpare();
+
+        Future<?> batch = executor.submit(() -> source.readChunks(positions, buffers));
+        for (int i = 0; i < count; i++)
+            inFlight.add(new Prefetch(positions[i], buffers[i], batch));
+    }
+
+    private long[] nextChunks(long next)
+    {
+        long length = source.fileLength();
+        if (next >= length)
+            return new long[0];
+
+        int count = (int) Math.min(window - inFlight.size(), (length - next + chunkSize - 1) / chunkSize);
+        long[] positions = new long[count];
+        for (int i = 0; i < count; i++)
+            positions[i] = next + (long) i * chunkSize;
+        return positions;
+    }
+
+    private long[] nextPlanned(long next)
+    {
+        while (planned < plan.length && plan[planned] < next)
+            planned++;
+
+        int count = Math.min(window - inFlight.size(), plan.length - planned);
+        long[] positions = Arrays.copyOfRange(plan, planned, planned + count);
+        planned += count;
+        return positions;
+    }
+
+    /**
+     * @return the distinct chunks holding the given positions, in increasing order
+     */
+    private long[] alignedPositions(long[] positions)
+    {
+        long length = source.fileLength();
+        return Arrays.stream(positions)
+                     .filter(position -> position < length)
+                     .map(this::alignedPosition)
+                     .distinct()
+                     .toArray();
+    }
+
+    private void dropPrefetched()
+    {
+        Prefetch prefetch;
+        while ((prefetch = inFlight.poll()) != null)
+            drop(prefetch);
+    }
+
+    /**
+     * Forget about a chunk that has been taken off the in-flight queue without being used.
+     */
+    private void drop(Prefetch prefetch)
+    {
+        Prefetch next = inFlight.peek();
+        if (next != null && next.batch == prefetch.batch)
+        {
+            // later chunks of the same batch are still wanted, let it complete
+            if (prefetch.batch.isDone())
+                spare.add(prefetch.buffer);
+            return;
+        }
+
+        // a batch that could not be cancelled has completed and its buffer can be reused; a cancelled one may
+        // still be running, so its buffer is left to the garbage collector.
+        if (!prefetch.batch.cancel(false))
+            spare.add(prefetch.buffer);
+    }
+
+    private long alignedPosition(long position)
+    {
+        return Integer.bitCount(chunkSize) == 1
+               ? position & -chunkSize
+               : position - position % chunkSize;
+    }
+
+    private ByteBuffer takeSpare()
+    {
+        ByteBuffer spareBuffer = spare.poll();
+        return spareBuffer != null ? spareBuffer : allocate();
+    }
+
+    private ByteBuffer allocate()
+    {
+        return source.preferredBufferType().allocate(chunkSize).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Override
+    public void closeReader()
+    {
+        dropPrefetched();
+        FileUtils.clean(buffer);
+        for (ByteBuffer spareBuffer : spare)
+            FileUtils.clean(spareBuffer);
+        spare.clear();
+        buffer = null;
+        offset = -1;
+    }
+
+    @Override
+    public void close()
+    {
+        assert offset == -1;    // reader must be closed at this point.
+        source.close();
+    }
+
+    @Override
+    public ChannelProxy channel()
+    {
+        return source.channel();
+    }
+
+    @Override
+    public long fileLength()
+    {
+        return source.fileLength();
+    }
+
+    @Override
+    public double getCrcCheckChance()
+    {
+        return source.getCrcCheckChance();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PrefetchingRebufferer[" + window + "]:" + source.toString();
+    }
+
+    // BufferHolder methods
+
+    @Override
+    public ByteBuffer buffer()
+    {
+        return buffer;
+    }
+
+    @Override
+    public long offset()
+    {
+        return offset;
+    }
+
+    @Override
+    public void release()
+    {
+        // nothing to do, buffers are recycled on the next rebuffer and freed when the reader is closed.
+    }
+
+    private final class Prefetch
+    {
+        final long offset;
+        final ByteBuffer buffer;
+        final Future<?> batch;
+
+        Prefetch(long offset, ByteBuffer buffer, Future<?> batch)
+        {
+            this.offset = offset;
+            this.buffer = buffer;
+            this.batch = batch;
+        }
+
+        ByteBuffer await()
+        {
+            try
+            {
+                Uninterruptibles.getUninterruptibly(batch);
+                return buffer;
+            }
+            catch (ExecutionException e)
+            {
+                spare.add(buffer);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Factory instantiating a {@link PrefetchingRebufferer} per reader over a shared {@link ChunkReader}.
+     */
+    public static class Factory implements RebuffererFactory
+    {
+        final ChunkReader source;
+        final int window;
+
+        public Factory(ChunkReader source, int window)
+        {
+            this.source = source;
+            this.window = window;
+        }
+
+        @Override
+        public Rebufferer instantiateRebufferer()
+        {
+            return new PrefetchingRebufferer(source, window);
+        }
+
+        @Override
+        public void close()
+        {
+            source.close();
+        }
+
+        @Override
+        public ChannelProxy channel()
+        {
+            return source.channel();
+        }
+
+        @Override
+        public long fileLength()
+        {
+            return source.fileLength();
+        }
+
+        @Override
+        public double getCrcCheckChance()
+        {
+            return source.getCrcCheckChance();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PrefetchingRebufferer.Factory[" + window + "]:" + source.toString();
+        }
+    }
+}
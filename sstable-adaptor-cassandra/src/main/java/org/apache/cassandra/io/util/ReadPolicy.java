@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Decides how reads of sstable components react to failures and to slow responses: how many times and after how
+ * long a failed read is retried, whether a read that takes too long is abandoned, and whether a duplicate of a slow
+ * read is issued so that the first one to complete wins.
+ *
+ * Implementations are selected with {@link #READ_POLICY_CLASS_KEY} and must have a public constructor taking the
+ * Hadoop {@link Configuration}. They are shared by all the files opened with the same read settings, see
+ * {@link ChannelProxy#readPolicy(Configuration)}, so they must be thread-safe. The default is {@link BackoffReadPolicy}.
+ */
+public interface ReadPolicy
+{
+    /**
+     * Prefix of the Hadoop configuration keys of read policies.
+     */
+    String READ_POLICY_KEY_PREFIX = "sstable.adaptor.read.";
+
+    /**
+     * Hadoop configuration key holding the class name of the {@link ReadPolicy} to use.
+     */
+    String READ_POLICY_CLASS_KEY = READ_POLICY_KEY_PREFIX + "policy.class";
+
+    /**
+     * One attempt at a read.
+     */
+    interface Attempt<T>
+    {
+        T run() throws IOException;
+    }
+
+    /**
+     * Perform a read whose results need no disposal, see {@link #execute(Supplier, Attempt, Runnable, Consumer)}.
+     */
+    default <T> T execute(Supplier<String> description, Attempt<T> attempt, Runnable beforeRetry) throws IOException
+    {
+        return execute(description, attempt, beforeRetry, result -> {});
+    }
+
+    /**
+     * Perform a read, attempting it as many times as the policy sees fit.
+     *
+     * @param description what is read, for log and error messages
+     * @param attempt the read; if {@link #concurrentAttempts()} is true, attempts may run at the same time on other
+     *                threads and may be abandoned while still running, so each one must read into memory of its own
+     * @param beforeRetry run between a failed attempt and the next one, e.g. to reopen a broken stream
+     * @param onDiscarded given the result of every successful attempt other than the returned one, e.g. an attempt
+     *                    that lost to its hedge or completed after timing out, so that the memory it holds is freed.
+     *                    It may be called on another thread, and after this method has returned or thrown.
+     * @return the result of the first successful attempt
+     * @throws IOException the failure of the last attempt, if none succeeded. Runtime exceptions thrown by an attempt
+     *                     other than {@link org.apache.cassandra.io.FSReadError} are not retried and are propagated
+     */
+    <T> T execute(Supplier<String> description, Attempt<T> attempt, Runnable beforeRetry,
+                  Consumer<? super T> onDiscarded) throws IOException;
+
+    /**
+     * @return true if the attempts of {@link #execute} may overlap or outlive it, in which case they cannot share
+     * buffers with each other or with the caller
+     */
+    boolean concurrentAttempts();
+}
@@ -19,6 +19,8 @@
 package org.apache.cassandra.io.util;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.cassandra.io.compress.BufferType;
 
@@ -42,6 +44,29 @@ class SimpleChunkReader extends AbstractReaderFileProxy implements ChunkReader
         buffer.flip();
     }
 
+    @Override
+    public void readChunks(long[] positions, ByteBuffer[] buffers)
+    {
+        List<ChannelProxy.ReadRange> ranges = new ArrayList<>(positions.length);
+        for (int i = 0; i < positions.length; i++)
+            ranges.add(new ChannelProxy.ReadRange(positions[i], buffers[i].capacity()));
+
+        ByteBuffer[] read = channel.readVectored(ranges, bufferType);
+        try
+        {
+            for (int i = 0; i < positions.length; i++)
+            {
+                buffers[i].clear();
+                buffers[i].put(read[i]);
+                buffers[i].flip();
+            }
+        }
+        finally
+        {
+            ChannelProxy.cleanVectored(read);
+        }
+    }
+
     @Override
     public int chunkSize()
     {
@@ -155,6 +155,16 @@ public class EstimatedHistogram
         return rv;
     }
 
+    /**
+     * Adds the counts of another histogram, which must have the same bucket offsets, to this one.
+     */
+    public void merge(EstimatedHistogram other)
+    {
+        assert Arrays.equals(bucketOffsets, other.bucketOffsets) : "Cannot merge histograms with different buckets";
+        for (int i = 0; i < other.buckets.length(); i++)
+            buckets.addAndGet(i, other.buckets.get(i));
+    }
+
     /**
      * @return the smallest value that could have been added to this histogram
      */
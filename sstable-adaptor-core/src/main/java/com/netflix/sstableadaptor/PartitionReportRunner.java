@@ -0,0 +1,74 @@
+package com.netflix.sstableadaptor;
+
+
+import com.netflix.sstableadaptor.sstable.SSTablePartitionReport;
+import com.netflix.sstableadaptor.sstable.SSTableSet;
+import com.netflix.sstableadaptor.sstable.SSTableSetOpener;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ *  Prints the largest partitions of the sstables of a directory, the distribution of their sizes
+ *  and the amount of data per token range, from their Index.db only.
+ *
+ *  Usage: PartitionReportRunner directory [number of partitions] [number of token ranges]
+ */
+public class PartitionReportRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionReportRunner.class);
+    public static final int DEFAULT_TOP_K = 20;
+    public static final int DEFAULT_RANGES = 16;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: PartitionReportRunner directory [number of partitions] [number of token ranges]");
+            System.exit(1);
+        }
+
+        final String directory = args[0];
+        final int topK = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TOP_K;
+        final int numRanges = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RANGES;
+        LOGGER.info("Reporting on sstables in: " + directory);
+        final Configuration conf = new Configuration();
+
+        try (SSTableSet sstables = new SSTableSetOpener(conf).openDirectory(directory)) {
+            final SSTablePartitionReport report = SSTablePartitionReport.build(sstables, topK, numRanges, conf);
+
+            System.out.println(report.getPartitionCount() + " partitions, " + report.getTotalBytes() + " bytes");
+            System.out.println();
+            System.out.println("Largest partitions:");
+            for (SSTablePartitionReport.PartitionSize partition : report.getLargestPartitions()) {
+                System.out.println(partition.getSize() + "\t" + partition.getKey().getToken() + "\t"
+                        + ByteBufferUtil.bytesToHex(partition.getKey().getKey()) + "\t" + partition.getFileLocation());
+            }
+
+            System.out.println();
+            System.out.println("Partition sizes:");
+            final long[] offsets = report.getSizeHistogram().getBucketOffsets();
+            final long[] buckets = report.getSizeHistogram().getBuckets(false);
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] > 0) {
+                    System.out.println((i < offsets.length ? "<= " + offsets[i] : "> " + offsets[i - 1])
+                            + "\t" + buckets[i]);
+                }
+            }
+
+            System.out.println();
+            System.out.println("Bytes per token range:");
+            final List<Range<Token>> ranges = report.getRanges();
+            final long[] rangeBytes = report.getRangeBytes();
+            for (int i = 0; i < ranges.size(); i++) {
+                System.out.println(ranges.get(i) + "\t" + rangeBytes[i]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+        }
+    }
+}
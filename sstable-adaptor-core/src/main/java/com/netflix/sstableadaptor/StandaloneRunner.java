@@ -26,6 +26,7 @@ public class StandaloneRunner {
         LOGGER.info("Input file name: " + inputSSTableFullPathFileName);
         Configuration conf = new Configuration();
         final Descriptor inputSSTableDescriptor = Descriptor.fromFilename(inputSSTableFullPathFileName, conf);
+        SSTableReader inputSStable = null;
         SSTableWriter writer = null;
 
         try {
@@ -33,20 +34,27 @@ public class StandaloneRunner {
                     SSTableUtils.metaDataFromSSTable(inputSSTableFullPathFileName, conf);
             final CFMetaData outputCFMetaData = SSTableUtils.createNewCFMetaData(inputSSTableDescriptor, inputCFMetaData);
 
-            final SSTableReader inputSStable = SSTableReader.openNoValidation(inputSSTableDescriptor, inputCFMetaData);
+            inputSStable = SSTableReader.openNoValidation(inputSSTableDescriptor, inputCFMetaData);
             writer = SSTableUtils.createSSTableWriter(inputSSTableDescriptor, outputCFMetaData, inputSStable);
 
-            final ISSTableScanner currentScanner = inputSStable.getScanner();
+            if (writer.canTransfer(inputSStable)) {
+                writer.transfer(inputSStable);
+            } else {
+                final ISSTableScanner currentScanner = inputSStable.getScanner();
 
-            while (currentScanner.hasNext()) {
-                final UnfilteredRowIterator row = currentScanner.next();
-                writer.append(row);
+                while (currentScanner.hasNext()) {
+                    final UnfilteredRowIterator row = currentScanner.next();
+                    writer.append(row);
+                }
             }
             writer.finish(false);
         } catch (IOException e) {
             e.printStackTrace(System.err);
         } finally {
             FileUtils.closeQuietly(writer);
+            if (inputSStable != null) {
+                inputSStable.close();
+            }
         }
 
     }
@@ -0,0 +1,573 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.compaction;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.netflix.sstableadaptor.config.CassandraTable;
+import com.netflix.sstableadaptor.sstable.ParallelSSTableScanner;
+import com.netflix.sstableadaptor.sstable.PartitionMemoryBudget;
+import com.netflix.sstableadaptor.sstable.SSTableIterator;
+import com.netflix.sstableadaptor.sstable.SSTableSet;
+import com.netflix.sstableadaptor.sstable.SSTableSingleReader;
+import com.netflix.sstableadaptor.sstable.SSTableSplitPlanner;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.partitions.ImmutableBTreePartition;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.compress.CompressedSequentialWriter;
+import org.apache.cassandra.io.sstable.SSTableTxnWriter;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.big.BigFormat;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.HadoopFileUtils;
+import org.apache.cassandra.schema.TableParams;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Compacts the sstables of a table offline, with several threads.
+ *
+ *  The token ring is split into ranges holding about the same amount of input data, with
+ *  {@link SSTableSplitPlanner}. Each range is merged on its own thread by an {@link SSTableIterator}
+ *  over scanners restricted to it, and written to its own output sstable. As the ranges do not
+ *  overlap, the output sstables do not either, and together hold the same data as a single-threaded
+ *  compaction would.
+ *
+ *  The output sstables are committed together once all ranges are merged: if any range fails,
+ *  none of them is kept.
+ *
+ *  With {@link #QUEUE_PARTITIONS_KEY} set, each range runs as a pipeline: every input sstable is decoded
+ *  on a thread of its own, the merge runs on the range thread, and the merged partitions are serialized
+ *  and written on another thread, the stages exchanging partitions read whole into memory through bounded
+ *  queues. The queues of all the ranges share a budget on the size of the data they hold, {@link #QUEUE_MB_KEY},
+ *  so that wide partitions cannot take an unbounded amount of memory. Chunks are compressed in the background
+ *  as well with {@link CompressedSequentialWriter#COMPRESSION_CHUNKS_KEY}.
+ *
+ *  Tombstones older than the gc grace period are purged, unless another sstable of the table that is
+ *  not compacted, as set with {@link #setOverlappingSSTables(List)}, may hold older data they shadow.
+ *
+ *  @author mdo
+ */
+public class SSTableCompactor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSTableCompactor.class);
+
+    /**
+     * Hadoop configuration key holding the number of threads merging the ranges.
+     */
+    public static final String THREADS_KEY = "sstable.adaptor.compaction.threads";
+
+    /**
+     * Hadoop configuration key holding the number of ranges, thus of output sstables, defaulting to the number of threads.
+     */
+    public static final String SPLITS_KEY = "sstable.adaptor.compaction.splits";
+
+    /**
+     * Hadoop configuration key holding how long, in seconds, tombstones are kept before they can be purged,
+     * defaulting to the default gc_grace_seconds of Cassandra tables.
+     */
+    public static final String GC_GRACE_SECONDS_KEY = "sstable.adaptor.compaction.gc.grace.seconds";
+
+    /**
+     * Hadoop configuration key holding the number of partitions buffered ahead of the merge for each input, and
+     * ahead of the writer of each range. 0 (the default) decodes, merges and writes each range on a single thread.
+     * Pipelined compactions use a thread per input and one for the writer, for each range merged at the same time:
+     * {@link #THREADS_KEY} * (number of inputs + 1) threads on top of the merging ones.
+     */
+    public static final String QUEUE_PARTITIONS_KEY = "sstable.adaptor.compaction.queue.partitions";
+
+    /**
+     * Hadoop configuration key holding the size of the data of the partitions buffered by all the queues of a
+     * pipelined compaction, in MiB. On top of it, each queue may hold a single partition, as the merge needs
+     * the next partition of every input to make progress, see {@link PartitionMemoryBudget}.
+     */
+    public static final String QUEUE_MB_KEY = "sstable.adaptor.compaction.queue.mb";
+    public static final int DEFAULT_QUEUE_MB = 256;
+
+    private static final Object END_OF_RANGE = new Object();
+
+    private static final List<Component> OUTPUT_COMPONENTS = Arrays.asList(Component.DATA, Component.PRIMARY_INDEX,
+            Component.FILTER, Component.COMPRESSION_INFO, Component.STATS, Component.DIGEST_CRC32,
+            Component.DIGEST_ADLER32, Component.DIGEST_SHA1, Component.CRC, Component.SUMMARY, Component.TOC);
+
+    private final List<SSTableSingleReader> readers;
+    private final CassandraTable cassandraTable;
+    private final String outputLocation;
+    private final Configuration conf;
+    private List<SSTableSingleReader> overlappingReaders = new ArrayList<>();
+
+    private volatile boolean failed = false;
+
+    /**
+     *  Constructing a compactor for a set of sstables.
+     *  @param sstables opened sstables of the same table
+     *  @param cassandraTable keyspace and table names, and compression of the output sstables
+     *  @param outputLocation directory of the output sstables
+     *  @param configuration Hadoop configuration
+     */
+    public SSTableCompactor(final SSTableSet sstables,
+                            final CassandraTable cassandraTable,
+                            final String outputLocation,
+                            final Configuration configuration) {
+        this(sstables.getReaders(), cassandraTable, outputLocation, configuration);
+    }
+
+    /**
+     *  Constructing a compactor for several sstables of the same table.
+     *  @param readers opened sstables of the same table
+     *  @param cassandraTable keyspace and table names, and compression of the output sstables
+     *  @param outputLocation directory of the output sstables
+     *  @param configuration Hadoop configuration
+     */
+    public SSTableCompactor(final List<SSTableSingleReader> readers,
+                            final CassandraTable cassandraTable,
+                            final String outputLocation,
+                            final Configuration configuration) {
+        this.readers = readers;
+        this.cassandraTable = cassandraTable;
+        this.outputLocation = outputLocation;
+        this.conf = configuration;
+    }
+
+    /**
+     *  Set the other sstables of the table, which are not compacted: tombstones shadowing data that
+     *  they may hold are kept rather than purged.
+     *  @param overlappingReaders opened sstables of the same table
+     */
+    public void setOverlappingSSTables(final List<SSTableSingleReader> overlappingReaders) {
+        this.overlappingReaders = overlappingReaders;
+    }
+
+    /**
+     *  Merge the sstables into non-overlapping output sstables, one per token range.
+     *  @param firstGeneration generation of the first output sstable, the others following it
+     *  @return the locations of the Data.db files of the output sstables, in token order
+     *  @throws IOException when a sstable cannot be read or written
+     */
+    public List<String> compact(final int firstGeneration) throws IOException {
+        if (readers.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final int threads = Math.max(1, conf.getInt(THREADS_KEY, Runtime.getRuntime().availableProcessors()));
+        return compact(firstGeneration, new SSTableSplitPlanner(readers).plan(
+                Math.max(1, conf.getInt(SPLITS_KEY, threads))));
+    }
+
+    /**
+     *  Merge the sstables into non-overlapping output sstables, one per given token range.
+     *  @param firstGeneration generation of the first output sstable, the others following it
+     *  @param ranges contiguous token ranges, in token order, covering the whole ring
+     *  @return the locations of the Data.db files of the output sstables, in token order
+     *  @throws IOException when a sstable cannot be read or written
+     */
+    public List<String> compact(final int firstGeneration, final List<Range<Token>> ranges) throws IOException {
+        if (readers.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final int threads = Math.max(1, conf.getInt(THREADS_KEY, Runtime.getRuntime().availableProcessors()));
+        failed = false;
+
+        final CFMetaData cfMetaData = readers.get(0).getCfMetaData()
+                .compression(cassandraTable.getCompressionParams());
+        final List<SSTableReader> sstableReaders = new ArrayList<>(readers.size());
+        long keyCount = 0;
+        for (SSTableSingleReader reader : readers) {
+            sstableReaders.add(reader.getSstableReader());
+            keyCount += reader.getSstableReader().estimatedKeys();
+        }
+        final SerializationHeader header = SerializationHeader.make(cfMetaData, sstableReaders);
+        final long keyCountPerRange = Math.max(1, keyCount / ranges.size());
+        final int nowInSec = FBUtilities.nowInSeconds();
+        final int gcBefore = nowInSec - conf.getInt(GC_GRACE_SECONDS_KEY, TableParams.DEFAULT_GC_GRACE_SECONDS);
+        final List<SSTableReader> overlappingSSTables = new ArrayList<>(overlappingReaders.size());
+        for (SSTableSingleReader reader : overlappingReaders) {
+            overlappingSSTables.add(reader.getSstableReader());
+        }
+
+        final int queuePartitions = Math.max(0, conf.getInt(QUEUE_PARTITIONS_KEY, 0));
+        final int rangeThreads = Math.min(threads, ranges.size());
+        // the decoding of each input and the writing of each range only wait on the stages next to them,
+        // so each gets a thread of its own, for as many ranges as are merged at the same time: the stages
+        // of the ranges that are over end by themselves, so those of the next ones never wait on them
+        final ExecutorService stageExecutor = queuePartitions == 0 ? null
+                : Executors.newFixedThreadPool(rangeThreads * (readers.size() + 1),
+                                               new NamedThreadFactory("SSTableCompactorStage"));
+        final int queueMB = conf.getInt(QUEUE_MB_KEY, DEFAULT_QUEUE_MB);
+        final PartitionMemoryBudget budget = queuePartitions == 0 || queueMB <= 0 ? null
+                : new PartitionMemoryBudget((long) queueMB << 20);
+
+        LOGGER.info("Compacting " + readers.size() + " sstables into " + ranges.size()
+                + " ranges with " + threads + " threads" + (queuePartitions == 0 ? "" : ", pipelined"));
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(rangeThreads,
+                new NamedThreadFactory("SSTableCompactor"));
+        final List<Future<SSTableTxnWriter>> futures = new ArrayList<>(ranges.size());
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                final Range<Token> range = ranges.get(i);
+                final Descriptor descriptor = newDescriptor(firstGeneration + i);
+                futures.add(executor.submit(() ->
+                        compact(range, descriptor, cfMetaData, header, keyCountPerRange, nowInSec, gcBefore,
+                                overlappingSSTables, stageExecutor, queuePartitions, budget)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // every task is waited for, so that the writers of those that completed can be aborted on failure
+        final List<SSTableTxnWriter> writers = new ArrayList<>(ranges.size());
+        Throwable failure = null;
+        for (Future<SSTableTxnWriter> future : futures) {
+            try {
+                final SSTableTxnWriter writer = future.get();
+                if (writer != null) {
+                    writers.add(writer);
+                }
+            } catch (ExecutionException e) {
+                failed = true;
+                failure = firstFailure(failure, e.getCause());
+            } catch (Exception e) {
+                failed = true;
+                failure = firstFailure(failure, e);
+            }
+        }
+        if (stageExecutor != null) {
+            stageExecutor.shutdown();
+        }
+
+        if (failure == null) {
+            failure = commit(writers);
+        } else {
+            abort(writers);
+        }
+
+        if (failure != null) {
+            if (failure instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwables.propagateIfPossible(failure, IOException.class);
+            throw new IOException(failure);
+        }
+
+        final List<String> outputs = new ArrayList<>(writers.size());
+        for (SSTableTxnWriter writer : writers) {
+            outputs.add(writer.getFilename());
+        }
+        LOGGER.info("Compacted " + readers.size() + " sstables into " + outputs.size() + " sstables in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return outputs;
+    }
+
+    /**
+     *  Merge the partitions of a token range into a new sstable, left uncommitted.
+     *  @return the writer of the sstable, or null if the range holds no data
+     */
+    private SSTableTxnWriter compact(final Range<Token> range,
+                                     final Descriptor descriptor,
+                                     final CFMetaData cfMetaData,
+                                     final SerializationHeader header,
+                                     final long keyCount,
+                                     final int nowInSec,
+                                     final int gcBefore,
+                                     final List<SSTableReader> overlappingSSTables,
+                                     final ExecutorService stageExecutor,
+                                     final int queuePartitions,
+                                     final PartitionMemoryBudget budget) throws IOException {
+        if (failed) {
+            return null;
+        }
+
+        final List<ISSTableScanner> scanners = new ArrayList<>(readers.size());
+        SSTableTxnWriter writer = null;
+        WriteStage writeStage = null;
+        long partitions = 0;
+        try {
+            for (SSTableSingleReader reader : readers) {
+                scanners.add(stageExecutor == null
+                        ? reader.getSSTableScanner(range)
+                        : new ParallelSSTableScanner(reader, Collections.singletonList(range), true,
+                                                     stageExecutor, queuePartitions, budget));
+            }
+
+            try (SSTableIterator merged = new SSTableIterator(scanners, cfMetaData, nowInSec, gcBefore,
+                                                                 overlappingSSTables)) {
+                final UnfilteredPartitionIterator iterator = merged.unfiltered();
+                while (iterator.hasNext()) {
+                    if (failed) {
+                        throw new RangeAbortedException("Compaction of " + range
+                                + " aborted as another range failed");
+                    }
+                    try (UnfilteredRowIterator partition = iterator.next()) {
+                        // created on the first partition, so that empty ranges leave no sstable behind
+                        if (writer == null) {
+                            writer = SSTableTxnWriter.createWithNoLogging(cfMetaData, descriptor, keyCount, 0, 0, header);
+                            if (stageExecutor != null) {
+                                writeStage = new WriteStage(writer, queuePartitions, stageExecutor, budget);
+                            }
+                        }
+                        if (writeStage != null) {
+                            writeStage.append(partition);
+                        } else if (writer.append(partition)) {
+                            partitions++;
+                        }
+                    }
+                }
+            }
+            if (writeStage != null) {
+                partitions = writeStage.finish();
+            }
+        } catch (Throwable t) {
+            failed = true;
+            if (writeStage != null) {
+                writeStage.stop();
+            }
+            scanners.forEach(FileUtils::closeQuietly);
+            if (writer != null) {
+                abort(writer);
+            }
+            throw t;
+        }
+
+        if (writer != null && partitions == 0) {
+            abort(writer);
+            writer = null;
+        }
+        LOGGER.info("Merged " + partitions + " partitions of " + range);
+        return writer;
+    }
+
+    /**
+     *  Pick the failure to report, the first one that did not merely abort a range because of another.
+     */
+    private static Throwable firstFailure(final Throwable failure, final Throwable next) {
+        return failure == null || failure instanceof RangeAbortedException && !(next instanceof RangeAbortedException)
+                ? next : failure;
+    }
+
+    /**
+     *  Thrown by the ranges that stop as another range failed.
+     */
+    private static final class RangeAbortedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangeAbortedException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     *  Commit all the output sstables, once they are all ready to, or none of them.
+     */
+    private Throwable commit(final List<SSTableTxnWriter> writers) {
+        try {
+            for (SSTableTxnWriter writer : writers) {
+                writer.prepareToCommit();
+            }
+        } catch (Throwable t) {
+            abort(writers);
+            return t;
+        }
+
+        Throwable accumulate = null;
+        for (SSTableTxnWriter writer : writers) {
+            accumulate = writer.commit(accumulate);
+        }
+        return accumulate;
+    }
+
+    private void abort(final List<SSTableTxnWriter> writers) {
+        for (SSTableTxnWriter writer : writers) {
+            abort(writer);
+        }
+    }
+
+    /**
+     *  Abort a writer and delete what it wrote, as offline writers keep no transaction log to clean up after them.
+     */
+    private void abort(final SSTableTxnWriter writer) {
+        final Throwable failure = writer.abort(null);
+        if (failure != null) {
+            LOGGER.warn("Failed aborting " + writer.getFilename() + ": " + failure.getMessage());
+        }
+        final Descriptor descriptor = Descriptor.fromFilename(writer.getFilename(), conf);
+        for (Component component : OUTPUT_COMPONENTS) {
+            HadoopFileUtils.deleteIfExists(descriptor.filenameFor(component), conf);
+        }
+    }
+
+    /**
+     *  Serializes and writes the merged partitions of a range on a thread of its own, so that it overlaps
+     *  the merge of the next partitions. Partitions are read whole into memory before being handed over,
+     *  and charged to the budget of the compaction if any.
+     */
+    private final class WriteStage {
+        private final SSTableTxnWriter writer;
+        private final BlockingQueue<Object> queue;
+        private final PartitionMemoryBudget budget;
+        private final Future<Long> future;
+
+        WriteStage(final SSTableTxnWriter writer,
+                   final int capacity,
+                   final ExecutorService executor,
+                   final PartitionMemoryBudget budget) {
+            this.writer = writer;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.budget = budget;
+            this.future = executor.submit(this::write);
+        }
+
+        /**
+         * @return the number of partitions written
+         */
+        private long write() throws InterruptedException {
+            long partitions = 0;
+            while (true) {
+                final Object item = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (item == END_OF_RANGE) {
+                    return partitions;
+                } else if (item == null) {
+                    if (failed) {
+                        return partitions;
+                    }
+                } else {
+                    release(item);
+                    try (UnfilteredRowIterator partition = PartitionMemoryBudget.partition(item).unfilteredIterator()) {
+                        if (writer.append(partition)) {
+                            partitions++;
+                        }
+                    }
+                }
+            }
+        }
+
+        void append(final UnfilteredRowIterator partition) throws IOException {
+            final ImmutableBTreePartition copy = ImmutableBTreePartition.create(partition);
+            if (budget == null) {
+                put(copy);
+                return;
+            }
+
+            final Object item;
+            try {
+                item = budget.charge(copy, queue, future::isDone);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if (item == null) {
+                await();
+                throw new RangeAbortedException("Writing " + writer.getFilename() + " aborted as another range failed");
+            }
+            try {
+                put(item);
+            } catch (IOException e) {
+                release(item);
+                throw e;
+            }
+        }
+
+        /**
+         *  Wait for all the partitions handed over to be written.
+         *  @return the number of partitions written
+         */
+        long finish() throws IOException {
+            put(END_OF_RANGE);
+            return await();
+        }
+
+        /**
+         *  Drop the partitions not written yet, and wait for the partition being written if any.
+         */
+        void stop() {
+            if (budget == null) {
+                queue.clear();
+            } else {
+                budget.clear(queue);
+            }
+            try {
+                Uninterruptibles.getUninterruptibly(future);
+            } catch (ExecutionException e) {
+                LOGGER.warn("Failed writing " + writer.getFilename() + ": " + e.getCause().getMessage());
+            }
+        }
+
+        private void put(final Object item) throws IOException {
+            try {
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    if (future.isDone()) {
+                        await();
+                        throw new RangeAbortedException("Writing " + writer.getFilename()
+                                + " aborted as another range failed");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        private void release(final Object item) {
+            if (budget != null) {
+                budget.release(item);
+            }
+        }
+
+        private long await() throws IOException {
+            try {
+                return Uninterruptibles.getUninterruptibly(future);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    private Descriptor newDescriptor(final int generation) {
+        return new Descriptor(BigFormat.latestVersion.getVersion(),
+                outputLocation,
+                cassandraTable.getKeyspaceName(),
+                cassandraTable.getTableName(),
+                generation,
+                SSTableFormat.Type.BIG,
+                conf);
+    }
+}
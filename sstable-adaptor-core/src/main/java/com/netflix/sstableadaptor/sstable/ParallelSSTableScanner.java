@@ -0,0 +1,362 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.partitions.ImmutableBTreePartition;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Scans one sstable with several threads. The sstable is split into contiguous token ranges
+ *  of about the same compressed size, each scanned by its own {@link ISSTableScanner}, with
+ *  its own readers of the data and index files.
+ *
+ *  In ordered mode, the partitions are returned in token order: the partitions of each range
+ *  are buffered until the ranges before it have been consumed, at most
+ *  {@link #BUFFER_PARTITIONS_KEY} of them per range. In unordered mode, they are returned as
+ *  soon as they are read, with at most {@link #BUFFER_PARTITIONS_KEY} of them buffered in total.
+ *
+ *  Partitions are read whole into memory before being handed over, so that each can be
+ *  consumed independently of the thread that read it. As a few wide partitions can take
+ *  much more memory than many narrow ones, the buffered partitions are also bounded by the
+ *  size of their data, {@link #BUFFER_MB_KEY}, see {@link PartitionMemoryBudget}.
+ *
+ *  @author mdo
+ */
+public class ParallelSSTableScanner implements ISSTableScanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelSSTableScanner.class);
+
+    /**
+     * Hadoop configuration key holding the number of threads scanning a sstable.
+     */
+    public static final String THREADS_KEY = "sstable.adaptor.parallelscan.threads";
+
+    /**
+     * Hadoop configuration key holding the number of partitions read ahead, per range in ordered mode.
+     */
+    public static final String BUFFER_PARTITIONS_KEY = "sstable.adaptor.parallelscan.buffer.partitions";
+    public static final int DEFAULT_BUFFER_PARTITIONS = 64;
+
+    /**
+     * Hadoop configuration key holding the size of the data of the partitions read ahead by all the ranges, in MiB,
+     * 0 to only bound them by {@link #BUFFER_PARTITIONS_KEY}.
+     */
+    public static final String BUFFER_MB_KEY = "sstable.adaptor.parallelscan.buffer.mb";
+    public static final int DEFAULT_BUFFER_MB = 256;
+
+    private static final Object END_OF_RANGE = new Object();
+
+    private final SSTableSingleReader reader;
+    private final boolean ordered;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    // one queue per range in ordered mode, a single shared one otherwise
+    private final List<BlockingQueue<Object>> queues;
+    private final List<Future<?>> futures;
+    private final int rangeCount;
+    private final PartitionMemoryBudget budget;
+    private final AtomicLong bytesScanned = new AtomicLong();
+
+    private volatile boolean closed = false;
+    // ordered mode: the range being consumed, unordered mode: the number of ranges fully consumed
+    private int rangesDone = 0;
+    private UnfilteredRowIterator next;
+
+    /**
+     *  Constructing a scanner over a whole sstable, on a thread pool of its own sized by
+     *  {@link #THREADS_KEY}, with one range per thread.
+     *  @param reader sstable to scan
+     *  @param ordered true to return the partitions in token order
+     *  @param configuration Hadoop configuration
+     *  @throws IOException when the index of the sstable cannot be read to plan the ranges
+     */
+    public ParallelSSTableScanner(final SSTableSingleReader reader,
+                                  final boolean ordered,
+                                  final Configuration configuration) throws IOException {
+        this(reader, ordered, configuration.getInt(THREADS_KEY, Runtime.getRuntime().availableProcessors()),
+                configuration.getInt(BUFFER_PARTITIONS_KEY, DEFAULT_BUFFER_PARTITIONS),
+                configuration.getInt(BUFFER_MB_KEY, DEFAULT_BUFFER_MB));
+    }
+
+    private ParallelSSTableScanner(final SSTableSingleReader reader,
+                                   final boolean ordered,
+                                   final int threads,
+                                   final int bufferPartitions,
+                                   final int bufferMB) throws IOException {
+        this(reader, new SSTableSplitPlanner(reader).plan(Math.max(1, threads)), ordered,
+                Executors.newFixedThreadPool(Math.max(1, threads), new NamedThreadFactory("ParallelSSTableScanner")),
+                true, bufferPartitions, bufferMB <= 0 ? null : new PartitionMemoryBudget((long) bufferMB << 20));
+    }
+
+    /**
+     *  Constructing a scanner over some token ranges of a sstable, on a given executor.
+     *  In ordered mode, the executor must run the tasks in the order they are submitted.
+     *  @param reader sstable to scan
+     *  @param ranges contiguous token ranges to scan, in token order
+     *  @param ordered true to return the partitions in token order
+     *  @param executor executor running the scan of each range, left running on close
+     *  @param bufferPartitions number of partitions read ahead, per range in ordered mode
+     */
+    public ParallelSSTableScanner(final SSTableSingleReader reader,
+                                  final List<Range<Token>> ranges,
+                                  final boolean ordered,
+                                  final ExecutorService executor,
+                                  final int bufferPartitions) {
+        this(reader, ranges, ordered, executor, false, bufferPartitions, null);
+    }
+
+    /**
+     *  Constructing a scanner over some token ranges of a sstable, on a given executor, whose partitions
+     *  read ahead are charged to a budget, possibly shared with other scanners.
+     *  In ordered mode, the executor must run the tasks in the order they are submitted.
+     *  @param reader sstable to scan
+     *  @param ranges contiguous token ranges to scan, in token order
+     *  @param ordered true to return the partitions in token order
+     *  @param executor executor running the scan of each range, left running on close
+     *  @param bufferPartitions number of partitions read ahead, per range in ordered mode
+     *  @param budget bound of the size of the partitions read ahead, or null
+     */
+    public ParallelSSTableScanner(final SSTableSingleReader reader,
+                                  final List<Range<Token>> ranges,
+                                  final boolean ordered,
+                                  final ExecutorService executor,
+                                  final int bufferPartitions,
+                                  final PartitionMemoryBudget budget) {
+        this(reader, ranges, ordered, executor, false, bufferPartitions, budget);
+    }
+
+    private ParallelSSTableScanner(final SSTableSingleReader reader,
+                                   final List<Range<Token>> ranges,
+                                   final boolean ordered,
+                                   final ExecutorService executor,
+                                   final boolean ownsExecutor,
+                                   final int bufferPartitions,
+                                   final PartitionMemoryBudget budget) {
+        this.reader = reader;
+        this.ordered = ordered;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.rangeCount = ranges.size();
+        this.budget = budget;
+
+        final int queueCount = ordered ? ranges.size() : 1;
+        this.queues = new ArrayList<>(queueCount);
+        for (int i = 0; i < queueCount; i++) {
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, bufferPartitions)));
+        }
+
+        LOGGER.info("Scanning " + reader.getFileLocation() + " in " + ranges.size()
+                + (ordered ? " ordered" : " unordered") + " ranges");
+        this.futures = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            final Range<Token> range = ranges.get(i);
+            final BlockingQueue<Object> queue = queues.get(ordered ? i : 0);
+            futures.add(executor.submit(() -> scan(range, queue)));
+        }
+    }
+
+    private void scan(final Range<Token> range, final BlockingQueue<Object> queue) {
+        try (ISSTableScanner scanner = reader.getSSTableScanner(range)) {
+            long scanned = 0;
+            while (!closed && scanner.hasNext()) {
+                final ImmutableBTreePartition partition;
+                try (UnfilteredRowIterator iterator = scanner.next()) {
+                    partition = ImmutableBTreePartition.create(iterator);
+                }
+                bytesScanned.addAndGet(scanner.getBytesScanned() - scanned);
+                scanned = scanner.getBytesScanned();
+                final Object item = budget == null ? partition : budget.charge(partition, queue, () -> closed);
+                if (item == null) {
+                    return;
+                }
+                if (!put(queue, item)) {
+                    release(item);
+                    return;
+                }
+            }
+            put(queue, END_OF_RANGE);
+        } catch (Throwable t) {
+            put(queue, new Failure(range, t));
+        }
+    }
+
+    /**
+     * @return false if the scanner was closed while waiting for room in the queue
+     */
+    private boolean put(final BlockingQueue<Object> queue, final Object item) {
+        try {
+            while (!closed) {
+                if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    // the queue may have been cleared by close() just before, give back what it charged
+                    if (closed && budget != null) {
+                        budget.clear(queue);
+                    }
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+
+        while (rangesDone < rangeCount && !closed) {
+            final Object item = Uninterruptibles.takeUninterruptibly(queues.get(ordered ? rangesDone : 0));
+            if (item == END_OF_RANGE) {
+                rangesDone++;
+            } else if (item instanceof Failure) {
+                close();
+                final Failure failure = (Failure) item;
+                LOGGER.error("Failed scanning " + failure.range + " of " + reader.getFileLocation());
+                throw Throwables.propagate(failure.cause);
+            } else {
+                release(item);
+                next = PartitionMemoryBudget.partition(item).unfilteredIterator();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public UnfilteredRowIterator next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final UnfilteredRowIterator partition = next;
+        next = null;
+        return partition;
+    }
+
+    @Override
+    public boolean isForThrift() {
+        return false;
+    }
+
+    @Override
+    public CFMetaData metadata() {
+        return reader.getCfMetaData();
+    }
+
+    @Override
+    public long getLengthInBytes() {
+        return reader.getSstableReader().uncompressedLength();
+    }
+
+    @Override
+    public long getCompressedLengthInBytes() {
+        return reader.getSstableReader().onDiskLength();
+    }
+
+    /**
+     * @return the number of bytes read by all the ranges, as the ranges do not end at a single position
+     */
+    @Override
+    public long getCurrentPosition() {
+        return bytesScanned.get();
+    }
+
+    @Override
+    public long getBytesScanned() {
+        return bytesScanned.get();
+    }
+
+    @Override
+    public String getBackingFiles() {
+        return reader.getSstableReader().toString();
+    }
+
+    @Override
+    public Set<SSTableReader> getBackingSSTables() {
+        return Collections.singleton(reader.getSstableReader());
+    }
+
+    /**
+     * Stop the scans of the ranges still running, and release their buffered partitions.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // the scans stop by themselves once closed: interrupting them would close the file channels
+        // they share with the other readers of the sstable
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+        for (BlockingQueue<Object> queue : queues) {
+            if (budget == null) {
+                queue.clear();
+            } else {
+                budget.clear(queue);
+            }
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private void release(final Object item) {
+        if (budget != null) {
+            budget.release(item);
+        }
+    }
+
+    /**
+     *  The failure of the scan of a range, reported to the consumer when it reaches it.
+     */
+    private static final class Failure {
+        private final Range<Token> range;
+        private final Throwable cause;
+
+        Failure(final Range<Token> range, final Throwable cause) {
+            this.range = range;
+            this.cause = cause;
+        }
+    }
+}
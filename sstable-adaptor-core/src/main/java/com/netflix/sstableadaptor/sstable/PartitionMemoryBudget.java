@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import org.apache.cassandra.db.partitions.ImmutableBTreePartition;
+import org.apache.cassandra.db.rows.Row;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ *  Bounds the memory held by the partitions buffered in queues between threads, by the sum of the
+ *  data sizes of their rows. Can be shared by several queues, e.g. by all the stages of a compaction.
+ *
+ *  A partition put in an empty queue is never held back, so that a consumer waiting on several
+ *  queues always gets the next partition of each of them: the buffered partitions may exceed the
+ *  budget by one partition per queue, and one partition larger than the budget goes through alone.
+ *  The data size does not account for the overhead of the objects holding the data.
+ *
+ *  Thread-safe.
+ *
+ *  @author mdo
+ */
+public final class PartitionMemoryBudget {
+    private final Semaphore permits;
+    private final int capacity;
+
+    /**
+     *  Constructing a budget.
+     *  @param bytes number of bytes of data the buffered partitions may hold
+     */
+    public PartitionMemoryBudget(final long bytes) {
+        // permits are KiB, so that budgets of gigabytes fit in a semaphore
+        this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes >> 10));
+        this.permits = new Semaphore(capacity);
+    }
+
+    /**
+     *  Charge a partition to the budget before putting it in a queue, waiting for room while the
+     *  queue is not empty.
+     *  @param partition partition to buffer
+     *  @param queue queue the partition is put in
+     *  @param stopped tells when to give up waiting
+     *  @return the item to put in the queue, to be released once taken, or null if stopped
+     *  @throws InterruptedException when interrupted while waiting for room
+     */
+    public Object charge(final ImmutableBTreePartition partition,
+                         final BlockingQueue<?> queue,
+                         final BooleanSupplier stopped) throws InterruptedException {
+        final int weight = weight(partition);
+        while (!stopped.getAsBoolean()) {
+            if (queue.isEmpty()) {
+                return new Charged(partition, permits.tryAcquire(weight) ? weight : 0);
+            }
+            if (permits.tryAcquire(weight, 100, TimeUnit.MILLISECONDS)) {
+                return new Charged(partition, weight);
+            }
+        }
+        return null;
+    }
+
+    /**
+     *  Give back the part of the budget charged for an item taken from a queue or dropped.
+     *  @param item item returned by {@link #charge}, other items are ignored
+     */
+    public void release(final Object item) {
+        if (item instanceof Charged && ((Charged) item).weight > 0) {
+            permits.release(((Charged) item).weight);
+        }
+    }
+
+    /**
+     *  Drop the items of a queue, giving back their part of the budget.
+     *  @param queue queue to clear
+     */
+    public void clear(final BlockingQueue<?> queue) {
+        final List<Object> items = new ArrayList<>();
+        queue.drainTo(items);
+        items.forEach(this::release);
+    }
+
+    /**
+     *  @param item item taken from a queue, charged or not
+     *  @return the partition it holds
+     */
+    public static ImmutableBTreePartition partition(final Object item) {
+        return item instanceof Charged ? ((Charged) item).partition : (ImmutableBTreePartition) item;
+    }
+
+    /**
+     *  @return the number of bytes of data the buffered partitions are charged for
+     */
+    public long chargedBytes() {
+        return (long) (capacity - permits.availablePermits()) << 10;
+    }
+
+    private int weight(final ImmutableBTreePartition partition) {
+        long bytes = partition.partitionKey().getKey().remaining() + partition.staticRow().dataSize();
+        for (Row row : partition) {
+            bytes += row.dataSize();
+        }
+        return (int) Math.min(capacity, (bytes + 1023) >> 10);
+    }
+
+    /**
+     *  A buffered partition, with the number of KiB of the budget it holds.
+     */
+    private static final class Charged {
+        private final ImmutableBTreePartition partition;
+        private final int weight;
+
+        Charged(final ImmutableBTreePartition partition, final int weight) {
+            this.partition = partition;
+            this.weight = weight;
+        }
+    }
+}
@@ -18,25 +18,29 @@ package com.netflix.sstableadaptor.sstable;
 
 
 import org.apache.cassandra.config.CFMetaData;
-import org.apache.cassandra.db.Columns;
 import org.apache.cassandra.db.DecoratedKey;
-import org.apache.cassandra.db.DeletionTime;
 import org.apache.cassandra.db.EmptyIterators;
 import org.apache.cassandra.db.partitions.PartitionIterator;
 import org.apache.cassandra.db.partitions.PurgeFunction;
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
-import org.apache.cassandra.db.rows.RangeTombstoneMarker;
-import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.RowIterator;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.db.rows.UnfilteredRowIterators;
 import org.apache.cassandra.db.transform.Transformation;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.utils.AlwaysPresentFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Borrow this from Cassandra's code base.
@@ -45,7 +49,9 @@ import java.util.List;
  * <p>
  * On top of the actual merging the source iterators, this class:
  * <ul>
- * <li>purge gc-able tombstones if possible (see PurgeIterator below).</li>
+ * <li>purge gc-able tombstones if possible (see PurgeIterator below), that is tombstones deleted before gcBefore
+ * and older than any data of the same partition in sstables left out of the merge.</li>
+ * <li>only merge the scanners whose key ranges overlap, and concatenate the others in token order.</li>
  * </ul>
  *
  */
@@ -55,6 +61,8 @@ public class SSTableIterator implements PartitionIterator {
 
     private final List<ISSTableScanner> scanners;
     private final int nowInSec;
+    private final int gcBefore;
+    private final List<SSTableReader> overlappingSSTables;
 
     private final long totalBytes;
     private long bytesRead;
@@ -67,20 +75,40 @@ public class SSTableIterator implements PartitionIterator {
      * index 1 is counter for 2 rows merged, and so on.
      */
     private final long[] mergeCounters;
+    private final UnfilteredPartitionIterator purged;
     private final PartitionIterator compacted;
 
     /**
      * We make sure to close mergedIterator in close() and CompactionIterator is itself an AutoCloseable.
+     * Tombstones are purged as soon as they are deleted, as if the scanners read all the sstables of the table.
      *
      * @param scanners   - a list of sstable scanners
      * @param cfMetaData - CF Metadata for those sstables
      * @param nowInSec   - now in secs
      */
-    @SuppressWarnings("resource")
     public SSTableIterator(final List<ISSTableScanner> scanners, final CFMetaData cfMetaData, final int nowInSec) {
+        this(scanners, cfMetaData, nowInSec, nowInSec, Collections.emptyList());
+    }
+
+    /**
+     * We make sure to close mergedIterator in close() and CompactionIterator is itself an AutoCloseable.
+     *
+     * @param scanners            - a list of sstable scanners
+     * @param cfMetaData          - CF Metadata for those sstables
+     * @param nowInSec            - now in secs
+     * @param gcBefore            - tombstones deleted before this time, in secs, can be purged,
+     *                              usually nowInSec minus the gc grace period of the table
+     * @param overlappingSSTables - other sstables of the table, not read by the scanners: a tombstone is kept
+     *                              if one of them may hold older data of its partition
+     */
+    @SuppressWarnings("resource")
+    public SSTableIterator(final List<ISSTableScanner> scanners, final CFMetaData cfMetaData, final int nowInSec,
+                           final int gcBefore, final Collection<SSTableReader> overlappingSSTables) {
         this.cfMetaData = cfMetaData;
         this.scanners = scanners;
         this.nowInSec = nowInSec;
+        this.gcBefore = gcBefore;
+        this.overlappingSSTables = overlappingSSTables(scanners, overlappingSSTables);
         this.bytesRead = 0;
 
         long bytes = 0;
@@ -93,10 +121,27 @@ public class SSTableIterator implements PartitionIterator {
 
         final UnfilteredPartitionIterator merged = scanners.isEmpty()
                 ? EmptyIterators.unfilteredPartition(cfMetaData, false)
-                : UnfilteredPartitionIterators.merge(scanners, nowInSec, listener());
+                : mergeClusters(scanners, nowInSec);
+
+        purged = Transformation.apply(merged, new Purger(nowInSec, gcBefore));
+        compacted = UnfilteredPartitionIterators.filter(purged, nowInSec);
+    }
 
-        UnfilteredPartitionIterator mergeAndPurge = Transformation.apply(merged, new Purger(nowInSec));
-        compacted = UnfilteredPartitionIterators.filter(mergeAndPurge, nowInSec);
+    /**
+     * Merge the scanners whose key ranges overlap, and concatenate the merged groups in token order,
+     * so that the partitions of scanners that overlap no other one go through no merge at all.
+     */
+    @SuppressWarnings("resource")
+    private UnfilteredPartitionIterator mergeClusters(final List<ISSTableScanner> scanners, final int nowInSec) {
+        final List<List<ISSTableScanner>> clusters = overlapClusters(scanners);
+        final List<UnfilteredPartitionIterator> iterators = new ArrayList<>(clusters.size());
+        for (List<ISSTableScanner> cluster : clusters) {
+            iterators.add(cluster.size() == 1
+                    ? Transformation.apply(cluster.get(0), new UnmergedCounter())
+                    : UnfilteredPartitionIterators.merge(cluster, nowInSec, listener()));
+        }
+        LOGGER.debug("Merging " + scanners.size() + " scanners in " + clusters.size() + " overlapping groups");
+        return UnfilteredPartitionIterators.concat(iterators);
     }
 
     /**
@@ -165,38 +210,95 @@ public class SSTableIterator implements PartitionIterator {
 
                 SSTableIterator.this.updateCounterFor(merged);
 
-                Columns statics = Columns.NONE;
-                Columns regulars = Columns.NONE;
-                for (UnfilteredRowIterator iter : versions) {
-                    if (iter != null) {
-                        statics = statics.mergeTo(iter.columns().statics);
-                        regulars = regulars.mergeTo(iter.columns().regulars);
-                    }
-                }
+                // no row listener: UnfilteredPartitionIterators.merge hands partitions found in a single
+                // input over as they are, without going through a row merge. Returning a listener here
+                // would put every partition back through the merge.
+                return null;
+            }
 
-                //final PartitionColumns partitionColumns = new PartitionColumns(statics, regulars);
-                //TODO: need to leverage these to track the operation counts
-                return new UnfilteredRowIterators.MergeListener() {
-                    public void onMergedPartitionLevelDeletion(final DeletionTime mergedDeletion,
-                                                               final DeletionTime[] versions) {
-                    }
+            public void close() {
+            }
+        };
+    }
 
-                    public void onMergedRows(final Row merged, final Row[] versions) {
+    /**
+     * Group the scanners whose key ranges overlap, in the order of their first keys. Scanners that
+     * do not tell which sstables they read are put together in a single group.
+     */
+    private static List<List<ISSTableScanner>> overlapClusters(final List<ISSTableScanner> scanners) {
+        final List<KeyRange> keyRanges = new ArrayList<>(scanners.size());
+        for (ISSTableScanner scanner : scanners) {
+            final Set<SSTableReader> sstables = scanner.getBackingSSTables();
+            if (sstables.isEmpty()) {
+                return Collections.singletonList(scanners);
+            }
 
-                    }
+            DecoratedKey first = null;
+            DecoratedKey last = null;
+            for (SSTableReader sstable : sstables) {
+                first = first == null || sstable.first.compareTo(first) < 0 ? sstable.first : first;
+                last = last == null || sstable.last.compareTo(last) > 0 ? sstable.last : last;
+            }
+            keyRanges.add(new KeyRange(first, last, scanner));
+        }
+        keyRanges.sort(Comparator.comparing(keyRange -> keyRange.first));
+
+        // sweeping the ranges by first key, a range joins the current cluster if it starts before the cluster ends
+        final List<List<ISSTableScanner>> clusters = new ArrayList<>();
+        List<ISSTableScanner> cluster = null;
+        DecoratedKey clusterLast = null;
+        for (KeyRange keyRange : keyRanges) {
+            if (cluster == null || keyRange.first.compareTo(clusterLast) > 0) {
+                cluster = new ArrayList<>();
+                clusters.add(cluster);
+                clusterLast = keyRange.last;
+            } else if (keyRange.last.compareTo(clusterLast) > 0) {
+                clusterLast = keyRange.last;
+            }
+            cluster.add(keyRange.scanner);
+        }
+        return clusters;
+    }
 
-                    public void onMergedRangeTombstoneMarkers(final RangeTombstoneMarker mergedMarker,
-                                                              final RangeTombstoneMarker[] versions) {
-                    }
+    /**
+     * Keep the given sstables that are not read by the scanners and whose key ranges overlap theirs, the
+     * others holding no data a purged tombstone could uncover. They are sorted by min timestamp, so that
+     * looking them up for a partition can stop at the first one holding it.
+     */
+    private static List<SSTableReader> overlappingSSTables(final List<ISSTableScanner> scanners,
+                                                           final Collection<SSTableReader> candidates) {
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-                    public void close() {
-                    }
-                };
-            }
+        final Set<SSTableReader> compacted = new HashSet<>();
+        boolean unbounded = false;
+        for (ISSTableScanner scanner : scanners) {
+            final Set<SSTableReader> sstables = scanner.getBackingSSTables();
+            // scanners that do not tell which sstables they read may overlap any sstable
+            unbounded |= sstables.isEmpty();
+            compacted.addAll(sstables);
+        }
 
-            public void close() {
+        DecoratedKey first = null;
+        DecoratedKey last = null;
+        for (SSTableReader sstable : compacted) {
+            first = first == null || sstable.first.compareTo(first) < 0 ? sstable.first : first;
+            last = last == null || sstable.last.compareTo(last) > 0 ? sstable.last : last;
+        }
+
+        final List<SSTableReader> overlapping = new ArrayList<>();
+        for (SSTableReader sstable : candidates) {
+            if (compacted.contains(sstable)) {
+                continue;
             }
-        };
+            if (unbounded || first == null
+                    || (sstable.last.compareTo(first) >= 0 && sstable.first.compareTo(last) <= 0)) {
+                overlapping.add(sstable);
+            }
+        }
+        overlapping.sort(Comparator.comparingLong(SSTableReader::getMinTimestamp));
+        return overlapping;
     }
 
     private void updateBytesRead() {
@@ -207,6 +309,17 @@ public class SSTableIterator implements PartitionIterator {
         bytesRead = n;
     }
 
+    /**
+     * Return the merged and purged partitions with their tombstones and expired cells, as they are
+     * to be written to a compacted sstable. Either this iterator or the returned one is consumed,
+     * not both, and closing this iterator closes the returned one.
+     *
+     * @return UnfilteredPartitionIterator
+     */
+    public UnfilteredPartitionIterator unfiltered() {
+        return purged;
+    }
+
     /**
      * Have a next item.
      *
@@ -246,6 +359,32 @@ public class SSTableIterator implements PartitionIterator {
         }
     }
 
+    /**
+     * The key range of the sstables read by a scanner.
+     */
+    private static final class KeyRange {
+        private final DecoratedKey first;
+        private final DecoratedKey last;
+        private final ISSTableScanner scanner;
+
+        private KeyRange(final DecoratedKey first, final DecoratedKey last, final ISSTableScanner scanner) {
+            this.first = first;
+            this.last = last;
+            this.scanner = scanner;
+        }
+    }
+
+    /**
+     * Counts the partitions of a scanner that overlaps no other one as not merged.
+     */
+    private final class UnmergedCounter extends Transformation<UnfilteredRowIterator> {
+        @Override
+        protected UnfilteredRowIterator applyToPartition(final UnfilteredRowIterator partition) {
+            updateCounterFor(1);
+            return partition;
+        }
+    }
+
     private final class Purger extends PurgeFunction {
         private DecoratedKey currentKey;
         private long maxPurgeableTimestamp;
@@ -253,8 +392,8 @@ public class SSTableIterator implements PartitionIterator {
 
         private long compactedUnfiltered;
 
-        private Purger(final int nowInSec) {
-            super(false, nowInSec, nowInSec, Integer.MAX_VALUE, true);
+        private Purger(final int nowInSec, final int gcBefore) {
+            super(false, nowInSec, gcBefore, Integer.MAX_VALUE, true);
         }
 
         @Override
@@ -283,10 +422,28 @@ public class SSTableIterator implements PartitionIterator {
         protected long getMaxPurgeableTimestamp() {
             if (!hasCalculatedMaxPurgeableTimestamp) {
                 hasCalculatedMaxPurgeableTimestamp = true;
-                maxPurgeableTimestamp = Long.MAX_VALUE; //Todo: will make it usable
+                maxPurgeableTimestamp = Long.MAX_VALUE;
+                // sorted by min timestamp, so the first sstable that may hold the partition gives the minimum
+                for (SSTableReader sstable : overlappingSSTables) {
+                    if (mayContain(sstable, currentKey)) {
+                        maxPurgeableTimestamp = sstable.getMinTimestamp();
+                        break;
+                    }
+                }
             }
             return maxPurgeableTimestamp;
         }
+
+        private boolean mayContain(final SSTableReader sstable, final DecoratedKey key) {
+            if (key.compareTo(sstable.first) < 0 || key.compareTo(sstable.last) > 0) {
+                return false;
+            }
+            // without a bloom filter, look the key up in the index instead
+            if (sstable.getBloomFilter() instanceof AlwaysPresentFilter) {
+                return sstable.getPosition(key, SSTableReader.Operator.EQ, false) != null;
+            }
+            return sstable.getBloomFilter().isPresent(key);
+        }
     }
 
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.CorruptSSTableException;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *  Iterates over the partition keys of a sstable, in token order, reading Index.db only.
+ *  Along with each key come the position of the partition in the (uncompressed) data file
+ *  and its size, estimated as the distance to the next partition.
+ *
+ *  @author mdo
+ */
+public class SSTableKeyIterator implements Iterator<SSTableKeyIterator.KeyEntry>, Closeable {
+    private final SSTableReader sstableReader;
+    private final List<Range<Token>> ranges;
+    private final RandomAccessReader index;
+
+    private int rangeIndex = 0;
+    private boolean rangeStarted = false;
+    // the entry following the last one returned, in index order; null at the end of the index
+    private KeyEntry lookahead;
+    private long lookaheadIndexPosition = -1;
+    private KeyEntry next;
+
+    /**
+     *  @param sstableReader sstable to list the keys of
+     *  @param range token range of the keys, or null for all keys
+     */
+    SSTableKeyIterator(final SSTableReader sstableReader, final Range<Token> range) {
+        this.sstableReader = sstableReader;
+        final Token minimum = sstableReader.getPartitioner().getMinimumToken();
+        this.ranges = Range.normalize(Collections.singletonList(range == null ? new Range<>(minimum, minimum) : range));
+        this.index = sstableReader.openIndexReader();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && index != null) {
+            try {
+                next = computeNext();
+            } catch (IOException e) {
+                sstableReader.markSuspect();
+                throw new CorruptSSTableException(e, index.getPath());
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public KeyEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final KeyEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    private KeyEntry computeNext() throws IOException {
+        while (rangeIndex < ranges.size()) {
+            final Range<Token> range = ranges.get(rangeIndex);
+            if (!rangeStarted) {
+                // skip ahead with the index summary, but never backwards
+                final long scanPosition = range.left.isMinimum()
+                        ? 0 : sstableReader.getIndexScanPosition(range.left.maxKeyBound());
+                if (lookaheadIndexPosition < 0 || scanPosition > lookaheadIndexPosition) {
+                    index.seek(scanPosition);
+                    lookahead = readEntry();
+                }
+                while (lookahead != null && !range.left.isMinimum()
+                        && lookahead.key.getToken().compareTo(range.left) <= 0) {
+                    lookahead = readEntry();
+                }
+                rangeStarted = true;
+            }
+
+            if (lookahead == null || (!range.right.isMinimum() && lookahead.key.getToken().compareTo(range.right) > 0)) {
+                rangeIndex++;
+                rangeStarted = false;
+                continue;
+            }
+
+            final KeyEntry entry = lookahead;
+            lookahead = readEntry();
+            entry.estimatedSize = (lookahead == null ? sstableReader.uncompressedLength() : lookahead.dataPosition)
+                    - entry.dataPosition;
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     *  Read the next entry of the index, as when building the index summary.
+     */
+    private KeyEntry readEntry() throws IOException {
+        if (index.isEOF()) {
+            lookaheadIndexPosition = index.length();
+            return null;
+        }
+
+        lookaheadIndexPosition = index.getFilePointer();
+        final DecoratedKey key = sstableReader.decorateKey(ByteBufferUtil.readWithShortLength(index));
+        final long dataPosition = RowIndexEntry.Serializer.readPosition(index, sstableReader.descriptor.version);
+        RowIndexEntry.Serializer.skipPromotedIndex(index, sstableReader.descriptor.version);
+        return new KeyEntry(key, dataPosition);
+    }
+
+    @Override
+    public void close() {
+        FileUtils.closeQuietly(index);
+    }
+
+    /**
+     *  A partition key, with the position and estimated size of its partition in the data file.
+     */
+    public static final class KeyEntry {
+        private final DecoratedKey key;
+        private final long dataPosition;
+        private long estimatedSize;
+
+        KeyEntry(final DecoratedKey key, final long dataPosition) {
+            this.key = key;
+            this.dataPosition = dataPosition;
+        }
+
+        /**
+         * @return the partition key
+         */
+        public DecoratedKey getKey() {
+            return key;
+        }
+
+        /**
+         * @return the position of the partition in the uncompressed data file
+         */
+        public long getDataPosition() {
+            return dataPosition;
+        }
+
+        /**
+         * @return the uncompressed size of the partition, from its position to the next one
+         */
+        public long getEstimatedSize() {
+            return estimatedSize;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.Slices;
+import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.partitions.AbstractUnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.FileUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *  Iterates over the partitions of a batch of keys found in a sstable, in the order they
+ *  are stored in the data file. All the partitions are read through a single reader of the
+ *  data file, so each partition must be consumed before moving on to the next one. The reader
+ *  is given the positions of all the partitions up front and fetches the chunks holding them
+ *  ahead, in batches, rather than with one synchronous read per partition.
+ *
+ *  @author mdo
+ */
+class SSTableMultiGetIterator extends AbstractUnfilteredPartitionIterator {
+    private final SSTableReader sstableReader;
+    private final ColumnFilter columnFilter;
+    private final Slices slices;
+    private final List<DecoratedKey> keys;
+    private final List<RowIndexEntry> entries;
+
+    private FileDataInput dataFile;
+    private int next = 0;
+
+    /**
+     *  @param sstableReader sstable to read from
+     *  @param sortedKeys keys to read, sorted and without duplicates
+     *  @param columnFilter columns to read
+     *  @param slices rows to read in each partition
+     */
+    SSTableMultiGetIterator(final SSTableReader sstableReader,
+                            final List<DecoratedKey> sortedKeys,
+                            final ColumnFilter columnFilter,
+                            final Slices slices) {
+        this.sstableReader = sstableReader;
+        this.columnFilter = columnFilter;
+        this.slices = slices;
+
+        // partitions are stored in key order, so the found keys are also in data file order
+        final List<RowIndexEntry> positions = sstableReader.getPositions(sortedKeys);
+        this.keys = new ArrayList<>(sortedKeys.size());
+        this.entries = new ArrayList<>(sortedKeys.size());
+        for (int i = 0; i < sortedKeys.size(); i++) {
+            if (positions.get(i) != null) {
+                keys.add(sortedKeys.get(i));
+                entries.add(positions.get(i));
+            }
+        }
+    }
+
+    @Override
+    public boolean isForThrift() {
+        return false;
+    }
+
+    @Override
+    public CFMetaData metadata() {
+        return sstableReader.metadata;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next < keys.size();
+    }
+
+    @Override
+    public UnfilteredRowIterator next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final RowIndexEntry entry = entries.get(next);
+        if (dataFile == null) {
+            final long[] positions = new long[entries.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = entries.get(i).position;
+            }
+            dataFile = sstableReader.getFileDataInput(positions);
+        }
+        return sstableReader.iterator(dataFile, keys.get(next++), entry, slices, columnFilter, false, false);
+    }
+
+    @Override
+    public void close() {
+        FileUtils.closeQuietly(dataFile);
+        dataFile = null;
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import com.google.common.base.Throwables;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.EstimatedHistogram;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *  Reports the largest partitions of a set of sstables, the distribution of their sizes and
+ *  the amount of data in each token range, reading their Index.db only.
+ *
+ *  The size of a partition is the distance from its position in the data file to the next one,
+ *  i.e. its uncompressed serialized size. Unlike the partition size histogram of Statistics.db,
+ *  the report tells which keys the largest partitions are. The sstables are walked in parallel,
+ *  with at most {@link #PARALLELISM_KEY} of them at a time, and only the largest partitions of
+ *  each are kept in memory.
+ *
+ *  @author mdo
+ */
+public class SSTablePartitionReport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSTablePartitionReport.class);
+
+    /**
+     * Hadoop configuration key holding the maximum number of sstables walked at the same time.
+     */
+    public static final String PARALLELISM_KEY = "sstable.adaptor.report.parallelism";
+
+    private static final Comparator<PartitionSize> BY_SIZE = Comparator.comparingLong(PartitionSize::getSize);
+
+    private final List<PartitionSize> largestPartitions;
+    private final EstimatedHistogram sizeHistogram;
+    private final List<Range<Token>> ranges;
+    private final long[] rangeBytes;
+    private final long partitionCount;
+    private final long totalBytes;
+
+    private SSTablePartitionReport(final List<PartitionSize> largestPartitions,
+                                   final EstimatedHistogram sizeHistogram,
+                                   final List<Range<Token>> ranges,
+                                   final long[] rangeBytes,
+                                   final long partitionCount,
+                                   final long totalBytes) {
+        this.largestPartitions = largestPartitions;
+        this.sizeHistogram = sizeHistogram;
+        this.ranges = ranges;
+        this.rangeBytes = rangeBytes;
+        this.partitionCount = partitionCount;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     *  Build the report of a set of sstables, with the token ring split into ranges of the same width.
+     *  @param sstables opened sstables
+     *  @param topK number of largest partitions to report
+     *  @param numRanges number of token ranges to report the amount of data of
+     *  @param configuration Hadoop configuration
+     *  @return the report
+     *  @throws IOException when the index of a sstable cannot be read
+     */
+    public static SSTablePartitionReport build(final SSTableSet sstables,
+                                               final int topK,
+                                               final int numRanges,
+                                               final Configuration configuration) throws IOException {
+        final List<SSTableSingleReader> readers = sstables.getReaders();
+        if (readers.isEmpty()) {
+            throw new IllegalArgumentException("No sstable to report on");
+        }
+        return build(readers, topK, splitRing(readers.get(0).getPartitioner(), numRanges), configuration);
+    }
+
+    /**
+     *  Build the report of several sstables of the same table.
+     *  @param readers opened sstables
+     *  @param topK number of largest partitions to report
+     *  @param ranges contiguous token ranges, in token order, covering the whole ring
+     *  @param configuration Hadoop configuration
+     *  @return the report
+     *  @throws IOException when the index of a sstable cannot be read
+     */
+    public static SSTablePartitionReport build(final List<SSTableSingleReader> readers,
+                                               final int topK,
+                                               final List<Range<Token>> ranges,
+                                               final Configuration configuration) throws IOException {
+        if (topK < 0) {
+            throw new IllegalArgumentException("Number of partitions must not be negative: " + topK);
+        }
+        checkRing(ranges);
+
+        final int parallelism = Math.max(1, Math.min(readers.size(),
+                configuration.getInt(PARALLELISM_KEY, Runtime.getRuntime().availableProcessors())));
+        LOGGER.info("Reporting on " + readers.size() + " sstables with parallelism " + parallelism);
+
+        // EstimatedHistogram is thread safe, so it is shared by all the sstables
+        final EstimatedHistogram sizeHistogram = new EstimatedHistogram(150);
+        final List<Token> rights = new ArrayList<>(ranges.size() - 1);
+        for (int i = 0; i < ranges.size() - 1; i++) {
+            rights.add(ranges.get(i).right);
+        }
+
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new NamedThreadFactory("SSTablePartitionReport"));
+        final List<Future<SSTableSummary>> futures = new ArrayList<>(readers.size());
+        try {
+            for (SSTableSingleReader reader : readers) {
+                futures.add(executor.submit(() -> summarize(reader, topK, rights, sizeHistogram)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final PriorityQueue<PartitionSize> largest = new PriorityQueue<>(Math.max(1, topK), BY_SIZE);
+        final long[] rangeBytes = new long[ranges.size()];
+        long partitionCount = 0;
+        long totalBytes = 0;
+        Throwable failure = null;
+        for (Future<SSTableSummary> future : futures) {
+            try {
+                final SSTableSummary summary = future.get();
+                for (PartitionSize partition : summary.largest) {
+                    offer(largest, partition, topK);
+                }
+                for (int i = 0; i < rangeBytes.length; i++) {
+                    rangeBytes[i] += summary.rangeBytes[i];
+                }
+                partitionCount += summary.partitionCount;
+                totalBytes += summary.totalBytes;
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                    futures.forEach(pending -> pending.cancel(false));
+                }
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                    futures.forEach(pending -> pending.cancel(false));
+                }
+            }
+        }
+
+        if (failure != null) {
+            if (failure instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwables.propagateIfPossible(failure, IOException.class);
+            throw new IOException(failure);
+        }
+
+        final List<PartitionSize> largestPartitions = new ArrayList<>(largest);
+        largestPartitions.sort(BY_SIZE.reversed());
+        LOGGER.info("Reported on " + partitionCount + " partitions of " + readers.size() + " sstables in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return new SSTablePartitionReport(largestPartitions, sizeHistogram,
+                Collections.unmodifiableList(new ArrayList<>(ranges)), rangeBytes, partitionCount, totalBytes);
+    }
+
+    /**
+     *  Split the token ring into ranges of the same width.
+     *  @param partitioner partitioner of the table, that must be able to split ranges
+     *  @param numRanges number of ranges
+     *  @return contiguous ranges, in token order, covering the whole ring
+     */
+    public static List<Range<Token>> splitRing(final IPartitioner partitioner, final int numRanges) {
+        if (numRanges < 1) {
+            throw new IllegalArgumentException("Number of ranges must be positive: " + numRanges);
+        }
+
+        final Token minimum = partitioner.getMinimumToken();
+        final List<Range<Token>> ranges = new ArrayList<>(numRanges);
+        Token left = minimum;
+        for (int i = 1; i < numRanges; i++) {
+            final Token right = partitioner.split(minimum, minimum, (double) i / numRanges);
+            ranges.add(new Range<>(left, right));
+            left = right;
+        }
+        ranges.add(new Range<>(left, minimum));
+        return ranges;
+    }
+
+    private static void checkRing(final List<Range<Token>> ranges) {
+        if (ranges.isEmpty() || !ranges.get(0).left.isMinimum() || !ranges.get(ranges.size() - 1).right.isMinimum()) {
+            throw new IllegalArgumentException("Ranges must cover the whole ring: " + ranges);
+        }
+        for (int i = 1; i < ranges.size(); i++) {
+            if (!ranges.get(i - 1).right.equals(ranges.get(i).left)
+                    || ranges.get(i).left.compareTo(ranges.get(i - 1).left) <= 0) {
+                throw new IllegalArgumentException("Ranges must be contiguous and in token order: " + ranges);
+            }
+        }
+    }
+
+    private static SSTableSummary summarize(final SSTableSingleReader reader,
+                                            final int topK,
+                                            final List<Token> rights,
+                                            final EstimatedHistogram sizeHistogram) {
+        final SSTableSummary summary = new SSTableSummary(rights.size() + 1, topK);
+        try (SSTableKeyIterator keys = reader.getKeyIterator()) {
+            while (keys.hasNext()) {
+                final SSTableKeyIterator.KeyEntry entry = keys.next();
+                final long size = entry.getEstimatedSize();
+                sizeHistogram.add(size);
+                summary.partitionCount++;
+                summary.totalBytes += size;
+
+                // ranges end inclusively, so a key equal to the right bound of a range belongs to it
+                final int found = Collections.binarySearch(rights, entry.getKey().getToken());
+                summary.rangeBytes[found >= 0 ? found : -found - 1] += size;
+
+                if (topK > 0 && (summary.largest.size() < topK || summary.largest.peek().size < size)) {
+                    offer(summary.largest, new PartitionSize(reader.getFileLocation(), entry.getKey(), size), topK);
+                }
+            }
+        }
+        return summary;
+    }
+
+    /**
+     *  Keep a partition in a min-heap of the largest ones, bounded to the given size.
+     */
+    private static void offer(final PriorityQueue<PartitionSize> largest, final PartitionSize partition, final int topK) {
+        if (topK == 0) {
+            return;
+        }
+        if (largest.size() < topK) {
+            largest.add(partition);
+        } else if (largest.peek().size < partition.size) {
+            largest.poll();
+            largest.add(partition);
+        }
+    }
+
+    /**
+     * @return the largest partitions, largest first
+     */
+    public List<PartitionSize> getLargestPartitions() {
+        return largestPartitions;
+    }
+
+    /**
+     * @return the distribution of the partition sizes, in bytes
+     */
+    public EstimatedHistogram getSizeHistogram() {
+        return sizeHistogram;
+    }
+
+    /**
+     * @return the token ranges the data is counted in
+     */
+    public List<Range<Token>> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return the number of bytes of the partitions of each token range, in the order of {@link #getRanges()}
+     */
+    public long[] getRangeBytes() {
+        return rangeBytes.clone();
+    }
+
+    /**
+     * @return the number of partitions, counted once per sstable holding them
+     */
+    public long getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * @return the number of bytes of all the partitions
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     *  The size of a partition in a sstable.
+     */
+    public static final class PartitionSize {
+        private final String fileLocation;
+        private final DecoratedKey key;
+        private final long size;
+
+        PartitionSize(final String fileLocation, final DecoratedKey key, final long size) {
+            this.fileLocation = fileLocation;
+            this.key = key;
+            this.size = size;
+        }
+
+        /**
+         * @return the location of the Data.db file holding the partition
+         */
+        public String getFileLocation() {
+            return fileLocation;
+        }
+
+        /**
+         * @return the partition key
+         */
+        public DecoratedKey getKey() {
+            return key;
+        }
+
+        /**
+         * @return the uncompressed size of the partition, in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     *  What is kept of the partitions of one sstable.
+     */
+    private static final class SSTableSummary {
+        private final long[] rangeBytes;
+        private final PriorityQueue<PartitionSize> largest;
+        private long partitionCount;
+        private long totalBytes;
+
+        SSTableSummary(final int numRanges, final int topK) {
+            this.rangeBytes = new long[numRanges];
+            this.largest = new PriorityQueue<>(Math.max(1, topK), BY_SIZE);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Slices;
+import org.apache.cassandra.dht.Bounds;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.IndexSummary;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.metadata.MetadataType;
+import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.utils.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  Decides which sstables, and which token sub-ranges of them, can hold data matching a query
+ *  described by a token range, clustering slices and a write time window, before reading any
+ *  Data.db.
+ *
+ *  Whole sstables are pruned from the min/max timestamps and clustering values of their
+ *  Statistics.db and from the first and last keys of their Summary.db. Sstables holding
+ *  tombstones are never pruned on clustering values, as partition deletions and range
+ *  tombstones may shadow matching rows of other sstables, like Cassandra does for single
+ *  partition reads. Note that an sstable pruned on write time is skipped with its tombstones,
+ *  so the window must only be used when the data written before it is not needed to shadow
+ *  the data written within it.
+ *
+ *  @author mdo
+ */
+public class SSTablePruner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSTablePruner.class);
+
+    /**
+     *  Hadoop configuration key holding the number of sub-ranges {@link #getTokenRanges(SSTableSingleReader)}
+     *  splits the keys of an sstable into, 1 (the default) to not split them.
+     */
+    public static final String SUB_RANGES_KEY = "sstable.adaptor.pruner.subranges";
+
+    private final CFMetaData cfMetaData;
+    private final Range<Token> range;
+    private final Slices slices;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final Configuration conf;
+
+    /**
+     *  Constructing a pruner for a query.
+     *  @param cfMetaData table schema of the sstables
+     *  @param range token range of the query, or null for all tokens
+     *  @param slices clustering slices of the query, Slices.ALL for all rows
+     *  @param minTimestamp smallest write time of the query, in microseconds, Long.MIN_VALUE if unbounded
+     *  @param maxTimestamp greatest write time of the query, in microseconds, Long.MAX_VALUE if unbounded
+     *  @param configuration Hadoop configuration
+     */
+    public SSTablePruner(final CFMetaData cfMetaData,
+                         final Range<Token> range,
+                         final Slices slices,
+                         final long minTimestamp,
+                         final long maxTimestamp,
+                         final Configuration configuration) {
+        this.cfMetaData = cfMetaData;
+        this.range = range;
+        this.slices = slices;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.conf = configuration;
+    }
+
+    /**
+     *  Keep the sstables that may hold matching data, reading only their Statistics.db and Summary.db.
+     *  @param dataFilePaths locations of the Data.db files
+     *  @return the locations of the sstables to read, in the same order
+     *  @throws IOException when the Statistics.db of an sstable cannot be read
+     */
+    public List<String> prune(final List<String> dataFilePaths) throws IOException {
+        final List<String> kept = new ArrayList<>(dataFilePaths.size());
+        for (String dataFilePath : dataFilePaths) {
+            if (mayMatch(dataFilePath)) {
+                kept.add(dataFilePath);
+            }
+        }
+        LOGGER.info("Pruned " + (dataFilePaths.size() - kept.size()) + " out of "
+                + dataFilePaths.size() + " sstables");
+        return kept;
+    }
+
+    /**
+     *  Check whether an sstable that has not been opened may hold matching data.
+     *  @param dataFilePath location of the Data.db file
+     *  @return false if the sstable cannot hold matching data
+     *  @throws IOException when the Statistics.db of the sstable cannot be read
+     */
+    public boolean mayMatch(final String dataFilePath) throws IOException {
+        final Descriptor descriptor = Descriptor.fromFilename(dataFilePath, conf);
+        final StatsMetadata stats = (StatsMetadata) descriptor.getMetadataSerializer()
+                .deserialize(descriptor, MetadataType.STATS);
+        if (!mayMatch(descriptor, stats)) {
+            return false;
+        }
+
+        if (range == null) {
+            return true;
+        }
+        // without a summary, the sstable cannot be pruned on tokens
+        final Pair<DecoratedKey, DecoratedKey> keys =
+                SSTableReader.readFirstAndLastKey(descriptor, cfMetaData.partitioner);
+        return keys == null || mayMatch(descriptor, keys.left, keys.right);
+    }
+
+    /**
+     *  Check whether an opened sstable may hold matching data.
+     *  @param reader opened sstable
+     *  @return false if the sstable cannot hold matching data
+     */
+    public boolean mayMatch(final SSTableSingleReader reader) {
+        final SSTableReader sstableReader = reader.getSstableReader();
+        return mayMatch(reader.getDescriptor(), sstableReader.getSSTableMetadata())
+                && (range == null || mayMatch(reader.getDescriptor(), sstableReader.first, sstableReader.last));
+    }
+
+    /**
+     *  Find the sub-ranges of the query token range that hold keys of an opened sstable, split
+     *  into as many sub-ranges as configured by {@link #SUB_RANGES_KEY}.
+     *  @param reader opened sstable
+     *  @return the sub-ranges to scan, in token order, empty if the sstable holds no key of the query range
+     */
+    public List<Range<Token>> getTokenRanges(final SSTableSingleReader reader) {
+        return getTokenRanges(reader, conf == null ? 1 : conf.getInt(SUB_RANGES_KEY, 1));
+    }
+
+    /**
+     *  Find the sub-ranges of the query token range that hold keys of an opened sstable,
+     *  looking them up in the index summary and the index, but not in the data file. The query
+     *  range is narrowed to the first and last keys of the sstable, and split on the keys sampled
+     *  by the index summary into sub-ranges holding about the same number of them. Fewer sub-ranges
+     *  are returned when the summary has too few samples in the range.
+     *  @param reader opened sstable
+     *  @param maxRanges number of sub-ranges wanted for each part of the query range
+     *  @return the sub-ranges to scan, in token order, empty if the sstable holds no key of the query range
+     */
+    public List<Range<Token>> getTokenRanges(final SSTableSingleReader reader, final int maxRanges) {
+        if (maxRanges < 1) {
+            throw new IllegalArgumentException("Number of sub-ranges must be positive: " + maxRanges);
+        }
+
+        final SSTableReader sstableReader = reader.getSstableReader();
+        final Token minimum = cfMetaData.partitioner.getMinimumToken();
+        final List<Range<Token>> queryRanges = Range.normalize(Collections.singletonList(
+                range == null ? new Range<>(minimum, minimum) : range));
+
+        final Token beforeFirst = previous(sstableReader.first.getToken());
+        final Token last = sstableReader.last.getToken();
+        final List<Range<Token>> ranges = new ArrayList<>(queryRanges.size());
+        for (Range<Token> queryRange : queryRanges) {
+            // keys before the first one and past the last one of the sstable can be left out of the range,
+            // which starts exclusively and ends inclusively
+            final Token left = beforeFirst != null && beforeFirst.compareTo(queryRange.left) > 0
+                    ? beforeFirst
+                    : queryRange.left;
+            final Token right = queryRange.right.isMinimum() || queryRange.right.compareTo(last) > 0
+                    ? last
+                    : queryRange.right;
+            if (left.compareTo(right) >= 0) {
+                continue;
+            }
+            final Range<Token> narrowed = new Range<>(left, right);
+            if (!sstableReader.getPositionsForRanges(Collections.singletonList(narrowed)).isEmpty()) {
+                ranges.addAll(split(sstableReader, narrowed, maxRanges));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     *  Split a range on the tokens of the keys sampled by the index summary.
+     */
+    private static List<Range<Token>> split(final SSTableReader sstableReader,
+                                            final Range<Token> narrowed,
+                                            final int maxRanges) {
+        if (maxRanges == 1) {
+            return Collections.singletonList(narrowed);
+        }
+
+        final IndexSummary summary = sstableReader.getIndexSummary();
+        final List<Token> samples = new ArrayList<>();
+        for (int i = 0; i < summary.size(); i++) {
+            final Token token = sstableReader.decorateKey(ByteBuffer.wrap(summary.getKey(i))).getToken();
+            if (token.compareTo(narrowed.left) > 0 && token.compareTo(narrowed.right) < 0
+                    && (samples.isEmpty() || token.compareTo(samples.get(samples.size() - 1)) > 0)) {
+                samples.add(token);
+            }
+        }
+
+        // cut at evenly spaced samples, the sub-ranges on both sides of a cut holding about as many samples
+        final List<Range<Token>> ranges = new ArrayList<>(Math.min(maxRanges, samples.size() + 1));
+        Token left = narrowed.left;
+        int previousCut = -1;
+        for (int k = 1; k < maxRanges; k++) {
+            final int cut = (int) ((long) k * (samples.size() + 1) / maxRanges) - 1;
+            if (cut > previousCut && cut < samples.size()) {
+                ranges.add(new Range<>(left, samples.get(cut)));
+                left = samples.get(cut);
+                previousCut = cut;
+            }
+        }
+        ranges.add(new Range<>(left, narrowed.right));
+        return ranges;
+    }
+
+    /**
+     *  @return the greatest token smaller than the given one, or null if the partitioner cannot tell
+     */
+    private static Token previous(final Token token) {
+        if (token instanceof Murmur3Partitioner.LongToken) {
+            final long value = (Long) token.getTokenValue();
+            return value == Long.MIN_VALUE ? null : new Murmur3Partitioner.LongToken(value - 1);
+        }
+        if (token instanceof RandomPartitioner.BigIntegerToken) {
+            final BigInteger value = (BigInteger) token.getTokenValue();
+            return value.signum() < 0 ? null : new RandomPartitioner.BigIntegerToken(value.subtract(BigInteger.ONE));
+        }
+        return null;
+    }
+
+    private boolean mayMatch(final Descriptor descriptor, final StatsMetadata stats) {
+        if (stats.maxTimestamp < minTimestamp || stats.minTimestamp > maxTimestamp) {
+            LOGGER.info("Pruning " + descriptor + ": written between " + stats.minTimestamp
+                    + " and " + stats.maxTimestamp);
+            return false;
+        }
+
+        // clustering stats do not tell whether static rows are present, and are not reliable before 3.0.
+        // Tombstones are not bounded by them: a partition deletion or range tombstone may shadow matching
+        // rows of other sstables, so sstables holding some are kept, as by SSTableReader.hasTombstones()
+        if (slices != Slices.ALL && descriptor.version.storeRows() && !cfMetaData.hasStaticColumns()
+                && stats.minLocalDeletionTime == Integer.MAX_VALUE
+                && !slices.intersects(stats.minClusteringValues, stats.maxClusteringValues)) {
+            LOGGER.info("Pruning " + descriptor + ": no clustering in " + slices.toCQLString(cfMetaData));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean mayMatch(final Descriptor descriptor, final DecoratedKey first, final DecoratedKey last) {
+        if (!range.intersects(new Bounds<>(first.getToken(), last.getToken()))) {
+            LOGGER.info("Pruning " + descriptor + ": no token in " + range);
+            return false;
+        }
+        return true;
+    }
+}
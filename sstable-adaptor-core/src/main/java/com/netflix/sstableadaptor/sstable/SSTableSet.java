@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  The readers of a set of sstables opened together by {@link SSTableSetOpener},
+ *  closed together as well.
+ *
+ *  @author mdo
+ */
+public class SSTableSet implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSTableSet.class);
+
+    private final List<SSTableSingleReader> readers;
+
+    SSTableSet(final List<SSTableSingleReader> readers) {
+        this.readers = Collections.unmodifiableList(readers);
+    }
+
+    /**
+     * @return the readers, one per sstable
+     */
+    public List<SSTableSingleReader> getReaders() {
+        return readers;
+    }
+
+    /**
+     * @return the number of sstables
+     */
+    public int size() {
+        return readers.size();
+    }
+
+    /**
+     * Close all the readers, carrying on past the ones that fail to close.
+     */
+    @Override
+    public void close() {
+        for (SSTableSingleReader reader : readers) {
+            try {
+                reader.close();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed closing " + reader.getFileLocation() + ": " + e.getMessage());
+            }
+        }
+    }
+}
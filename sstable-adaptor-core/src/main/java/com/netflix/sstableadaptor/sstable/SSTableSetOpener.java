@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import com.google.common.base.Throwables;
+import com.netflix.sstableadaptor.config.CassandraTable;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.util.HadoopFileUtils;
+import org.apache.cassandra.utils.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *  Opens all the sstables of a directory, or of a list of Data.db files, at once.
+ *
+ *  The components of the sstables are discovered with a single listing per directory
+ *  instead of reading the TOC of each sstable, and the readers are opened in parallel
+ *  with at most {@link #OPEN_PARALLELISM_KEY} of them at a time, so that opening
+ *  thousands of sstables on a remote file system is not bound by one round trip after
+ *  the other.
+ *
+ *  @author mdo
+ */
+public class SSTableSetOpener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSTableSetOpener.class);
+
+    /**
+     * Hadoop configuration key holding the maximum number of sstables opened at the same time.
+     */
+    public static final String OPEN_PARALLELISM_KEY = "sstable.adaptor.open.parallelism";
+    public static final int DEFAULT_OPEN_PARALLELISM = 16;
+
+    private final CassandraTable cassandraTable;
+    private final CFMetaData cfMetaData;
+    private final Configuration conf;
+
+    /**
+     *  Constructing an opener that restores the table schema of each sstable
+     *  from its own Stats.db.
+     *  @param configuration Hadoop configuration
+     */
+    public SSTableSetOpener(final Configuration configuration) {
+        this(null, null, configuration);
+    }
+
+    /**
+     *  Constructing an opener that restores the table schema of each sstable
+     *  from its own Stats.db, with the names of the given table.
+     *  @param cassandraTable keyspace, table and key names
+     *  @param configuration Hadoop configuration
+     */
+    public SSTableSetOpener(final CassandraTable cassandraTable, final Configuration configuration) {
+        this(cassandraTable, null, configuration);
+    }
+
+    /**
+     *  Constructing an opener that uses the same, already defined, table schema for all sstables.
+     *  @param cfMetaData CFMetaData to represent the table schema
+     *  @param configuration Hadoop configuration
+     */
+    public SSTableSetOpener(final CFMetaData cfMetaData, final Configuration configuration) {
+        this(null, cfMetaData, configuration);
+    }
+
+    private SSTableSetOpener(final CassandraTable cassandraTable,
+                             final CFMetaData cfMetaData,
+                             final Configuration configuration) {
+        this.cassandraTable = cassandraTable;
+        this.cfMetaData = cfMetaData;
+        this.conf = configuration;
+    }
+
+    /**
+     *  Open all the sstables of a directory.
+     *  @param directory location of the directory
+     *  @return the opened sstables, to be closed together
+     *  @throws IOException when the directory cannot be listed or a sstable cannot be opened
+     */
+    public SSTableSet openDirectory(final String directory) throws IOException {
+        final Map<String, Set<Component>> sstables = listSSTables(stripTrailingSeparator(directory));
+        return open(sstables);
+    }
+
+    /**
+     *  Open the sstables of the given Data.db files.
+     *  @param dataFilePaths locations of the Data.db files
+     *  @return the opened sstables, in the same order, to be closed together
+     *  @throws IOException when a directory cannot be listed or a sstable cannot be opened
+     */
+    public SSTableSet open(final List<String> dataFilePaths) throws IOException {
+        final Map<String, Map<String, Set<Component>>> listings = new HashMap<>();
+        final Map<String, Set<Component>> sstables = new LinkedHashMap<>();
+        for (String dataFilePath : dataFilePaths) {
+            final String directory = dataFilePath.substring(0, dataFilePath.lastIndexOf('/'));
+            Map<String, Set<Component>> listing = listings.get(directory);
+            if (listing == null) {
+                listing = listSSTables(directory);
+                listings.put(directory, listing);
+            }
+
+            final Set<Component> components = listing.get(dataFilePath);
+            if (components == null) {
+                throw new IOException("Cannot find sstable " + dataFilePath);
+            }
+            sstables.put(dataFilePath, components);
+        }
+
+        return open(sstables);
+    }
+
+    private SSTableSet open(final Map<String, Set<Component>> sstables) throws IOException {
+        final int parallelism = Math.max(1, Math.min(sstables.size(),
+                conf.getInt(OPEN_PARALLELISM_KEY, DEFAULT_OPEN_PARALLELISM)));
+        LOGGER.info("Opening " + sstables.size() + " sstables with parallelism " + parallelism);
+
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new NamedThreadFactory("SSTableSetOpener"));
+        final List<Future<SSTableSingleReader>> futures = new ArrayList<>(sstables.size());
+        // don't bother opening the sstables that have not started yet once one failed to open
+        final AtomicBoolean failed = new AtomicBoolean();
+        try {
+            for (Map.Entry<String, Set<Component>> sstable : sstables.entrySet()) {
+                futures.add(executor.submit(() -> {
+                    if (failed.get()) {
+                        return null;
+                    }
+                    try {
+                        return openReader(sstable.getKey(), sstable.getValue());
+                    } catch (Throwable t) {
+                        failed.set(true);
+                        throw t;
+                    }
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // every task is waited for, so that the readers opened before a failure are closed with the others
+        final List<SSTableSingleReader> readers = new ArrayList<>(futures.size());
+        Throwable failure = null;
+        for (Future<SSTableSingleReader> future : futures) {
+            try {
+                final SSTableSingleReader reader = future.get();
+                if (reader != null) {
+                    readers.add(reader);
+                }
+            } catch (ExecutionException e) {
+                failed.set(true);
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (Exception e) {
+                failed.set(true);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            new SSTableSet(readers).close();
+            if (failure instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwables.propagateIfPossible(failure, IOException.class);
+            throw new IOException(failure);
+        }
+
+        LOGGER.info("Opened " + readers.size() + " sstables in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return new SSTableSet(readers);
+    }
+
+    private SSTableSingleReader openReader(final String dataFilePath,
+                                           final Set<Component> components) throws IOException {
+        if (cfMetaData != null) {
+            return new SSTableSingleReader(dataFilePath, components, cfMetaData, conf);
+        }
+
+        if (cassandraTable != null) {
+            return new SSTableSingleReader(dataFilePath, components,
+                    cassandraTable.getKeyspaceName(),
+                    cassandraTable.getTableName(),
+                    cassandraTable.getPartitionKeyNames(),
+                    cassandraTable.getClusteringKeyNames(),
+                    conf);
+        }
+
+        return new SSTableSingleReader(dataFilePath, components, "", "",
+                Collections.<String>emptyList(), Collections.<String>emptyList(), conf);
+    }
+
+    /**
+     *  List a directory once and group its files by sstable.
+     *  @param directory location of the directory, without trailing separator
+     *  @return the components of each sstable that has a Data.db, keyed by the location of the Data.db
+     *  @throws IOException when the directory cannot be listed
+     */
+    private Map<String, Set<Component>> listSSTables(final String directory) throws IOException {
+        final Path path = new Path(HadoopFileUtils.normalizeFileName(directory));
+        final FileSystem fs = path.getFileSystem(conf);
+        final FileStatus[] statuses = fs.listStatus(path);
+
+        final Map<Descriptor, Set<Component>> components = new HashMap<>();
+        final Map<Descriptor, String> dataFilePaths = new HashMap<>();
+        for (FileStatus status : statuses) {
+            if (status.isDirectory()) {
+                continue;
+            }
+
+            final String name = status.getPath().getName();
+            final Pair<Descriptor, String> parsed = parse(directory, name);
+            if (parsed != null) {
+                final Component component = Component.parse(parsed.right);
+                components.computeIfAbsent(parsed.left, desc -> new LinkedHashSet<>()).add(component);
+                if (component.equals(Component.DATA)) {
+                    dataFilePaths.put(parsed.left, directory + '/' + name);
+                }
+            }
+        }
+
+        final Map<String, Set<Component>> sstables = new LinkedHashMap<>();
+        for (Map.Entry<Descriptor, String> dataFilePath : dataFilePaths.entrySet()) {
+            sstables.put(dataFilePath.getValue(), components.get(dataFilePath.getKey()));
+        }
+        LOGGER.info("Found " + sstables.size() + " sstables in " + directory);
+        return sstables;
+    }
+
+    /**
+     * @return the descriptor and component name of a file, or null if it is not a sstable component
+     */
+    private Pair<Descriptor, String> parse(final String directory, final String name) {
+        try {
+            return Descriptor.fromFilename(directory, name, false, conf);
+        } catch (RuntimeException | AssertionError e) {
+            LOGGER.debug("Skipping " + name + " in " + directory + ": not a sstable component");
+            return null;
+        }
+    }
+
+    private static String stripTrailingSeparator(final String directory) {
+        return directory.endsWith("/") ? directory.substring(0, directory.length() - 1) : directory;
+    }
+}
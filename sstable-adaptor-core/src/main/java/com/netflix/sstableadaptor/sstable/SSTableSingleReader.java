@@ -20,29 +20,48 @@ import com.google.common.util.concurrent.RateLimiter;
 import com.netflix.sstableadaptor.config.CassandraTable;
 import com.netflix.sstableadaptor.util.SSTableUtils;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.ClusteringBound;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionColumns;
+import org.apache.cassandra.db.Slice;
+import org.apache.cassandra.db.Slices;
+import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Murmur3Partitioner;
 import org.apache.cassandra.dht.RandomPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.IndexSummary;
+import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
+import org.apache.cassandra.io.sstable.metadata.MetadataType;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.io.util.HadoopFileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.EstimatedHistogram;
 import org.apache.hadoop.conf.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  *  This is the SSTable Adaptor's reader that can help to
@@ -50,7 +69,7 @@ import java.util.List;
  *
  *  @author mdo
  */
-public class SSTableSingleReader {
+public class SSTableSingleReader implements Closeable {
     private static final Logger LOGGER  = LoggerFactory.getLogger(SSTableSingleReader.class);
     private String fileLocation;
     private long fileLength;
@@ -71,6 +90,7 @@ public class SSTableSingleReader {
 
     private CFMetaData cfMetaData;
     private Configuration conf;
+    private Set<Component> components; //C* components of the sstable
 
     /**
      *  Constructing a reader instance to take in a location for the file and set the
@@ -150,7 +170,47 @@ public class SSTableSingleReader {
                                final List<String> partitionKeyNames,
                                final List<String> clustringKeyNames,
                                Configuration configuration) throws IOException {
+        this(filePath, null, keyspaceName, tableName, partitionKeyNames, clustringKeyNames, configuration);
+    }
+
+    /**
+     *  Constructing a reader instance on a sstable whose components are already known,
+     *  e.g. from a listing of its directory, with already defined CFMetaData.
+     *  @param filePath location of the sstable file
+     *  @param components components of the sstable, or null to read them from its TOC
+     *  @param cfMetaData CFMetaData to represent the table schema
+     *  @throws IOException when file location is not valid
+     */
+    SSTableSingleReader(final String filePath,
+                        final Set<Component> components,
+                        final CFMetaData cfMetaData,
+                        Configuration configuration) throws IOException {
         this.fileLocation = filePath;
+        this.components = components;
+        this.conf = configuration;
+        initialization(cfMetaData);
+    }
+
+    /**
+     *  Constructing a reader instance on a sstable whose components are already known,
+     *  e.g. from a listing of its directory.
+     *  @param filePath location of the sstable file
+     *  @param components components of the sstable, or null to read them from its TOC
+     *  @param keyspaceName keyspace name
+     *  @param tableName table name
+     *  @param partitionKeyNames list of partition key names
+     *  @param clustringKeyNames list of clustering key names
+     *  @throws IOException when file location is not valid
+     */
+    SSTableSingleReader(final String filePath,
+                        final Set<Component> components,
+                        final String keyspaceName,
+                        final String tableName,
+                        final List<String> partitionKeyNames,
+                        final List<String> clustringKeyNames,
+                        Configuration configuration) throws IOException {
+        this.fileLocation = filePath;
+        this.components = components;
         this.conf = configuration;
         initialization(keyspaceName, tableName, partitionKeyNames, clustringKeyNames);
     }
@@ -163,7 +223,7 @@ public class SSTableSingleReader {
     private void initialization(final CFMetaData cfMetaData) throws IOException {
         descriptor = Descriptor.fromFilename(HadoopFileUtils.normalizeFileName(fileLocation), this.conf);
         this.cfMetaData = cfMetaData;
-        initHelper();
+        initHelper(null);
     }
 
     /**
@@ -179,12 +239,18 @@ public class SSTableSingleReader {
                                 final List<String> partitionKeyNames,
                                 final List<String> clusteringKeyNames) throws IOException {
         descriptor = Descriptor.fromFilename(HadoopFileUtils.normalizeFileName(fileLocation), conf);
-        cfMetaData = SSTableUtils.metadataFromSSTable(descriptor, keyspaceName, tableName, partitionKeyNames, clusteringKeyNames);
-        initHelper();
+        // Stats.db is read once, for both the schema and the reader
+        final Map<MetadataType, MetadataComponent> sstableMetadata = SSTableUtils.readSSTableMetadata(descriptor);
+        cfMetaData = SSTableUtils.metadataFromSSTable(descriptor, sstableMetadata,
+                keyspaceName, tableName, partitionKeyNames, clusteringKeyNames);
+        initHelper(sstableMetadata);
     }
 
-    private void initHelper() throws IOException {
-        sstableReader = SSTableReader.openNoValidation(descriptor, cfMetaData);
+    private void initHelper(final Map<MetadataType, MetadataComponent> sstableMetadata) throws IOException {
+        if (components == null) {
+            components = SSTable.componentsFor(descriptor);
+        }
+        sstableReader = SSTableReader.openNoValidation(descriptor, components, cfMetaData, sstableMetadata);
         fileLength = sstableReader.onDiskLength();
         version = descriptor.version.correspondingMessagingVersion();
         generation = descriptor.generation;
@@ -354,11 +420,188 @@ public class SSTableSingleReader {
     }
 
     /**
-     * Close resources.
+     * Build a SSTable scanner on the entire sstable file that reads only some of the columns.
+     *
+     * @param columnNames names of the columns to read; the partition and clustering key columns
+     *                    are always read, so they can be listed or left out
+     * @return ISSTableScanner
+     * @throws IllegalArgumentException when a column does not exist in the table
+     */
+    public ISSTableScanner getSSTableScanner(final Collection<String> columnNames) {
+        return getSSTableScanner(null, getColumnFilter(columnNames), null);
+    }
+
+    /**
+     * Build a SSTable scanner that reads only some of the columns. The cells of the other
+     * columns are skipped while deserializing the rows, so narrow projections of wide rows
+     * cost a fraction of a full scan.
+     *
+     * @param range  token range, or null for the entire sstable file
+     * @param columnFilter columns to read, see {@link #getColumnFilter(Collection)}
+     * @param limiter rate limiter to control the rate of reading the underneath SSTable file
+     * @return ISSTableScanner
+     */
+    public ISSTableScanner getSSTableScanner(final Range<Token> range,
+                                             final ColumnFilter columnFilter,
+                                             final RateLimiter limiter) {
+        return getSSTableScanner(range, columnFilter, Slices.ALL, limiter);
+    }
+
+    /**
+     * Build a SSTable scanner that reads only some of the columns and rows of each partition.
+     * In partitions large enough to have a row index, the index is searched for the first
+     * block of each slice, so reading the last rows of a wide partition does not deserialize
+     * the rows before them.
+     *
+     * @param range  token range, or null for the entire sstable file
+     * @param columnFilter columns to read, see {@link #getColumnFilter(Collection)}
+     * @param slices rows to read in each partition, see {@link #getSlices(ByteBuffer[], ByteBuffer[])}
+     * @param limiter rate limiter to control the rate of reading the underneath SSTable file
+     * @return ISSTableScanner
+     */
+    public ISSTableScanner getSSTableScanner(final Range<Token> range,
+                                             final ColumnFilter columnFilter,
+                                             final Slices slices,
+                                             final RateLimiter limiter) {
+        return this.sstableReader.getScanner(columnFilter, slices,
+                range == null ? null : Collections.singletonList(range), limiter);
+    }
+
+    /**
+     * Build a scanner reading the entire sstable file with several threads, as configured
+     * by {@link ParallelSSTableScanner#THREADS_KEY}.
+     *
+     * @param ordered true to return the partitions in token order, false to return them as soon as they are read
+     * @return ISSTableScanner
+     * @throws IOException when the index cannot be read to split the file
+     */
+    public ISSTableScanner getParallelSSTableScanner(final boolean ordered) throws IOException {
+        return new ParallelSSTableScanner(this, ordered, conf);
+    }
+
+    /**
+     * Build an iterator over all the partition keys, with the position and size of their
+     * partitions, reading the index file only.
+     *
+     * @return SSTableKeyIterator, to be closed
+     */
+    public SSTableKeyIterator getKeyIterator() {
+        return new SSTableKeyIterator(this.sstableReader, null);
+    }
+
+    /**
+     * Build an iterator over the partition keys of a token range, with the position and size
+     * of their partitions, reading the index file only.
+     *
+     * @param range token range, its left bound exclusive and its right one inclusive
+     * @return SSTableKeyIterator, to be closed
+     */
+    public SSTableKeyIterator getKeyIterator(final Range<Token> range) {
+        return new SSTableKeyIterator(this.sstableReader, range);
+    }
+
+    /**
+     * Map column names to the filter reading only these columns. The partition and clustering
+     * key columns are always read, so they can be listed or left out.
+     *
+     * @param columnNames names of the columns to read
+     * @return ColumnFilter
+     * @throws IllegalArgumentException when a column does not exist in the table
+     */
+    public ColumnFilter getColumnFilter(final Collection<String> columnNames) {
+        final PartitionColumns.Builder columns = PartitionColumns.builder();
+        for (String columnName : columnNames) {
+            final ColumnDefinition column = cfMetaData.getColumnDefinition(ByteBufferUtil.bytes(columnName));
+            if (column == null) {
+                throw new IllegalArgumentException("Unknown column " + columnName + " in table "
+                        + cfMetaData.ksName + "." + cfMetaData.cfName);
+            }
+            if (column.isRegular() || column.isStatic()) {
+                columns.add(column);
+            }
+        }
+        return ColumnFilter.selection(columns.build());
+    }
+
+    /**
+     * Build the slice of the rows between two clustering prefixes, both included. A prefix
+     * holds the values of the first clustering columns, serialized as by their types.
+     *
+     * @param start values of the first row to read, null or empty to read from the first row
+     * @param end values of the last row to read, null or empty to read up to the last row
+     * @return Slices
+     */
+    public Slices getSlices(final ByteBuffer[] start, final ByteBuffer[] end) {
+        final ClusteringBound startBound = start == null || start.length == 0
+                ? ClusteringBound.BOTTOM : ClusteringBound.inclusiveStartOf(start);
+        final ClusteringBound endBound = end == null || end.length == 0
+                ? ClusteringBound.TOP : ClusteringBound.inclusiveEndOf(end);
+        return Slices.with(cfMetaData.comparator, Slice.make(startBound, endBound));
+    }
+
+    /**
+     * Read one partition.
+     *
+     * @param key partition key, serialized as by the key validator
+     * @return the partition, empty if the key is not in the sstable
+     */
+    public UnfilteredRowIterator getPartition(final ByteBuffer key) {
+        return getPartition(key, ColumnFilter.all(cfMetaData), Slices.ALL);
+    }
+
+    /**
+     * Read some of the rows and columns of one partition.
+     *
+     * @param key partition key, serialized as by the key validator
+     * @param columnFilter columns to read
+     * @param slices rows to read
+     * @return the partition, empty if the key is not in the sstable
+     */
+    public UnfilteredRowIterator getPartition(final ByteBuffer key,
+                                              final ColumnFilter columnFilter,
+                                              final Slices slices) {
+        return this.sstableReader.iterator(partitioner.decorateKey(key), slices, columnFilter, false, false);
+    }
+
+    /**
+     * Read many partitions at once.
+     *
+     * @param keys partition keys, serialized as by the key validator
+     * @return the partitions found in the sstable, in token order
+     */
+    public UnfilteredPartitionIterator multiGet(final Collection<ByteBuffer> keys) {
+        return multiGet(keys, ColumnFilter.all(cfMetaData), Slices.ALL);
+    }
+
+    /**
+     * Read some of the rows and columns of many partitions at once. The keys are looked up
+     * in token order, in a single pass over the index summary and the index, and the
+     * partitions are then read in data file order, so that the pages of the index and of
+     * the data file shared by several keys are read once.
+     *
+     * Each partition must be consumed before moving on to the next one.
+     *
+     * @param keys partition keys, serialized as by the key validator
+     * @param columnFilter columns to read
+     * @param slices rows to read in each partition
+     * @return the partitions found in the sstable, in token order
+     */
+    public UnfilteredPartitionIterator multiGet(final Collection<ByteBuffer> keys,
+                                                final ColumnFilter columnFilter,
+                                                final Slices slices) {
+        final TreeSet<DecoratedKey> sortedKeys = new TreeSet<>();
+        for (ByteBuffer key : keys) {
+            sortedKeys.add(partitioner.decorateKey(key));
+        }
+        return new SSTableMultiGetIterator(this.sstableReader, new ArrayList<>(sortedKeys), columnFilter, slices);
+    }
+
+    /**
+     * Close resources. Must be called exactly once.
      */
+    @Override
     public void close() {
         LOGGER.info("Closing down!!! Calling SSTableReader.close()");
-        //this.sstableReader.selfRef().close();
         sstableReader.close();
     }
 
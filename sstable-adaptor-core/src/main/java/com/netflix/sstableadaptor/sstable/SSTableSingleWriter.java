@@ -7,8 +7,10 @@ import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.rows.EncodingStats;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.SSTableTxnWriter;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.big.BigFormat;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.hadoop.conf.Configuration;
@@ -44,33 +46,24 @@ public class SSTableSingleWriter<T extends UnfilteredRowIterator> {
                                                                   cassTable.getKeyspaceName(),
                                                                   cassTable.getTableName());
 
-            Descriptor outDescriptor = new Descriptor(BigFormat.latestVersion.getVersion(),
-                    outLocation,
-                    cassTable.getKeyspaceName(),
-                    cassTable.getTableName(),
-                    generation++,
-                    SSTableFormat.Type.BIG,
-                    conf);
-
             SerializationHeader header = new SerializationHeader(true,
                     outputCFMetaData,
                     outputCFMetaData.partitionColumns(),
                     EncodingStats.NO_STATS);
 
             //Todo: fix these settings
-            writer = SSTableTxnWriter.createWithNoLogging(outputCFMetaData, outDescriptor, 4, -1, 1, header);
+            writer = SSTableTxnWriter.createWithNoLogging(outputCFMetaData, newDescriptor(), 4, -1, 1, header);
 
             while (data.hasNext())
                 writer.append(data.next());
 
+            writer.finish();
+            LOGGER.info("Done saving sstable to: " + outLocation);
         } catch (Exception e) {
             LOGGER.info(e.getMessage());
             throw e;
         } finally {
-            if (writer != null) {
-                writer.finish();
-                LOGGER.info("Done saving sstable to: " + outLocation);
-            }
+            // aborts the transaction of the writer unless it was finished
             FileUtils.closeQuietly(writer);
         }
 
@@ -80,6 +73,70 @@ public class SSTableSingleWriter<T extends UnfilteredRowIterator> {
         return retVal;
     }
 
+    /**
+     * Rewrites a whole sstable, e.g. to recompress it or to convert it to the latest format. When its
+     * serialization header and row format allow it, its partitions are copied as serialized instead of being
+     * deserialized and serialized again, and only the index, summary, bloom filter and statistics are rebuilt.
+     * @param reader the sstable to rewrite
+     * @return the location of the written sstable
+     * @throws IOException when the sstable cannot be read or written
+     */
+    public List<String> transfer(final SSTableSingleReader reader) throws IOException {
+        final SSTableReader source = reader.getSstableReader();
+        SSTableTxnWriter writer = null;
+        try {
+            final CFMetaData outputCFMetaData = setCFMetadataWithParams(origCFMetaData,
+                                                                        cassTable.getKeyspaceName(),
+                                                                        cassTable.getTableName());
+
+            // keep the encoding stats of the input so that its rows are serialized the same way
+            final SerializationHeader header = new SerializationHeader(true,
+                    outputCFMetaData,
+                    outputCFMetaData.partitionColumns(),
+                    source.header == null ? EncodingStats.NO_STATS : source.header.stats());
+
+            writer = SSTableTxnWriter.createWithNoLogging(outputCFMetaData, newDescriptor(),
+                                                          source.estimatedKeys(), -1,
+                                                          source.getSSTableLevel(), header);
+
+            if (writer.canTransfer(source)) {
+                LOGGER.info("Copied " + writer.transfer(source) + " partitions of " + reader.getDescriptor()
+                            + " without deserializing them");
+            } else {
+                try (ISSTableScanner scanner = reader.getSSTableScanner()) {
+                    while (scanner.hasNext()) {
+                        try (UnfilteredRowIterator partition = scanner.next()) {
+                            writer.append(partition);
+                        }
+                    }
+                }
+            }
+
+            writer.finish();
+            LOGGER.info("Done saving sstable to: " + outLocation);
+        } catch (Exception e) {
+            LOGGER.info(e.getMessage());
+            throw e;
+        } finally {
+            FileUtils.closeQuietly(writer);
+        }
+
+        final List<String> retVal = new LinkedList<>();
+        retVal.add(outLocation);
+
+        return retVal;
+    }
+
+    private Descriptor newDescriptor() {
+        return new Descriptor(BigFormat.latestVersion.getVersion(),
+                outLocation,
+                cassTable.getKeyspaceName(),
+                cassTable.getTableName(),
+                generation++,
+                SSTableFormat.Type.BIG,
+                conf);
+    }
+
     private CFMetaData setCFMetadataWithParams(CFMetaData cFMetaData,
                                         String ks,
                                         String table) {
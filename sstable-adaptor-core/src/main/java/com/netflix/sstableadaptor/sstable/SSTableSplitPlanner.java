@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.sstableadaptor.sstable;
+
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.IndexSummary;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *  Splits the token ring into ranges holding about the same amount of compressed data
+ *  of one or several sstables, so that the tasks scanning them take about the same time
+ *  however skewed the data is.
+ *
+ *  The size of the data between two keys is known from the index summary: the data file
+ *  position of each sampled key is read from the index, and mapped to its offset in the
+ *  compressed file with the compression metadata. No data file is read.
+ *
+ *  @author mdo
+ */
+public class SSTableSplitPlanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSTableSplitPlanner.class);
+
+    private final List<SSTableSingleReader> readers;
+
+    /**
+     *  Constructing a planner for one sstable.
+     *  @param reader opened sstable
+     */
+    public SSTableSplitPlanner(final SSTableSingleReader reader) {
+        this(Collections.singletonList(reader));
+    }
+
+    /**
+     *  Constructing a planner for a set of sstables.
+     *  @param sstables opened sstables
+     */
+    public SSTableSplitPlanner(final SSTableSet sstables) {
+        this(sstables.getReaders());
+    }
+
+    /**
+     *  Constructing a planner for several sstables of the same table.
+     *  @param readers opened sstables
+     */
+    public SSTableSplitPlanner(final List<SSTableSingleReader> readers) {
+        this.readers = readers;
+    }
+
+    /**
+     *  Split the token ring into ranges of about the same compressed size. Fewer ranges are
+     *  returned when the sstables have too few sampled keys to be split that finely.
+     *  @param numSplits number of ranges wanted
+     *  @return contiguous ranges, in token order, covering the whole ring
+     *  @throws IOException when the index of a sstable cannot be read
+     */
+    public List<Range<Token>> plan(final int numSplits) throws IOException {
+        if (numSplits < 1) {
+            throw new IllegalArgumentException("Number of splits must be positive: " + numSplits);
+        }
+
+        final List<Sample> samples = new ArrayList<>();
+        for (SSTableSingleReader reader : readers) {
+            addSamples(reader.getSstableReader(), samples);
+        }
+        samples.sort(Comparator.comparing(sample -> sample.token));
+
+        long total = 0;
+        for (Sample sample : samples) {
+            total += sample.bytes;
+        }
+
+        // cut after the sample where the running size crosses each multiple of the target size,
+        // never between samples of the same token
+        final List<Token> cuts = new ArrayList<>(numSplits - 1);
+        long running = 0;
+        int nextCut = 1;
+        for (int i = 0; i < samples.size() - 1 && cuts.size() < numSplits - 1; i++) {
+            running += samples.get(i).bytes;
+            if (running >= (double) total * nextCut / numSplits
+                    && samples.get(i + 1).token.compareTo(samples.get(i).token) > 0) {
+                cuts.add(samples.get(i).token);
+                while (nextCut < numSplits && running >= (double) total * nextCut / numSplits) {
+                    nextCut++;
+                }
+            }
+        }
+
+        final Token minimum = getPartitioner().getMinimumToken();
+        final List<Range<Token>> ranges = new ArrayList<>(cuts.size() + 1);
+        Token left = minimum;
+        for (Token cut : cuts) {
+            ranges.add(new Range<>(left, cut));
+            left = cut;
+        }
+        ranges.add(new Range<>(left, minimum));
+
+        LOGGER.info("Planned " + ranges.size() + " splits of about " + total / ranges.size()
+                + " bytes out of " + readers.size() + " sstables");
+        return ranges;
+    }
+
+    /**
+     *  Compute the compressed size of the data of a token range, from the positions of its
+     *  first and last keys in the index of each sstable.
+     *  @param range token range
+     *  @return the number of bytes read from the data files to scan the range
+     */
+    public long estimateCompressedBytes(final Range<Token> range) {
+        long bytes = 0;
+        for (SSTableSingleReader reader : readers) {
+            final SSTableReader sstableReader = reader.getSstableReader();
+            final List<Pair<Long, Long>> sections =
+                    sstableReader.getPositionsForRanges(Collections.singletonList(range));
+            if (sstableReader.compression) {
+                bytes += sstableReader.getCompressionMetadata().getTotalSizeForSections(sections);
+            } else {
+                for (Pair<Long, Long> section : sections) {
+                    bytes += section.right - section.left;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private IPartitioner getPartitioner() {
+        if (readers.isEmpty()) {
+            throw new IllegalStateException("No sstable to plan splits for");
+        }
+        return readers.get(0).getPartitioner();
+    }
+
+    /**
+     *  Add a sample for each key of the index summary but the first, sized by the compressed bytes since
+     *  the previous one, and one for the last key, sized by the bytes left.
+     */
+    private static void addSamples(final SSTableReader sstableReader, final List<Sample> samples) throws IOException {
+        final IndexSummary summary = sstableReader.getIndexSummary();
+        final CompressionMetadata compression = sstableReader.compression
+                ? sstableReader.getCompressionMetadata() : null;
+
+        Token previousToken = null;
+        long previousOffset = 0;
+        try (RandomAccessReader index = sstableReader.openIndexReader()) {
+            for (int i = 0; index != null && i < summary.size(); i++) {
+                index.seek(summary.getPosition(i));
+                ByteBufferUtil.skipShortLength(index);
+                final long position = RowIndexEntry.Serializer.readPosition(index, sstableReader.descriptor.version);
+                final long offset = compression == null ? position : compression.chunkFor(position).offset;
+                final Token token = sstableReader.decorateKey(ByteBuffer.wrap(summary.getKey(i))).getToken();
+
+                if (previousToken != null) {
+                    samples.add(new Sample(token, offset - previousOffset));
+                }
+                previousToken = token;
+                previousOffset = offset;
+            }
+        }
+        samples.add(new Sample(sstableReader.last.getToken(), sstableReader.onDiskLength() - previousOffset));
+    }
+
+    /**
+     *  The compressed size of the data of a sstable from one sampled key to the next one.
+     */
+    private static final class Sample {
+        private final Token token;
+        private final long bytes;
+
+        Sample(final Token token, final long bytes) {
+            this.token = token;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -106,7 +106,23 @@ public final class SSTableUtils {
     public static SSTableWriter createSSTableWriter(final Descriptor inputSSTableDescriptor,
                                                     final CFMetaData outCfmMetaData,
                                                     final SSTableReader inputSSTable) {
-        final String sstableDirectory = System.getProperty("user.dir") + "/cassandra/compresseddata";
+        return createSSTableWriter(inputSSTableDescriptor, outCfmMetaData, inputSSTable,
+                                   System.getProperty("user.dir") + "/cassandra/compresseddata");
+    }
+
+    /**
+     * Create a writer of an sstable with the same generation as the input one, under
+     * {@code <sstableDirectory>/<keyspace>/<table>}.
+     * @param inputSSTableDescriptor descriptor of the input sstable
+     * @param outCfmMetaData metadata of the output table
+     * @param inputSSTable input sstable
+     * @param sstableDirectory root directory of the output
+     * @return the writer
+     */
+    public static SSTableWriter createSSTableWriter(final Descriptor inputSSTableDescriptor,
+                                                    final CFMetaData outCfmMetaData,
+                                                    final SSTableReader inputSSTable,
+                                                    final String sstableDirectory) {
         LOGGER.info("Output directory: " + sstableDirectory);
 
         final File outputDirectory = new File(sstableDirectory + File.separatorChar
@@ -133,7 +149,9 @@ public final class SSTableUtils {
                         .sstableLevel(inputSSTable.getSSTableMetadata().sstableLevel),
                 new SerializationHeader(true,
                         outCfmMetaData, outCfmMetaData.partitionColumns(),
-                        org.apache.cassandra.db.rows.EncodingStats.NO_STATS));
+                        inputSSTable.header == null
+                                ? org.apache.cassandra.db.rows.EncodingStats.NO_STATS
+                                : inputSSTable.header.stats()));
 
         return writer;
     }
@@ -168,6 +186,23 @@ public final class SSTableUtils {
         return cfm;
     }
 
+    /**
+     * Read the components of SSTable's Stats.db needed both to restore the table schema and to open the SSTable,
+     * so that it is read only once.
+     *
+     * @param desc SSTable's descriptor
+     * @return the STATS, HEADER and VALIDATION components
+     * @throws IOException when Stats.db cannot be read
+     */
+    public static Map<MetadataType, MetadataComponent> readSSTableMetadata(final Descriptor desc) throws IOException {
+        if (!desc.version.storeRows()) {
+            throw new IOException("pre-3.0 SSTable is not supported.");
+        }
+
+        final EnumSet<MetadataType> types = EnumSet.of(MetadataType.STATS, MetadataType.HEADER, MetadataType.VALIDATION);
+        return desc.getMetadataSerializer().deserialize(desc, types);
+    }
+
     /**
      * Construct table schema from info stored in SSTable's Stats.db.
      *
@@ -184,14 +219,32 @@ public final class SSTableUtils {
                                                  final String tableName,
                                                  final List<String> partitionKeyNames,
                                                  final List<String> clusteringKeyNames) throws IOException {
+        return metadataFromSSTable(desc, readSSTableMetadata(desc),
+                keyspaceName, tableName, partitionKeyNames, clusteringKeyNames);
+    }
+
+    /**
+     * Construct table schema from the already read components of SSTable's Stats.db.
+     *
+     * @param desc               SSTable's descriptor
+     * @param sstableMetadata    components returned by {@link #readSSTableMetadata(Descriptor)}
+     * @param keyspaceName       keyspace name
+     * @param tableName          table name
+     * @param partitionKeyNames  list of partition key names
+     * @param clusteringKeyNames list of clustering key names
+     * @return Restored CFMetaData
+     * @throws IOException when the SSTable format is not supported
+     */
+    public static CFMetaData metadataFromSSTable(final Descriptor desc,
+                                                 final Map<MetadataType, MetadataComponent> sstableMetadata,
+                                                 final String keyspaceName,
+                                                 final String tableName,
+                                                 final List<String> partitionKeyNames,
+                                                 final List<String> clusteringKeyNames) throws IOException {
         if (!desc.version.storeRows()) {
             throw new IOException("pre-3.0 SSTable is not supported.");
         }
 
-        final EnumSet<MetadataType> types = EnumSet.of(MetadataType.STATS, MetadataType.HEADER, MetadataType.VALIDATION);
-        final Map<MetadataType, MetadataComponent> sstableMetadata =
-                desc.getMetadataSerializer().deserialize(desc, types);
-
         ValidationMetadata validationMetadata = (ValidationMetadata) sstableMetadata.get(MetadataType.VALIDATION);
         final SerializationHeader.Component header =
                 (SerializationHeader.Component) sstableMetadata.get(MetadataType.HEADER);
@@ -20,12 +20,30 @@ import com.netflix.sstableadaptor.sstable.SSTableIterator;
 import com.netflix.sstableadaptor.sstable.SSTableSingleReader;
 import com.netflix.sstableadaptor.util.SSTableUtils;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.BufferClustering;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.BufferCell;
 import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.EncodingStats;
 import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.SSTableTxnWriter;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
 import org.junit.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,10 +51,13 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  *  Base class for all test suites.
@@ -59,6 +80,8 @@ public class TestBaseSSTableFunSuite {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TestBaseSSTableFunSuite.class);
 
+    private final List<File> temporaryDirectories = new ArrayList<>();
+
     static {
         Map<String, String> env = System.getenv();
         for (String envName : env.keySet()) {
@@ -98,6 +121,122 @@ public class TestBaseSSTableFunSuite {
         LOGGER.info("Tearing down ...");
     }
 
+    /**
+     * Create a directory that is deleted with its content once the test is over.
+     * @param prefix prefix of the directory name
+     * @return the new directory
+     * @throws IOException when the directory cannot be created
+     */
+    protected File createTemporaryDirectory(final String prefix) throws IOException {
+        final File directory = Files.createTempDirectory(prefix).toFile();
+        temporaryDirectories.add(directory);
+        return directory;
+    }
+
+    /**
+     * Delete the directories created by the test.
+     */
+    @After
+    public void deleteTemporaryDirectories() {
+        for (File directory : temporaryDirectories) {
+            if (directory.exists()) {
+                FileUtils.deleteRecursive(directory);
+            }
+        }
+        temporaryDirectories.clear();
+    }
+
+    /**
+     * Write a compressed sstable in 4 KiB chunks, so that reading it spans many chunks. Partition {@code i}
+     * has key {@code "user" + i} and {@code rowsPerPartition} rows.
+     * @param partitions number of partitions
+     * @param rowsPerPartition number of rows of each partition
+     * @return the path of the Data.db file, in a directory deleted once the test is over
+     * @throws IOException when the directory cannot be created
+     */
+    protected String writeChunkedSSTable(final int partitions, final int rowsPerPartition) throws IOException {
+        return writeChunkedSSTable(partitions, 0, rowsPerPartition, false);
+    }
+
+    /**
+     * Write a compressed sstable in 4 KiB chunks, like {@link #writeChunkedSSTable(int, int)}, whose rows have
+     * the clusterings {@code firstRow} to {@code firstRow + rowsPerPartition - 1}.
+     * @param partitions number of partitions
+     * @param firstRow clustering of the first row of each partition
+     * @param rowsPerPartition number of rows of each partition
+     * @param deletePartitions true to also delete each partition before its rows were written
+     * @return the path of the Data.db file, in a directory deleted once the test is over
+     * @throws IOException when the directory cannot be created
+     */
+    protected String writeChunkedSSTable(final int partitions,
+                                         final int firstRow,
+                                         final int rowsPerPartition,
+                                         final boolean deletePartitions) throws IOException {
+        return writeChunkedSSTable("LZ4Compressor", partitions, firstRow, rowsPerPartition, deletePartitions);
+    }
+
+    /**
+     * Write a compressed sstable in 4 KiB chunks, like {@link #writeChunkedSSTable(int, int)}, with another
+     * compressor than LZ4.
+     * @param compressor class name of the compressor
+     * @param partitions number of partitions
+     * @param rowsPerPartition number of rows of each partition
+     * @return the path of the Data.db file, in a directory deleted once the test is over
+     * @throws IOException when the directory cannot be created
+     */
+    protected String writeChunkedSSTable(final String compressor,
+                                         final int partitions,
+                                         final int rowsPerPartition) throws IOException {
+        return writeChunkedSSTable(compressor, partitions, 0, rowsPerPartition, false);
+    }
+
+    private String writeChunkedSSTable(final String compressor,
+                                       final int partitions,
+                                       final int firstRow,
+                                       final int rowsPerPartition,
+                                       final boolean deletePartitions) throws IOException {
+        final CFMetaData cfMetaData = CFMetaData.compile(
+                "CREATE TABLE chunked_bills (user text, expense_id int, amount int, name text, "
+                + "PRIMARY KEY (user, expense_id)) "
+                + "WITH compression = {'class': '" + compressor + "', 'chunk_length_in_kb': '4'};", "keyspace1");
+        final File directory = new File(createTemporaryDirectory("chunked"),
+                                        "keyspace1" + File.separator + "chunked_bills");
+        Assert.assertTrue(directory.mkdirs());
+        final Descriptor descriptor = new Descriptor(SSTableFormat.Type.BIG.info.getLatestVersion().getVersion(),
+                                                     directory.getAbsolutePath(), "keyspace1", "chunked_bills", 1,
+                                                     SSTableFormat.Type.BIG, HADOOP_CONF);
+
+        final List<DecoratedKey> keys = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            keys.add(cfMetaData.decorateKey(UTF8Type.instance.decompose("user" + i)));
+        }
+        Collections.sort(keys);
+
+        final ColumnDefinition amount = cfMetaData.getColumnDefinition(ByteBufferUtil.bytes("amount"));
+        final ColumnDefinition name = cfMetaData.getColumnDefinition(ByteBufferUtil.bytes("name"));
+        final long now = FBUtilities.timestampMicros();
+        final SSTableTxnWriter writer = SSTableTxnWriter.create(cfMetaData, descriptor, partitions, 0, 0,
+                new SerializationHeader(true, cfMetaData, cfMetaData.partitionColumns(), EncodingStats.NO_STATS));
+        for (DecoratedKey key : keys) {
+            final PartitionUpdate update = new PartitionUpdate(cfMetaData, key, cfMetaData.partitionColumns(),
+                                                               rowsPerPartition);
+            if (deletePartitions) {
+                update.addPartitionDeletion(new DeletionTime(now - 1, FBUtilities.nowInSeconds()));
+            }
+            for (int j = firstRow; j < firstRow + rowsPerPartition; j++) {
+                final Row.Builder builder = BTreeRow.sortedBuilder();
+                builder.newRow(new BufferClustering(Int32Type.instance.decompose(j)));
+                builder.addCell(BufferCell.live(amount, now, Int32Type.instance.decompose(j * 100)));
+                builder.addCell(BufferCell.live(name, now,
+                        UTF8Type.instance.decompose(UUID.nameUUIDFromBytes(key.getKey().array()) + "-" + j)));
+                update.add(builder.build());
+            }
+            writer.append(update.unfilteredIterator());
+        }
+        writer.finish(false);
+        return descriptor.filenameFor(Component.DATA);
+    }
+
     /**
      *   To get around checkStyle complaint.
      */
@@ -159,12 +298,14 @@ public class TestBaseSSTableFunSuite {
     }
 
     protected int getRowCount(final String inputSSTableFullPathFileName) {
+        return getRowCount(inputSSTableFullPathFileName, TestBaseSSTableFunSuite.HADOOP_CONF);
+    }
+
+    protected int getRowCount(final String inputSSTableFullPathFileName, final Configuration conf) {
         LOGGER.info("Input file name: " + inputSSTableFullPathFileName);
         int counter = 0;
 
-        try {
-            final SSTableSingleReader sstableSingleReader =
-                    new SSTableSingleReader(inputSSTableFullPathFileName, TestBaseSSTableFunSuite.HADOOP_CONF);
+        try (SSTableSingleReader sstableSingleReader = new SSTableSingleReader(inputSSTableFullPathFileName, conf)) {
             final ISSTableScanner currentScanner =
                     sstableSingleReader.getSSTableScanner(Long.MIN_VALUE, Long.MAX_VALUE);
 
@@ -159,25 +159,25 @@ public class TestReadingSSTable21 extends TestBaseSSTableFunSuite {
         LOGGER.info("Input file name: " + inputSSTableFullPathFileName);
         CFMetaData cfMetaData = CFMetaData.compile(cql, "casspactor2", "RandomPartitioner");
 
-        final SSTableSingleReader sstableSingleReader =
-                new SSTableSingleReader(inputSSTableFullPathFileName, cfMetaData, TestBaseSSTableFunSuite.HADOOP_CONF);
+        SSTableWriter writer = null;
+        try (SSTableSingleReader sstableSingleReader = new SSTableSingleReader(inputSSTableFullPathFileName, cfMetaData,
+                                                                               TestBaseSSTableFunSuite.HADOOP_CONF)) {
 //        final ISSTableScanner currentScanner =
 //                sstableSingleReader.getSSTableScanner(Long.MIN_VALUE, Long.MAX_VALUE);
 
-        final ISSTableScanner currentScanner =
+            final ISSTableScanner currentScanner =
                 sstableSingleReader.getSSTableScanner(BigInteger.ZERO, new BigInteger("2").pow(127),null);
 
 
 
 
 
-        ////WRITE
+            ////WRITE
 
-        LOGGER.info("Input file name: " + inputSSTableFullPathFileName);
+            LOGGER.info("Input file name: " + inputSSTableFullPathFileName);
 
-        final Descriptor inputSSTableDescriptor = Descriptor.fromFilename(inputSSTableFullPathFileName,
+            final Descriptor inputSSTableDescriptor = Descriptor.fromFilename(inputSSTableFullPathFileName,
                 TestBaseSSTableFunSuite.HADOOP_CONF);
-        SSTableWriter writer = null;
 
 //            SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
 //                    "casspactor",
@@ -211,6 +211,9 @@ public class TestReadingSSTable21 extends TestBaseSSTableFunSuite {
                 writer.append(row);
             }
             writer.finish(false);
+        } finally {
+            FileUtils.closeQuietly(writer);
+        }
 
 
     }
@@ -249,22 +252,19 @@ public class TestReadingSSTable21 extends TestBaseSSTableFunSuite {
         LOGGER.info("Input file name: " + inputSSTableFullPathFileName);
         int counter = 0;
         CFMetaData cfMetaData = CFMetaData.compile(cql, "casspactor2", "RandomPartitioner");
-        final SSTableSingleReader sstableSingleReader =
-                new SSTableSingleReader(inputSSTableFullPathFileName, cfMetaData, TestBaseSSTableFunSuite.HADOOP_CONF);
-//        final ISSTableScanner currentScanner =
-//                sstableSingleReader.getSSTableScanner(Long.MIN_VALUE, Long.MAX_VALUE);
-
-        final ISSTableScanner currentScanner =
-                sstableSingleReader.getSSTableScanner(BigInteger.ZERO, new BigInteger("2").pow(127),null);
-
-
-        final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
-        final List<ISSTableScanner> scanners = new ArrayList<>();
-        scanners.add(currentScanner);
-        try (SSTableIterator ci = new SSTableIterator(scanners, cfMetaData, nowInSecs)) {
-            while (ci.hasNext()) {
-                final RowIterator rowIterator = ci.next();
-                counter += printRowDetails(cfMetaData, rowIterator, isThriftTable);
+        try (SSTableSingleReader sstableSingleReader = new SSTableSingleReader(inputSSTableFullPathFileName, cfMetaData,
+                                                                               TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final ISSTableScanner currentScanner =
+                    sstableSingleReader.getSSTableScanner(BigInteger.ZERO, new BigInteger("2").pow(127), null);
+
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+            final List<ISSTableScanner> scanners = new ArrayList<>();
+            scanners.add(currentScanner);
+            try (SSTableIterator ci = new SSTableIterator(scanners, cfMetaData, nowInSecs)) {
+                while (ci.hasNext()) {
+                    final RowIterator rowIterator = ci.next();
+                    counter += printRowDetails(cfMetaData, rowIterator, isThriftTable);
+                }
             }
         }
 
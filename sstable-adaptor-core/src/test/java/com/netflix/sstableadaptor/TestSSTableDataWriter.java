@@ -18,7 +18,10 @@ package com.netflix.sstableadaptor;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.netflix.sstableadaptor.compaction.SSTableCompactor;
 import com.netflix.sstableadaptor.config.CassandraTable;
+import com.netflix.sstableadaptor.sstable.SSTableIterator;
+import com.netflix.sstableadaptor.sstable.SSTablePartitionReport;
 import com.netflix.sstableadaptor.sstable.SSTableSingleReader;
 import com.netflix.sstableadaptor.sstable.SSTableSingleWriter;
 import com.netflix.sstableadaptor.util.SSTableUtils;
@@ -31,6 +34,7 @@ import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.marshal.Int32Type;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.apache.cassandra.db.rows.BTreeRow;
 import org.apache.cassandra.db.rows.BufferCell;
 import org.apache.cassandra.db.rows.Cell;
@@ -39,6 +43,11 @@ import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.Unfiltered;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.compress.CompressedSequentialWriter;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.SSTableTxnWriter;
@@ -46,17 +55,25 @@ import org.apache.cassandra.io.sstable.format.SSTableFlushObserver;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.util.BackoffReadPolicy;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
+import org.apache.hadoop.conf.Configuration;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -112,14 +129,14 @@ public class TestSSTableDataWriter extends TestBaseSSTableFunSuite {
      * in to the corresponding compressed file, using LZ4 compression, along with auxiliary
      * files (CompressionInfo.db, Index.db, etc).
      * <p>
-     * The output is under cassanrda/compresseddata/cassandra/data directory
+     * The output is under a temporary directory, deleted after the test
      * <p>
      * 3. Verification
      * Since this is C* 3.0 format, you should use sstabledump command to dump out the json contents
      * for both intput data and output data to verify.
      * %>sstabledump cassandra/data/mc-1-big-Data.db
      * and
-     * %>sstabledump cassandra/compresseddata/cassandra/data/mc-1-big-Data.db
+     * %>sstabledump <output directory>/keyspace1/bills_compress/mc-6-big-Data.db
      *******************************************************/
     @Test
     public void testWritingToLocalSSTable() {
@@ -130,18 +147,18 @@ public class TestSSTableDataWriter extends TestBaseSSTableFunSuite {
                                                                 TestBaseSSTableFunSuite.HADOOP_CONF);
         SSTableWriter writer = null;
 
-        try {
-            SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
                                                                  "casspactor",
                                                                  "bills_nc",
-                                                                 TestBaseSSTableFunSuite.HADOOP_CONF);
+                                                                 TestBaseSSTableFunSuite.HADOOP_CONF)) {
             final CFMetaData inputCFMetaData = reader.getCfMetaData();
             final ISSTableScanner currentScanner = reader.getSSTableScanner();
             final SSTableReader inputSStable = reader.getSstableReader();
 
             //Create writer
             final CFMetaData outputCFMetaData = SSTableUtils.createNewCFMetaData(inputSSTableDescriptor, inputCFMetaData);
-            writer = SSTableUtils.createSSTableWriter(inputSSTableDescriptor, outputCFMetaData, inputSStable);
+            writer = SSTableUtils.createSSTableWriter(inputSSTableDescriptor, outputCFMetaData, inputSStable,
+                                                      createTemporaryDirectory("compresseddata").getAbsolutePath());
 
             while (currentScanner.hasNext()) {
                 final UnfilteredRowIterator row = currentScanner.next();
@@ -180,7 +197,7 @@ public class TestSSTableDataWriter extends TestBaseSSTableFunSuite {
 
         final Descriptor outDescriptor = new Descriptor(
             SSTableFormat.Type.BIG.info.getLatestVersion().getVersion(),
-            "/tmp",
+            createTemporaryDirectory("casspactor").getAbsolutePath(),
             "casspactor",
             "bills_compress",
             9,
@@ -281,12 +298,392 @@ public class TestSSTableDataWriter extends TestBaseSSTableFunSuite {
                 new SSTableSingleWriter(inputCFMetaData, cassandraTable, outputLocation,
                                         TestBaseSSTableFunSuite.HADOOP_CONF);
 
-        SSTableSingleReader reader = new SSTableSingleReader(inputFile, cassandraTable,
-                                                             TestBaseSSTableFunSuite.HADOOP_CONF);
-        final ISSTableScanner currentScanner = reader.getSSTableScanner();
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputFile, cassandraTable,
+                                                                  TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final ISSTableScanner currentScanner = reader.getSSTableScanner();
+
+            writer.write(currentScanner);
+        }
+    }
+
+    /**
+     * Rewriting a sstable with the same serialization header must copy its partitions as serialized
+     * and still produce the same partitions.
+     * @throws IOException when the sstables cannot be read or written
+     */
+    @Test
+    public void testTransferringSSTable() throws IOException {
+        final String inputFile = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        final File outputDirectory = new File(createTemporaryDirectory("transfer"),
+                                              "keyspace1" + File.separator + "compressed_bills");
+        Assert.assertTrue(outputDirectory.mkdirs());
+        final CassandraTable cassandraTable = new CassandraTable.CassandraTableBuilder()
+                                                                .withKeyspaceName("keyspace1")
+                                                                .withTableName("compressed_bills")
+                                                                .build();
+
+        final SSTableSingleReader reader = new SSTableSingleReader(inputFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        try {
+            final SSTableSingleWriter<UnfilteredRowIterator> writer =
+                    new SSTableSingleWriter<>(reader.getCfMetaData(), cassandraTable,
+                                              outputDirectory.getAbsolutePath(), TestBaseSSTableFunSuite.HADOOP_CONF);
+            writer.transfer(reader);
+        } finally {
+            reader.close();
+        }
+
+        final File[] outputs = outputDirectory.listFiles((dir, name) -> name.endsWith("-Data.db"));
+        Assert.assertEquals(1, outputs.length);
+        final String outputFile = outputs[0].getAbsolutePath();
+        Assert.assertEquals(16, getRowCount(outputFile, TestBaseSSTableFunSuite.HADOOP_CONF));
+
+        final SSTableSingleReader input = new SSTableSingleReader(inputFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        final SSTableSingleReader output = new SSTableSingleReader(outputFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        try (ISSTableScanner inputScanner = input.getSSTableScanner();
+             ISSTableScanner outputScanner = output.getSSTableScanner()) {
+            final CFMetaData cfMetaData = input.getCfMetaData();
+            while (inputScanner.hasNext()) {
+                Assert.assertTrue(outputScanner.hasNext());
+                try (UnfilteredRowIterator expected = inputScanner.next();
+                     UnfilteredRowIterator actual = outputScanner.next()) {
+                    Assert.assertEquals(expected.partitionKey(), actual.partitionKey());
+                    Assert.assertEquals(expected.partitionLevelDeletion(), actual.partitionLevelDeletion());
+                    while (expected.hasNext()) {
+                        Assert.assertTrue(actual.hasNext());
+                        Assert.assertEquals(expected.next().toString(cfMetaData, true),
+                                            actual.next().toString(cfMetaData, true));
+                    }
+                    Assert.assertFalse(actual.hasNext());
+                }
+            }
+            Assert.assertFalse(outputScanner.hasNext());
+
+            final SSTableReader source = input.getSstableReader();
+            final SSTableReader copy = output.getSstableReader();
+            Assert.assertEquals(source.uncompressedLength(), copy.uncompressedLength());
+            Assert.assertEquals(source.getMinTimestamp(), copy.getMinTimestamp());
+            Assert.assertEquals(source.getMaxTimestamp(), copy.getMaxTimestamp());
+            Assert.assertEquals(source.getTotalRows(), copy.getTotalRows());
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    /**
+     * A partition deletion must be purged once past gcBefore, unless a sstable left out of the merge
+     * holds older data of that partition.
+     * @throws IOException when the sstables cannot be read or written
+     */
+    @Test
+    public void testPurgingTombstones() throws IOException {
+        final String inputFile = CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db";
+        final CFMetaData cfMetaData = SSTableUtils.metaDataFromSSTable(inputFile,
+                                                                       "casspactor",
+                                                                       "bills_compress",
+                                                                       Collections.<String>emptyList(),
+                                                                       Collections.<String>emptyList(),
+                                                                       TestBaseSSTableFunSuite.HADOOP_CONF);
+        final File directory = new File(createTemporaryDirectory("purge"),
+                                        "casspactor" + File.separator + "bills_compress");
+        Assert.assertTrue(directory.mkdirs());
+
+        final int nowInSec = FBUtilities.nowInSeconds();
+        final long now = FBUtilities.timestampMicros();
+        final int day = 24 * 3600;
+        final DecoratedKey key = cfMetaData.decorateKey(ByteBuffer.wrap("user1".getBytes()));
+
+        // a partition deleted a day ago, and rows of that partition written before and after the deletion
+        final String deleted = writeSSTable(cfMetaData, directory, 1,
+                PartitionUpdate.fullPartitionDelete(cfMetaData, key, now, nowInSec - day));
+        final SSTableSingleReader older = new SSTableSingleReader(
+                writeSSTable(cfMetaData, directory, 2, rowUpdate(cfMetaData, key, now - 1000)),
+                cfMetaData, TestBaseSSTableFunSuite.HADOOP_CONF);
+        final SSTableSingleReader newer = new SSTableSingleReader(
+                writeSSTable(cfMetaData, directory, 3, rowUpdate(cfMetaData, key, now + 1000)),
+                cfMetaData, TestBaseSSTableFunSuite.HADOOP_CONF);
+        try {
+            Assert.assertEquals(0, countUnfilteredPartitions(deleted, cfMetaData, nowInSec, nowInSec,
+                    Collections.<SSTableReader>emptyList()));
+            // still within the grace period
+            Assert.assertEquals(1, countUnfilteredPartitions(deleted, cfMetaData, nowInSec, nowInSec - 2 * day,
+                    Collections.<SSTableReader>emptyList()));
+            // purging the deletion would resurrect the older row
+            Assert.assertEquals(1, countUnfilteredPartitions(deleted, cfMetaData, nowInSec, nowInSec,
+                    Arrays.asList(newer.getSstableReader(), older.getSstableReader())));
+            // the newer row is not shadowed by the deletion
+            Assert.assertEquals(0, countUnfilteredPartitions(deleted, cfMetaData, nowInSec, nowInSec,
+                    Collections.singletonList(newer.getSstableReader())));
+        } finally {
+            older.close();
+            newer.close();
+        }
+    }
+
+    private static PartitionUpdate rowUpdate(final CFMetaData cfMetaData, final DecoratedKey key, final long timestamp) {
+        final ColumnDefinition amount =
+            ColumnDefinition.regularDef(cfMetaData, ByteBuffer.wrap("amount".getBytes()), Int32Type.instance);
+        final Row.Builder builder = BTreeRow.sortedBuilder();
+        builder.newRow(new BufferClustering(Int32Type.instance.decompose(10000)));
+        builder.addCell(BufferCell.live(amount, timestamp, Int32Type.instance.decompose(5)));
+        return PartitionUpdate.singleRowUpdate(cfMetaData, key, builder.build());
+    }
+
+    private static String writeSSTable(final CFMetaData cfMetaData, final File directory, final int generation,
+                                       final PartitionUpdate update) {
+        final Descriptor descriptor = new Descriptor(SSTableFormat.Type.BIG.info.getLatestVersion().getVersion(),
+                                                     directory.getAbsolutePath(),
+                                                     "casspactor",
+                                                     "bills_compress",
+                                                     generation,
+                                                     SSTableFormat.Type.BIG, TestBaseSSTableFunSuite.HADOOP_CONF);
+        final SSTableTxnWriter writer = SSTableTxnWriter.create(cfMetaData, descriptor, 1, 0, 0,
+                new SerializationHeader(true, cfMetaData, cfMetaData.partitionColumns(), EncodingStats.NO_STATS));
+        writer.append(update.unfilteredIterator());
+        writer.finish(false);
+        return descriptor.filenameFor(Component.DATA);
+    }
+
+    private static long countUnfilteredPartitions(final String inputFile, final CFMetaData cfMetaData,
+                                                  final int nowInSec, final int gcBefore,
+                                                  final List<SSTableReader> overlappingSSTables) throws IOException {
+        final SSTableSingleReader reader = new SSTableSingleReader(inputFile, cfMetaData,
+                                                                   TestBaseSSTableFunSuite.HADOOP_CONF);
+        long count = 0;
+        try (SSTableIterator iterator = new SSTableIterator(Collections.singletonList(reader.getSSTableScanner()),
+                                                            cfMetaData, nowInSec, gcBefore, overlappingSSTables)) {
+            final UnfilteredPartitionIterator partitions = iterator.unfiltered();
+            while (partitions.hasNext()) {
+                try (UnfilteredRowIterator partition = partitions.next()) {
+                    count++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * Compacting a sstable with a copy of itself over several token ranges must produce
+     * non-overlapping sstables holding each row once.
+     * @throws IOException when the sstables cannot be read or written
+     */
+    @Test
+    public void testCompactingInParallel() throws IOException {
+        final String inputFile = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        final File outputDirectory = new File(createTemporaryDirectory("compaction"),
+                                              "keyspace1" + File.separator + "compressed_bills");
+        Assert.assertTrue(outputDirectory.mkdirs());
+
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(SSTableCompactor.THREADS_KEY, 2);
+        conf.setInt(SSTableCompactor.SPLITS_KEY, 3);
+        final CassandraTable cassandraTable = new CassandraTable.CassandraTableBuilder()
+                                                                .withKeyspaceName("keyspace1")
+                                                                .withTableName("compressed_bills")
+                                                                .build();
+
+        final List<SSTableSingleReader> readers = new ArrayList<>();
+        readers.add(new SSTableSingleReader(inputFile, conf));
+        readers.add(new SSTableSingleReader(inputFile, conf));
+        final List<String> outputs;
+        try {
+            final SSTableCompactor compactor =
+                    new SSTableCompactor(readers, cassandraTable, outputDirectory.getAbsolutePath(), conf);
+            Assert.assertEquals(1, compactor.compact(1).size());
+            // the sstable has too few sampled keys to be split by size, so it is split on evenly spread tokens
+            outputs = compactor.compact(2, SSTablePartitionReport.splitRing(readers.get(0).getPartitioner(), 4));
+        } finally {
+            readers.forEach(SSTableSingleReader::close);
+        }
+        Assert.assertEquals(4, outputs.size());
+
+        int counter = 0;
+        Token previousLast = null;
+        for (String output : outputs) {
+            counter += getRowCount(output, conf);
+            final SSTableSingleReader reader = new SSTableSingleReader(output, conf);
+            if (previousLast != null) {
+                Assert.assertTrue(reader.getFirstKey().getToken().compareTo(previousLast) > 0);
+            }
+            previousLast = reader.getLastKey().getToken();
+            reader.close();
+        }
+        Assert.assertEquals(16, counter);
+
+        // the compacted sstables do not overlap, so their partitions are concatenated without merging
+        final List<String> inputs = new ArrayList<>(outputs);
+        final long[] disjoint = countMergedPartitions(inputs, conf);
+        Assert.assertEquals(0, disjoint[1]);
+
+        // adding the input back overlaps all of them, so that each partition is merged from two versions
+        inputs.add(inputFile);
+        final long[] overlapping = countMergedPartitions(inputs, conf);
+        Assert.assertEquals(0, overlapping[0]);
+        Assert.assertEquals(disjoint[0], overlapping[1]);
+    }
+
+    /**
+     *  When a range fails, the ranges that were merged must be aborted along with it, leaving no output behind.
+     *  @throws IOException when the input sstables cannot be written
+     */
+    @Test
+    public void testCompactingInParallelFailure() throws IOException {
+        final String inputFile = writeChunkedSSTable(200, 10);
+        final String brokenFile = writeChunkedSSTable(200, 10);
+
+        // cut the second half of the data of one input, so that the ranges of its last partitions cannot be read
+        try (RandomAccessFile file = new RandomAccessFile(brokenFile, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+
+        final CassandraTable cassandraTable = new CassandraTable.CassandraTableBuilder()
+                                                                .withKeyspaceName("keyspace1")
+                                                                .withTableName("chunked_bills")
+                                                                .build();
+        // with a single thread, the first ranges are fully written before the failing one is merged
+        for (int threads : new int[] {1, 4}) {
+            final File outputDirectory = new File(createTemporaryDirectory("compaction"),
+                                                  "keyspace1" + File.separator + "chunked_bills");
+            Assert.assertTrue(outputDirectory.mkdirs());
+            final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+            conf.setInt(SSTableCompactor.THREADS_KEY, threads);
+            // the truncated reads are not worth retrying
+            conf.setInt(BackoffReadPolicy.MAX_ATTEMPTS_KEY, 1);
+
+            final List<SSTableSingleReader> readers = new ArrayList<>();
+            readers.add(new SSTableSingleReader(inputFile, conf));
+            readers.add(new SSTableSingleReader(brokenFile, conf));
+            try {
+                final SSTableCompactor compactor =
+                        new SSTableCompactor(readers, cassandraTable, outputDirectory.getAbsolutePath(), conf);
+                compactor.compact(1, SSTablePartitionReport.splitRing(readers.get(0).getPartitioner(), 4));
+                Assert.fail("Compacting a truncated sstable must fail");
+            } catch (IOException | RuntimeException e) {
+                // the failure of the broken range is reported, rather than the ranges it stopped
+                Assert.assertTrue(e.toString(), e instanceof CorruptSSTableException);
+            } finally {
+                readers.forEach(SSTableSingleReader::close);
+            }
+            Assert.assertEquals(Collections.emptyList(), Arrays.asList(outputDirectory.list()));
+        }
+    }
+
+    @Test
+    public void testCompactingPipelined() throws IOException {
+        final String inputFile = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        final File outputDirectory = new File(createTemporaryDirectory("compaction"),
+                                              "keyspace1" + File.separator + "compressed_bills");
+        Assert.assertTrue(outputDirectory.mkdirs());
+
+        final CassandraTable cassandraTable = new CassandraTable.CassandraTableBuilder()
+                                                                .withKeyspaceName("keyspace1")
+                                                                .withTableName("compressed_bills")
+                                                                .build();
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        final Configuration pipelinedConf = new Configuration(conf);
+        pipelinedConf.setInt(SSTableCompactor.QUEUE_PARTITIONS_KEY, 2);
+        pipelinedConf.setInt(CompressedSequentialWriter.COMPRESSION_CHUNKS_KEY, 4);
+
+        final List<SSTableSingleReader> readers = new ArrayList<>();
+        readers.add(new SSTableSingleReader(inputFile, conf));
+        readers.add(new SSTableSingleReader(inputFile, conf));
+        final List<String> outputs;
+        final List<String> pipelinedOutputs;
+        try {
+            final List<Range<Token>> ranges = SSTablePartitionReport.splitRing(readers.get(0).getPartitioner(), 4);
+            outputs = new SSTableCompactor(readers, cassandraTable, outputDirectory.getAbsolutePath(), conf)
+                    .compact(2, ranges);
+            pipelinedOutputs =
+                    new SSTableCompactor(readers, cassandraTable, outputDirectory.getAbsolutePath(), pipelinedConf)
+                            .compact(2, ranges);
+        } finally {
+            readers.forEach(SSTableSingleReader::close);
+        }
+        Assert.assertEquals(outputs.size(), pipelinedOutputs.size());
+
+        int counter = 0;
+        for (int i = 0; i < outputs.size(); i++) {
+            counter += getRowCount(pipelinedOutputs.get(i), conf);
+            // chunks compressed in the background are written in order, so the files are the same
+            Assert.assertArrayEquals(Files.readAllBytes(new File(outputs.get(i)).toPath()),
+                                     Files.readAllBytes(new File(pipelinedOutputs.get(i)).toPath()));
+        }
+        Assert.assertEquals(16, counter);
+    }
+
+    /**
+     *  A pipelined compaction of partitions much larger than the queues can hold within their memory budget
+     *  must still make progress, and write the same sstables as a compaction on a single thread.
+     *  @throws IOException when the sstables cannot be read or written
+     */
+    @Test
+    public void testCompactingPipelinedWithinMemoryBudget() throws IOException {
+        final List<String> inputs = Arrays.asList(writeChunkedSSTable(20, 2000), writeChunkedSSTable(20, 2000));
+        final File outputDirectory = new File(createTemporaryDirectory("compaction"),
+                                              "keyspace1" + File.separator + "chunked_bills");
+        Assert.assertTrue(outputDirectory.mkdirs());
 
-        writer.write(currentScanner);
+        final CassandraTable cassandraTable = new CassandraTable.CassandraTableBuilder()
+                                                                .withKeyspaceName("keyspace1")
+                                                                .withTableName("chunked_bills")
+                                                                .build();
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(SSTableCompactor.THREADS_KEY, 2);
+        final Configuration pipelinedConf = new Configuration(conf);
+        pipelinedConf.setInt(SSTableCompactor.QUEUE_PARTITIONS_KEY, 64);
+        // a few partitions of about 100 KiB of data each
+        pipelinedConf.setInt(SSTableCompactor.QUEUE_MB_KEY, 1);
+
+        final List<SSTableSingleReader> readers = new ArrayList<>();
+        for (String input : inputs) {
+            readers.add(new SSTableSingleReader(input, conf));
+        }
+        final List<String> outputs;
+        final List<String> pipelinedOutputs;
+        try {
+            final List<Range<Token>> ranges = SSTablePartitionReport.splitRing(readers.get(0).getPartitioner(), 2);
+            outputs = new SSTableCompactor(readers, cassandraTable, outputDirectory.getAbsolutePath(), conf)
+                    .compact(1, ranges);
+            pipelinedOutputs =
+                    new SSTableCompactor(readers, cassandraTable, outputDirectory.getAbsolutePath(), pipelinedConf)
+                            .compact(3, ranges);
+        } finally {
+            readers.forEach(SSTableSingleReader::close);
+        }
+        Assert.assertEquals(2, pipelinedOutputs.size());
+
+        int counter = 0;
+        for (int i = 0; i < outputs.size(); i++) {
+            counter += getRowCount(pipelinedOutputs.get(i), conf);
+            Assert.assertArrayEquals(Files.readAllBytes(new File(outputs.get(i)).toPath()),
+                                     Files.readAllBytes(new File(pipelinedOutputs.get(i)).toPath()));
+        }
+        Assert.assertEquals(40000, counter);
     }
 
+    private long[] countMergedPartitions(final List<String> inputs, final Configuration conf) throws IOException {
+        final List<SSTableSingleReader> readers = new ArrayList<>();
+        final List<ISSTableScanner> scanners = new ArrayList<>();
+        for (String input : inputs) {
+            final SSTableSingleReader reader = new SSTableSingleReader(input, conf);
+            readers.add(reader);
+            scanners.add(reader.getSSTableScanner());
+        }
 
+        final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+        final long[] mergedCounts;
+        int counter = 0;
+        try (SSTableIterator ci = new SSTableIterator(scanners, readers.get(0).getCfMetaData(), nowInSecs)) {
+            while (ci.hasNext()) {
+                counter += printRowDetails(readers.get(0).getCfMetaData(), ci.next(), false);
+            }
+            mergedCounts = ci.getMergedRowCounts();
+        } finally {
+            readers.forEach(SSTableSingleReader::close);
+        }
+        Assert.assertEquals(16, counter);
+        return mergedCounts;
+    }
 }
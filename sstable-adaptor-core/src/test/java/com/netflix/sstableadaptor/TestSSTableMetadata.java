@@ -16,16 +16,28 @@
 
 package com.netflix.sstableadaptor;
 
+import com.netflix.sstableadaptor.sstable.SSTablePartitionReport;
+import com.netflix.sstableadaptor.sstable.SSTablePruner;
+import com.netflix.sstableadaptor.sstable.SSTableSet;
+import com.netflix.sstableadaptor.sstable.SSTableSetOpener;
 import com.netflix.sstableadaptor.sstable.SSTableSingleReader;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.PartitionColumns;
+import org.apache.cassandra.db.Slices;
 import org.apache.cassandra.db.marshal.CompositeType;
 import org.apache.cassandra.db.marshal.Int32Type;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.IndexSummary;
+import org.apache.cassandra.io.sstable.LazyBloomFilter;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.serializers.UTF8Serializer;
+import org.apache.cassandra.utils.FilterFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -36,8 +48,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -85,133 +100,132 @@ public class TestSSTableMetadata extends TestBaseSSTableFunSuite {
     @Test
     public void testAccessSSTableMetadataCase1() throws IOException {
         final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db";
-        final SSTableSingleReader SSTableSingleReader =
-                   new SSTableSingleReader(inputSSTableFullPathFileName, TestBaseSSTableFunSuite.HADOOP_CONF);
-
-        LOGGER.info("File location: " + SSTableSingleReader.getFileLocation());
-        LOGGER.info("File size: " + SSTableSingleReader.getFileLength());
-        LOGGER.info("Partitioner: " + SSTableSingleReader.getPartitioner());
-        LOGGER.info("Min token: " + SSTableSingleReader.getPartitioner().getMinimumToken());
-        LOGGER.info("Max token: " + SSTableSingleReader.getPartitioner().getMaximumToken());
-
-        final IndexSummary indexSummary = SSTableSingleReader.getIndexSummary();
-        LOGGER.info("IndexSummary - Estimated key count:" + indexSummary.getEstimatedKeyCount());
-        LOGGER.info("IndexSummary - Size: " + indexSummary.size());
-        LOGGER.info("IndexSummary - Effective index interval: " + indexSummary.getEffectiveIndexInterval());
-        LOGGER.info("IndexSummary - Max number of entries: " + indexSummary.getMaxNumberOfEntries());
-        LOGGER.info("IndexSummary - Min index interval: " + indexSummary.getMinIndexInterval());
-        LOGGER.info("IndexSummary - OffHeapSize: " + indexSummary.getOffHeapSize());
-        for (int i = 0; i < indexSummary.size(); i++) {
-            final ByteBuffer keyBuf = ByteBuffer.wrap(indexSummary.getKey(i));
-            LOGGER.info("IndexSummary - key[{}]: {}",
-                    i, UTF8Serializer.instance.deserialize(keyBuf));
-            LOGGER.info("\ttoken: {}",
-                    SSTableSingleReader.getPartitioner().getToken(keyBuf));
-            LOGGER.info("\tposition: {}, position in summary: {}, end in summary: {}",
-                    indexSummary.getPosition(i),
-                    indexSummary.getPositionInSummary(i),
-                    indexSummary.getEndInSummary(i));
+        try (SSTableSingleReader SSTableSingleReader =
+                new SSTableSingleReader(inputSSTableFullPathFileName, TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            LOGGER.info("File location: " + SSTableSingleReader.getFileLocation());
+            LOGGER.info("File size: " + SSTableSingleReader.getFileLength());
+            LOGGER.info("Partitioner: " + SSTableSingleReader.getPartitioner());
+            LOGGER.info("Min token: " + SSTableSingleReader.getPartitioner().getMinimumToken());
+            LOGGER.info("Max token: " + SSTableSingleReader.getPartitioner().getMaximumToken());
+
+            final IndexSummary indexSummary = SSTableSingleReader.getIndexSummary();
+            LOGGER.info("IndexSummary - Estimated key count:" + indexSummary.getEstimatedKeyCount());
+            LOGGER.info("IndexSummary - Size: " + indexSummary.size());
+            LOGGER.info("IndexSummary - Effective index interval: " + indexSummary.getEffectiveIndexInterval());
+            LOGGER.info("IndexSummary - Max number of entries: " + indexSummary.getMaxNumberOfEntries());
+            LOGGER.info("IndexSummary - Min index interval: " + indexSummary.getMinIndexInterval());
+            LOGGER.info("IndexSummary - OffHeapSize: " + indexSummary.getOffHeapSize());
+            for (int i = 0; i < indexSummary.size(); i++) {
+                final ByteBuffer keyBuf = ByteBuffer.wrap(indexSummary.getKey(i));
+                LOGGER.info("IndexSummary - key[{}]: {}",
+                        i, UTF8Serializer.instance.deserialize(keyBuf));
+                LOGGER.info("\ttoken: {}",
+                        SSTableSingleReader.getPartitioner().getToken(keyBuf));
+                LOGGER.info("\tposition: {}, position in summary: {}, end in summary: {}",
+                        indexSummary.getPosition(i),
+                        indexSummary.getPositionInSummary(i),
+                        indexSummary.getEndInSummary(i));
+            }
+
+            final CFMetaData cfMetaData = SSTableSingleReader.getCfMetaData();
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Keyspace name: " + cfMetaData.ksName);
+            LOGGER.info("Table name: " + cfMetaData.cfName);
+
+            LOGGER.info("Total columns: " + cfMetaData.allColumns().size());
+            Assert.assertEquals(5, cfMetaData.allColumns().size());
+
+            LOGGER.info("Table params: " + cfMetaData.params);
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Listing column names: ");
+            final Iterator<ColumnDefinition> columnDefinitionIterator =  cfMetaData.allColumnsInSelectOrder();
+            while (columnDefinitionIterator.hasNext()) {
+                final ColumnDefinition columnDefinition = columnDefinitionIterator.next();
+                LOGGER.info("\t" + columnDefinition.toString());
+            }
+
+            final PartitionColumns partitionColumns = cfMetaData.partitionColumns();
+            partitionColumns.iterator().forEachRemaining(cf -> LOGGER.info("Column in partition: " + cf.name));
+
+            LOGGER.info("Num dropped columns: " + cfMetaData.getDroppedColumns().size());
+            for (CFMetaData.DroppedColumn droppedCol : cfMetaData.getDroppedColumns().values()) {
+                 LOGGER.info("Column name " + droppedCol.name + " was dropped at " + droppedCol.droppedTime);
+            }
+
+            Assert.assertEquals(5, cfMetaData.allColumns().size());
+
+            LOGGER.info("=======================================");
+            final Map<ByteBuffer, ColumnDefinition> columnMetaData = cfMetaData.getColumnMetadata();
+            final Collection<ColumnDefinition> colDefinitions = columnMetaData.values();
+            for (ColumnDefinition colDef : colDefinitions) {
+                printColumnDefinition(colDef);
+            }
+
+            LOGGER.info("Estimated partition size: " + SSTableSingleReader.getEstimatedPartitionSize());
+            LOGGER.info("Estimated total rows: " + SSTableSingleReader.getTotalRows());
+
+            LOGGER.info("Estimated column count: " + SSTableSingleReader.getStats().estimatedColumnCount);
+            LOGGER.info("Estimated partition size: ");
+            final long[] buckets = SSTableSingleReader.getStats().estimatedPartitionSize.getBuckets(false);
+            for (int i = 0; i < buckets.length; i++) {
+                LOGGER.info("\tPartition bucket[" + i + "]: " + buckets[i]);
+            }
+
+            LOGGER.info("=======================================");
+            LOGGER.info("First key: " + UTF8Type.instance.compose(SSTableSingleReader.getFirstKey().getKey()));
+            LOGGER.info("Last key: " + UTF8Type.instance.compose(SSTableSingleReader.getLastKey().getKey()));
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Min TTL: " + SSTableSingleReader.getStats().minTTL);
+            LOGGER.info("Max TTL: " + SSTableSingleReader.getStats().maxTTL);
+            LOGGER.info("Min timestamp: " + SSTableSingleReader.getStats().minTimestamp);
+            LOGGER.info("Max timestamp: " + SSTableSingleReader.getStats().maxTimestamp);
+
+            //TODO: this block only works because we know there is only one clustering column
+            LOGGER.info("Min clustering value: ");
+            for (ByteBuffer buffer: SSTableSingleReader.getStats().minClusteringValues) {
+                LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
+            }
+            LOGGER.info("Max clustering value: ");
+            for (ByteBuffer buffer: SSTableSingleReader.getStats().maxClusteringValues) {
+                  LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
+            }
+
+            LOGGER.info("Min local deletion time: " + SSTableSingleReader.getStats().minLocalDeletionTime);
+            LOGGER.info("Max local deletion time: " + SSTableSingleReader.getStats().maxLocalDeletionTime);
+            LOGGER.info("SSTable level: " + SSTableSingleReader.getStats().sstableLevel);
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Key validator: " + cfMetaData.getKeyValidator());
+            Assert.assertTrue(cfMetaData.getKeyValidator() == UTF8Type.instance);
+
+            LOGGER.info("Clustering comparator: " + cfMetaData.comparator);
+            Assert.assertTrue(cfMetaData.comparator.subtype(0) == Int32Type.instance);
+            LOGGER.info("Parent Column Family: " + cfMetaData.getParentColumnFamilyName());
+            LOGGER.info("Has collection columns? : " + cfMetaData.hasCollectionColumns());
+            Assert.assertFalse(cfMetaData.hasCollectionColumns());
+
+            LOGGER.info("Has complex columns? : " + cfMetaData.hasComplexColumns());
+            Assert.assertFalse(cfMetaData.hasComplexColumns());
+
+            LOGGER.info("Has dropped collection columns? : " + cfMetaData.hasDroppedCollectionColumns());
+            LOGGER.info("Has static columns? : " + cfMetaData.hasStaticColumns());
+
+            Assert.assertTrue(cfMetaData.hasStaticColumns());
+
+            LOGGER.info("Is compound? : " + cfMetaData.isCompound());
+            Assert.assertTrue(cfMetaData.isCompound());
+
+            LOGGER.info("Is view? : " + cfMetaData.isView());
+            Assert.assertFalse(cfMetaData.isView());
+
+            LOGGER.info("Partitioner: " + cfMetaData.partitioner);
+            Assert.assertTrue(cfMetaData.partitioner instanceof Murmur3Partitioner);
+
+            LOGGER.info("Serializers: " + cfMetaData.serializers());
         }
-
-        final CFMetaData cfMetaData = SSTableSingleReader.getCfMetaData();
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Keyspace name: " + cfMetaData.ksName);
-        LOGGER.info("Table name: " + cfMetaData.cfName);
-
-        LOGGER.info("Total columns: " + cfMetaData.allColumns().size());
-        Assert.assertEquals(5, cfMetaData.allColumns().size());
-
-        LOGGER.info("Table params: " + cfMetaData.params);
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Listing column names: ");
-        final Iterator<ColumnDefinition> columnDefinitionIterator =  cfMetaData.allColumnsInSelectOrder();
-        while (columnDefinitionIterator.hasNext()) {
-            final ColumnDefinition columnDefinition = columnDefinitionIterator.next();
-            LOGGER.info("\t" + columnDefinition.toString());
-        }
-
-        final PartitionColumns partitionColumns = cfMetaData.partitionColumns();
-        partitionColumns.iterator().forEachRemaining(cf -> LOGGER.info("Column in partition: " + cf.name));
-
-        LOGGER.info("Num dropped columns: " + cfMetaData.getDroppedColumns().size());
-        for (CFMetaData.DroppedColumn droppedCol : cfMetaData.getDroppedColumns().values()) {
-             LOGGER.info("Column name " + droppedCol.name + " was dropped at " + droppedCol.droppedTime);
-        }
-
-        Assert.assertEquals(5, cfMetaData.allColumns().size());
-
-        LOGGER.info("=======================================");
-        final Map<ByteBuffer, ColumnDefinition> columnMetaData = cfMetaData.getColumnMetadata();
-        final Collection<ColumnDefinition> colDefinitions = columnMetaData.values();
-        for (ColumnDefinition colDef : colDefinitions) {
-            printColumnDefinition(colDef);
-        }
-
-        LOGGER.info("Estimated partition size: " + SSTableSingleReader.getEstimatedPartitionSize());
-        LOGGER.info("Estimated total rows: " + SSTableSingleReader.getTotalRows());
-
-        LOGGER.info("Estimated column count: " + SSTableSingleReader.getStats().estimatedColumnCount);
-        LOGGER.info("Estimated partition size: ");
-        final long[] buckets = SSTableSingleReader.getStats().estimatedPartitionSize.getBuckets(false);
-        for (int i = 0; i < buckets.length; i++) {
-            LOGGER.info("\tPartition bucket[" + i + "]: " + buckets[i]);
-        }
-
-        LOGGER.info("=======================================");
-        LOGGER.info("First key: " + UTF8Type.instance.compose(SSTableSingleReader.getFirstKey().getKey()));
-        LOGGER.info("Last key: " + UTF8Type.instance.compose(SSTableSingleReader.getLastKey().getKey()));
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Min TTL: " + SSTableSingleReader.getStats().minTTL);
-        LOGGER.info("Max TTL: " + SSTableSingleReader.getStats().maxTTL);
-        LOGGER.info("Min timestamp: " + SSTableSingleReader.getStats().minTimestamp);
-        LOGGER.info("Max timestamp: " + SSTableSingleReader.getStats().maxTimestamp);
-
-        //TODO: this block only works because we know there is only one clustering column
-        LOGGER.info("Min clustering value: ");
-        for (ByteBuffer buffer: SSTableSingleReader.getStats().minClusteringValues) {
-            LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
-        }
-        LOGGER.info("Max clustering value: ");
-        for (ByteBuffer buffer: SSTableSingleReader.getStats().maxClusteringValues) {
-              LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
-        }
-
-        LOGGER.info("Min local deletion time: " + SSTableSingleReader.getStats().minLocalDeletionTime);
-        LOGGER.info("Max local deletion time: " + SSTableSingleReader.getStats().maxLocalDeletionTime);
-        LOGGER.info("SSTable level: " + SSTableSingleReader.getStats().sstableLevel);
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Key validator: " + cfMetaData.getKeyValidator());
-        Assert.assertTrue(cfMetaData.getKeyValidator() == UTF8Type.instance);
-
-        LOGGER.info("Clustering comparator: " + cfMetaData.comparator);
-        Assert.assertTrue(cfMetaData.comparator.subtype(0) == Int32Type.instance);
-        LOGGER.info("Parent Column Family: " + cfMetaData.getParentColumnFamilyName());
-        LOGGER.info("Has collection columns? : " + cfMetaData.hasCollectionColumns());
-        Assert.assertFalse(cfMetaData.hasCollectionColumns());
-
-        LOGGER.info("Has complex columns? : " + cfMetaData.hasComplexColumns());
-        Assert.assertFalse(cfMetaData.hasComplexColumns());
-
-        LOGGER.info("Has dropped collection columns? : " + cfMetaData.hasDroppedCollectionColumns());
-        LOGGER.info("Has static columns? : " + cfMetaData.hasStaticColumns());
-
-        Assert.assertTrue(cfMetaData.hasStaticColumns());
-
-        LOGGER.info("Is compound? : " + cfMetaData.isCompound());
-        Assert.assertTrue(cfMetaData.isCompound());
-
-        LOGGER.info("Is view? : " + cfMetaData.isView());
-        Assert.assertFalse(cfMetaData.isView());
-
-        LOGGER.info("Partitioner: " + cfMetaData.partitioner);
-        Assert.assertTrue(cfMetaData.partitioner instanceof Murmur3Partitioner);
-
-        LOGGER.info("Serializers: " + cfMetaData.serializers());
-
     }
 
 
@@ -232,109 +246,108 @@ public class TestSSTableMetadata extends TestBaseSSTableFunSuite {
     public void testAccessSSTableMetadataCase2() throws IOException {
         final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
         final Configuration conf = new Configuration();
-        final SSTableSingleReader SSTableSingleReader =
-            new SSTableSingleReader(inputSSTableFullPathFileName, conf);
-
-        final CFMetaData cfMetaData = SSTableSingleReader.getCfMetaData();
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Keyspace name: " + cfMetaData.ksName);
-        LOGGER.info("Table name: " + cfMetaData.cfName);
-
-        LOGGER.info("Total columns: " + cfMetaData.allColumns().size());
-        Assert.assertEquals(8, cfMetaData.allColumns().size());
-
-        LOGGER.info("Table params: " + cfMetaData.params);
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Listing column names: ");
-        final Iterator<ColumnDefinition> columnDefinitionIterator =  cfMetaData.allColumnsInSelectOrder();
-        while (columnDefinitionIterator.hasNext()) {
-            final ColumnDefinition columnDefinition = columnDefinitionIterator.next();
-            LOGGER.info("\t" + columnDefinition.toString());
-        }
-
-        final PartitionColumns partitionColumns = cfMetaData.partitionColumns();
-        partitionColumns.iterator().forEachRemaining(cf -> LOGGER.info("Column in partition: " + cf.name));
-
-
-        LOGGER.info("=======================================");
-        final Map<ByteBuffer, ColumnDefinition> columnMetaData = cfMetaData.getColumnMetadata();
-        final Collection<ColumnDefinition> colDefinitions = columnMetaData.values();
-        for (ColumnDefinition colDef : colDefinitions) {
-            printColumnDefinition(colDef);
-        }
-
-        LOGGER.info("Estimated partition size: " + SSTableSingleReader.getEstimatedPartitionSize());
-        LOGGER.info("Estimated total rows: " + SSTableSingleReader.getTotalRows());
-
-        LOGGER.info("Estimated column count: " + SSTableSingleReader.getStats().estimatedColumnCount);
-
-        LOGGER.info("=======================================");
-        LOGGER.info("First key: " + UTF8Type.instance.compose(SSTableSingleReader.getFirstKey().getKey()));
-        LOGGER.info("Last key: " + UTF8Type.instance.compose(SSTableSingleReader.getLastKey().getKey()));
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Min TTL: " + SSTableSingleReader.getStats().minTTL);
-        LOGGER.info("Max TTL: " + SSTableSingleReader.getStats().maxTTL);
-        LOGGER.info("Min timestamp: " + SSTableSingleReader.getStats().minTimestamp);
-        LOGGER.info("Max timestamp: " + SSTableSingleReader.getStats().maxTimestamp);
-
-        //TODO: this block only works because we know there is only one clustering column
-        LOGGER.info("Min clustering value: ");
-        for (ByteBuffer buffer: SSTableSingleReader.getStats().minClusteringValues) {
-            LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
-        }
-        LOGGER.info("Max clustering value: ");
-        for (ByteBuffer buffer: SSTableSingleReader.getStats().maxClusteringValues) {
-            LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
-        }
-
-        LOGGER.info("Min local deletion time: " + SSTableSingleReader.getStats().minLocalDeletionTime);
-        LOGGER.info("Max local deletion time: " + SSTableSingleReader.getStats().maxLocalDeletionTime);
-        LOGGER.info("SSTable level: " + SSTableSingleReader.getStats().sstableLevel);
-
-        LOGGER.info("=======================================");
-        LOGGER.info("Key validator: " + cfMetaData.getKeyValidator());
-        Assert.assertTrue(cfMetaData.getKeyValidator() instanceof CompositeType);
-        for (ColumnDefinition colDef : cfMetaData.primaryKeyColumns()) {
-            LOGGER.info("Primary Key: " + colDef.debugString());
-            Assert.assertTrue(colDef.cellValueType() instanceof UTF8Type
-                || colDef.cellValueType() instanceof Int32Type);
+        try (SSTableSingleReader SSTableSingleReader =
+                new SSTableSingleReader(inputSSTableFullPathFileName, conf)) {
+            final CFMetaData cfMetaData = SSTableSingleReader.getCfMetaData();
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Keyspace name: " + cfMetaData.ksName);
+            LOGGER.info("Table name: " + cfMetaData.cfName);
+
+            LOGGER.info("Total columns: " + cfMetaData.allColumns().size());
+            Assert.assertEquals(8, cfMetaData.allColumns().size());
+
+            LOGGER.info("Table params: " + cfMetaData.params);
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Listing column names: ");
+            final Iterator<ColumnDefinition> columnDefinitionIterator =  cfMetaData.allColumnsInSelectOrder();
+            while (columnDefinitionIterator.hasNext()) {
+                final ColumnDefinition columnDefinition = columnDefinitionIterator.next();
+                LOGGER.info("\t" + columnDefinition.toString());
+            }
+
+            final PartitionColumns partitionColumns = cfMetaData.partitionColumns();
+            partitionColumns.iterator().forEachRemaining(cf -> LOGGER.info("Column in partition: " + cf.name));
+
+
+            LOGGER.info("=======================================");
+            final Map<ByteBuffer, ColumnDefinition> columnMetaData = cfMetaData.getColumnMetadata();
+            final Collection<ColumnDefinition> colDefinitions = columnMetaData.values();
+            for (ColumnDefinition colDef : colDefinitions) {
+                printColumnDefinition(colDef);
+            }
+
+            LOGGER.info("Estimated partition size: " + SSTableSingleReader.getEstimatedPartitionSize());
+            LOGGER.info("Estimated total rows: " + SSTableSingleReader.getTotalRows());
+
+            LOGGER.info("Estimated column count: " + SSTableSingleReader.getStats().estimatedColumnCount);
+
+            LOGGER.info("=======================================");
+            LOGGER.info("First key: " + UTF8Type.instance.compose(SSTableSingleReader.getFirstKey().getKey()));
+            LOGGER.info("Last key: " + UTF8Type.instance.compose(SSTableSingleReader.getLastKey().getKey()));
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Min TTL: " + SSTableSingleReader.getStats().minTTL);
+            LOGGER.info("Max TTL: " + SSTableSingleReader.getStats().maxTTL);
+            LOGGER.info("Min timestamp: " + SSTableSingleReader.getStats().minTimestamp);
+            LOGGER.info("Max timestamp: " + SSTableSingleReader.getStats().maxTimestamp);
+
+            //TODO: this block only works because we know there is only one clustering column
+            LOGGER.info("Min clustering value: ");
+            for (ByteBuffer buffer: SSTableSingleReader.getStats().minClusteringValues) {
+                LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
+            }
+            LOGGER.info("Max clustering value: ");
+            for (ByteBuffer buffer: SSTableSingleReader.getStats().maxClusteringValues) {
+                LOGGER.info("\t" + cfMetaData.clusteringColumns().get(0).type.compose(buffer));
+            }
+
+            LOGGER.info("Min local deletion time: " + SSTableSingleReader.getStats().minLocalDeletionTime);
+            LOGGER.info("Max local deletion time: " + SSTableSingleReader.getStats().maxLocalDeletionTime);
+            LOGGER.info("SSTable level: " + SSTableSingleReader.getStats().sstableLevel);
+
+            LOGGER.info("=======================================");
+            LOGGER.info("Key validator: " + cfMetaData.getKeyValidator());
+            Assert.assertTrue(cfMetaData.getKeyValidator() instanceof CompositeType);
+            for (ColumnDefinition colDef : cfMetaData.primaryKeyColumns()) {
+                LOGGER.info("Primary Key: " + colDef.debugString());
+                Assert.assertTrue(colDef.cellValueType() instanceof UTF8Type
+                    || colDef.cellValueType() instanceof Int32Type);
+            }
+
+            for (ColumnDefinition colDef : cfMetaData.partitionKeyColumns()) {
+                LOGGER.info("Partition Key ::: " + colDef.debugString());
+                Assert.assertEquals(colDef.cellValueType(), UTF8Type.instance);
+            }
+
+            LOGGER.info("Clustering comparator: " + cfMetaData.comparator);
+            Assert.assertTrue(cfMetaData.comparator.subtype(0) == Int32Type.instance);
+            Assert.assertTrue(cfMetaData.comparator.subtype(1) == Int32Type.instance);
+
+            LOGGER.info("Parent Column Family: " + cfMetaData.getParentColumnFamilyName());
+
+            LOGGER.info("Has collection columns? : " + cfMetaData.hasCollectionColumns());
+            Assert.assertFalse(cfMetaData.hasCollectionColumns());
+
+            LOGGER.info("Has complex columns? : " + cfMetaData.hasComplexColumns());
+            Assert.assertFalse(cfMetaData.hasComplexColumns());
+
+            LOGGER.info("Has dropped collection columns? : " + cfMetaData.hasDroppedCollectionColumns());
+            LOGGER.info("Has static columns? : " + cfMetaData.hasStaticColumns());
+            Assert.assertTrue(cfMetaData.hasStaticColumns());
+
+            LOGGER.info("Is compound? : " + cfMetaData.isCompound());
+            Assert.assertTrue(cfMetaData.isCompound());
+
+            LOGGER.info("Is view? : " + cfMetaData.isView());
+            Assert.assertFalse(cfMetaData.isView());
+
+            LOGGER.info("Partitioner: " + cfMetaData.partitioner);
+            Assert.assertTrue(cfMetaData.partitioner instanceof Murmur3Partitioner);
+
+            LOGGER.info("Serializers: " + cfMetaData.serializers());
         }
-
-        for (ColumnDefinition colDef : cfMetaData.partitionKeyColumns()) {
-            LOGGER.info("Partition Key ::: " + colDef.debugString());
-            Assert.assertEquals(colDef.cellValueType(), UTF8Type.instance);
-        }
-
-        LOGGER.info("Clustering comparator: " + cfMetaData.comparator);
-        Assert.assertTrue(cfMetaData.comparator.subtype(0) == Int32Type.instance);
-        Assert.assertTrue(cfMetaData.comparator.subtype(1) == Int32Type.instance);
-
-        LOGGER.info("Parent Column Family: " + cfMetaData.getParentColumnFamilyName());
-
-        LOGGER.info("Has collection columns? : " + cfMetaData.hasCollectionColumns());
-        Assert.assertFalse(cfMetaData.hasCollectionColumns());
-
-        LOGGER.info("Has complex columns? : " + cfMetaData.hasComplexColumns());
-        Assert.assertFalse(cfMetaData.hasComplexColumns());
-
-        LOGGER.info("Has dropped collection columns? : " + cfMetaData.hasDroppedCollectionColumns());
-        LOGGER.info("Has static columns? : " + cfMetaData.hasStaticColumns());
-        Assert.assertTrue(cfMetaData.hasStaticColumns());
-
-        LOGGER.info("Is compound? : " + cfMetaData.isCompound());
-        Assert.assertTrue(cfMetaData.isCompound());
-
-        LOGGER.info("Is view? : " + cfMetaData.isView());
-        Assert.assertFalse(cfMetaData.isView());
-
-        LOGGER.info("Partitioner: " + cfMetaData.partitioner);
-        Assert.assertTrue(cfMetaData.partitioner instanceof Murmur3Partitioner);
-
-        LOGGER.info("Serializers: " + cfMetaData.serializers());
-
     }
 
     private void printColumnDefinition(final ColumnDefinition colDef) {
@@ -361,23 +374,228 @@ public class TestSSTableMetadata extends TestBaseSSTableFunSuite {
     public void testConstructingKeyspaceAndTable() {
         final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
 
-        try {
-            final Configuration conf = new Configuration();
-            SSTableSingleReader sstableSingleReader =
-                    new SSTableSingleReader(inputSSTableFullPathFileName,
-                                           "ks1", "table1", conf);
-
+        final Configuration conf = new Configuration();
+        try (SSTableSingleReader sstableSingleReader =
+                new SSTableSingleReader(inputSSTableFullPathFileName,
+                                        "ks1", "table1", conf)) {
             Assert.assertEquals("ks1", sstableSingleReader.getCfMetaData().ksName);
             Assert.assertEquals("table1", sstableSingleReader.getCfMetaData().cfName);
             Assert.assertEquals(inputSSTableFullPathFileName, sstableSingleReader.getSstableReader().getFilename());
+        } catch (IOException e) {
+           Assert.fail(e.getMessage());
+        }
 
-            sstableSingleReader =
-                    new SSTableSingleReader(inputSSTableFullPathFileName, conf);
+        try (SSTableSingleReader sstableSingleReader =
+                new SSTableSingleReader(inputSSTableFullPathFileName, conf)) {
             Assert.assertEquals("keyspace1", sstableSingleReader.getCfMetaData().ksName);
             Assert.assertEquals("compressed_bills", sstableSingleReader.getCfMetaData().cfName);
-
         } catch (IOException e) {
            Assert.fail(e.getMessage());
         }
     }
+
+    /**
+     * Point lookups must load the bloom filter on first use, then skip the index for the keys it rules out.
+     * @throws IOException when code is unable to read sstable file
+     */
+    @Test
+    public void testPointLookupsWithBloomFilter() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db";
+        try (SSTableSingleReader sstableSingleReader =
+                new SSTableSingleReader(inputSSTableFullPathFileName, TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final SSTableReader sstableReader = sstableSingleReader.getSstableReader();
+
+            Assert.assertTrue(sstableReader.getBloomFilter() instanceof LazyBloomFilter);
+            Assert.assertFalse(((LazyBloomFilter) sstableReader.getBloomFilter()).isLoaded());
+
+            final DecoratedKey present = sstableSingleReader.getFirstKey();
+            Assert.assertNotNull(sstableReader.getPosition(present, SSTableReader.Operator.EQ));
+            Assert.assertTrue(((LazyBloomFilter) sstableReader.getBloomFilter()).isLoaded());
+            Assert.assertTrue(sstableReader.getBloomFilterOffHeapSize() > 0);
+            Assert.assertEquals(1, sstableReader.getBloomFilterTruePositiveCount());
+
+            final DecoratedKey missing = sstableSingleReader.getPartitioner()
+                    .decorateKey(UTF8Type.instance.decompose("no-such-user"));
+            Assert.assertFalse(sstableReader.getBloomFilter().isPresent(missing));
+            Assert.assertNull(sstableReader.getPosition(missing, SSTableReader.Operator.EQ));
+            Assert.assertEquals(0, sstableReader.getBloomFilterFalsePositiveCount());
+        }
+    }
+
+    /**
+     * With bloom filters disabled every key is considered present.
+     * @throws IOException when code is unable to read sstable file
+     */
+    @Test
+    public void testPointLookupsWithoutBloomFilter() throws IOException {
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setBoolean(SSTableReader.BLOOM_FILTER_ENABLED_KEY, false);
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db";
+        try (SSTableSingleReader sstableSingleReader = new SSTableSingleReader(inputSSTableFullPathFileName, conf)) {
+            Assert.assertSame(FilterFactory.AlwaysPresent, sstableSingleReader.getSstableReader().getBloomFilter());
+            Assert.assertNotNull(sstableSingleReader.getSstableReader()
+                    .getPosition(sstableSingleReader.getFirstKey(), SSTableReader.Operator.EQ));
+        }
+    }
+
+    /**
+     * Sstables outside of the write time window or token range of a query must be pruned.
+     * @throws IOException when code is unable to read sstable file
+     */
+    @Test
+    public void testPruningFromStatsAndSummary() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        try (SSTableSingleReader sstableSingleReader =
+                new SSTableSingleReader(inputSSTableFullPathFileName, TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final CFMetaData cfMetaData = sstableSingleReader.getCfMetaData();
+            final long maxTimestamp = sstableSingleReader.getStats().maxTimestamp;
+            final Token lastToken = sstableSingleReader.getSstableReader().last.getToken();
+            final List<String> paths = Collections.singletonList(inputSSTableFullPathFileName);
+
+            final SSTablePruner all = new SSTablePruner(cfMetaData, null, Slices.ALL,
+                    Long.MIN_VALUE, Long.MAX_VALUE, TestBaseSSTableFunSuite.HADOOP_CONF);
+            Assert.assertEquals(paths, all.prune(paths));
+            Assert.assertTrue(all.mayMatch(sstableSingleReader));
+            Assert.assertEquals(1, all.getTokenRanges(sstableSingleReader).size());
+
+            final SSTablePruner later = new SSTablePruner(cfMetaData, null, Slices.ALL,
+                    maxTimestamp + 1, Long.MAX_VALUE, TestBaseSSTableFunSuite.HADOOP_CONF);
+            Assert.assertTrue(later.prune(paths).isEmpty());
+            Assert.assertFalse(later.mayMatch(sstableSingleReader));
+
+            final Range<Token> pastLast = new Range<>(lastToken, new Murmur3Partitioner.LongToken(Long.MAX_VALUE));
+            final SSTablePruner outside = new SSTablePruner(cfMetaData, pastLast, Slices.ALL,
+                    Long.MIN_VALUE, Long.MAX_VALUE, TestBaseSSTableFunSuite.HADOOP_CONF);
+            Assert.assertTrue(outside.prune(paths).isEmpty());
+            Assert.assertFalse(outside.mayMatch(sstableSingleReader));
+            Assert.assertTrue(outside.getTokenRanges(sstableSingleReader).isEmpty());
+        }
+    }
+
+    /**
+     * Sstables without a row in the clustering slices of a query must be pruned, unless they hold
+     * tombstones that may shadow the rows of other sstables.
+     * @throws IOException when code is unable to read sstable file
+     */
+    @Test
+    public void testPruningOnClusteringKeepsTombstones() throws IOException {
+        final String rows = writeChunkedSSTable(10, 0, 10, false);
+        final String deletions = writeChunkedSSTable(10, 50, 10, true);
+        final List<String> paths = Arrays.asList(rows, deletions);
+
+        final SSTableSingleReader reader = new SSTableSingleReader(rows, TestBaseSSTableFunSuite.HADOOP_CONF);
+        final CFMetaData cfMetaData = reader.getCfMetaData();
+        final Slices first = reader.getSlices(new ByteBuffer[] {Int32Type.instance.decompose(0)},
+                new ByteBuffer[] {Int32Type.instance.decompose(5)});
+        final Slices later = reader.getSlices(new ByteBuffer[] {Int32Type.instance.decompose(20)},
+                new ByteBuffer[] {Int32Type.instance.decompose(30)});
+        Assert.assertFalse(reader.getSstableReader().hasTombstones());
+        reader.close();
+
+        // the partition deletions of the second sstable shadow rows of the first one
+        final SSTablePruner shadowed = new SSTablePruner(cfMetaData, null, first,
+                Long.MIN_VALUE, Long.MAX_VALUE, TestBaseSSTableFunSuite.HADOOP_CONF);
+        Assert.assertEquals(paths, shadowed.prune(paths));
+
+        final SSTablePruner missing = new SSTablePruner(cfMetaData, null, later,
+                Long.MIN_VALUE, Long.MAX_VALUE, TestBaseSSTableFunSuite.HADOOP_CONF);
+        Assert.assertEquals(Collections.singletonList(deletions), missing.prune(paths));
+
+        final SSTableSingleReader deletionReader =
+                new SSTableSingleReader(deletions, TestBaseSSTableFunSuite.HADOOP_CONF);
+        Assert.assertTrue(deletionReader.getSstableReader().hasTombstones());
+        Assert.assertTrue(missing.mayMatch(deletionReader));
+        deletionReader.close();
+    }
+
+    /**
+     * The token sub-ranges of an sstable must start after its first key and end at its last one, be
+     * split on the keys sampled by its summary, and hold all of its keys between them.
+     * @throws IOException when code is unable to read sstable file
+     */
+    @Test
+    public void testPruningTokenSubRanges() throws IOException {
+        final String dataFile = writeChunkedSSTable(2000, 1);
+        try (SSTableSingleReader reader = new SSTableSingleReader(dataFile, TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final SSTableReader sstableReader = reader.getSstableReader();
+            final long first = (Long) sstableReader.first.getToken().getTokenValue();
+            final Token last = sstableReader.last.getToken();
+            Assert.assertTrue(sstableReader.getIndexSummary().size() > 8);
+
+            final SSTablePruner all = new SSTablePruner(reader.getCfMetaData(), null, Slices.ALL,
+                    Long.MIN_VALUE, Long.MAX_VALUE, TestBaseSSTableFunSuite.HADOOP_CONF);
+            Assert.assertEquals(
+                    Collections.singletonList(new Range<>(new Murmur3Partitioner.LongToken(first - 1), last)),
+                    all.getTokenRanges(reader));
+
+            final List<Range<Token>> ranges = all.getTokenRanges(reader, 4);
+            Assert.assertEquals(4, ranges.size());
+            Assert.assertEquals(new Murmur3Partitioner.LongToken(first - 1), ranges.get(0).left);
+            Assert.assertEquals(last, ranges.get(3).right);
+            int partitions = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                if (i > 0) {
+                    Assert.assertEquals(ranges.get(i - 1).right, ranges.get(i).left);
+                }
+                int inRange = 0;
+                try (ISSTableScanner scanner = reader.getSSTableScanner(ranges.get(i), null)) {
+                    while (scanner.hasNext()) {
+                        scanner.next().close();
+                        inRange++;
+                    }
+                }
+                // about a quarter of the keys in each sub-range
+                Assert.assertTrue(String.valueOf(inRange), inRange > 250 && inRange < 750);
+                partitions += inRange;
+            }
+            Assert.assertEquals(2000, partitions);
+
+            // a query range starting within the sstable is only narrowed at its end
+            final Token middle = ranges.get(1).right;
+            final SSTablePruner upper = new SSTablePruner(reader.getCfMetaData(),
+                    new Range<>(middle, new Murmur3Partitioner.LongToken(Long.MAX_VALUE)), Slices.ALL,
+                    Long.MIN_VALUE, Long.MAX_VALUE, TestBaseSSTableFunSuite.HADOOP_CONF);
+            Assert.assertEquals(Collections.singletonList(new Range<>(middle, last)), upper.getTokenRanges(reader));
+            Assert.assertEquals(2, upper.getTokenRanges(reader, 2).size());
+        }
+    }
+
+    /**
+     * The report built from the index must account for every partition of the sstables.
+     * @throws IOException when code is unable to read sstable file
+     */
+    @Test
+    public void testPartitionReportFromIndex() throws IOException {
+        final List<String> paths = Arrays.asList(
+                CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db",
+                CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db");
+        final SSTableSetOpener opener = new SSTableSetOpener(TestBaseSSTableFunSuite.HADOOP_CONF);
+
+        try (SSTableSet sstables = opener.open(paths)) {
+            final SSTablePartitionReport report =
+                    SSTablePartitionReport.build(sstables, 3, 4, TestBaseSSTableFunSuite.HADOOP_CONF);
+
+            long expectedBytes = 0;
+            for (SSTableSingleReader reader : sstables.getReaders()) {
+                expectedBytes += reader.getSstableReader().uncompressedLength();
+            }
+            Assert.assertEquals(expectedBytes, report.getTotalBytes());
+            Assert.assertEquals(report.getPartitionCount(), report.getSizeHistogram().count());
+
+            Assert.assertEquals(4, report.getRanges().size());
+            long rangeBytes = 0;
+            for (long bytes : report.getRangeBytes()) {
+                rangeBytes += bytes;
+            }
+            Assert.assertEquals(expectedBytes, rangeBytes);
+
+            final List<SSTablePartitionReport.PartitionSize> largest = report.getLargestPartitions();
+            Assert.assertEquals(3, largest.size());
+            for (int i = 1; i < largest.size(); i++) {
+                Assert.assertTrue(largest.get(i - 1).getSize() >= largest.get(i).getSize());
+            }
+            // the histogram rounds sizes up to the bound of their bucket
+            Assert.assertTrue(largest.get(0).getSize() <= report.getSizeHistogram().max());
+        }
+    }
 }
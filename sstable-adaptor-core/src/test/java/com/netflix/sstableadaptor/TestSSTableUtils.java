@@ -22,6 +22,10 @@ import com.netflix.sstableadaptor.util.SSTableUtils;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
+import org.apache.cassandra.io.sstable.metadata.MetadataType;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -32,7 +36,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Test SSTable utilites.
@@ -68,23 +74,51 @@ public class TestSSTableUtils extends TestBaseSSTableFunSuite {
     public void testParsingCompositeKey() throws IOException {
         final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
 
-        final SSTableSingleReader SSTableSingleReader =
-                                new SSTableSingleReader(inputSSTableFullPathFileName,
-                                                        TestBaseSSTableFunSuite.HADOOP_CONF);
+        try (SSTableSingleReader SSTableSingleReader =
+                new SSTableSingleReader(inputSSTableFullPathFileName,
+                                        TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final CFMetaData cfMetaData = SSTableSingleReader.getCfMetaData();
+            final String user = "user2";
+            final String email = "abc@netflix.com";
+            final AbstractType<?> keyDataType = cfMetaData.getKeyValidator();
 
-        final CFMetaData cfMetaData = SSTableSingleReader.getCfMetaData();
-        final String user = "user2";
-        final String email = "abc@netflix.com";
-        final AbstractType<?> keyDataType = cfMetaData.getKeyValidator();
+            Assert.assertTrue(keyDataType instanceof CompositeType);
+            final ByteBuffer keyInByteBuffer = ((CompositeType) keyDataType).decompose(user, email);
 
-        Assert.assertTrue(keyDataType instanceof CompositeType);
-        final ByteBuffer keyInByteBuffer = ((CompositeType) keyDataType).decompose(user, email);
+            final List<Object> objects = SSTableUtils.parsePrimaryKey(cfMetaData, keyInByteBuffer);
 
-        final List<Object> objects = SSTableUtils.parsePrimaryKey(cfMetaData, keyInByteBuffer);
+            Assert.assertEquals(2, objects.size());
+            Assert.assertEquals(user, objects.get(0));
+            Assert.assertEquals(email, objects.get(1));
+        }
+    }
+
+    /**
+     * Test on opening a SSTable with the content of its Stats.db read only once.
+     * @throws IOException
+     */
+    @Test
+    public void testOpeningWithSharedMetadata() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        final Descriptor descriptor = Descriptor.fromFilename(inputSSTableFullPathFileName,
+                                                              TestBaseSSTableFunSuite.HADOOP_CONF);
+
+        final Map<MetadataType, MetadataComponent> sstableMetadata = SSTableUtils.readSSTableMetadata(descriptor);
+        final CFMetaData cfMetaData = SSTableUtils.metadataFromSSTable(descriptor, sstableMetadata, null, null,
+                Collections.<String>emptyList(), Collections.<String>emptyList());
 
-        Assert.assertEquals(2, objects.size());
-        Assert.assertEquals(user, objects.get(0));
-        Assert.assertEquals(email, objects.get(1));
+        final SSTableReader shared = SSTableReader.openNoValidation(descriptor, cfMetaData, sstableMetadata);
+        final SSTableReader standalone = SSTableReader.openNoValidation(descriptor, cfMetaData);
+        try {
+            Assert.assertEquals(standalone.first, shared.first);
+            Assert.assertEquals(standalone.last, shared.last);
+            Assert.assertEquals(standalone.getTotalRows(), shared.getTotalRows());
+            Assert.assertEquals(standalone.onDiskLength(), shared.onDiskLength());
+            Assert.assertEquals(standalone.getIndexSummarySize(), shared.getIndexSummarySize());
+        } finally {
+            shared.selfRef().release();
+            standalone.selfRef().release();
+        }
     }
 
 }
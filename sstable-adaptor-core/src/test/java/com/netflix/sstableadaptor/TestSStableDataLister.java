@@ -17,11 +17,51 @@
 package com.netflix.sstableadaptor;
 
 
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.netflix.sstableadaptor.sstable.ParallelSSTableScanner;
+import com.netflix.sstableadaptor.sstable.PartitionMemoryBudget;
 import com.netflix.sstableadaptor.sstable.SSTableIterator;
+import com.netflix.sstableadaptor.sstable.SSTableKeyIterator;
+import com.netflix.sstableadaptor.sstable.SSTableSet;
+import com.netflix.sstableadaptor.sstable.SSTableSetOpener;
 import com.netflix.sstableadaptor.sstable.SSTableSingleReader;
+import com.netflix.sstableadaptor.sstable.SSTableSplitPlanner;
+import org.apache.cassandra.cache.ChunkCache;
+import org.apache.cassandra.cache.KeyCache;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.Slices;
+import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.ImmutableBTreePartition;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterators;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.io.compress.CompressionMetadata;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.BackoffReadPolicy;
+import org.apache.cassandra.io.util.ChannelProxy;
+import org.apache.cassandra.io.util.ChunkReader;
+import org.apache.cassandra.io.util.CompressedChunkReader;
+import org.apache.cassandra.io.util.DiskBlockCache;
+import org.apache.cassandra.io.util.FileHandle;
+import org.apache.cassandra.io.util.PrefetchingRebufferer;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.io.util.Rebufferer;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -29,9 +69,27 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  *  Tests on reading local sstable and s3 sstable files.
@@ -138,32 +196,1191 @@ public class TestSStableDataLister extends TestBaseSSTableFunSuite {
     }
 
     /**
-     * Test on the SSTableIterator.
-     * @throws IOException
+     *  A sequential reader must get every chunk after the first two from batches read ahead, skip forward
+     *  within the read-ahead window, and drop the window when seeking back. Scanning with read-ahead enabled
+     *  must return the same rows as a plain scan.
      */
     @Test
-    public void testCasspactorIterator() throws IOException {
-        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db";
-        final SSTableSingleReader reader1 = new SSTableSingleReader(inputSSTableFullPathFileName,
-                                                                   TestBaseSSTableFunSuite.HADOOP_CONF);
-        final SSTableSingleReader reader2 = new SSTableSingleReader(inputSSTableFullPathFileName,
-                                                     TestBaseSSTableFunSuite.HADOOP_CONF);
-        final CFMetaData cfMetaData = reader1.getCfMetaData();
-        final List<ISSTableScanner> scanners = new ArrayList<>();
+    public void testOnLocalDataWithReadAhead() throws IOException {
+        final String dataFile = writeChunkedSSTable(200, 10);
+        final SSTableSingleReader reader = new SSTableSingleReader(dataFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        final ChannelProxy channel = ChannelProxy.newInstance(dataFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        try {
+            final CompressedChunkReader.Standard chunkReader = new CompressedChunkReader.Standard(
+                    channel, reader.getSstableReader().getCompressionMetadata());
+            final int chunkSize = chunkReader.chunkSize();
+            final int chunks = (int) ((chunkReader.fileLength() + chunkSize - 1) / chunkSize);
+            Assert.assertTrue(chunks > 10);
+            final ByteBuffer[] expected = new ByteBuffer[chunks];
+            for (int i = 0; i < chunks; i++) {
+                expected[i] = chunkReader.preferredBufferType().allocate(chunkSize);
+                chunkReader.readChunk((long) i * chunkSize, expected[i]);
+            }
+
+            final CountingChunkReader counting = new CountingChunkReader(chunkReader, true);
+            final PrefetchingRebufferer rebufferer = new PrefetchingRebufferer(counting, 4);
+            try {
+                // the first two chunks are read synchronously, the following ones in batches of half the window
+                for (int i = 0; i < chunks; i++) {
+                    assertChunk(expected[i], (long) i * chunkSize, rebufferer.rebuffer((long) i * chunkSize + 1));
+                }
+                Assert.assertEquals(2, counting.chunkReads.get());
+                Assert.assertEquals(chunks - 2, counting.batchedChunks.get());
+                Assert.assertTrue(counting.batchReads.get() <= (chunks - 2 + 1) / 2 + 1);
+
+                // seeking back drops the window and reads synchronously, until reading sequentially again
+                assertChunk(expected[0], 0, rebufferer.rebuffer(0));
+                assertChunk(expected[1], chunkSize, rebufferer.rebuffer(chunkSize));
+                Assert.assertEquals(4, counting.chunkReads.get());
+                assertChunk(expected[2], 2L * chunkSize, rebufferer.rebuffer(2L * chunkSize));
+                Assert.assertEquals(4, counting.chunkReads.get());
+
+                // skipping chunks within the window uses the chunks read ahead after them, and keeps reading ahead
+                for (int i = 4; i < 8; i++) {
+                    assertChunk(expected[i], (long) i * chunkSize, rebufferer.rebuffer((long) i * chunkSize));
+                }
+                Assert.assertEquals(4, counting.chunkReads.get());
+
+                // jumping past the window drops it
+                assertChunk(expected[chunks - 1], (long) (chunks - 1) * chunkSize,
+                        rebufferer.rebuffer((long) (chunks - 1) * chunkSize));
+                Assert.assertEquals(5, counting.chunkReads.get());
+            } finally {
+                rebufferer.closeReader();
+                rebufferer.close();
+            }
+        } finally {
+            channel.close();
+            reader.close();
+        }
+
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(PrefetchingRebufferer.READ_AHEAD_CHUNKS_KEY, 4);
+        Assert.assertEquals(2000, getRowCount(dataFile, conf));
+    }
+
+    private static void assertChunk(final ByteBuffer expected, final long offset, final Rebufferer.BufferHolder holder) {
+        Assert.assertEquals(offset, holder.offset());
+        Assert.assertEquals(expected, holder.buffer());
+    }
+
+    /**
+     *  Vectored reads must merge the ranges closer than the gap limit into requests no larger than the size
+     *  limit, and return the bytes of each range, fewer at the end of the file.
+     */
+    @Test
+    public void testVectoredReads() throws IOException {
+        final String dataFile = writeChunkedSSTable(200, 10);
+        final byte[] content = Files.readAllBytes(Paths.get(dataFile));
+        Assert.assertTrue(content.length > 10_000);
+
+        for (boolean nativeIO : new boolean[] {true, false}) {
+            final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+            conf.setBoolean(ChannelProxy.LOCAL_NATIVE_IO_KEY, nativeIO);
+            conf.setInt(ChannelProxy.VECTORED_READ_MAX_GAP_KEY, 100);
+            conf.setInt(ChannelProxy.VECTORED_READ_MAX_MERGED_SIZE_KEY, 1000);
+            final List<ChannelProxy.ReadRange> ranges = Arrays.asList(
+                    new ChannelProxy.ReadRange(0, 10),
+                    // within the gap limit
+                    new ChannelProxy.ReadRange(50, 10),
+                    // past the gap limit
+                    new ChannelProxy.ReadRange(300, 10),
+                    new ChannelProxy.ReadRange(310, 600),
+                    // past the size limit
+                    new ChannelProxy.ReadRange(910, 600),
+                    // across and past the end of the file
+                    new ChannelProxy.ReadRange(content.length - 5, 10),
+                    new ChannelProxy.ReadRange(content.length + 20, 10),
+                    new ChannelProxy.ReadRange(content.length + 1000, 10));
+            // merged ranges are views of the same buffer, starting where they are in the request
+            final int[] positions = {0, 50, 0, 10, 0, 0, 5, 0};
+
+            final ChannelProxy channel = ChannelProxy.newInstance(dataFile, conf);
+            try {
+                final long directMemory = directMemoryUsed();
+                final ByteBuffer[] buffers = channel.readVectored(ranges, BufferType.OFF_HEAP);
+                for (int i = 0; i < ranges.size(); i++) {
+                    final ChannelProxy.ReadRange range = ranges.get(i);
+                    final int from = (int) Math.min(range.offset, content.length);
+                    final int to = (int) Math.min(range.end(), content.length);
+                    Assert.assertEquals(positions[i], buffers[i].position());
+                    Assert.assertEquals(ByteBuffer.wrap(content, from, to - from), buffers[i]);
+                }
+                Assert.assertTrue(directMemoryUsed() > directMemory);
+                ChannelProxy.cleanVectored(buffers);
+                Assert.assertEquals(directMemory, directMemoryUsed());
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     *  Reading many compressed chunks at once, split over several vectored requests or chunk by chunk,
+     *  must decompress the same chunks as reading them one at a time, and free the compressed chunks. Snappy
+     *  decompresses from off-heap buffers.
+     */
+    @Test
+    public void testVectoredChunkReads() throws IOException {
+        final String dataFile = writeChunkedSSTable("SnappyCompressor", 200, 10);
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(ChannelProxy.VECTORED_READ_MAX_MERGED_SIZE_KEY, 4096);
+        final SSTableSingleReader reader = new SSTableSingleReader(dataFile, conf);
+        final ChannelProxy channel = ChannelProxy.newInstance(dataFile, conf);
+        try {
+            final CompressionMetadata metadata = reader.getSstableReader().getCompressionMetadata();
+            final CompressedChunkReader.Standard chunkReader = new CompressedChunkReader.Standard(channel, metadata);
+            final int chunkSize = chunkReader.chunkSize();
+            final int chunks = (int) ((metadata.dataLength + chunkSize - 1) / chunkSize);
+            Assert.assertTrue(chunks > 10);
+
+            // all the chunks, then every third one
+            for (int step : new int[] {1, 3}) {
+                final int count = (chunks + step - 1) / step;
+                final long[] positions = new long[count];
+                for (int i = 0; i < count; i++) {
+                    positions[i] = (long) i * step * chunkSize;
+                }
+
+                final ByteBuffer[] expected = new ByteBuffer[count];
+                for (int i = 0; i < count; i++) {
+                    expected[i] = chunkReader.preferredBufferType().allocate(chunkSize);
+                    chunkReader.readChunk(positions[i], expected[i]);
+                }
+                Assert.assertTrue(expected[count - 1].remaining() <= chunkSize);
+
+                for (boolean vectored : new boolean[] {true, false}) {
+                    final CountingChunkReader counting = new CountingChunkReader(chunkReader, vectored);
+                    final ByteBuffer[] buffers = new ByteBuffer[count];
+                    for (int i = 0; i < count; i++) {
+                        buffers[i] = chunkReader.preferredBufferType().allocate(chunkSize);
+                    }
+                    // the compressed chunks are freed once decompressed
+                    final long directMemory = directMemoryUsed();
+                    counting.readChunks(positions, buffers);
+                    Assert.assertEquals(directMemory, directMemoryUsed());
+                    Assert.assertEquals(vectored ? 0 : count, counting.chunkReads.get());
+                    for (int i = 0; i < count; i++) {
+                        Assert.assertEquals(expected[i], buffers[i]);
+                    }
+                }
+            }
+        } finally {
+            channel.close();
+            reader.close();
+        }
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        throw new IllegalStateException("No direct buffer pool");
+    }
+
+    /**
+     *  Local files must be read with native I/O by default, through memory mappings in mmap mode, and through
+     *  the Hadoop local file system with native I/O off, all reading the same content.
+     */
+    @Test
+    public void testOnLocalDataWithAccessModes() throws IOException {
+        final String dataFile = writeChunkedSSTable(200, 10);
+        final Configuration mmapConf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        mmapConf.set(FileHandle.DISK_ACCESS_MODE_KEY, "mmap");
+        final Configuration hadoopConf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        hadoopConf.setBoolean(ChannelProxy.LOCAL_NATIVE_IO_KEY, false);
+
+        final Configuration[] confs = {TestBaseSSTableFunSuite.HADOOP_CONF, mmapConf, hadoopConf};
+        final boolean[] local = {true, true, false};
+        final String[] chunkReaders = {"CompressedChunkReader.Standard", "CompressedChunkReader.Mmap",
+                                       "CompressedChunkReader.Standard"};
+        byte[] expected = null;
+        for (int i = 0; i < confs.length; i++) {
+            final SSTableSingleReader reader = new SSTableSingleReader(dataFile, confs[i]);
+            try (RandomAccessReader data = reader.getSstableReader().openDataReader()) {
+                Assert.assertEquals(local[i], reader.getSstableReader().getDataChannel().isLocal());
+                Assert.assertTrue(data.toString(), data.toString().contains(chunkReaders[i]));
+
+                final byte[] content = new byte[(int) data.length()];
+                data.readFully(content);
+                if (expected == null) {
+                    expected = content;
+                } else {
+                    Assert.assertArrayEquals(expected, content);
+                }
+            } finally {
+                reader.close();
+            }
+            Assert.assertEquals(2000, getRowCount(dataFile, confs[i]));
+        }
+    }
+
+    /**
+     *  Scanners of a single reader on several threads must each see all the rows, with the positional reads of the
+     *  remote-style (non native I/O) files served by a pool smaller than the number of threads.
+     */
+    @Test
+    public void testOnLocalDataWithConcurrentReaders() throws Exception {
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setBoolean(ChannelProxy.LOCAL_NATIVE_IO_KEY, false);
+        conf.setInt(ChannelProxy.STREAM_POOL_SIZE_KEY, 2);
+        final SSTableSingleReader reader =
+                new SSTableSingleReader(CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db", conf);
+        final CFMetaData cfMetaData = reader.getCfMetaData();
         final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
 
-        scanners.add(reader1.getSSTableScanner());
-        scanners.add(reader2.getSSTableScanner());
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Integer>> counters = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                counters.add(executor.submit(() -> {
+                    final List<ISSTableScanner> scanners = new ArrayList<>();
+                    scanners.add(reader.getSSTableScanner());
+                    int counter = 0;
+                    try (SSTableIterator ci = new SSTableIterator(scanners, cfMetaData, nowInSecs)) {
+                        while (ci.hasNext()) {
+                            counter += printRowDetails(cfMetaData, ci.next(), false);
+                        }
+                    }
+                    return counter;
+                }));
+            }
+
+            for (Future<Integer> counter : counters) {
+                Assert.assertEquals(16, counter.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+            reader.close();
+        }
+    }
+
+    /**
+     *  Reads retried and hedged by the read policy must return the same rows as plain reads.
+     */
+    @Test
+    public void testOnLocalDataWithHedgedReads() {
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setBoolean(ChannelProxy.LOCAL_NATIVE_IO_KEY, false);
+        conf.setLong(BackoffReadPolicy.ATTEMPT_TIMEOUT_MS_KEY, 10000);
+        conf.setDouble(BackoffReadPolicy.HEDGE_PERCENTILE_KEY, 0.5);
+        conf.setLong(BackoffReadPolicy.HEDGE_MIN_DELAY_MS_KEY, 0);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(4, getRowCount(CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db", conf));
+            Assert.assertEquals(16, getRowCount(CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db", conf));
+        }
+        Assert.assertTrue(ChannelProxy.readPolicy(conf).concurrentAttempts());
+    }
+
+    /**
+     *  An attempt slower than the hedge delay must get a hedge, whose result is returned, and the result of the
+     *  slow attempt must be discarded once it completes.
+     */
+    @Test
+    public void testReadPolicyHedging() throws Exception {
+        final Configuration conf = new Configuration(false);
+        conf.setDouble(BackoffReadPolicy.HEDGE_PERCENTILE_KEY, 0.5);
+        conf.setLong(BackoffReadPolicy.HEDGE_MIN_DELAY_MS_KEY, 0);
+        final BackoffReadPolicy policy = new BackoffReadPolicy(conf);
+        final List<String> discarded = Collections.synchronizedList(new ArrayList<>());
+
+        // no hedging until enough latencies are known
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("fast", policy.execute(() -> "fast", () -> "fast", () -> { }, discarded::add));
+        }
+        Assert.assertEquals(0, policy.hedges());
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch discarding = new CountDownLatch(1);
+        final AtomicInteger attempts = new AtomicInteger();
+        final String result = policy.execute(() -> "slow", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                Uninterruptibles.awaitUninterruptibly(release);
+                return "slow";
+            }
+            return "hedge";
+        }, () -> { }, slow -> {
+                discarded.add(slow);
+                discarding.countDown();
+            });
+        Assert.assertEquals("hedge", result);
+        Assert.assertEquals(1, policy.hedges());
+        Assert.assertTrue(discarded.isEmpty());
+
+        release.countDown();
+        Assert.assertTrue(discarding.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList("slow"), discarded);
+    }
+
+    /**
+     *  An attempt running past the timeout must be abandoned and the read retried, and the result of the
+     *  abandoned attempt discarded once it completes.
+     */
+    @Test
+    public void testReadPolicyTimeout() throws Exception {
+        final Configuration conf = new Configuration(false);
+        conf.setLong(BackoffReadPolicy.ATTEMPT_TIMEOUT_MS_KEY, 100);
+        conf.setLong(BackoffReadPolicy.BACKOFF_BASE_MS_KEY, 10);
+        final BackoffReadPolicy policy = new BackoffReadPolicy(conf);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch discarding = new CountDownLatch(1);
+        final AtomicReference<String> discarded = new AtomicReference<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicInteger reopened = new AtomicInteger();
+        final String result = policy.execute(() -> "stalled", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                Uninterruptibles.awaitUninterruptibly(release);
+                return "stalled";
+            }
+            return "retry";
+        }, reopened::incrementAndGet, stalled -> {
+                discarded.set(stalled);
+                discarding.countDown();
+            });
+        Assert.assertEquals("retry", result);
+        Assert.assertEquals(1, policy.timeouts());
+        Assert.assertEquals(1, policy.retries());
+        Assert.assertEquals(1, reopened.get());
+
+        release.countDown();
+        Assert.assertTrue(discarding.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("stalled", discarded.get());
+    }
+
+    /**
+     *  Failed reads must be retried up to the maximum number of attempts, except for missing files.
+     */
+    @Test
+    public void testReadPolicyRetries() throws Exception {
+        final Configuration conf = new Configuration(false);
+        conf.setInt(BackoffReadPolicy.MAX_ATTEMPTS_KEY, 3);
+        conf.setLong(BackoffReadPolicy.BACKOFF_BASE_MS_KEY, 1);
+        final BackoffReadPolicy policy = new BackoffReadPolicy(conf);
+        Assert.assertFalse(policy.concurrentAttempts());
+
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicInteger reopened = new AtomicInteger();
+        Assert.assertEquals("read", policy.execute(() -> "flaky", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("Connection reset");
+            }
+            return "read";
+        }, reopened::incrementAndGet));
+        Assert.assertEquals(2, policy.retries());
+        Assert.assertEquals(2, reopened.get());
+
+        attempts.set(0);
+        try {
+            policy.execute(() -> "broken", () -> {
+                attempts.incrementAndGet();
+                throw new IOException("Connection reset");
+            }, () -> { });
+            Assert.fail("The last failure must be thrown");
+        } catch (IOException e) {
+            Assert.assertEquals(3, attempts.get());
+        }
+
+        attempts.set(0);
+        try {
+            policy.execute(() -> "missing", () -> {
+                attempts.incrementAndGet();
+                throw new FileNotFoundException("missing");
+            }, () -> { });
+            Assert.fail("Missing files must not be retried");
+        } catch (FileNotFoundException e) {
+            Assert.assertEquals(1, attempts.get());
+        }
+        Assert.assertEquals(4, policy.retries());
+    }
+
+    /**
+     *  Reading a remote-style (non native I/O) file twice with the disk cache enabled must serve the second read
+     *  from the local copies of its blocks.
+     */
+    @Test
+    public void testOnLocalDataWithDiskCache() throws IOException {
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setBoolean(ChannelProxy.LOCAL_NATIVE_IO_KEY, false);
+        conf.set(DiskBlockCache.DISK_CACHE_DIR_KEY,
+                 createTemporaryDirectory("sstable-adaptor-diskcache").toString());
+        conf.setInt(DiskBlockCache.DISK_CACHE_BLOCK_SIZE_KB_KEY, 4);
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+
+        Assert.assertEquals(16, getRowCount(inputSSTableFullPathFileName, conf));
+        final DiskBlockCache cache = DiskBlockCache.instance(conf);
+        final long misses = cache.misses();
+        Assert.assertTrue(misses > 0);
+        Assert.assertTrue(cache.size() > 0);
+
+        Assert.assertEquals(16, getRowCount(inputSSTableFullPathFileName, conf));
+        Assert.assertEquals(misses, cache.misses());
+        Assert.assertTrue(cache.hits() > 0);
+    }
+
+    /**
+     *  Starting a disk cache must delete the temporary files left by dead processes, but not the writes in
+     *  progress of the other processes sharing the directory.
+     */
+    @Test
+    public void testDiskCacheKeepsRecentTemporaryFiles() throws IOException {
+        final File directory = createTemporaryDirectory("sstable-adaptor-diskcache");
+        final File blocks = new File(directory, "ab");
+        Assert.assertTrue(blocks.mkdirs());
+        final File stale = new File(blocks, "ab12-4096-0.123.tmp");
+        final File inProgress = new File(blocks, "ab12-4096-1.456.tmp");
+        Files.write(stale.toPath(), new byte[10]);
+        Files.write(inProgress.toPath(), new byte[10]);
+        Assert.assertTrue(stale.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.set(DiskBlockCache.DISK_CACHE_DIR_KEY, directory.toString());
+        final DiskBlockCache cache = DiskBlockCache.instance(conf);
+        Assert.assertFalse(stale.exists());
+        Assert.assertTrue(inProgress.exists());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     *  Opening sstables together must find them, and their components, from the directory listings
+     *  and read the same rows as opening them one by one.
+     */
+    @Test
+    public void testOnLocalDataWithSSTableSetOpener() throws IOException {
+        final SSTableSetOpener opener = new SSTableSetOpener(TestBaseSSTableFunSuite.HADOOP_CONF);
+
+        try (SSTableSet sstables = opener.openDirectory(CASS3_DATA_DIR + "keyspace1/compressed_bills/")) {
+            Assert.assertEquals(1, sstables.size());
+            final SSTableSingleReader reader = sstables.getReaders().get(0);
+            Assert.assertTrue(reader.getFileLocation().endsWith("compressed_bills/mc-2-big-Data.db"));
+            Assert.assertNotNull(reader.getFirstKey());
+        }
+
+        final List<String> dataFiles = Arrays.asList(
+                CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db",
+                CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db");
+        try (SSTableSet sstables = opener.open(dataFiles)) {
+            Assert.assertEquals(2, sstables.size());
+            for (int i = 0; i < dataFiles.size(); i++) {
+                final SSTableSingleReader reader = sstables.getReaders().get(i);
+                final SSTableSingleReader single = new SSTableSingleReader(dataFiles.get(i),
+                        TestBaseSSTableFunSuite.HADOOP_CONF);
+                Assert.assertEquals(dataFiles.get(i), reader.getFileLocation());
+                Assert.assertEquals(single.getTotalRows(), reader.getTotalRows());
+                Assert.assertEquals(single.getFirstKey(), reader.getFirstKey());
+                Assert.assertEquals(single.getLastKey(), reader.getLastKey());
+                single.close();
+            }
+        }
+    }
+
+    /**
+     *  The splits planned over a set of sstables must cover the whole ring, and scanning them must
+     *  read every row once.
+     */
+    @Test
+    public void testOnLocalDataWithSplitPlanner() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        final SSTableSetOpener opener = new SSTableSetOpener(TestBaseSSTableFunSuite.HADOOP_CONF);
+
+        try (SSTableSet sstables = opener.open(Collections.singletonList(inputSSTableFullPathFileName))) {
+            final SSTableSingleReader reader = sstables.getReaders().get(0);
+            final SSTableSplitPlanner planner = new SSTableSplitPlanner(sstables);
+            final List<Range<Token>> splits = planner.plan(4);
+            Assert.assertFalse(splits.isEmpty());
+            Assert.assertTrue(splits.size() <= 4);
+
+            final Token minimum = reader.getPartitioner().getMinimumToken();
+            Assert.assertEquals(minimum, splits.get(0).left);
+            Assert.assertEquals(minimum, splits.get(splits.size() - 1).right);
+            for (int i = 1; i < splits.size(); i++) {
+                Assert.assertEquals(splits.get(i - 1).right, splits.get(i).left);
+            }
+
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+            int counter = 0;
+            long bytes = 0;
+            for (Range<Token> split : splits) {
+                bytes += planner.estimateCompressedBytes(split);
+                try (SSTableIterator ci = new SSTableIterator(
+                        Collections.singletonList(reader.getSSTableScanner(split)), reader.getCfMetaData(), nowInSecs)) {
+                    while (ci.hasNext()) {
+                        counter += printRowDetails(reader.getCfMetaData(), ci.next(), false);
+                    }
+                }
+            }
+            Assert.assertEquals(16, counter);
+            Assert.assertTrue(bytes > 0);
+            Assert.assertTrue(bytes <= reader.getSstableReader().onDiskLength());
+        }
+    }
+
+    /**
+     *  Scanning a sstable with several threads must read the same partitions as a single scanner,
+     *  in the same order in ordered mode.
+     */
+    @Test
+    public void testOnLocalDataWithParallelScanner() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
+                TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final List<DecoratedKey> keys = new ArrayList<>();
+            try (ISSTableScanner scanner = reader.getSSTableScanner()) {
+                while (scanner.hasNext()) {
+                    try (UnfilteredRowIterator partition = scanner.next()) {
+                        keys.add(partition.partitionKey());
+                    }
+                }
+            }
+
+            // four ranges evenly splitting the ring, scanned by fewer threads than ranges
+            final List<Range<Token>> ranges = new ArrayList<>();
+            final long[] bounds = {Long.MIN_VALUE, Long.MIN_VALUE / 2, 0, Long.MAX_VALUE / 2, Long.MIN_VALUE};
+            for (int i = 0; i < 4; i++) {
+                ranges.add(new Range<>(new Murmur3Partitioner.LongToken(bounds[i]),
+                        new Murmur3Partitioner.LongToken(bounds[i + 1])));
+            }
+
+            final ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                final List<DecoratedKey> ordered = new ArrayList<>();
+                try (ISSTableScanner scanner = new ParallelSSTableScanner(reader, ranges, true, executor, 1)) {
+                    while (scanner.hasNext()) {
+                        try (UnfilteredRowIterator partition = scanner.next()) {
+                            ordered.add(partition.partitionKey());
+                        }
+                    }
+                }
+                Assert.assertEquals(keys, ordered);
+
+                final List<DecoratedKey> unordered = new ArrayList<>();
+                try (ISSTableScanner scanner = new ParallelSSTableScanner(reader, ranges, false, executor, 1)) {
+                    while (scanner.hasNext()) {
+                        try (UnfilteredRowIterator partition = scanner.next()) {
+                            unordered.add(partition.partitionKey());
+                        }
+                    }
+                }
+                Collections.sort(unordered);
+                Assert.assertEquals(keys, unordered);
+
+                // closing before the end must not block
+                try (ISSTableScanner scanner = new ParallelSSTableScanner(reader, ranges, true, executor, 1)) {
+                    Assert.assertTrue(scanner.hasNext());
+                    scanner.next().close();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            int counter = 0;
+            try (ISSTableScanner scanner = reader.getParallelSSTableScanner(true)) {
+                while (scanner.hasNext()) {
+                    try (UnfilteredRowIterator partition = scanner.next()) {
+                        Assert.assertEquals(keys.get(counter++), partition.partitionKey());
+                    }
+                }
+            }
+            Assert.assertEquals(keys.size(), counter);
+        }
+    }
+
+    /**
+     *  Listing the keys from the index must return the same keys as a full scan, with increasing
+     *  positions, whole or bounded by a token range.
+     */
+    /**
+     *  Partitions must be charged to the budget by the size of their data, wait for room unless
+     *  their queue is empty, and give it back once taken or dropped. A parallel scan within a
+     *  budget smaller than a few partitions must return them all.
+     */
+    @Test
+    public void testPartitionMemoryBudget() throws Exception {
+        final String dataFile = writeChunkedSSTable(4, 2000);
+        final SSTableSingleReader reader = new SSTableSingleReader(dataFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        final List<ImmutableBTreePartition> partitions = new ArrayList<>();
+        try (ISSTableScanner scanner = reader.getSSTableScanner()) {
+            while (scanner.hasNext()) {
+                try (UnfilteredRowIterator partition = scanner.next()) {
+                    partitions.add(ImmutableBTreePartition.create(partition));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        Assert.assertEquals(4, partitions.size());
+
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(10);
+        final PartitionMemoryBudget measure = new PartitionMemoryBudget(1L << 30);
+        measure.release(measure.charge(partitions.get(0), queue, () -> false));
+        Assert.assertEquals(0, measure.chargedBytes());
+        final Object measured = measure.charge(partitions.get(0), queue, () -> false);
+        final long weight = measure.chargedBytes();
+        measure.release(measured);
+        // 2000 rows of about 100 bytes
+        Assert.assertTrue(String.valueOf(weight), weight > 100000 && weight < 400000);
 
+        // room for a single partition
+        final PartitionMemoryBudget budget = new PartitionMemoryBudget(weight + weight / 2);
+        queue.add(budget.charge(partitions.get(0), queue, () -> false));
+        Assert.assertEquals(weight, budget.chargedBytes());
+
+        // a partition for a queue that is not empty waits for room
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+        Assert.assertNull(budget.charge(partitions.get(1), queue, () -> System.nanoTime() > deadline));
+
+        // one for an empty queue does not, but is not charged if there is no room
+        final BlockingQueue<Object> other = new ArrayBlockingQueue<>(10);
+        final Object free = budget.charge(partitions.get(1), other, () -> false);
+        Assert.assertSame(partitions.get(1), PartitionMemoryBudget.partition(free));
+        budget.release(free);
+        Assert.assertEquals(weight, budget.chargedBytes());
+
+        // taking a partition gives its room back to the waiting ones
+        final Object taken = queue.take();
+        Assert.assertSame(partitions.get(0), PartitionMemoryBudget.partition(taken));
+        budget.release(taken);
+        Assert.assertEquals(0, budget.chargedBytes());
+        queue.add(budget.charge(partitions.get(1), queue, () -> false));
+        Assert.assertEquals(weight, budget.chargedBytes());
+        budget.clear(queue);
+        Assert.assertEquals(0, budget.chargedBytes());
+        Assert.assertTrue(queue.isEmpty());
+
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(ParallelSSTableScanner.THREADS_KEY, 2);
+        conf.setInt(ParallelSSTableScanner.BUFFER_MB_KEY, 1);
+        final String wideFile = writeChunkedSSTable(40, 2000);
+        final SSTableSingleReader wideReader = new SSTableSingleReader(wideFile, conf);
+        int rows = 0;
+        try (ISSTableScanner scanner = wideReader.getParallelSSTableScanner(true)) {
+            while (scanner.hasNext()) {
+                try (UnfilteredRowIterator partition = scanner.next()) {
+                    while (partition.hasNext()) {
+                        partition.next();
+                        rows++;
+                    }
+                }
+            }
+        } finally {
+            wideReader.close();
+        }
+        Assert.assertEquals(80000, rows);
+    }
+
+    @Test
+    public void testOnLocalDataWithKeyIterator() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
+                TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final List<DecoratedKey> keys = new ArrayList<>();
+            try (ISSTableScanner scanner = reader.getSSTableScanner()) {
+                while (scanner.hasNext()) {
+                    try (UnfilteredRowIterator partition = scanner.next()) {
+                        keys.add(partition.partitionKey());
+                    }
+                }
+            }
+
+            final List<DecoratedKey> listed = new ArrayList<>();
+            long position = -1;
+            long size = 0;
+            try (SSTableKeyIterator iterator = reader.getKeyIterator()) {
+                while (iterator.hasNext()) {
+                    final SSTableKeyIterator.KeyEntry entry = iterator.next();
+                    Assert.assertTrue(entry.getDataPosition() > position);
+                    Assert.assertTrue(entry.getEstimatedSize() > 0);
+                    listed.add(entry.getKey());
+                    position = entry.getDataPosition();
+                    size += entry.getEstimatedSize();
+                }
+            }
+            Assert.assertEquals(keys, listed);
+            Assert.assertEquals(reader.getSstableReader().uncompressedLength(), size);
+
+            // a range wrapping around the ring, from the middle key to the third one, listed in token order
+            final Range<Token> range = new Range<>(keys.get(7).getToken(), keys.get(2).getToken());
+            final List<DecoratedKey> expected = new ArrayList<>(keys.subList(0, 3));
+            expected.addAll(keys.subList(8, keys.size()));
+            final List<DecoratedKey> bounded = new ArrayList<>();
+            try (SSTableKeyIterator iterator = reader.getKeyIterator(range)) {
+                while (iterator.hasNext()) {
+                    bounded.add(iterator.next().getKey());
+                }
+            }
+            Assert.assertEquals(expected, bounded);
+        }
+    }
+
+    /**
+     *  Looking up partitions by key, one at a time or in a batch, must read the same rows as a full scan.
+     */
+    @Test
+    public void testOnLocalDataWithPointLookups() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
+                TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final CFMetaData cfMetaData = reader.getCfMetaData();
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+
+            final List<ByteBuffer> keys = new ArrayList<>();
+            try (ISSTableScanner scanner = reader.getSSTableScanner()) {
+                while (scanner.hasNext()) {
+                    try (UnfilteredRowIterator partition = scanner.next()) {
+                        keys.add(partition.partitionKey().getKey());
+                    }
+                }
+            }
+            Assert.assertTrue(keys.size() > 1);
+
+            int counter = 0;
+            for (ByteBuffer key : keys) {
+                try (RowIterator partition = UnfilteredRowIterators.filter(reader.getPartition(key), nowInSecs)) {
+                    Assert.assertEquals(key, partition.partitionKey().getKey());
+                    counter += printRowDetails(cfMetaData, partition, false);
+                }
+            }
+            Assert.assertEquals(16, counter);
+
+            final ByteBuffer missing =
+                    ((CompositeType) cfMetaData.getKeyValidator()).decompose("nobody", "nobody@netflix.com");
+            try (UnfilteredRowIterator partition = reader.getPartition(missing)) {
+                Assert.assertTrue(partition.isEmpty());
+            }
+
+            final List<ByteBuffer> batch = new ArrayList<>(keys);
+            Collections.reverse(batch);
+            batch.add(missing);
+            batch.add(keys.get(0));
+            counter = 0;
+            int partitions = 0;
+            try (UnfilteredPartitionIterator iterator = reader.multiGet(batch)) {
+                while (iterator.hasNext()) {
+                    try (RowIterator partition = UnfilteredRowIterators.filter(iterator.next(), nowInSecs)) {
+                        // partitions come in token order, which is the scan order
+                        Assert.assertEquals(keys.get(partitions++), partition.partitionKey().getKey());
+                        counter += printRowDetails(cfMetaData, partition, false);
+                    }
+                }
+            }
+            Assert.assertEquals(keys.size(), partitions);
+            Assert.assertEquals(16, counter);
+        }
+    }
+
+    /**
+     *  A reader given the positions it will read must fetch the chunks holding them in batches, read chunks
+     *  outside of the plan synchronously without dropping the planned ones, and a batch of point lookups
+     *  must go through such a reader.
+     */
+    @Test
+    public void testOnLocalDataWithBatchedPointLookups() throws IOException {
+        final String dataFile = writeChunkedSSTable(200, 10);
+        final SSTableSingleReader reader = new SSTableSingleReader(dataFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        final ChannelProxy channel = ChannelProxy.newInstance(dataFile, TestBaseSSTableFunSuite.HADOOP_CONF);
+        try {
+            final CompressedChunkReader.Standard chunkReader = new CompressedChunkReader.Standard(
+                    channel, reader.getSstableReader().getCompressionMetadata());
+            final int chunkSize = chunkReader.chunkSize();
+            final int chunks = (int) ((chunkReader.fileLength() + chunkSize - 1) / chunkSize);
+            Assert.assertTrue(chunks > 20);
+            final ByteBuffer[] expected = new ByteBuffer[chunks];
+            for (int i = 0; i < chunks; i++) {
+                expected[i] = chunkReader.preferredBufferType().allocate(chunkSize);
+                chunkReader.readChunk((long) i * chunkSize, expected[i]);
+            }
+
+            // every third chunk, twice in the first of them
+            final List<Long> plan = new ArrayList<>();
+            for (int i = 0; i < chunks; i += 3) {
+                plan.add((long) i * chunkSize + 10);
+                if (i == 0) {
+                    plan.add(20L);
+                }
+            }
+            final long[] positions = plan.stream().mapToLong(Long::longValue).toArray();
+            final int planned = (chunks + 2) / 3;
+
+            final CountingChunkReader counting = new CountingChunkReader(chunkReader, true);
+            final PrefetchingRebufferer rebufferer = new PrefetchingRebufferer(counting, 4, positions);
+            try {
+                for (int i = 0; i < chunks; i += 3) {
+                    assertChunk(expected[i], (long) i * chunkSize, rebufferer.rebuffer((long) i * chunkSize + 10));
+                    if (i == 3) {
+                        // a partition spilling over the next chunk
+                        assertChunk(expected[4], 4L * chunkSize, rebufferer.rebuffer(4L * chunkSize));
+                    }
+                }
+                Assert.assertEquals(1, counting.chunkReads.get());
+                Assert.assertEquals(planned, counting.batchedChunks.get());
+                Assert.assertTrue(counting.batchReads.get() < planned);
+            } finally {
+                rebufferer.closeReader();
+                rebufferer.close();
+            }
+
+            try (RandomAccessReader input = (RandomAccessReader) reader.getSstableReader().getFileDataInput(positions)) {
+                Assert.assertTrue(input.toString(), input.toString().contains("PrefetchingRebufferer[16]"));
+                Assert.assertEquals(positions[0], input.getFilePointer());
+            }
+
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+            final List<ByteBuffer> keys = new ArrayList<>();
+            for (int i = 0; i < 200; i += 7) {
+                keys.add(ByteBufferUtil.bytes("user" + i));
+            }
+            int partitions = 0;
+            int rows = 0;
+            try (UnfilteredPartitionIterator iterator = reader.multiGet(keys)) {
+                while (iterator.hasNext()) {
+                    try (RowIterator partition = UnfilteredRowIterators.filter(iterator.next(), nowInSecs)) {
+                        Assert.assertTrue(keys.contains(partition.partitionKey().getKey()));
+                        partitions++;
+                        while (partition.hasNext()) {
+                            partition.next();
+                            rows++;
+                        }
+                    }
+                }
+            }
+            Assert.assertEquals(keys.size(), partitions);
+            Assert.assertEquals(keys.size() * 10, rows);
+        } finally {
+            channel.close();
+            reader.close();
+        }
+    }
+
+    /**
+     *  Scanning with a column projection must only return the selected columns.
+     */
+    @Test
+    public void testOnLocalDataWithColumnProjection() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
+                TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final CFMetaData cfMetaData = reader.getCfMetaData();
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+
+            final List<ColumnDefinition> regulars = new ArrayList<>();
+            cfMetaData.partitionColumns().regulars.forEach(regulars::add);
+            Assert.assertTrue(regulars.size() > 1);
+            final ColumnDefinition selected = regulars.get(0);
+            LOGGER.info("Projecting column " + selected.name);
+
+            int counter = 0;
+            final List<String> columns = Collections.singletonList(selected.name.toString());
+            try (ISSTableScanner scanner = reader.getSSTableScanner(columns)) {
+                while (scanner.hasNext()) {
+                    try (RowIterator partition = UnfilteredRowIterators.filter(scanner.next(), nowInSecs)) {
+                        while (partition.hasNext()) {
+                            final Row row = partition.next();
+                            for (Cell cell : row.cells()) {
+                                Assert.assertEquals(selected, cell.column());
+                            }
+                            counter++;
+                        }
+                    }
+                }
+            }
+            Assert.assertEquals(16, counter);
+
+            try {
+                reader.getColumnFilter(Collections.singletonList("no_such_column"));
+                Assert.fail("Unknown columns must be rejected");
+            } catch (IllegalArgumentException e) {
+                LOGGER.info(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     *  Scanning and reading partitions with clustering slices must only return the rows in the slices.
+     */
+    @Test
+    public void testOnLocalDataWithClusteringSlices() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db";
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName,
+                TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final CFMetaData cfMetaData = reader.getCfMetaData();
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+
+            final List<Clustering> clusterings = new ArrayList<>();
+            final List<ByteBuffer> keys = new ArrayList<>();
+            try (ISSTableScanner scanner = reader.getSSTableScanner()) {
+                while (scanner.hasNext()) {
+                    try (RowIterator partition = UnfilteredRowIterators.filter(scanner.next(), nowInSecs)) {
+                        keys.add(partition.partitionKey().getKey());
+                        while (partition.hasNext()) {
+                            clusterings.add(partition.next().clustering());
+                        }
+                    }
+                }
+            }
+            Assert.assertEquals(4, clusterings.size());
+
+            // read from the median clustering to the end of each partition
+            final List<Clustering> sorted = new ArrayList<>(clusterings);
+            sorted.sort(cfMetaData.comparator);
+            final Clustering start = sorted.get(sorted.size() / 2);
+            final Slices slices = reader.getSlices(new ByteBuffer[] {start.get(0)}, null);
+            int expected = 0;
+            for (Clustering clustering : clusterings) {
+                if (cfMetaData.comparator.compare(clustering, start) >= 0) {
+                    expected++;
+                }
+            }
+
+            int counter = 0;
+            try (ISSTableScanner scanner = reader.getSSTableScanner(null, ColumnFilter.all(cfMetaData), slices, null)) {
+                while (scanner.hasNext()) {
+                    try (RowIterator partition = UnfilteredRowIterators.filter(scanner.next(), nowInSecs)) {
+                        while (partition.hasNext()) {
+                            Assert.assertTrue(cfMetaData.comparator.compare(partition.next().clustering(), start) >= 0);
+                            counter++;
+                        }
+                    }
+                }
+            }
+            Assert.assertEquals(expected, counter);
+
+            counter = 0;
+            for (ByteBuffer key : keys) {
+                try (RowIterator partition = UnfilteredRowIterators.filter(
+                        reader.getPartition(key, ColumnFilter.all(cfMetaData), slices), nowInSecs)) {
+                    while (partition.hasNext()) {
+                        Assert.assertTrue(cfMetaData.comparator.compare(partition.next().clustering(), start) >= 0);
+                        counter++;
+                    }
+                }
+            }
+            Assert.assertEquals(expected, counter);
+        }
+    }
+
+    /**
+     *  Looking up keys with the key cache enabled must serve repeated lookups from the cache.
+     */
+    @Test
+    public void testOnLocalDataWithKeyCache() throws IOException {
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(KeyCache.KEY_CACHE_SIZE_MB_KEY, 8);
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/compressed_bills/mc-2-big-Data.db";
+        try (SSTableSingleReader reader = new SSTableSingleReader(inputSSTableFullPathFileName, conf)) {
+            final CFMetaData cfMetaData = reader.getCfMetaData();
+            final SSTableReader sstableReader = reader.getSstableReader();
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+
+            final List<ByteBuffer> keys = new ArrayList<>();
+            try (ISSTableScanner scanner = reader.getSSTableScanner()) {
+                while (scanner.hasNext()) {
+                    try (UnfilteredRowIterator partition = scanner.next()) {
+                        keys.add(partition.partitionKey().getKey());
+                    }
+                }
+            }
+
+            final DecoratedKey key = sstableReader.decorateKey(keys.get(0));
+            final RowIndexEntry position = sstableReader.getPosition(key, SSTableReader.Operator.EQ);
+            Assert.assertNotNull(position);
+            final long hits = sstableReader.getKeyCacheHit();
+            Assert.assertEquals(position.position, sstableReader.getPosition(key, SSTableReader.Operator.EQ).position);
+            Assert.assertEquals(hits + 1, sstableReader.getKeyCacheHit());
+
+            // a multi-get of the same keys fills the cache, then reads it
+            int counter = 0;
+            for (int i = 0; i < 2; i++) {
+                try (UnfilteredPartitionIterator iterator = reader.multiGet(keys)) {
+                    while (iterator.hasNext()) {
+                        try (RowIterator partition = UnfilteredRowIterators.filter(iterator.next(), nowInSecs)) {
+                            counter += printRowDetails(cfMetaData, partition, false);
+                        }
+                    }
+                }
+            }
+            Assert.assertEquals(32, counter);
+            Assert.assertTrue(sstableReader.getKeyCacheHit() >= hits + 1 + keys.size());
+        }
+    }
+
+    /**
+     *  The key cache must not serve the entries of an sstable to another sstable written at the same path,
+     *  as if modified, but must serve them to other readers of the same sstable.
+     */
+    @Test
+    public void testKeyCacheOfRewrittenSSTable() throws IOException {
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(KeyCache.KEY_CACHE_SIZE_MB_KEY, 8);
+        final String dataFile = writeChunkedSSTable(10, 10);
+        final ByteBuffer key = UTF8Type.instance.decompose("user3");
+
+        final long[] hits = new long[3];
+        for (int i = 0; i < hits.length; i++) {
+            if (i == 2) {
+                final File file = new File(dataFile);
+                Assert.assertTrue(file.setLastModified(file.lastModified() + TimeUnit.MINUTES.toMillis(1)));
+            }
+            final SSTableSingleReader reader = new SSTableSingleReader(dataFile, conf);
+            try {
+                final SSTableReader sstableReader = reader.getSstableReader();
+                Assert.assertNotNull(sstableReader.getPosition(sstableReader.decorateKey(key),
+                                                               SSTableReader.Operator.EQ));
+                hits[i] = sstableReader.getKeyCacheHit();
+            } finally {
+                reader.close();
+            }
+        }
+        Assert.assertArrayEquals(new long[] {0, 1, 0}, hits);
+    }
+
+    /**
+     *  Scanning a sstable twice with the chunk cache enabled must read each of its chunks once, and serve the
+     *  second scan from the cache.
+     */
+    @Test
+    public void testOnLocalDataWithChunkCache() throws IOException {
+        final Configuration conf = new Configuration(TestBaseSSTableFunSuite.HADOOP_CONF);
+        conf.setInt(ChunkCache.CHUNK_CACHE_SIZE_MB_KEY, 8);
+        final SSTableSingleReader reader = new SSTableSingleReader(writeChunkedSSTable(200, 10), conf);
+        try {
+            final long chunks = (reader.getSstableReader().uncompressedLength() + 4095) / 4096;
+            Assert.assertTrue(chunks > 10);
+
+            final ChunkCache cache = ChunkCache.instance(conf);
+            final long misses = cache.misses();
+            final long hits = cache.hits();
+            Assert.assertEquals(2000, countRows(reader));
+            // the Data.db chunks, and the few of Index.db
+            final long loaded = cache.misses() - misses;
+            Assert.assertTrue(loaded >= chunks);
+            Assert.assertTrue(loaded < 2 * chunks);
+
+            final long scanHits = cache.hits() - hits;
+            Assert.assertEquals(2000, countRows(reader));
+            Assert.assertEquals(loaded, cache.misses() - misses);
+            Assert.assertTrue(cache.hits() - hits - scanHits >= chunks);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private int countRows(final SSTableSingleReader reader) throws IOException {
+        final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
         int counter = 0;
-        try (SSTableIterator ci = new SSTableIterator(scanners, reader1.getCfMetaData(), nowInSecs)) {
+        try (SSTableIterator ci = new SSTableIterator(Collections.singletonList(reader.getSSTableScanner()),
+                                                      reader.getCfMetaData(), nowInSecs)) {
             while (ci.hasNext()) {
-                final RowIterator rowIterator = ci.next();
-                counter += printRowDetails(cfMetaData, rowIterator, false);
+                try (RowIterator partition = ci.next()) {
+                    while (partition.hasNext()) {
+                        partition.next();
+                        counter++;
+                    }
+                }
             }
         }
+        return counter;
+    }
 
-        Assert.assertEquals(4, counter);
+    /**
+     *  Chunk reader counting the reads it forwards. Unless vectored, batches of chunks are read chunk
+     *  by chunk, as by the default {@link ChunkReader#readChunks}.
+     */
+    private static final class CountingChunkReader implements ChunkReader {
+        private final ChunkReader source;
+        private final boolean vectored;
+        private final AtomicInteger chunkReads = new AtomicInteger();
+        private final AtomicInteger batchReads = new AtomicInteger();
+        private final AtomicInteger batchedChunks = new AtomicInteger();
+
+        CountingChunkReader(final ChunkReader source, final boolean vectored) {
+            this.source = source;
+            this.vectored = vectored;
+        }
+
+        @Override
+        public void readChunk(final long position, final ByteBuffer buffer) {
+            chunkReads.incrementAndGet();
+            source.readChunk(position, buffer);
+        }
+
+        @Override
+        public void readChunks(final long[] positions, final ByteBuffer[] buffers) {
+            batchReads.incrementAndGet();
+            batchedChunks.addAndGet(positions.length);
+            if (vectored) {
+                source.readChunks(positions, buffers);
+            } else {
+                ChunkReader.super.readChunks(positions, buffers);
+            }
+        }
+
+        @Override
+        public int chunkSize() {
+            return source.chunkSize();
+        }
+
+        @Override
+        public BufferType preferredBufferType() {
+            return source.preferredBufferType();
+        }
+
+        @Override
+        public Rebufferer instantiateRebufferer() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            // the source is closed by its owner
+        }
+
+        @Override
+        public ChannelProxy channel() {
+            return source.channel();
+        }
+
+        @Override
+        public long fileLength() {
+            return source.fileLength();
+        }
+
+        @Override
+        public double getCrcCheckChance() {
+            return source.getCrcCheckChance();
+        }
+    }
+
+    /**
+     * Test on the SSTableIterator.
+     * @throws IOException
+     */
+    @Test
+    public void testCasspactorIterator() throws IOException {
+        final String inputSSTableFullPathFileName = CASS3_DATA_DIR + "keyspace1/bills_compress/mc-6-big-Data.db";
+        try (SSTableSingleReader reader1 = new SSTableSingleReader(inputSSTableFullPathFileName,
+                                                                    TestBaseSSTableFunSuite.HADOOP_CONF);
+             SSTableSingleReader reader2 = new SSTableSingleReader(inputSSTableFullPathFileName,
+                                                                    TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final CFMetaData cfMetaData = reader1.getCfMetaData();
+            final List<ISSTableScanner> scanners = new ArrayList<>();
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+
+            scanners.add(reader1.getSSTableScanner());
+            scanners.add(reader2.getSSTableScanner());
+
+            int counter = 0;
+            try (SSTableIterator ci = new SSTableIterator(scanners, reader1.getCfMetaData(), nowInSecs)) {
+                while (ci.hasNext()) {
+                    final RowIterator rowIterator = ci.next();
+                    counter += printRowDetails(cfMetaData, rowIterator, false);
+                }
+            }
+
+            Assert.assertEquals(4, counter);
+        }
     }
 
     @Test
@@ -178,35 +1395,34 @@ public class TestSStableDataLister extends TestBaseSSTableFunSuite {
                                                    "casspactor",
                                                    "org.apache.cassandra.dht.RandomPartitioner");
 
-        final SSTableSingleReader cass21Reader0 =
+        try (SSTableSingleReader cass21Reader0 =
                 new SSTableSingleReader(CASS21_DATA_DIR +
                                         "keyspace1/auditlogsbyid/keyspace1-auditlogsbyid-ka-1-Data.db",
                                         cfMetaData, TestBaseSSTableFunSuite.HADOOP_CONF);
-        final SSTableSingleReader cass21Reader1 =
+             SSTableSingleReader cass21Reader1 =
                 new SSTableSingleReader(CASS21_DATA_DIR +
                                         "keyspace1/auditlogsbyid/keyspace1-auditlogsbyid-ka-3-Data.db",
                                         cfMetaData, TestBaseSSTableFunSuite.HADOOP_CONF);
-        final SSTableSingleReader cass3Reader =
+             SSTableSingleReader cass3Reader =
                 new SSTableSingleReader(CASS3_DATA_DIR + "keyspace1/auditlogsbyid/mc-1-big-Data.db ",
-                                        TestBaseSSTableFunSuite.HADOOP_CONF);
-
-
-        final List<ISSTableScanner> scanners = new ArrayList<>();
-        final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
+                                        TestBaseSSTableFunSuite.HADOOP_CONF)) {
+            final List<ISSTableScanner> scanners = new ArrayList<>();
+            final int nowInSecs = (int) (System.currentTimeMillis() / 1000);
 
-        scanners.add(cass21Reader0.getSSTableScanner());
-        scanners.add(cass21Reader1.getSSTableScanner());
-        scanners.add(cass3Reader.getSSTableScanner());
+            scanners.add(cass21Reader0.getSSTableScanner());
+            scanners.add(cass21Reader1.getSSTableScanner());
+            scanners.add(cass3Reader.getSSTableScanner());
 
-        int counter = 0;
-        try (SSTableIterator ci = new SSTableIterator(scanners, cass21Reader0.getCfMetaData(), nowInSecs)) {
-            while (ci.hasNext()) {
-                final RowIterator rowIterator = ci.next();
-                counter += printRowDetails(cfMetaData, rowIterator, false);
+            int counter = 0;
+            try (SSTableIterator ci = new SSTableIterator(scanners, cass21Reader0.getCfMetaData(), nowInSecs)) {
+                while (ci.hasNext()) {
+                    final RowIterator rowIterator = ci.next();
+                    counter += printRowDetails(cfMetaData, rowIterator, false);
+                }
             }
-        }
 
-        Assert.assertEquals(5, counter);
+            Assert.assertEquals(5, counter);
+        }
     }
 
 }